@@ -0,0 +1,147 @@
+package com.worksphere.billingengine.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Configuración de proveedores SMTP para el despacho de correos.
+ */
+@Configuration
+public class EmailConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailConfig.class);
+
+    // Proveedor principal (credenciales almacenadas de manera segura en vault o variables de entorno)
+    @Value("${services.email-service.smtp.host}")
+    private String smtpHost;
+
+    @Value("${services.email-service.smtp.port:587}")
+    private int smtpPort;
+
+    @Value("${services.email-service.smtp.username}")
+    private String smtpUsername;
+
+    @Value("${services.email-service.smtp.password}")
+    private String smtpPassword;
+
+    @Value("${services.email-service.smtp.tls:true}")
+    private boolean smtpTls;
+
+    // Pool y límites por proveedor
+    @Value("${services.email-service.smtp.pool-size:4}")
+    private int poolSize;
+
+    @Value("${services.email-service.smtp.max-messages-per-connection:100}")
+    private int maxMessagesPerConnection;
+
+    @Value("${services.email-service.smtp.rate-per-second:20}")
+    private double ratePerSecond;
+
+    @Value("${services.email-service.smtp.timeout-ms:10000}")
+    private int timeoutMs;
+
+    // Proveedor de respaldo (opcional)
+    @Value("${services.email-service.fallback-smtp.host:}")
+    private String fallbackHost;
+
+    @Value("${services.email-service.fallback-smtp.port:587}")
+    private int fallbackPort;
+
+    @Value("${services.email-service.fallback-smtp.username:}")
+    private String fallbackUsername;
+
+    @Value("${services.email-service.fallback-smtp.password:}")
+    private String fallbackPassword;
+
+    /**
+     * Mapa de proveedores SMTP y sus límites. La primera entrada es el proveedor por defecto.
+     */
+    @Bean
+    public Map<String, SmtpProviderConfig> smtpProviders() {
+        Map<String, SmtpProviderConfig> providers = new LinkedHashMap<>();
+
+        providers.put("primary", SmtpProviderConfig.builder()
+                .name("primary")
+                .host(smtpHost)
+                .port(smtpPort)
+                .username(smtpUsername)
+                .password(smtpPassword)
+                .tls(smtpTls)
+                .poolSize(poolSize)
+                .maxMessagesPerConnection(maxMessagesPerConnection)
+                .ratePerSecond(ratePerSecond)
+                .timeoutMs(timeoutMs)
+                .build());
+
+        if (!fallbackHost.isEmpty()) {
+            providers.put("fallback", SmtpProviderConfig.builder()
+                    .name("fallback")
+                    .host(fallbackHost)
+                    .port(fallbackPort)
+                    .username(fallbackUsername)
+                    .password(fallbackPassword)
+                    .tls(true)
+                    .poolSize(Math.max(1, poolSize / 2))
+                    .maxMessagesPerConnection(maxMessagesPerConnection)
+                    .ratePerSecond(ratePerSecond)
+                    .timeoutMs(timeoutMs)
+                    .build());
+        }
+
+        logger.info("SMTP providers configured: {}", providers.keySet());
+        return providers;
+    }
+
+    /**
+     * Configuración individual de cada proveedor SMTP.
+     */
+    public static class SmtpProviderConfig {
+        private String name;
+        private String host;
+        private int port;
+        private String username;
+        private String password;
+        private boolean tls;
+        private int poolSize;
+        private int maxMessagesPerConnection;
+        private double ratePerSecond;
+        private int timeoutMs;
+
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public String getName() { return name; }
+        public String getHost() { return host; }
+        public int getPort() { return port; }
+        public String getUsername() { return username; }
+        public String getPassword() { return password; }
+        public boolean isTls() { return tls; }
+        public int getPoolSize() { return poolSize; }
+        public int getMaxMessagesPerConnection() { return maxMessagesPerConnection; }
+        public double getRatePerSecond() { return ratePerSecond; }
+        public int getTimeoutMs() { return timeoutMs; }
+
+        public static class Builder {
+            private final SmtpProviderConfig config = new SmtpProviderConfig();
+
+            public Builder name(String name) { config.name = name; return this; }
+            public Builder host(String host) { config.host = host; return this; }
+            public Builder port(int port) { config.port = port; return this; }
+            public Builder username(String username) { config.username = username; return this; }
+            public Builder password(String password) { config.password = password; return this; }
+            public Builder tls(boolean tls) { config.tls = tls; return this; }
+            public Builder poolSize(int poolSize) { config.poolSize = poolSize; return this; }
+            public Builder maxMessagesPerConnection(int max) { config.maxMessagesPerConnection = max; return this; }
+            public Builder ratePerSecond(double ratePerSecond) { config.ratePerSecond = ratePerSecond; return this; }
+            public Builder timeoutMs(int timeoutMs) { config.timeoutMs = timeoutMs; return this; }
+            public SmtpProviderConfig build() { return config; }
+        }
+    }
+}
@@ -1,5 +1,15 @@
 package com.worksphere.billingengine.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.worksphere.billing.domain.event.NotificationEvent;
+import com.worksphere.billing.infrastructure.kafka.HotTenantSplitStrategy;
+import com.worksphere.billing.infrastructure.kafka.KafkaProducerProfile;
+import com.worksphere.billing.infrastructure.kafka.KafkaProducerProfiles;
+import com.worksphere.billing.infrastructure.kafka.KafkaTopics;
+import com.worksphere.billing.infrastructure.kafka.ProfiledKafkaTemplates;
+import com.worksphere.billing.infrastructure.kafka.TenantAffinityPartitioner;
+import com.worksphere.billing.transport.codec.TransportEventCodecs;
+import com.worksphere.billing.transport.codec.TransportEventSerde;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
@@ -20,8 +30,13 @@ import org.springframework.kafka.core.*;
 import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.util.backoff.ExponentialBackOff;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
@@ -43,16 +58,88 @@ public class KafkaConfig {
     @Value("${kafka.sasl.jaas.config:}")
     private String jaasConfig;
 
+    @Value("${billing.kafka.partitioning.strategy:tenant-affinity}")
+    private String partitionStrategy;
+
+    @Value("${billing.kafka.partitioning.hot-tenants:}")
+    private String hotTenants;
+
+    // -----------------------------
+    // Perfiles de productor
+    // -----------------------------
+
     /**
-     * Configuración del productor Kafka.
+     * Perfiles de productor y asignación topic → perfil.
+     * standard: perfil por defecto, con los ajustes habituales del productor y bloqueo normal ante backpressure.
+     * low-latency: lotes pequeños, espera mínima y bloqueo corto; solo para los topics asignados
+     *   explícitamente cuyo emisor tiene alternativa si el buffer se llena (p. ej. el dead letter de notificaciones).
+     * bulk: lotes grandes, más espera y compresión zstd, para flujos masivos (outbox, transporte).
      */
     @Bean
-    public ProducerFactory<String, String> producerFactory() {
-        Map<String, Object> configProps = new HashMap<>();
+    public KafkaProducerProfiles kafkaProducerProfiles(
+            @Value("${billing.kafka.producer.standard.batch-size:16384}") int standardBatchSize,
+            @Value("${billing.kafka.producer.standard.linger-ms:5}") int standardLingerMs,
+            @Value("${billing.kafka.producer.standard.compression-type:lz4}") String standardCompression,
+            @Value("${billing.kafka.producer.standard.buffer-memory:33554432}") long standardBufferMemory,
+            @Value("${billing.kafka.producer.standard.max-in-flight:5}") int standardMaxInFlight,
+            @Value("${billing.kafka.producer.standard.max-block-ms:60000}") long standardMaxBlockMs,
+            @Value("${billing.kafka.producer.low-latency.batch-size:16384}") int lowLatencyBatchSize,
+            @Value("${billing.kafka.producer.low-latency.linger-ms:1}") int lowLatencyLingerMs,
+            @Value("${billing.kafka.producer.low-latency.compression-type:lz4}") String lowLatencyCompression,
+            @Value("${billing.kafka.producer.low-latency.buffer-memory:33554432}") long lowLatencyBufferMemory,
+            @Value("${billing.kafka.producer.low-latency.max-in-flight:5}") int lowLatencyMaxInFlight,
+            @Value("${billing.kafka.producer.low-latency.max-block-ms:50}") long lowLatencyMaxBlockMs,
+            @Value("${billing.kafka.producer.bulk.batch-size:262144}") int bulkBatchSize,
+            @Value("${billing.kafka.producer.bulk.linger-ms:50}") int bulkLingerMs,
+            @Value("${billing.kafka.producer.bulk.compression-type:zstd}") String bulkCompression,
+            @Value("${billing.kafka.producer.bulk.buffer-memory:134217728}") long bulkBufferMemory,
+            @Value("${billing.kafka.producer.bulk.max-in-flight:5}") int bulkMaxInFlight,
+            @Value("${billing.kafka.producer.bulk.max-block-ms:60000}") long bulkMaxBlockMs,
+            @Value("#{${billing.kafka.producer.topic-profiles:{}}}") Map<String, String> topicProfiles,
+            @Value("${billing.kafka.producer.default-profile:standard}") String defaultProfile) {
+
+        KafkaProducerProfile standard = KafkaProducerProfile.builder(KafkaProducerProfile.STANDARD)
+                .batchSize(standardBatchSize)
+                .lingerMs(standardLingerMs)
+                .compressionType(standardCompression)
+                .bufferMemory(standardBufferMemory)
+                .maxInFlight(standardMaxInFlight)
+                .maxBlockMs(standardMaxBlockMs)
+                .build();
+
+        KafkaProducerProfile lowLatency = KafkaProducerProfile.builder(KafkaProducerProfile.LOW_LATENCY)
+                .batchSize(lowLatencyBatchSize)
+                .lingerMs(lowLatencyLingerMs)
+                .compressionType(lowLatencyCompression)
+                .bufferMemory(lowLatencyBufferMemory)
+                .maxInFlight(lowLatencyMaxInFlight)
+                .maxBlockMs(lowLatencyMaxBlockMs)
+                .build();
+
+        KafkaProducerProfile bulk = KafkaProducerProfile.builder(KafkaProducerProfile.BULK)
+                .batchSize(bulkBatchSize)
+                .lingerMs(bulkLingerMs)
+                .compressionType(bulkCompression)
+                .bufferMemory(bulkBufferMemory)
+                .maxInFlight(bulkMaxInFlight)
+                .maxBlockMs(bulkMaxBlockMs)
+                .build();
+
+        KafkaProducerProfiles profiles = new KafkaProducerProfiles(List.of(standard, lowLatency, bulk), topicProfiles, defaultProfile);
+        logger.info("Perfiles de productor Kafka: {} | topics: {} | por defecto: {}",
+                profiles.all().values(), profiles.topicBindings(), defaultProfile);
+        return profiles;
+    }
+
+    /**
+     * Propiedades comunes a todos los productores: brokers, seguridad y reintentos.
+     * Usan el particionador por defecto de Kafka (hash de la clave completa).
+     */
+    private Map<String, Object> producerProperties(KafkaProducerProfile profile) {
+        Map<String, Object> configProps = new HashMap<>(profile.producerProperties());
 
         configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-        configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        configProps.put(ProducerConfig.CLIENT_ID_CONFIG, "billing-" + profile.getName());
 
         // Seguridad TLS/SASL
         configProps.put("security.protocol", securityProtocol);
@@ -61,19 +148,87 @@ public class KafkaConfig {
             configProps.put("sasl.jaas.config", jaasConfig);
         }
 
-        // Tolerancia a fallos
-        configProps.put(ProducerConfig.ACKS_CONFIG, "all"); // confirmación completa
+        // Tolerancia a fallos (acks=all e idempotencia vienen del perfil)
         configProps.put(ProducerConfig.RETRIES_CONFIG, 5);
-        configProps.put(ProducerConfig.LINGER_MS_CONFIG, 10);
-        configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true); // idempotencia
+        return configProps;
+    }
+
+    /**
+     * Propiedades del productor de eventos de facturación: claves {@code <tenant>|<factura>}
+     * particionadas por tenant, con reparto opcional de tenants calientes por factura.
+     */
+    private Map<String, Object> billingEventProducerProperties(KafkaProducerProfile profile) {
+        Map<String, Object> configProps = producerProperties(profile);
+        configProps.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, TenantAffinityPartitioner.class);
+        configProps.put(TenantAffinityPartitioner.STRATEGY_CONFIG, partitionStrategy);
+        configProps.put(HotTenantSplitStrategy.HOT_TENANTS_CONFIG, hotTenants);
+        return configProps;
+    }
+
+    // -----------------------------
+    // Productores
+    // -----------------------------
+
+    /**
+     * Productores de valores String (payload JSON del outbox de eventos de facturación).
+     */
+    @Bean
+    public ProfiledKafkaTemplates<String> billingEventKafkaTemplates(KafkaProducerProfiles profiles) {
+        return new ProfiledKafkaTemplates<>("billing-events", profiles, profile ->
+                new DefaultKafkaProducerFactory<>(billingEventProducerProperties(profile), new StringSerializer(), new StringSerializer()));
+    }
+
+    /**
+     * Productor String por defecto (perfil por defecto, particionador de Kafka).
+     */
+    @Bean
+    public ProducerFactory<String, String> producerFactory(KafkaProducerProfiles profiles) {
+        return new DefaultKafkaProducerFactory<>(producerProperties(profiles.defaultProfile()),
+                new StringSerializer(), new StringSerializer());
+    }
 
+    /**
+     * Template String por defecto, para usos puntuales fuera de los topics perfilados.
+     */
+    @Bean
+    public KafkaTemplate<String, String> kafkaTemplate(ProducerFactory<String, String> producerFactory) {
         logger.info("Configuración de Kafka Producer creada para brokers: {}", bootstrapServers);
-        return new DefaultKafkaProducerFactory<>(configProps);
+        return new KafkaTemplate<>(producerFactory);
     }
 
+    /**
+     * Productores de notificaciones: JSON sin cabeceras de tipo y orden por tenant (clave).
+     */
     @Bean
-    public KafkaTemplate<String, String> kafkaTemplate() {
-        return new KafkaTemplate<>(producerFactory());
+    public ProfiledKafkaTemplates<NotificationEvent> notificationKafkaTemplates(KafkaProducerProfiles profiles) {
+        return new ProfiledKafkaTemplates<>("notifications", profiles, profile -> {
+            JsonSerializer<NotificationEvent> valueSerializer = new JsonSerializer<>();
+            valueSerializer.setAddTypeInfo(false);
+            return new DefaultKafkaProducerFactory<>(producerProperties(profile), new StringSerializer(), valueSerializer);
+        });
+    }
+
+    @Bean
+    public KafkaTemplate<String, NotificationEvent> notificationKafkaTemplate(
+            ProfiledKafkaTemplates<NotificationEvent> notificationKafkaTemplates) {
+        return notificationKafkaTemplates.forTopic(KafkaTopics.NOTIFICATIONS);
+    }
+
+    /**
+     * Serde de los eventos de transporte: binario con esquema (por defecto) o JSON como fallback.
+     */
+    @Bean
+    public TransportEventSerde transportEventSerde(TransportEventCodecs codecs, ObjectMapper objectMapper,
+                                                   @Value("${billing.events.codec.format:BINARY}") TransportEventSerde.Format format) {
+        logger.info("Formato de serialización de eventos de transporte: {}", format);
+        return new TransportEventSerde(codecs, objectMapper, format);
+    }
+
+    @Bean
+    public ProfiledKafkaTemplates<Object> transportEventKafkaTemplates(KafkaProducerProfiles profiles,
+                                                                       TransportEventSerde transportEventSerde) {
+        return new ProfiledKafkaTemplates<>("transport-events", profiles, profile ->
+                new DefaultKafkaProducerFactory<>(producerProperties(profile), new StringSerializer(), transportEventSerde));
     }
 
     /**
@@ -110,4 +265,75 @@ public class KafkaConfig {
         factory.getContainerProperties().setPollTimeout(3000);
         return factory;
     }
+
+    // -----------------------------
+    // Consumo por lotes
+    // -----------------------------
+
+    /**
+     * Consumidor para la ingesta por lotes: polls grandes y fetch agrupado en el broker
+     * (fetch.min.bytes/fetch.max.wait.ms) para amortizar el round-trip por registro.
+     */
+    @Bean
+    public ConsumerFactory<String, String> batchConsumerFactory(
+            @Value("${billing.ingest.consumer.max-poll-records:2000}") int maxPollRecords,
+            @Value("${billing.ingest.consumer.fetch-min-bytes:65536}") int fetchMinBytes,
+            @Value("${billing.ingest.consumer.fetch-max-wait-ms:200}") int fetchMaxWaitMs,
+            @Value("${billing.ingest.consumer.max-partition-fetch-bytes:4194304}") int maxPartitionFetchBytes,
+            @Value("${billing.ingest.consumer.max-poll-interval-ms:300000}") int maxPollIntervalMs) {
+        Map<String, Object> props = new HashMap<>();
+
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, "billing-ingest-group");
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+        props.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, fetchMinBytes);
+        props.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, fetchMaxWaitMs);
+        props.put(ConsumerConfig.MAX_PARTITION_FETCH_BYTES_CONFIG, maxPartitionFetchBytes);
+        props.put(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, maxPollIntervalMs);
+
+        // Seguridad TLS/SASL
+        props.put("security.protocol", securityProtocol);
+        if (!saslMechanism.isEmpty()) {
+            props.put("sasl.mechanism", saslMechanism);
+            props.put("sasl.jaas.config", jaasConfig);
+        }
+
+        logger.info("Consumidor por lotes: max-poll-records={}, fetch-min-bytes={}, fetch-max-wait-ms={}",
+                maxPollRecords, fetchMinBytes, fetchMaxWaitMs);
+        return new DefaultKafkaConsumerFactory<>(props);
+    }
+
+    /**
+     * Contenedor de listeners por lotes: entrega List&lt;ConsumerRecord&gt; por poll y confirma
+     * los offsets solo cuando el listener llama a acknowledge() tras la escritura durable.
+     * La concurrencia debe acompañar al número de particiones de los topics de entrada.
+     *
+     * Si el listener falla, el lote se reintenta completo con backoff exponencial sin límite de
+     * intentos: nunca se salta un lote sin persistir (la inserción es idempotente por posición).
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, String> batchKafkaListenerContainerFactory(
+            ConsumerFactory<String, String> batchConsumerFactory,
+            @Value("${billing.ingest.consumer.concurrency:3}") int concurrency,
+            @Value("${billing.ingest.retry.initial-interval-ms:1000}") long retryInitialIntervalMs,
+            @Value("${billing.ingest.retry.max-interval-ms:60000}") long retryMaxIntervalMs) {
+        ConcurrentKafkaListenerContainerFactory<String, String> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(batchConsumerFactory);
+        factory.setBatchListener(true);
+        factory.setConcurrency(concurrency);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        factory.getContainerProperties().setPollTimeout(3000);
+
+        ExponentialBackOff backOff = new ExponentialBackOff(retryInitialIntervalMs, 2.0);
+        backOff.setMaxInterval(retryMaxIntervalMs);
+        backOff.setMaxElapsedTime(Long.MAX_VALUE);
+        factory.setCommonErrorHandler(new DefaultErrorHandler(backOff));
+        return factory;
+    }
 }
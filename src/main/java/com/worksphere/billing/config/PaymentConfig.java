@@ -31,6 +31,50 @@ public class PaymentConfig {
     @Value("${payment.bank.local.api-key:}")
     private String bankLocalApiKey;
 
+    // Endpoints, pool de conexiones, timeout y límite de concurrencia por proveedor
+    @Value("${payment.stripe.endpoint:https://api.stripe.com}")
+    private String stripeEndpoint;
+
+    @Value("${payment.stripe.timeout-ms:10000}")
+    private int stripeTimeoutMs;
+
+    @Value("${payment.stripe.max-connections:50}")
+    private int stripeMaxConnections;
+
+    @Value("${payment.stripe.max-concurrency:32}")
+    private int stripeMaxConcurrency;
+
+    @Value("${payment.paypal.endpoint:https://api.paypal.com}")
+    private String paypalEndpoint;
+
+    @Value("${payment.paypal.timeout-ms:15000}")
+    private int paypalTimeoutMs;
+
+    @Value("${payment.paypal.max-connections:30}")
+    private int paypalMaxConnections;
+
+    @Value("${payment.paypal.max-concurrency:16}")
+    private int paypalMaxConcurrency;
+
+    @Value("${payment.bank.local.endpoint:}")
+    private String bankLocalEndpoint;
+
+    @Value("${payment.bank.local.timeout-ms:30000}")
+    private int bankLocalTimeoutMs;
+
+    @Value("${payment.bank.local.max-connections:8}")
+    private int bankLocalMaxConnections;
+
+    @Value("${payment.bank.local.max-concurrency:4}")
+    private int bankLocalMaxConcurrency;
+
+    // Cobro por lotes (fichero de cargos) en lugar de una llamada por factura
+    @Value("${payment.bank.local.batch.enabled:true}")
+    private boolean bankLocalBatchMode;
+
+    @Value("${payment.bank.local.batch.size:1000}")
+    private int bankLocalBatchSize;
+
     /**
      * Mapa de proveedores de pago y sus credenciales.
      */
@@ -43,6 +87,10 @@ public class PaymentConfig {
                 .name("Stripe")
                 .apiKey(stripeApiKey)
                 .supportsRecurring(true)
+                .endpoint(stripeEndpoint)
+                .timeoutMs(stripeTimeoutMs)
+                .maxConnections(stripeMaxConnections)
+                .maxConcurrency(stripeMaxConcurrency)
                 .build());
 
         // PayPal
@@ -51,6 +99,10 @@ public class PaymentConfig {
                 .clientId(paypalClientId)
                 .clientSecret(paypalClientSecret)
                 .supportsRecurring(true)
+                .endpoint(paypalEndpoint)
+                .timeoutMs(paypalTimeoutMs)
+                .maxConnections(paypalMaxConnections)
+                .maxConcurrency(paypalMaxConcurrency)
                 .build());
 
         // Banco local (opcional)
@@ -59,6 +111,12 @@ public class PaymentConfig {
                     .name("BancoLocal")
                     .apiKey(bankLocalApiKey)
                     .supportsRecurring(false)
+                    .endpoint(bankLocalEndpoint)
+                    .timeoutMs(bankLocalTimeoutMs)
+                    .maxConnections(bankLocalMaxConnections)
+                    .maxConcurrency(bankLocalMaxConcurrency)
+                    .batchMode(bankLocalBatchMode)
+                    .batchSize(bankLocalBatchSize)
                     .build());
         }
 
@@ -75,6 +133,12 @@ public class PaymentConfig {
         private String clientId;
         private String clientSecret;
         private boolean supportsRecurring;
+        private String endpoint;
+        private int timeoutMs;
+        private int maxConnections;
+        private int maxConcurrency;
+        private boolean batchMode;
+        private int batchSize;
 
         public static Builder builder() {
             return new Builder();
@@ -85,6 +149,12 @@ public class PaymentConfig {
         public String getClientId() { return clientId; }
         public String getClientSecret() { return clientSecret; }
         public boolean isSupportsRecurring() { return supportsRecurring; }
+        public String getEndpoint() { return endpoint; }
+        public int getTimeoutMs() { return timeoutMs; }
+        public int getMaxConnections() { return maxConnections; }
+        public int getMaxConcurrency() { return maxConcurrency; }
+        public boolean isBatchMode() { return batchMode; }
+        public int getBatchSize() { return batchSize; }
 
         public static class Builder {
             private final PaymentProviderConfig config = new PaymentProviderConfig();
@@ -94,6 +164,12 @@ public class PaymentConfig {
             public Builder clientId(String clientId) { config.clientId = clientId; return this; }
             public Builder clientSecret(String clientSecret) { config.clientSecret = clientSecret; return this; }
             public Builder supportsRecurring(boolean supportsRecurring) { config.supportsRecurring = supportsRecurring; return this; }
+            public Builder endpoint(String endpoint) { config.endpoint = endpoint; return this; }
+            public Builder timeoutMs(int timeoutMs) { config.timeoutMs = timeoutMs; return this; }
+            public Builder maxConnections(int maxConnections) { config.maxConnections = maxConnections; return this; }
+            public Builder maxConcurrency(int maxConcurrency) { config.maxConcurrency = maxConcurrency; return this; }
+            public Builder batchMode(boolean batchMode) { config.batchMode = batchMode; return this; }
+            public Builder batchSize(int batchSize) { config.batchSize = batchSize; return this; }
             public PaymentProviderConfig build() { return config; }
         }
     }
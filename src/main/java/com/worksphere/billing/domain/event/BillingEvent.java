@@ -10,10 +10,15 @@ public class BillingEvent {
     private String eventId;
     private String tenantId;
     private String eventType; // e.g. billing_started, invoice_generated, payment_failed
+    private String invoiceId; // opcional: ordena los eventos de una misma factura
     private Instant createdAt;
     private Instant emittedAt;
     private String payload;
 
+    protected BillingEvent() {
+        // requerido por JPA/Jackson
+    }
+
     public BillingEvent(String tenantId, String eventType, String payload) {
         this.eventId = UUID.randomUUID().toString();
         this.tenantId = tenantId;
@@ -22,10 +27,41 @@ public class BillingEvent {
         this.payload = payload;
     }
 
+    public BillingEvent(String tenantId, String invoiceId, String eventType, String payload) {
+        this(tenantId, eventType, payload);
+        this.invoiceId = invoiceId;
+    }
+
     public BillingEvent withEmittedAt(Instant emittedAt) {
         this.emittedAt = emittedAt;
         return this;
     }
 
-    // getters y setters
+    public String getEventId() {
+        return eventId;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public String getInvoiceId() {
+        return invoiceId;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getEmittedAt() {
+        return emittedAt;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
 }
@@ -68,6 +68,7 @@ public class PaymentException extends RuntimeException {
     // -----------------------------
     public enum FailureReason {
         NETWORK_ERROR,         // Problema de comunicación con el gateway
+        PROVIDER_UNAVAILABLE,  // El proveedor no aceptó la petición (saturado o sin capacidad): el cargo no se procesó
         BANK_REJECTED,         // Banco o pasarela rechazó la transacción
         TOKEN_EXPIRED,         // Token de pago caducado
         INVALID_CREDENTIALS,   // Datos de autenticación incorrectos
@@ -0,0 +1,130 @@
+package com.worksphere.billing.domain.model;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * Evento de facturación pendiente de publicar en Kafka (transactional outbox).
+ * Se inserta en la misma transacción que el estado de facturación; el relay lo reclama
+ * ({@code claimToken} + {@code claimedUntil}), lo publica fuera de cualquier transacción y marca
+ * {@code sentAt} por lotes. El id autoincremental define el orden de publicación. Al agotar los
+ * intentos el evento pasa a dead letter ({@code deadLetteredAt}) y queda en la tabla para revisión.
+ */
+@Entity
+@Table(name = "billing_event_outbox",
+        uniqueConstraints = @UniqueConstraint(name = "uk_billing_event_outbox_event", columnNames = "event_id"),
+        indexes = @Index(name = "idx_billing_event_outbox_pending", columnList = "sent_at, id"))
+public class BillingEventOutboxMessage {
+
+    // -----------------------------
+    // Identidad y orden de publicación
+    // -----------------------------
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", nullable = false, updatable = false)
+    private Long id;
+
+    @Column(name = "event_id", nullable = false, updatable = false)
+    private String eventId;
+
+    // -----------------------------
+    // Datos del evento
+    // -----------------------------
+    @Column(name = "tenant_id", nullable = false, updatable = false)
+    private String tenantId;
+
+    @Column(name = "event_type", nullable = false, updatable = false)
+    private String eventType;
+
+    @Column(name = "topic", nullable = false, updatable = false)
+    private String topic;
+
+    @Column(name = "message_key", nullable = false, updatable = false)
+    private String messageKey;
+
+    @Column(name = "payload", nullable = false, updatable = false, columnDefinition = "TEXT")
+    private String payload; // evento serializado tal como se publica
+
+    // -----------------------------
+    // Estado de publicación
+    // -----------------------------
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @Column(name = "sent_at")
+    private Instant sentAt;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    @Column(name = "claim_token")
+    private String claimToken; // relay que tiene el lote en vuelo
+
+    @Column(name = "claimed_until")
+    private Instant claimedUntil; // fin del lease del relay; vencido, otra instancia puede reclamar
+
+    @Column(name = "dead_lettered_at")
+    private Instant deadLetteredAt;
+
+    // -----------------------------
+    // Getters
+    // -----------------------------
+    public Long getId() {
+        return id;
+    }
+
+    public String getEventId() {
+        return eventId;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public String getMessageKey() {
+        return messageKey;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getSentAt() {
+        return sentAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public String getClaimToken() {
+        return claimToken;
+    }
+
+    public Instant getClaimedUntil() {
+        return claimedUntil;
+    }
+
+    public Instant getDeadLetteredAt() {
+        return deadLetteredAt;
+    }
+}
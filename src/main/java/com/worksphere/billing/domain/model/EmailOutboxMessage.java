@@ -0,0 +1,221 @@
+package com.worksphere.billing.domain.model;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Correo pendiente de entrega en la bandeja de salida persistente (outbox).
+ * Se inserta en la misma transacción que la facturación y un worker independiente lo entrega.
+ */
+@Entity
+@Table(name = "email_outbox", indexes = {
+        @Index(name = "idx_email_outbox_due", columnList = "status, next_attempt_at"),
+        @Index(name = "idx_email_outbox_tenant_order", columnList = "tenant_id, created_at")
+})
+public class EmailOutboxMessage {
+
+    // -----------------------------
+    // Identidad única
+    // -----------------------------
+    @Id
+    @Column(name = "id", nullable = false, updatable = false)
+    private UUID id;
+
+    // -----------------------------
+    // Asociación multi-tenant y referencia
+    // -----------------------------
+    @Column(name = "tenant_id", nullable = false, updatable = false)
+    private String tenantId;
+
+    @Column(name = "invoice_id", updatable = false)
+    private String invoiceId;
+
+    // -----------------------------
+    // Contenido del correo
+    // -----------------------------
+    @Column(name = "recipient", nullable = false)
+    private String recipient;
+
+    @Column(name = "subject", nullable = false)
+    private String subject;
+
+    @Column(name = "html_body", nullable = false, columnDefinition = "TEXT")
+    private String htmlBody;
+
+    @Column(name = "attachment_document_id")
+    private String attachmentDocumentId; // hash en el almacén de documentos
+
+    @Column(name = "attachment_pending", nullable = false)
+    private boolean attachmentPending; // el PDF aún se está materializando
+
+    // -----------------------------
+    // Estado de entrega y reintentos
+    // -----------------------------
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private Status status;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private Instant nextAttemptAt; // para IN_PROGRESS actúa como fin del lease del worker
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    // -----------------------------
+    // Timestamps y orden por tenant
+    // -----------------------------
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    // -----------------------------
+    // Constructor
+    // -----------------------------
+    public EmailOutboxMessage() {
+        this.id = UUID.randomUUID();
+        this.createdAt = Instant.now();
+        this.updatedAt = this.createdAt;
+        this.nextAttemptAt = this.createdAt;
+        this.status = Status.PENDING;
+        this.attempts = 0;
+    }
+
+    // -----------------------------
+    // Getters & Setters
+    // -----------------------------
+    public UUID getId() {
+        return id;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public void setTenantId(String tenantId) {
+        this.tenantId = tenantId;
+    }
+
+    public String getInvoiceId() {
+        return invoiceId;
+    }
+
+    public void setInvoiceId(String invoiceId) {
+        this.invoiceId = invoiceId;
+    }
+
+    public String getRecipient() {
+        return recipient;
+    }
+
+    public void setRecipient(String recipient) {
+        this.recipient = recipient;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    public String getHtmlBody() {
+        return htmlBody;
+    }
+
+    public void setHtmlBody(String htmlBody) {
+        this.htmlBody = htmlBody;
+    }
+
+    public String getAttachmentDocumentId() {
+        return attachmentDocumentId;
+    }
+
+    public void setAttachmentDocumentId(String attachmentDocumentId) {
+        this.attachmentDocumentId = attachmentDocumentId;
+    }
+
+    public boolean isAttachmentPending() {
+        return attachmentPending;
+    }
+
+    public void setAttachmentPending(boolean attachmentPending) {
+        this.attachmentPending = attachmentPending;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public Instant getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    // -----------------------------
+    // Transiciones de estado
+    // -----------------------------
+    public void markInProgress(Instant leaseUntil) {
+        if (this.status == Status.IN_PROGRESS) {
+            // Lease vencido: el envío anterior quedó sin resultado y cuenta como intento
+            this.attempts++;
+        }
+        this.status = Status.IN_PROGRESS;
+        this.nextAttemptAt = leaseUntil;
+        this.updatedAt = Instant.now();
+    }
+
+    public void markSent() {
+        this.attempts++;
+        this.status = Status.SENT;
+        this.lastError = null;
+        this.updatedAt = Instant.now();
+    }
+
+    public void markRetry(String error, Instant nextAttemptAt) {
+        this.attempts++;
+        this.status = Status.RETRY;
+        this.lastError = error;
+        this.nextAttemptAt = nextAttemptAt;
+        this.updatedAt = Instant.now();
+    }
+
+    public void markDeadLetter(String error) {
+        this.attempts++;
+        this.status = Status.DEAD_LETTER;
+        this.lastError = error;
+        this.updatedAt = Instant.now();
+    }
+
+    // -----------------------------
+    // Enum de estado de entrega
+    // -----------------------------
+    public enum Status {
+        PENDING,
+        IN_PROGRESS,
+        RETRY,
+        SENT,
+        DEAD_LETTER
+    }
+}
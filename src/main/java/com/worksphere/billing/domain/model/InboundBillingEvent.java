@@ -0,0 +1,113 @@
+package com.worksphere.billing.domain.model;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * Evento entrante (disparador de facturación o evento de uso) recibido desde Kafka.
+ * Es la escritura durable que precede al commit de offsets: la restricción única sobre
+ * (topic, partición, offset) hace idempotente la reentrega de un lote ya persistido.
+ */
+@Entity
+@Table(name = "billing_inbound_event",
+        uniqueConstraints = @UniqueConstraint(name = "uk_billing_inbound_event_position",
+                columnNames = {"topic", "partition_no", "record_offset"}),
+        indexes = @Index(name = "idx_billing_inbound_event_pending", columnList = "tenant_id, processed_at, id"))
+public class InboundBillingEvent {
+
+    // -----------------------------
+    // Identidad y posición en Kafka
+    // -----------------------------
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", nullable = false, updatable = false)
+    private Long id;
+
+    @Column(name = "topic", nullable = false, updatable = false)
+    private String topic;
+
+    @Column(name = "partition_no", nullable = false, updatable = false)
+    private int partition;
+
+    @Column(name = "record_offset", nullable = false, updatable = false)
+    private long offset;
+
+    // -----------------------------
+    // Datos del evento
+    // -----------------------------
+    @Column(name = "tenant_id", nullable = false, updatable = false)
+    private String tenantId;
+
+    @Column(name = "event_type", nullable = false, updatable = false)
+    private String eventType;
+
+    @Column(name = "payload", nullable = false, updatable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    // -----------------------------
+    // Estado
+    // -----------------------------
+    @Column(name = "received_at", nullable = false, updatable = false)
+    private Instant receivedAt;
+
+    @Column(name = "processed_at")
+    private Instant processedAt;
+
+    protected InboundBillingEvent() {
+        // JPA
+    }
+
+    public InboundBillingEvent(String topic, int partition, long offset, String tenantId, String eventType,
+                               String payload, Instant receivedAt) {
+        this.topic = topic;
+        this.partition = partition;
+        this.offset = offset;
+        this.tenantId = tenantId;
+        this.eventType = eventType;
+        this.payload = payload;
+        this.receivedAt = receivedAt;
+    }
+
+    // -----------------------------
+    // Getters
+    // -----------------------------
+    public Long getId() {
+        return id;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public Instant getReceivedAt() {
+        return receivedAt;
+    }
+
+    public Instant getProcessedAt() {
+        return processedAt;
+    }
+
+    public void markProcessed(Instant processedAt) {
+        this.processedAt = processedAt;
+    }
+}
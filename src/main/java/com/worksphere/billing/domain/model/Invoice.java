@@ -7,6 +7,7 @@ public class Invoice {
     private double amount;
     private LocalDate dueDate;
     private byte[] pdfBytes; // Factura en PDF adjunta
+    private String pdfDocumentId; // SHA-256 del PDF en el almacén de documentos (preferido frente a pdfBytes)
 
     public String getInvoiceId() {
         return invoiceId;
@@ -39,4 +40,12 @@ public class Invoice {
     public void setPdfBytes(byte[] pdfBytes) {
         this.pdfBytes = pdfBytes;
     }
+
+    public String getPdfDocumentId() {
+        return pdfDocumentId;
+    }
+
+    public void setPdfDocumentId(String pdfDocumentId) {
+        this.pdfDocumentId = pdfDocumentId;
+    }
 }
\ No newline at end of file
@@ -11,6 +11,10 @@ public class NotificationEvent {
     private String message;
     private Instant createdAt;
 
+    public NotificationEvent() {
+        // requerido para deserializar (dead letter local)
+    }
+
     public NotificationEvent(String type, String tenantId, String invoiceId, String message) {
         this.eventId = UUID.randomUUID().toString();
         this.type = type;
@@ -0,0 +1,86 @@
+package com.worksphere.billing.domain.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
+import org.springframework.data.domain.Persistable;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Entrada del historial de intentos de un pago.
+ * Tabla de solo inserción: registrar un intento nunca reescribe los anteriores y cargar un
+ * {@link PaymentResult} no la toca; el historial se consulta bajo demanda.
+ *
+ * El id se asigna al construir; implementa {@link Persistable} para que {@code save} haga un
+ * INSERT directo en lugar de un merge precedido de un SELECT por ese id.
+ */
+@Entity
+@Immutable
+@Table(name = "payment_attempt_log", indexes = {
+        @Index(name = "idx_payment_attempt_payment", columnList = "payment_result_id, attempt_no")
+})
+public class PaymentAttempt implements Persistable<UUID> {
+
+    @Id
+    @Column(name = "id", nullable = false, updatable = false)
+    private UUID id;
+
+    @Column(name = "payment_result_id", nullable = false, updatable = false)
+    private UUID paymentResultId;
+
+    @Column(name = "attempt_no", nullable = false, updatable = false)
+    private int attemptNo;
+
+    @Column(name = "detail", nullable = false, updatable = false, columnDefinition = "TEXT")
+    private String detail;
+
+    @Column(name = "recorded_at", nullable = false, updatable = false)
+    private Instant recordedAt;
+
+    @Transient
+    private boolean isNew = true;
+
+    protected PaymentAttempt() {
+    }
+
+    public PaymentAttempt(UUID paymentResultId, int attemptNo, String detail) {
+        this.id = UUID.randomUUID();
+        this.paymentResultId = paymentResultId;
+        this.attemptNo = attemptNo;
+        this.detail = detail;
+        this.recordedAt = Instant.now();
+    }
+
+    @Override
+    public UUID getId() {
+        return id;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+
+    public UUID getPaymentResultId() {
+        return paymentResultId;
+    }
+
+    public int getAttemptNo() {
+        return attemptNo;
+    }
+
+    public String getDetail() {
+        return detail;
+    }
+
+    public Instant getRecordedAt() {
+        return recordedAt;
+    }
+}
@@ -0,0 +1,114 @@
+package com.worksphere.billing.domain.model;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Clave de idempotencia de un cobro.
+ * La clave primaria es la propia clave, de modo que dos instancias no pueden reclamar el mismo
+ * cobro a la vez. Al completarse guarda el PaymentResult resultante, que se devuelve a cualquier
+ * reintento con la misma clave sin volver a llamar a la pasarela.
+ */
+@Entity
+@Table(name = "payment_idempotency_keys", indexes = {
+        @Index(name = "idx_payment_idempotency_invoice", columnList = "invoice_id"),
+        @Index(name = "idx_payment_idempotency_status_updated", columnList = "status, updated_at")
+})
+public class PaymentIdempotencyKey {
+
+    // -----------------------------
+    // Identidad única
+    // -----------------------------
+    @Id
+    @Column(name = "idempotency_key", nullable = false, updatable = false)
+    private String idempotencyKey;
+
+    @Column(name = "tenant_id", nullable = false, updatable = false)
+    private String tenantId;
+
+    @Column(name = "invoice_id", nullable = false, updatable = false)
+    private UUID invoiceId;
+
+    // -----------------------------
+    // Estado y respuesta almacenada
+    // -----------------------------
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private Status status;
+
+    @Column(name = "payment_result_id")
+    private UUID paymentResultId;
+
+    @Column(name = "response_status")
+    private String responseStatus; // PaymentStatus devuelto al primer llamador
+
+    @Column(name = "locked_until", nullable = false)
+    private Instant lockedUntil; // con IN_PROGRESS: fin del lease de la instancia que cobra
+
+    @Column(name = "owner_token")
+    private String ownerToken; // reclamo vigente: solo su dueño puede completar o liberar la clave
+
+    // -----------------------------
+    // Timestamps
+    // -----------------------------
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    protected PaymentIdempotencyKey() {
+    }
+
+    // -----------------------------
+    // Getters
+    // -----------------------------
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public UUID getInvoiceId() {
+        return invoiceId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public UUID getPaymentResultId() {
+        return paymentResultId;
+    }
+
+    public String getResponseStatus() {
+        return responseStatus;
+    }
+
+    public Instant getLockedUntil() {
+        return lockedUntil;
+    }
+
+    public String getOwnerToken() {
+        return ownerToken;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    // -----------------------------
+    // Enum de estado de la clave
+    // -----------------------------
+    public enum Status {
+        IN_PROGRESS,
+        COMPLETED
+    }
+}
@@ -1,21 +1,28 @@
 package com.worksphere.billing.domain.model;
 
 import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.UUID;
 
 /**
  * Representa el resultado de un intento de pago dentro del dominio billing-engine.
  * Permite trazabilidad, auditabilidad y consistencia con la factura.
+ *
+ * El id se asigna en el constructor; como {@link Persistable}, guardar un resultado nuevo es un
+ * INSERT directo y solo los ya persistidos o cargados pasan por merge.
  */
 @Entity
 @Table(name = "payment_results", indexes = {
         @Index(name = "idx_payment_result_tenant", columnList = "tenantId"),
-        @Index(name = "idx_payment_result_invoice", columnList = "invoiceId")
+        @Index(name = "idx_payment_result_invoice", columnList = "invoice_id, status"),
+        @Index(name = "idx_payment_result_batch", columnList = "status, gateway_provider, batch_id"),
+        @Index(name = "idx_payment_result_provider_processed", columnList = "gateway_provider, processed_at"),
+        @Index(name = "uq_payment_result_gateway_tx", columnList = "gateway_transaction_id", unique = true)
 })
-public class PaymentResult {
+public class PaymentResult implements Persistable<UUID> {
 
     // -----------------------------
     // Identidad única
@@ -46,8 +53,26 @@ public class PaymentResult {
     // -----------------------------
     // Referencia del gateway de pago
     // -----------------------------
-    @Column(name = "gateway_transaction_id", nullable = false)
-    private String gatewayTransactionId;
+    @Column(name = "gateway_transaction_id")
+    private String gatewayTransactionId; // null mientras el pago está PENDING
+
+    @Column(name = "gateway_provider")
+    private String gatewayProvider; // clave del proveedor en PaymentConfig (stripe, paypal, bank_local)
+
+    @Column(name = "routing_decision", length = 1000)
+    private String routingDecision; // proveedores considerados y failovers del enrutado; null si no se enrutó
+
+    // -----------------------------
+    // Cobro por lotes (proveedores con ficheros de cargo)
+    // -----------------------------
+    @Column(name = "amount", precision = 19, scale = 4)
+    private BigDecimal amount;
+
+    @Column(name = "payment_token_id")
+    private UUID paymentTokenId;
+
+    @Column(name = "batch_id")
+    private String batchId; // lote enviado al proveedor; null mientras no se ha enviado
 
     // -----------------------------
     // Timestamps y auditabilidad
@@ -56,16 +81,29 @@ public class PaymentResult {
     private LocalDateTime processedAt;
 
     @Column(name = "attempts", nullable = false)
-    private int attempts;
-
-    @ElementCollection
-    @CollectionTable(name = "payment_result_attempt_log", joinColumns = @JoinColumn(name = "payment_result_id"))
-    @Column(name = "attempt_detail")
-    private List<String> attemptLog = new ArrayList<>();
+    private int attempts; // el detalle de cada intento vive en payment_attempt_log (PaymentAttempt)
 
     @Column(name = "paid", nullable = false)
     private boolean paid;
 
+    // -----------------------------
+    // Reversión
+    // -----------------------------
+    @Column(name = "reversed", nullable = false)
+    private boolean reversed;
+
+    @Column(name = "reversal_reason")
+    private String reversalReason;
+
+    @Column(name = "reversal_actor")
+    private String reversalActor;
+
+    @Column(name = "reversed_at")
+    private LocalDateTime reversedAt;
+
+    @Transient
+    private boolean isNew = true;
+
     // -----------------------------
     // Constructor
     // -----------------------------
@@ -84,6 +122,22 @@ public class PaymentResult {
         return paymentResultId;
     }
 
+    @Override
+    public UUID getId() {
+        return paymentResultId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+
     public String getTenantId() {
         return tenantId;
     }
@@ -124,6 +178,46 @@ public class PaymentResult {
         this.gatewayTransactionId = gatewayTransactionId;
     }
 
+    public String getGatewayProvider() {
+        return gatewayProvider;
+    }
+
+    public void setGatewayProvider(String gatewayProvider) {
+        this.gatewayProvider = gatewayProvider;
+    }
+
+    public String getRoutingDecision() {
+        return routingDecision;
+    }
+
+    public void setRoutingDecision(String routingDecision) {
+        this.routingDecision = routingDecision;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+
+    public UUID getPaymentTokenId() {
+        return paymentTokenId;
+    }
+
+    public void setPaymentTokenId(UUID paymentTokenId) {
+        this.paymentTokenId = paymentTokenId;
+    }
+
+    public String getBatchId() {
+        return batchId;
+    }
+
+    public void setBatchId(String batchId) {
+        this.batchId = batchId;
+    }
+
     public LocalDateTime getProcessedAt() {
         return processedAt;
     }
@@ -136,13 +230,13 @@ public class PaymentResult {
         return attempts;
     }
 
-    public void incrementAttempts(String logDetail) {
+    /**
+     * Cuenta un intento y devuelve su entrada de historial, que el llamador inserta con
+     * {@code PaymentAttemptRepository}.
+     */
+    public PaymentAttempt recordAttempt(String detail) {
         this.attempts++;
-        this.attemptLog.add(logDetail);
-    }
-
-    public List<String> getAttemptLog() {
-        return attemptLog;
+        return new PaymentAttempt(this.paymentResultId, this.attempts, detail);
     }
 
     public boolean isPaid() {
@@ -153,6 +247,22 @@ public class PaymentResult {
         this.paid = paid;
     }
 
+    public boolean isReversed() {
+        return reversed;
+    }
+
+    public String getReversalReason() {
+        return reversalReason;
+    }
+
+    public String getReversalActor() {
+        return reversalActor;
+    }
+
+    public LocalDateTime getReversedAt() {
+        return reversedAt;
+    }
+
     // -----------------------------
     // Enum de estado de pago
     // -----------------------------
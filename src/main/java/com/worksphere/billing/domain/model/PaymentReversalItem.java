@@ -0,0 +1,156 @@
+package com.worksphere.billing.domain.model;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Reversión pendiente de un pago dentro de un {@link PaymentReversalJob}.
+ * La restricción única sobre el pago impide encolar dos reversiones del mismo cobro; solo una
+ * reversión fallida definitivamente puede volver a encolarse.
+ */
+@Entity
+@Table(name = "payment_reversal_items",
+        uniqueConstraints = @UniqueConstraint(name = "uq_payment_reversal_payment", columnNames = "payment_result_id"),
+        indexes = {
+                @Index(name = "idx_payment_reversal_due", columnList = "gateway_provider, status, next_attempt_at"),
+                @Index(name = "idx_payment_reversal_job", columnList = "job_id, status")
+        })
+public class PaymentReversalItem {
+
+    // -----------------------------
+    // Identidad y referencias
+    // -----------------------------
+    @Id
+    @Column(name = "id", nullable = false, updatable = false)
+    private UUID id;
+
+    @Column(name = "job_id", nullable = false)
+    private UUID jobId;
+
+    @Column(name = "payment_result_id", nullable = false, updatable = false)
+    private UUID paymentResultId;
+
+    @Column(name = "gateway_provider")
+    private String gatewayProvider; // copiado del pago al encolar: la cola se reparte por proveedor
+
+    // -----------------------------
+    // Estado y reintentos
+    // -----------------------------
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private Status status;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private Instant nextAttemptAt; // para IN_PROGRESS actúa como fin del lease del worker
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    protected PaymentReversalItem() {
+    }
+
+    // -----------------------------
+    // Getters
+    // -----------------------------
+    public UUID getId() {
+        return id;
+    }
+
+    public UUID getJobId() {
+        return jobId;
+    }
+
+    public UUID getPaymentResultId() {
+        return paymentResultId;
+    }
+
+    public String getGatewayProvider() {
+        return gatewayProvider;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public Instant getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    // -----------------------------
+    // Transiciones de estado
+    // -----------------------------
+    public void markInProgress(Instant leaseUntil) {
+        this.status = Status.IN_PROGRESS;
+        this.nextAttemptAt = leaseUntil;
+        this.updatedAt = Instant.now();
+    }
+
+    public void markReversed() {
+        this.attempts++;
+        this.status = Status.REVERSED;
+        this.lastError = null;
+        this.updatedAt = Instant.now();
+    }
+
+    /**
+     * El pago no requiere reversión (ya revertido, no exitoso o inexistente); no cuenta como intento.
+     */
+    public void markSkipped(String reason) {
+        this.status = Status.SKIPPED;
+        this.lastError = reason;
+        this.updatedAt = Instant.now();
+    }
+
+    public void markRetry(String error, Instant nextAttemptAt) {
+        this.attempts++;
+        this.status = Status.RETRY;
+        this.lastError = error;
+        this.nextAttemptAt = nextAttemptAt;
+        this.updatedAt = Instant.now();
+    }
+
+    public void markFailed(String error) {
+        this.attempts++;
+        this.status = Status.FAILED;
+        this.lastError = error;
+        this.updatedAt = Instant.now();
+    }
+
+    // -----------------------------
+    // Enum de estado
+    // -----------------------------
+    public enum Status {
+        PENDING,
+        IN_PROGRESS,
+        RETRY,
+        REVERSED,
+        SKIPPED,
+        FAILED
+    }
+}
@@ -0,0 +1,120 @@
+package com.worksphere.billing.domain.model;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Solicitud de reversión masiva (p. ej. devolver los cobros afectados por un error de precios).
+ * Agrupa los {@link PaymentReversalItem} encolados; el progreso se calcula a partir de ellos.
+ */
+@Entity
+@Table(name = "payment_reversal_jobs")
+public class PaymentReversalJob {
+
+    // -----------------------------
+    // Identidad única
+    // -----------------------------
+    @Id
+    @Column(name = "id", nullable = false, updatable = false)
+    private UUID id;
+
+    // -----------------------------
+    // Motivo y solicitante
+    // -----------------------------
+    @Column(name = "reason", nullable = false, updatable = false)
+    private String reason;
+
+    @Column(name = "actor", nullable = false, updatable = false)
+    private String actor;
+
+    @Column(name = "selection", columnDefinition = "TEXT", updatable = false)
+    private String selection; // descripción del filtro o de la lista de transacciones
+
+    // -----------------------------
+    // Progreso
+    // -----------------------------
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private Status status;
+
+    @Column(name = "total_items", nullable = false)
+    private int totalItems;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @Column(name = "completed_at")
+    private Instant completedAt;
+
+    // -----------------------------
+    // Constructor
+    // -----------------------------
+    public PaymentReversalJob() {
+        this.id = UUID.randomUUID();
+        this.createdAt = Instant.now();
+        this.status = Status.QUEUED;
+    }
+
+    public PaymentReversalJob(String reason, String actor, String selection) {
+        this();
+        this.reason = reason;
+        this.actor = actor;
+        this.selection = selection;
+    }
+
+    // -----------------------------
+    // Getters & Setters
+    // -----------------------------
+    public UUID getId() {
+        return id;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public String getActor() {
+        return actor;
+    }
+
+    public String getSelection() {
+        return selection;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public int getTotalItems() {
+        return totalItems;
+    }
+
+    public void setTotalItems(int totalItems) {
+        this.totalItems = totalItems;
+        if (totalItems == 0) {
+            markCompleted();
+        }
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getCompletedAt() {
+        return completedAt;
+    }
+
+    public void markCompleted() {
+        this.status = Status.COMPLETED;
+        this.completedAt = Instant.now();
+    }
+
+    // -----------------------------
+    // Enum de estado
+    // -----------------------------
+    public enum Status {
+        QUEUED,
+        COMPLETED
+    }
+}
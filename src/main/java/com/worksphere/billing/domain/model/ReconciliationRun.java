@@ -0,0 +1,171 @@
+package com.worksphere.billing.domain.model;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Una conciliación de un fichero de liquidación contra {@code payment_results}.
+ * El detalle de cada discrepancia queda en el informe CSV ({@code reportPath}).
+ */
+@Entity
+@Table(name = "reconciliation_runs", indexes = {
+        @Index(name = "idx_reconciliation_run_provider", columnList = "provider, started_at")
+})
+public class ReconciliationRun {
+
+    // -----------------------------
+    // Identidad única
+    // -----------------------------
+    @Id
+    @Column(name = "id", nullable = false, updatable = false)
+    private UUID id;
+
+    // -----------------------------
+    // Origen
+    // -----------------------------
+    @Column(name = "provider", nullable = false, updatable = false)
+    private String provider;
+
+    @Column(name = "file_name", nullable = false, updatable = false)
+    private String fileName;
+
+    // -----------------------------
+    // Resultado
+    // -----------------------------
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private Status status;
+
+    @Column(name = "settlement_rows", nullable = false)
+    private long settlementRows;
+
+    @Column(name = "skipped_rows", nullable = false)
+    private long skippedRows;
+
+    @Column(name = "ledger_rows", nullable = false)
+    private long ledgerRows;
+
+    @Column(name = "matched", nullable = false)
+    private long matched;
+
+    @Column(name = "mismatches", nullable = false)
+    private long mismatches;
+
+    @Column(name = "mismatch_summary")
+    private String mismatchSummary; // recuento por tipo, p. ej. {AMOUNT_MISMATCH=3, MISSING_IN_LEDGER=1}
+
+    @Column(name = "report_path")
+    private String reportPath;
+
+    @Column(name = "error", columnDefinition = "TEXT")
+    private String error;
+
+    @Column(name = "started_at", nullable = false, updatable = false)
+    private Instant startedAt;
+
+    @Column(name = "completed_at")
+    private Instant completedAt;
+
+    // -----------------------------
+    // Constructor
+    // -----------------------------
+    public ReconciliationRun() {
+        this.id = UUID.randomUUID();
+        this.startedAt = Instant.now();
+        this.status = Status.RUNNING;
+    }
+
+    public ReconciliationRun(String provider, String fileName) {
+        this();
+        this.provider = provider;
+        this.fileName = fileName;
+    }
+
+    // -----------------------------
+    // Getters & Setters
+    // -----------------------------
+    public UUID getId() {
+        return id;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getSettlementRows() {
+        return settlementRows;
+    }
+
+    public long getSkippedRows() {
+        return skippedRows;
+    }
+
+    public long getLedgerRows() {
+        return ledgerRows;
+    }
+
+    public long getMatched() {
+        return matched;
+    }
+
+    public long getMismatches() {
+        return mismatches;
+    }
+
+    public String getMismatchSummary() {
+        return mismatchSummary;
+    }
+
+    public String getReportPath() {
+        return reportPath;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getCompletedAt() {
+        return completedAt;
+    }
+
+    public void markCompleted(long settlementRows, long skippedRows, long ledgerRows, long matched,
+                              long mismatches, String mismatchSummary, String reportPath) {
+        this.settlementRows = settlementRows;
+        this.skippedRows = skippedRows;
+        this.ledgerRows = ledgerRows;
+        this.matched = matched;
+        this.mismatches = mismatches;
+        this.mismatchSummary = mismatchSummary;
+        this.reportPath = reportPath;
+        this.status = Status.COMPLETED;
+        this.completedAt = Instant.now();
+    }
+
+    public void markFailed(String error) {
+        this.error = error;
+        this.status = Status.FAILED;
+        this.completedAt = Instant.now();
+    }
+
+    // -----------------------------
+    // Enum de estado
+    // -----------------------------
+    public enum Status {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+}
@@ -5,6 +5,7 @@ public class Tenant {
     private String name;
     private String email;
     private String planName;
+    private boolean pdfAttachmentEnabled = true; // false: el correo lleva un enlace y el PDF se genera bajo demanda
 
     public String getTenantId() {
         return tenantId;
@@ -37,4 +38,12 @@ public class Tenant {
     public void setPlanName(String planName) {
         this.planName = planName;
     }
+
+    public boolean isPdfAttachmentEnabled() {
+        return pdfAttachmentEnabled;
+    }
+
+    public void setPdfAttachmentEnabled(boolean pdfAttachmentEnabled) {
+        this.pdfAttachmentEnabled = pdfAttachmentEnabled;
+    }
 }
@@ -0,0 +1,64 @@
+package com.worksphere.billing.domain.model;
+
+/**
+ * Endpoint de webhook configurado por un tenant (CRM, ERP, partners).
+ *
+ * El timeout y el límite de concurrencia son opcionales; si no se indican se aplican los
+ * valores por defecto de {@code billing.webhooks.*}.
+ */
+public class TenantWebhookConfig {
+    private String tenantId;
+    private String endpointUrl;
+    private String authToken;
+    private String hmacSecret;
+    private Integer timeoutMs;      // timeout total de la entrega a este endpoint
+    private Integer maxConcurrency; // entregas simultáneas hacia este endpoint; >1 renuncia al orden de entrega
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public void setTenantId(String tenantId) {
+        this.tenantId = tenantId;
+    }
+
+    public String getEndpointUrl() {
+        return endpointUrl;
+    }
+
+    public void setEndpointUrl(String endpointUrl) {
+        this.endpointUrl = endpointUrl;
+    }
+
+    public String getAuthToken() {
+        return authToken;
+    }
+
+    public void setAuthToken(String authToken) {
+        this.authToken = authToken;
+    }
+
+    public String getHmacSecret() {
+        return hmacSecret;
+    }
+
+    public void setHmacSecret(String hmacSecret) {
+        this.hmacSecret = hmacSecret;
+    }
+
+    public Integer getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    public void setTimeoutMs(Integer timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    public Integer getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void setMaxConcurrency(Integer maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+}
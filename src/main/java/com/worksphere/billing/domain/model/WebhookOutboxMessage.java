@@ -0,0 +1,222 @@
+package com.worksphere.billing.domain.model;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Webhook pendiente de entrega en la cola persistente.
+ * Se inserta en la transacción del llamador (un registro por endpoint) y un worker lo entrega
+ * respetando el orden por endpoint. El cuerpo y su firma se calculan al encolar; las credenciales
+ * del endpoint no se guardan aquí, se resuelven de la configuración del tenant al enviar.
+ */
+@Entity
+@Table(name = "webhook_outbox", indexes = {
+        @Index(name = "idx_webhook_outbox_due", columnList = "status, next_attempt_at"),
+        @Index(name = "idx_webhook_outbox_endpoint_order", columnList = "endpoint_url, created_at")
+})
+public class WebhookOutboxMessage {
+
+    // -----------------------------
+    // Identidad única
+    // -----------------------------
+    @Id
+    @Column(name = "id", nullable = false, updatable = false)
+    private UUID id;
+
+    // -----------------------------
+    // Tenant y destino
+    // -----------------------------
+    @Column(name = "tenant_id", nullable = false, updatable = false)
+    private String tenantId;
+
+    @Column(name = "endpoint_url", nullable = false, updatable = false)
+    private String endpointUrl;
+
+    @Column(name = "timeout_ms")
+    private Integer timeoutMs;
+
+    @Column(name = "max_concurrency")
+    private Integer maxConcurrency;
+
+    // -----------------------------
+    // Contenido
+    // -----------------------------
+    @Column(name = "payload", nullable = false, updatable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Column(name = "signature", updatable = false)
+    private String signature; // HMAC-SHA256 del payload (cabecera X-Signature)
+
+    // -----------------------------
+    // Estado de entrega y reintentos
+    // -----------------------------
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private Status status;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private Instant nextAttemptAt; // para IN_PROGRESS actúa como fin del lease del worker
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    // -----------------------------
+    // Timestamps y orden por endpoint
+    // -----------------------------
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    // -----------------------------
+    // Constructor
+    // -----------------------------
+    public WebhookOutboxMessage() {
+        this.id = UUID.randomUUID();
+        this.createdAt = Instant.now();
+        this.updatedAt = this.createdAt;
+        this.nextAttemptAt = this.createdAt;
+        this.status = Status.PENDING;
+        this.attempts = 0;
+    }
+
+    // -----------------------------
+    // Getters & Setters
+    // -----------------------------
+    public UUID getId() {
+        return id;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public void setTenantId(String tenantId) {
+        this.tenantId = tenantId;
+    }
+
+    public String getEndpointUrl() {
+        return endpointUrl;
+    }
+
+    public void setEndpointUrl(String endpointUrl) {
+        this.endpointUrl = endpointUrl;
+    }
+
+    public Integer getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    public void setTimeoutMs(Integer timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    public Integer getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void setMaxConcurrency(Integer maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    public void setSignature(String signature) {
+        this.signature = signature;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public Instant getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    // -----------------------------
+    // Transiciones de estado
+    // -----------------------------
+    public void markInProgress(Instant leaseUntil) {
+        if (this.status == Status.IN_PROGRESS) {
+            // Lease vencido: la entrega anterior quedó sin resultado y cuenta como intento
+            this.attempts++;
+        }
+        this.status = Status.IN_PROGRESS;
+        this.nextAttemptAt = leaseUntil;
+        this.updatedAt = Instant.now();
+    }
+
+    public void markSent() {
+        this.attempts++;
+        this.status = Status.SENT;
+        this.lastError = null;
+        this.updatedAt = Instant.now();
+    }
+
+    public void markRetry(String error, Instant nextAttemptAt) {
+        this.attempts++;
+        this.status = Status.RETRY;
+        this.lastError = error;
+        this.nextAttemptAt = nextAttemptAt;
+        this.updatedAt = Instant.now();
+    }
+
+    /**
+     * Pospone la entrega sin consumir un intento (circuito del endpoint abierto).
+     */
+    public void defer(Instant nextAttemptAt, String reason) {
+        this.status = attempts == 0 ? Status.PENDING : Status.RETRY;
+        this.lastError = reason;
+        this.nextAttemptAt = nextAttemptAt;
+        this.updatedAt = Instant.now();
+    }
+
+    public void markDeadLetter(String error) {
+        this.attempts++;
+        this.status = Status.DEAD_LETTER;
+        this.lastError = error;
+        this.updatedAt = Instant.now();
+    }
+
+    // -----------------------------
+    // Enum de estado de entrega
+    // -----------------------------
+    public enum Status {
+        PENDING,
+        IN_PROGRESS,
+        RETRY,
+        SENT,
+        DEAD_LETTER
+    }
+}
@@ -0,0 +1,15 @@
+package com.worksphere.billing.domain.repository;
+
+import com.worksphere.billing.domain.model.PaymentAttempt;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Historial de intentos de pago (solo inserción).
+ */
+public interface PaymentAttemptRepository extends JpaRepository<PaymentAttempt, UUID> {
+
+    List<PaymentAttempt> findByPaymentResultIdOrderByAttemptNo(UUID paymentResultId);
+}
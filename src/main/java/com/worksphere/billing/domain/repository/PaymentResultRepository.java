@@ -0,0 +1,86 @@
+package com.worksphere.billing.domain.repository;
+
+import com.worksphere.billing.domain.model.PaymentResult;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Repositorio de resultados de pago.
+ */
+public interface PaymentResultRepository extends JpaRepository<PaymentResult, UUID> {
+
+    /**
+     * Último pago registrado de la factura: tras un cobro fallido, cada reintento registra uno nuevo.
+     */
+    PaymentResult findFirstByInvoiceIdOrderByProcessedAtDesc(UUID invoiceId);
+
+    /**
+     * Comprobación de estado para renovación y cancelación: solo lee payment_results.
+     */
+    boolean existsByInvoiceIdAndStatus(UUID invoiceId, PaymentResult.PaymentStatus status);
+
+    Optional<PaymentResult> findByGatewayTransactionId(String gatewayTransactionId);
+
+    boolean existsByGatewayTransactionId(String gatewayTransactionId);
+
+    // -----------------------------
+    // Cobro por lotes
+    // -----------------------------
+
+    /**
+     * Reclama pagos PENDING de un proveedor que aún no pertenecen a ningún lote.
+     * SKIP LOCKED permite que varias instancias armen lotes a la vez sin solaparse.
+     */
+    @Query(value = "SELECT * FROM payment_results " +
+            "WHERE status = 'PENDING' AND gateway_provider = :provider AND batch_id IS NULL " +
+            "ORDER BY processed_at " +
+            "LIMIT :limit " +
+            "FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<PaymentResult> claimUnbatched(@Param("provider") String provider, @Param("limit") int limit);
+
+    @Modifying
+    @Query("UPDATE PaymentResult p SET p.batchId = :batchId WHERE p.paymentResultId IN :ids")
+    int assignBatch(@Param("batchId") String batchId, @Param("ids") Collection<UUID> ids);
+
+    /**
+     * Devuelve al conjunto sin lote los pagos aún PENDING de un lote que no llegó al proveedor.
+     */
+    @Modifying
+    @Query("UPDATE PaymentResult p SET p.batchId = null WHERE p.batchId = :batchId " +
+            "AND p.status = com.worksphere.billing.domain.model.PaymentResult.PaymentStatus.PENDING")
+    int releaseBatch(@Param("batchId") String batchId);
+
+    List<PaymentResult> findByBatchId(String batchId);
+
+    @Query("SELECT DISTINCT p.batchId FROM PaymentResult p WHERE p.gatewayProvider = :provider " +
+            "AND p.batchId IS NOT NULL " +
+            "AND p.status = com.worksphere.billing.domain.model.PaymentResult.PaymentStatus.PENDING")
+    List<String> findOpenBatchIds(@Param("provider") String provider);
+
+    // -----------------------------
+    // Reversión
+    // -----------------------------
+
+    /**
+     * Marca como revertido un pago exitoso. Idempotente: un pago ya revertido no cambia.
+     *
+     * @return 1 si el pago pasó a revertido, 0 si ya lo estaba o no era exitoso
+     */
+    @Modifying
+    @Query("UPDATE PaymentResult p SET p.reversed = true, p.reversalReason = :reason, p.reversalActor = :actor, " +
+            "p.reversedAt = :reversedAt " +
+            "WHERE p.paymentResultId = :id AND p.reversed = false " +
+            "AND p.status = com.worksphere.billing.domain.model.PaymentResult.PaymentStatus.SUCCESS")
+    int markReversed(@Param("id") UUID paymentResultId,
+                     @Param("reason") String reason,
+                     @Param("actor") String actor,
+                     @Param("reversedAt") LocalDateTime reversedAt);
+}
@@ -0,0 +1,23 @@
+package com.worksphere.billing.domain.repository;
+
+import com.worksphere.billing.domain.model.PaymentToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Repositorio de tokens de pago.
+ */
+public interface PaymentTokenRepository extends JpaRepository<PaymentToken, UUID> {
+
+    /**
+     * Tokens reutilizables del tenant que siguen vigentes y no están revocados (los más recientes primero).
+     */
+    @Query("SELECT t FROM PaymentToken t WHERE t.tenantId = :tenantId AND t.reusable = true " +
+            "AND t.revoked = false AND t.expiresAt > :now ORDER BY t.createdAt DESC")
+    List<PaymentToken> findUsableByTenantId(@Param("tenantId") String tenantId, @Param("now") LocalDateTime now);
+}
@@ -2,4 +2,7 @@ package com.worksphere.billing.infrastructure.kafka;
 
 public class KafkaTopics {
     public static final String BILLING_EVENTS = "billing-events";
+    public static final String NOTIFICATIONS = "billing.notifications";
+    public static final String BILLING_TRIGGERS = "billing.triggers";
+    public static final String USAGE_EVENTS = "billing.usage-events";
 }
@@ -1,5 +1,7 @@
 package com.worksphere.billing.infrastructure.email;
 
+import java.nio.file.Path;
+
 /**
  * Interfaz para proveedores de correo electrónico.
  * 
@@ -18,4 +20,17 @@ public interface EmailProvider {
      * @throws EmailSendException si ocurre un error en el envío
      */
     void sendEmail(String to, String subject, String htmlBody, byte[] pdfAttachment) throws EmailSendException;
+
+    /**
+     * Envía un correo adjuntando un PDF que ya reside en disco (almacén de documentos).
+     * Las implementaciones transmiten el archivo desde disco al construir el mensaje, sin cargarlo
+     * completo en memoria.
+     *
+     * @param to destinatario
+     * @param subject asunto del correo
+     * @param htmlBody cuerpo HTML del correo
+     * @param pdfAttachment ruta del PDF a adjuntar (puede ser null)
+     * @throws EmailSendException si ocurre un error en el envío
+     */
+    void sendEmail(String to, String subject, String htmlBody, Path pdfAttachment) throws EmailSendException;
 }
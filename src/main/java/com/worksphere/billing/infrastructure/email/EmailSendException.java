@@ -0,0 +1,15 @@
+package com.worksphere.billing.infrastructure.email;
+
+/**
+ * Excepción que se lanza cuando un proveedor de correo no logra entregar un mensaje.
+ */
+public class EmailSendException extends Exception {
+
+    public EmailSendException(String message) {
+        super(message);
+    }
+
+    public EmailSendException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,334 @@
+package com.worksphere.billing.infrastructure.email;
+
+import com.worksphere.billingengine.config.EmailConfig.SmtpProviderConfig;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Subsistema de despacho de correos sobre conexiones SMTP agrupadas.
+ *
+ * Cualidades:
+ * - Conexiones autenticadas reutilizadas: muchos mensajes por conexión en lugar de un handshake por factura.
+ * - Límite de concurrencia por proveedor (tamaño del pool) y rate limiting (mensajes/segundo).
+ * - API por lotes: {@link #sendBatch} reparte el lote entre las conexiones del proveedor.
+ * - Respaldo: los correos que fallan en el proveedor por defecto se reintentan, en el mismo
+ *   lote, por los demás proveedores configurados (p. ej. {@code fallback-smtp}) en orden.
+ * - Compatible con {@link EmailProvider} para los casos de uso existentes.
+ */
+@Component
+public class PooledSmtpEmailDispatcher implements EmailProvider {
+
+    private static final Logger log = LoggerFactory.getLogger(PooledSmtpEmailDispatcher.class);
+
+    private final Map<String, ProviderChannel> channels = new LinkedHashMap<>();
+    private final String defaultProvider;
+
+    @Value("${services.email-service.smtp.default-from:billing@worksphere.com}")
+    private String defaultFrom;
+
+    public PooledSmtpEmailDispatcher(Map<String, SmtpProviderConfig> smtpProviders) {
+        if (smtpProviders.isEmpty()) {
+            throw new IllegalStateException("No hay proveedores SMTP configurados");
+        }
+        smtpProviders.forEach((name, config) -> channels.put(name, new ProviderChannel(config)));
+        this.defaultProvider = smtpProviders.keySet().iterator().next();
+        log.info("Despachador SMTP inicializado con proveedores {} (por defecto: {})", channels.keySet(), defaultProvider);
+    }
+
+    // -----------------------------
+    // EmailProvider
+    // -----------------------------
+
+    @Override
+    public void sendEmail(String to, String subject, String htmlBody, byte[] pdfAttachment) throws EmailSendException {
+        send(OutgoingEmail.of(to, subject, htmlBody).withAttachment("invoice.pdf", pdfAttachment));
+    }
+
+    @Override
+    public void sendEmail(String to, String subject, String htmlBody, Path pdfAttachment) throws EmailSendException {
+        send(OutgoingEmail.of(to, subject, htmlBody).withAttachment("invoice.pdf", pdfAttachment));
+    }
+
+    /**
+     * Envía un único correo por el proveedor por defecto (o los de respaldo si falla),
+     * reutilizando una conexión del pool.
+     */
+    public void send(OutgoingEmail email) throws EmailSendException {
+        DispatchResult result = sendBatch(List.of(email)).get(0);
+        if (!result.isSuccess()) {
+            throw new EmailSendException("Error enviando correo a " + email.getTo() + ": " + result.getError(), result.getCause());
+        }
+    }
+
+    /**
+     * Envía un lote de correos por el proveedor por defecto. Los que fallan se reintentan por los
+     * proveedores de respaldo, en el orden de configuración, hasta que alguno los acepta.
+     *
+     * @return un resultado por correo, en el mismo orden de entrada
+     */
+    public List<DispatchResult> sendBatch(List<OutgoingEmail> emails) {
+        List<DispatchResult> results = new ArrayList<>(sendBatch(defaultProvider, emails));
+        for (String provider : channels.keySet()) {
+            if (provider.equals(defaultProvider)) {
+                continue;
+            }
+            List<Integer> failed = new ArrayList<>();
+            for (int i = 0; i < results.size(); i++) {
+                if (!results.get(i).isSuccess()) {
+                    failed.add(i);
+                }
+            }
+            if (failed.isEmpty()) {
+                break;
+            }
+            log.warn("Reintentando {} correos fallidos por el proveedor de respaldo {}", failed.size(), provider);
+            List<DispatchResult> retried = sendBatch(provider, failed.stream().map(emails::get).toList());
+            for (int i = 0; i < failed.size(); i++) {
+                results.set(failed.get(i), retried.get(i));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Envía un lote de correos repartiéndolo entre las conexiones del proveedor. Cada conexión
+     * envía su porción de forma secuencial; el fallo de un mensaje no detiene al resto.
+     *
+     * @param provider nombre del proveedor SMTP
+     * @param emails   correos a enviar
+     * @return un resultado por correo, en el mismo orden de entrada
+     */
+    public List<DispatchResult> sendBatch(String provider, List<OutgoingEmail> emails) {
+        if (emails.isEmpty()) {
+            return List.of();
+        }
+        ProviderChannel channel = channel(provider);
+        int lanes = Math.min(channel.config.getPoolSize(), emails.size());
+        int chunkSize = (emails.size() + lanes - 1) / lanes;
+
+        List<CompletableFuture<List<DispatchResult>>> futures = new ArrayList<>(lanes);
+        for (int from = 0; from < emails.size(); from += chunkSize) {
+            List<OutgoingEmail> chunk = emails.subList(from, Math.min(from + chunkSize, emails.size()));
+            futures.add(CompletableFuture.supplyAsync(() -> channel.sendChunk(chunk), channel.workers));
+        }
+
+        List<DispatchResult> results = new ArrayList<>(emails.size());
+        futures.forEach(f -> results.addAll(f.join()));
+
+        long failed = results.stream().filter(r -> !r.isSuccess()).count();
+        log.info("Lote SMTP enviado por {}: {} correos, {} fallidos, {} conexiones abiertas en total",
+                provider, emails.size(), failed, channel.pool.getConnectionsOpened());
+        return results;
+    }
+
+    /**
+     * Crea un mensaje MIME sobre la sesión del proveedor por defecto (para casos de uso que lo construyen a mano).
+     */
+    public MimeMessage createMimeMessage() {
+        return new MimeMessage(channel(defaultProvider).pool.getSession());
+    }
+
+    public SmtpConnectionPool pool(String provider) {
+        return channel(provider).pool;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        channels.values().forEach(ProviderChannel::close);
+    }
+
+    private ProviderChannel channel(String provider) {
+        ProviderChannel channel = channels.get(provider);
+        if (channel == null) {
+            throw new IllegalArgumentException("Proveedor SMTP desconocido: " + provider);
+        }
+        return channel;
+    }
+
+    // -----------------------------
+    // Canal por proveedor: pool + rate limit + hilos de envío
+    // -----------------------------
+    private final class ProviderChannel {
+        private final SmtpProviderConfig config;
+        private final SmtpConnectionPool pool;
+        private final TokenBucketRateLimiter rateLimiter;
+        private final ExecutorService workers;
+
+        private ProviderChannel(SmtpProviderConfig config) {
+            this.config = config;
+            this.pool = new SmtpConnectionPool(config);
+            this.rateLimiter = new TokenBucketRateLimiter(config.getRatePerSecond());
+            this.workers = Executors.newFixedThreadPool(config.getPoolSize(), r -> {
+                Thread t = new Thread(r, "smtp-" + config.getName());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        private List<DispatchResult> sendChunk(List<OutgoingEmail> chunk) {
+            List<DispatchResult> results = new ArrayList<>(chunk.size());
+            SmtpConnectionPool.PooledTransport transport = null;
+            try {
+                for (OutgoingEmail email : chunk) {
+                    try {
+                        if (transport != null && !transport.hasCapacity()) {
+                            pool.release(transport, false);
+                            transport = null;
+                        }
+                        if (transport == null) {
+                            transport = pool.borrow(config.getTimeoutMs());
+                        }
+                        rateLimiter.acquire();
+                        transport.send(toMimeMessage(email));
+                        results.add(DispatchResult.ok(email));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        results.add(DispatchResult.failed(email, e));
+                    } catch (MessagingException | RuntimeException e) {
+                        log.warn("Fallo SMTP enviando a {} por {}: {}", email.getTo(), config.getName(), e.getMessage());
+                        results.add(DispatchResult.failed(email, e));
+                        // Conexión posiblemente corrupta: se descarta y el siguiente mensaje toma otra
+                        if (transport != null) {
+                            pool.release(transport, true);
+                            transport = null;
+                        }
+                    }
+                }
+            } finally {
+                if (transport != null) {
+                    pool.release(transport, false);
+                }
+            }
+            return results;
+        }
+
+        private MimeMessage toMimeMessage(OutgoingEmail email) throws MessagingException {
+            MimeMessage message = new MimeMessage(pool.getSession());
+            boolean multipart = email.getAttachmentPath() != null || email.getAttachmentBytes() != null;
+            MimeMessageHelper helper = new MimeMessageHelper(message, multipart, StandardCharsets.UTF_8.name());
+            helper.setFrom(email.getFrom() != null ? email.getFrom() : defaultFrom);
+            helper.setTo(email.getTo());
+            helper.setSubject(email.getSubject());
+            helper.setText(email.getHtmlBody(), true);
+            if (email.getAttachmentPath() != null) {
+                // Se adjunta desde disco; el contenido se transmite al escribir el mensaje
+                helper.addAttachment(email.getAttachmentName(), new FileSystemResource(email.getAttachmentPath()));
+            } else if (email.getAttachmentBytes() != null) {
+                helper.addAttachment(email.getAttachmentName(), new ByteArrayResource(email.getAttachmentBytes()));
+            }
+            return message;
+        }
+
+        private void close() {
+            workers.shutdown();
+            pool.close();
+        }
+    }
+
+    // -----------------------------
+    // Tipos de entrada/salida
+    // -----------------------------
+
+    /**
+     * Correo saliente inmutable.
+     */
+    public static final class OutgoingEmail {
+        private final String from;
+        private final String to;
+        private final String subject;
+        private final String htmlBody;
+        private final String attachmentName;
+        private final Path attachmentPath;
+        private final byte[] attachmentBytes;
+        private final String reference; // p. ej. invoiceId, para correlacionar resultados
+        private final String messageId; // único por correo, aunque varios compartan referencia
+
+        private OutgoingEmail(String messageId, String from, String to, String subject, String htmlBody,
+                              String attachmentName, Path attachmentPath, byte[] attachmentBytes, String reference) {
+            this.messageId = messageId;
+            this.from = from;
+            this.to = to;
+            this.subject = subject;
+            this.htmlBody = htmlBody;
+            this.attachmentName = attachmentName;
+            this.attachmentPath = attachmentPath;
+            this.attachmentBytes = attachmentBytes;
+            this.reference = reference;
+        }
+
+        public static OutgoingEmail of(String to, String subject, String htmlBody) {
+            return new OutgoingEmail(UUID.randomUUID().toString(), null, to, subject, htmlBody, null, null, null, null);
+        }
+
+        public OutgoingEmail from(String from) {
+            return new OutgoingEmail(messageId, from, to, subject, htmlBody, attachmentName, attachmentPath, attachmentBytes, reference);
+        }
+
+        public OutgoingEmail withAttachment(String name, Path path) {
+            return path == null ? this : new OutgoingEmail(messageId, from, to, subject, htmlBody, name, path, null, reference);
+        }
+
+        public OutgoingEmail withAttachment(String name, byte[] bytes) {
+            return bytes == null ? this : new OutgoingEmail(messageId, from, to, subject, htmlBody, name, null, bytes, reference);
+        }
+
+        public OutgoingEmail withReference(String reference) {
+            return new OutgoingEmail(messageId, from, to, subject, htmlBody, attachmentName, attachmentPath, attachmentBytes, reference);
+        }
+
+        public String getMessageId() { return messageId; }
+        public String getFrom() { return from; }
+        public String getTo() { return to; }
+        public String getSubject() { return subject; }
+        public String getHtmlBody() { return htmlBody; }
+        public String getAttachmentName() { return attachmentName; }
+        public Path getAttachmentPath() { return attachmentPath; }
+        public byte[] getAttachmentBytes() { return attachmentBytes; }
+        public String getReference() { return reference; }
+    }
+
+    /**
+     * Resultado del envío de un correo.
+     */
+    public static final class DispatchResult {
+        private final OutgoingEmail email;
+        private final Exception cause;
+
+        private DispatchResult(OutgoingEmail email, Exception cause) {
+            this.email = email;
+            this.cause = cause;
+        }
+
+        static DispatchResult ok(OutgoingEmail email) {
+            return new DispatchResult(email, null);
+        }
+
+        static DispatchResult failed(OutgoingEmail email, Exception cause) {
+            return new DispatchResult(email, cause);
+        }
+
+        public OutgoingEmail getEmail() { return email; }
+        public boolean isSuccess() { return cause == null; }
+        public Exception getCause() { return cause; }
+        public String getError() { return cause == null ? null : cause.getMessage(); }
+    }
+}
@@ -0,0 +1,153 @@
+package com.worksphere.billing.infrastructure.email;
+
+import com.worksphere.billingengine.config.EmailConfig.SmtpProviderConfig;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool de conexiones SMTP autenticadas para un proveedor.
+ *
+ * - Cada conexión envía muchos mensajes antes de reciclarse (maxMessagesPerConnection).
+ * - El semáforo limita la concurrencia por proveedor al tamaño del pool.
+ * - Las conexiones rotas se descartan y se recrean en el siguiente préstamo.
+ */
+public class SmtpConnectionPool implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(SmtpConnectionPool.class);
+
+    private final SmtpProviderConfig config;
+    private final Session session;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledTransport> idle = new LinkedBlockingDeque<>();
+
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder messagesSent = new LongAdder();
+
+    private volatile boolean closed;
+
+    public SmtpConnectionPool(SmtpProviderConfig config) {
+        this.config = config;
+        this.session = Session.getInstance(sessionProperties(config));
+        this.permits = new Semaphore(config.getPoolSize(), true);
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    /**
+     * Toma una conexión lista para enviar, esperando hasta {@code timeoutMs} si el proveedor
+     * ya tiene todas sus conexiones en uso.
+     */
+    public PooledTransport borrow(long timeoutMs) throws MessagingException, InterruptedException {
+        if (closed) {
+            throw new MessagingException("Pool SMTP cerrado para proveedor " + config.getName());
+        }
+        if (!permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+            throw new MessagingException("Sin conexiones SMTP disponibles para proveedor " + config.getName());
+        }
+        try {
+            PooledTransport pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (pooled.transport.isConnected()) {
+                    return pooled;
+                }
+                pooled.closeQuietly();
+            }
+            return open();
+        } catch (MessagingException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Devuelve la conexión al pool. Si falló o alcanzó su cupo de mensajes se cierra.
+     */
+    public void release(PooledTransport pooled, boolean broken) {
+        try {
+            if (broken || closed || pooled.messagesSent >= config.getMaxMessagesPerConnection()) {
+                pooled.closeQuietly();
+            } else {
+                idle.offerFirst(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private PooledTransport open() throws MessagingException {
+        Transport transport = session.getTransport("smtp");
+        transport.connect(config.getHost(), config.getPort(), config.getUsername(), config.getPassword());
+        connectionsOpened.increment();
+        log.debug("Conexión SMTP abierta hacia {}:{} (proveedor {})", config.getHost(), config.getPort(), config.getName());
+        return new PooledTransport(transport);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        PooledTransport pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            pooled.closeQuietly();
+        }
+    }
+
+    public long getConnectionsOpened() { return connectionsOpened.sum(); }
+    public long getMessagesSent() { return messagesSent.sum(); }
+    public int getIdleConnections() { return idle.size(); }
+    public int getAvailablePermits() { return permits.availablePermits(); }
+
+    private static Properties sessionProperties(SmtpProviderConfig config) {
+        Properties props = new Properties();
+        props.put("mail.transport.protocol", "smtp");
+        props.put("mail.smtp.host", config.getHost());
+        props.put("mail.smtp.port", String.valueOf(config.getPort()));
+        props.put("mail.smtp.auth", String.valueOf(config.getUsername() != null && !config.getUsername().isEmpty()));
+        props.put("mail.smtp.starttls.enable", String.valueOf(config.isTls()));
+        props.put("mail.smtp.connectiontimeout", String.valueOf(config.getTimeoutMs()));
+        props.put("mail.smtp.timeout", String.valueOf(config.getTimeoutMs()));
+        props.put("mail.smtp.writetimeout", String.valueOf(config.getTimeoutMs()));
+        return props;
+    }
+
+    /**
+     * Conexión prestada. Envía mensajes sobre el mismo transporte ya autenticado.
+     */
+    public final class PooledTransport {
+        private final Transport transport;
+        private int messagesSent;
+
+        private PooledTransport(Transport transport) {
+            this.transport = transport;
+        }
+
+        public void send(jakarta.mail.Message message) throws MessagingException {
+            message.saveChanges();
+            transport.sendMessage(message, message.getAllRecipients());
+            this.messagesSent++;
+            SmtpConnectionPool.this.messagesSent.increment();
+        }
+
+        public boolean hasCapacity() {
+            return messagesSent < config.getMaxMessagesPerConnection();
+        }
+
+        private void closeQuietly() {
+            try {
+                transport.close();
+            } catch (MessagingException e) {
+                log.debug("Error cerrando conexión SMTP: {}", e.getMessage());
+            }
+        }
+    }
+}
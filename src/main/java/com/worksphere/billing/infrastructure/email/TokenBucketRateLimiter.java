@@ -0,0 +1,57 @@
+package com.worksphere.billing.infrastructure.email;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Limitador de tasa tipo token bucket (mensajes por segundo con ráfaga de hasta un segundo).
+ * Seguro para uso concurrente; {@link #acquire()} bloquea el hilo solo el tiempo necesario.
+ */
+public class TokenBucketRateLimiter {
+
+    private final double permitsPerSecond;
+    private final double maxBurst;
+    private double available;
+    private long lastRefillNanos;
+
+    public TokenBucketRateLimiter(double permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("La tasa debe ser positiva: " + permitsPerSecond);
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.maxBurst = Math.max(1.0, permitsPerSecond);
+        this.available = maxBurst;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Espera hasta disponer de un permiso.
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos;
+        while ((waitNanos = reserve()) > 0) {
+            LockSupport.parkNanos(waitNanos);
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Espera de rate limit interrumpida");
+            }
+        }
+    }
+
+    /**
+     * Intenta tomar un permiso; devuelve 0 si lo obtuvo o los nanos a esperar antes de reintentar.
+     */
+    private synchronized long reserve() {
+        long now = System.nanoTime();
+        available = Math.min(maxBurst, available + (now - lastRefillNanos) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+        if (available >= 1.0) {
+            available -= 1.0;
+            return 0;
+        }
+        return (long) ((1.0 - available) * TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+}
@@ -0,0 +1,234 @@
+package com.worksphere.billing.infrastructure.email.template;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Plan de renderizado inmutable de una plantilla de correo.
+ *
+ * La plantilla se analiza una sola vez en una secuencia plana de operaciones (literales,
+ * slots y secciones con su destino de salto ya resuelto). Renderizar solo recorre los
+ * arrays y escribe en el {@link StringBuilder} del llamador: no hay análisis, búsquedas
+ * por nombre ni cadenas intermedias.
+ *
+ * Sintaxis soportada:
+ * - {@code {{slot}}}: valor escapado para HTML.
+ * - {@code {{{slot}}}}: valor sin escapar.
+ * - {@code {{#seccion}}...{{/seccion}}}: bloque condicional; {@code {{^seccion}}} lo invierte.
+ *
+ * @param <T> tipo del contexto de renderizado
+ */
+public final class CompiledTemplate<T> {
+
+    private static final byte LITERAL = 0;
+    private static final byte SLOT_ESCAPED = 1;
+    private static final byte SLOT_RAW = 2;
+    private static final byte SECTION = 3;
+    private static final byte INVERTED_SECTION = 4;
+    private static final byte SECTION_END = 5;
+
+    private final String name;
+    private final byte[] kinds;
+    private final String[] literals;
+    private final Function<? super T, ?>[] slots;
+    private final Predicate<? super T>[] conditions;
+    private final int[] jumps;
+    private final int estimatedLength;
+
+    private CompiledTemplate(String name, byte[] kinds, String[] literals, Function<? super T, ?>[] slots,
+                             Predicate<? super T>[] conditions, int[] jumps, int estimatedLength) {
+        this.name = name;
+        this.kinds = kinds;
+        this.literals = literals;
+        this.slots = slots;
+        this.conditions = conditions;
+        this.jumps = jumps;
+        this.estimatedLength = estimatedLength;
+    }
+
+    // -----------------------------
+    // Renderizado
+    // -----------------------------
+
+    /**
+     * Escribe la plantilla renderizada al final de {@code out}.
+     */
+    public void renderTo(T context, StringBuilder out) {
+        for (int i = 0; i < kinds.length; i++) {
+            switch (kinds[i]) {
+                case LITERAL:
+                    out.append(literals[i]);
+                    break;
+                case SLOT_ESCAPED:
+                    appendEscaped(slots[i].apply(context), out);
+                    break;
+                case SLOT_RAW:
+                    appendRaw(slots[i].apply(context), out);
+                    break;
+                case SECTION:
+                    if (!conditions[i].test(context)) {
+                        i = jumps[i];
+                    }
+                    break;
+                case INVERTED_SECTION:
+                    if (conditions[i].test(context)) {
+                        i = jumps[i];
+                    }
+                    break;
+                default:
+                    // SECTION_END: marcador de destino de salto
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Longitud aproximada de la salida, útil para dimensionar el buffer la primera vez.
+     */
+    public int getEstimatedLength() {
+        return estimatedLength;
+    }
+
+    int operationCount() {
+        return kinds.length;
+    }
+
+    private static void appendRaw(Object value, StringBuilder out) {
+        if (value instanceof CharSequence) {
+            out.append((CharSequence) value);
+        } else if (value != null) {
+            out.append(value);
+        }
+    }
+
+    private static void appendEscaped(Object value, StringBuilder out) {
+        if (value == null) {
+            return;
+        }
+        CharSequence text = value instanceof CharSequence ? (CharSequence) value : String.valueOf(value);
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<': out.append("&lt;"); break;
+                case '>': out.append("&gt;"); break;
+                case '&': out.append("&amp;"); break;
+                case '"': out.append("&quot;"); break;
+                case '\'': out.append("&#39;"); break;
+                default: out.append(c);
+            }
+        }
+    }
+
+    // -----------------------------
+    // Compilación
+    // -----------------------------
+
+    /**
+     * Analiza la fuente de una plantilla y resuelve sus slots y secciones contra el esquema.
+     *
+     * @throws TemplateCompilationException si la sintaxis es inválida o referencia nombres desconocidos
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> CompiledTemplate<T> compile(String name, String source, TemplateSchema<T> schema) {
+        List<Byte> kinds = new ArrayList<>();
+        List<String> literals = new ArrayList<>();
+        List<Function<? super T, ?>> slots = new ArrayList<>();
+        List<Predicate<? super T>> conditions = new ArrayList<>();
+        List<Integer> jumps = new ArrayList<>();
+        Deque<Integer> openSections = new ArrayDeque<>();
+        Deque<String> openNames = new ArrayDeque<>();
+        int estimatedLength = 0;
+
+        int pos = 0;
+        while (pos < source.length()) {
+            int open = source.indexOf("{{", pos);
+            if (open < 0) {
+                open = source.length();
+            }
+            if (open > pos) {
+                String literal = source.substring(pos, open);
+                estimatedLength += literal.length();
+                add(kinds, literals, slots, conditions, jumps, LITERAL, literal, null, null);
+            }
+            if (open == source.length()) {
+                break;
+            }
+
+            boolean raw = source.startsWith("{{{", open);
+            String closeToken = raw ? "}}}" : "}}";
+            int close = source.indexOf(closeToken, open);
+            if (close < 0) {
+                throw new TemplateCompilationException(name, open, "etiqueta sin cerrar");
+            }
+            String tag = source.substring(open + (raw ? 3 : 2), close).trim();
+            pos = close + closeToken.length();
+            if (tag.isEmpty()) {
+                throw new TemplateCompilationException(name, open, "etiqueta vacía");
+            }
+
+            char prefix = tag.charAt(0);
+            if (!raw && (prefix == '#' || prefix == '^')) {
+                String sectionName = tag.substring(1).trim();
+                Predicate<? super T> condition = schema.section(sectionName);
+                if (condition == null) {
+                    throw new TemplateCompilationException(name, open, "sección desconocida '" + sectionName + "'");
+                }
+                openSections.push(kinds.size());
+                openNames.push(sectionName);
+                add(kinds, literals, slots, conditions, jumps,
+                        prefix == '#' ? SECTION : INVERTED_SECTION, null, null, condition);
+            } else if (!raw && prefix == '/') {
+                String sectionName = tag.substring(1).trim();
+                if (openNames.isEmpty() || !openNames.peek().equals(sectionName)) {
+                    throw new TemplateCompilationException(name, open, "cierre inesperado de sección '" + sectionName + "'");
+                }
+                openNames.pop();
+                int start = openSections.pop();
+                jumps.set(start, kinds.size());
+                add(kinds, literals, slots, conditions, jumps, SECTION_END, null, null, null);
+            } else {
+                Function<? super T, ?> accessor = schema.slot(tag);
+                if (accessor == null) {
+                    throw new TemplateCompilationException(name, open, "slot desconocido '" + tag + "'");
+                }
+                estimatedLength += 16;
+                add(kinds, literals, slots, conditions, jumps, raw ? SLOT_RAW : SLOT_ESCAPED, null, accessor, null);
+            }
+        }
+
+        if (!openNames.isEmpty()) {
+            throw new TemplateCompilationException(name, source.length(), "sección sin cerrar '" + openNames.peek() + "'");
+        }
+
+        int size = kinds.size();
+        byte[] kindArray = new byte[size];
+        int[] jumpArray = new int[size];
+        for (int i = 0; i < size; i++) {
+            kindArray[i] = kinds.get(i);
+            jumpArray[i] = jumps.get(i);
+        }
+        return new CompiledTemplate<>(name, kindArray,
+                literals.toArray(new String[0]),
+                slots.toArray(new Function[0]),
+                conditions.toArray(new Predicate[0]),
+                jumpArray,
+                estimatedLength);
+    }
+
+    private static <T> void add(List<Byte> kinds, List<String> literals, List<Function<? super T, ?>> slots,
+                                List<Predicate<? super T>> conditions, List<Integer> jumps,
+                                byte kind, String literal, Function<? super T, ?> slot, Predicate<? super T> condition) {
+        kinds.add(kind);
+        literals.add(literal);
+        slots.add(slot);
+        conditions.add(condition);
+        jumps.add(-1);
+    }
+}
@@ -0,0 +1,260 @@
+package com.worksphere.billing.infrastructure.email.template;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Motor de plantillas de correo por tenant con planes compilados en caché.
+ *
+ * Resolución de la fuente de una plantilla (la primera que exista):
+ * 1. {@code <templates-dir>/<tenantId>/<plantilla>.html} — branding propio del tenant.
+ * 2. {@code <templates-dir>/default/<plantilla>.html} — plantilla por defecto del despliegue.
+ * 3. {@code classpath:mail-templates/<plantilla>.html} — plantilla empaquetada.
+ *
+ * Cada fuente se compila una única vez en un {@link CompiledTemplate}. La caché se invalida
+ * cuando cambia el archivo (fecha de modificación o tamaño, comprobado como mucho cada
+ * {@code refresh-check-ms}) o explícitamente con {@link #invalidate(String)}.
+ * El renderizado escribe en un {@link StringBuilder} reutilizado por hilo.
+ */
+@Component
+public class EmailTemplateEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(EmailTemplateEngine.class);
+
+    private static final String CLASSPATH_DIR = "mail-templates/";
+    private static final String DEFAULT_TENANT = "default";
+
+    private final Path templatesDir;
+    private final long refreshCheckNanos;
+    private final int maxRetainedBuffer;
+
+    private final Map<CacheKey, CacheEntry> cache = new ConcurrentHashMap<>();
+    private final Map<String, CompiledTemplate<?>> classpathTemplates = new ConcurrentHashMap<>();
+    private final ThreadLocal<StringBuilder> buffers;
+
+    private final LongAdder compilations = new LongAdder();
+    private final LongAdder renders = new LongAdder();
+
+    public EmailTemplateEngine(@Value("${billing.email.templates.dir:./config/mail-templates}") String templatesDir,
+                               @Value("${billing.email.templates.refresh-check-ms:5000}") long refreshCheckMs,
+                               @Value("${billing.email.templates.max-retained-buffer:65536}") int maxRetainedBuffer) {
+        this.templatesDir = Paths.get(templatesDir);
+        this.refreshCheckNanos = TimeUnit.MILLISECONDS.toNanos(refreshCheckMs);
+        this.maxRetainedBuffer = maxRetainedBuffer;
+        this.buffers = ThreadLocal.withInitial(() -> new StringBuilder(4096));
+    }
+
+    // -----------------------------
+    // Renderizado
+    // -----------------------------
+
+    /**
+     * Renderiza la plantilla del tenant y devuelve el HTML resultante.
+     */
+    public <T> String render(String tenantId, String templateName, TemplateSchema<T> schema, T context) {
+        StringBuilder buffer = buffers.get();
+        buffer.setLength(0);
+        renderTo(tenantId, templateName, schema, context, buffer);
+        String html = buffer.toString();
+        if (buffer.capacity() > maxRetainedBuffer) {
+            // Evita retener por hilo el buffer de una plantilla excepcionalmente grande
+            buffers.set(new StringBuilder(4096));
+        }
+        return html;
+    }
+
+    /**
+     * Renderiza la plantilla del tenant al final del buffer del llamador.
+     */
+    public <T> void renderTo(String tenantId, String templateName, TemplateSchema<T> schema, T context, StringBuilder out) {
+        template(tenantId, templateName, schema).renderTo(context, out);
+        renders.increment();
+    }
+
+    /**
+     * Devuelve el plan compilado vigente para el tenant, compilándolo si la fuente cambió.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompiledTemplate<T> template(String tenantId, String templateName, TemplateSchema<T> schema) {
+        CacheKey key = new CacheKey(tenantId == null ? DEFAULT_TENANT : tenantId, templateName);
+        long now = System.nanoTime();
+        CacheEntry entry = cache.get(key);
+        if (entry != null && entry.schema == schema && now - entry.checkedAtNanos < refreshCheckNanos) {
+            return (CompiledTemplate<T>) entry.template;
+        }
+        return (CompiledTemplate<T>) cache.compute(key, (k, current) -> refresh(k, current, schema, now)).template;
+    }
+
+    // -----------------------------
+    // Invalidación
+    // -----------------------------
+
+    /**
+     * Descarta los planes compilados de un tenant (p. ej. tras actualizar su branding).
+     */
+    public void invalidate(String tenantId) {
+        cache.keySet().removeIf(key -> key.tenantId.equals(tenantId));
+        log.info("Plantillas de correo invalidadas para tenant {}", tenantId);
+    }
+
+    public void invalidateAll() {
+        cache.clear();
+        classpathTemplates.clear();
+        log.info("Caché de plantillas de correo vaciada");
+    }
+
+    // -----------------------------
+    // Compilación y resolución de fuentes
+    // -----------------------------
+
+    private CacheEntry refresh(CacheKey key, CacheEntry current, TemplateSchema<?> schema, long now) {
+        SourceStamp stamp = resolveStamp(key);
+        if (current != null && current.schema == schema && Objects.equals(current.stamp, stamp)) {
+            current.checkedAtNanos = now;
+            return current;
+        }
+
+        CompiledTemplate<?> template;
+        if (stamp == null) {
+            template = classpathTemplate(key.templateName, schema);
+        } else {
+            try {
+                template = CompiledTemplate.compile(key.templateName, readFile(stamp.path), schema);
+                compilations.increment();
+                log.info("Plantilla '{}' compilada para tenant {} desde {}", key.templateName, key.tenantId, stamp.path);
+            } catch (TemplateCompilationException | UncheckedIOException e) {
+                // Una plantilla de tenant defectuosa no debe bloquear el envío: se usa la empaquetada
+                log.error("Plantilla '{}' del tenant {} inválida, se usa la plantilla por defecto: {}",
+                        key.templateName, key.tenantId, e.getMessage());
+                template = classpathTemplate(key.templateName, schema);
+            }
+        }
+        return new CacheEntry(template, schema, stamp, now);
+    }
+
+    private SourceStamp resolveStamp(CacheKey key) {
+        String fileName = key.templateName + ".html";
+        for (Path candidate : new Path[]{templatesDir.resolve(key.tenantId).resolve(fileName),
+                templatesDir.resolve(DEFAULT_TENANT).resolve(fileName)}) {
+            try {
+                if (Files.isRegularFile(candidate)) {
+                    return new SourceStamp(candidate, Files.getLastModifiedTime(candidate).toMillis(), Files.size(candidate));
+                }
+            } catch (IOException e) {
+                log.warn("No se pudo inspeccionar la plantilla {}: {}", candidate, e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private CompiledTemplate<?> classpathTemplate(String templateName, TemplateSchema<?> schema) {
+        String cacheKey = schema.getName() + ":" + templateName;
+        return classpathTemplates.computeIfAbsent(cacheKey, k -> {
+            String resource = CLASSPATH_DIR + templateName + ".html";
+            try (InputStream in = EmailTemplateEngine.class.getClassLoader().getResourceAsStream(resource)) {
+                if (in == null) {
+                    throw new IllegalStateException("No existe la plantilla de correo empaquetada " + resource);
+                }
+                compilations.increment();
+                return CompiledTemplate.compile(templateName, new String(in.readAllBytes(), StandardCharsets.UTF_8), schema);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error leyendo la plantilla " + resource, e);
+            }
+        });
+    }
+
+    private static String readFile(Path path) {
+        try {
+            return Files.readString(path, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error leyendo la plantilla " + path, e);
+        }
+    }
+
+    // -----------------------------
+    // Métricas
+    // -----------------------------
+    public long getCompilationCount() { return compilations.sum(); }
+    public long getRenderCount() { return renders.sum(); }
+    public int getCachedTemplateCount() { return cache.size(); }
+
+    // -----------------------------
+    // Tipos internos
+    // -----------------------------
+    private static final class CacheKey {
+        private final String tenantId;
+        private final String templateName;
+
+        private CacheKey(String tenantId, String templateName) {
+            this.tenantId = tenantId;
+            this.templateName = templateName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CacheKey)) return false;
+            CacheKey other = (CacheKey) o;
+            return tenantId.equals(other.tenantId) && templateName.equals(other.templateName);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * tenantId.hashCode() + templateName.hashCode();
+        }
+    }
+
+    private static final class SourceStamp {
+        private final Path path;
+        private final long lastModified;
+        private final long size;
+
+        private SourceStamp(Path path, long lastModified, long size) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SourceStamp)) return false;
+            SourceStamp other = (SourceStamp) o;
+            return lastModified == other.lastModified && size == other.size && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, lastModified, size);
+        }
+    }
+
+    private static final class CacheEntry {
+        private final CompiledTemplate<?> template;
+        private final TemplateSchema<?> schema;
+        private final SourceStamp stamp;
+        private volatile long checkedAtNanos;
+
+        private CacheEntry(CompiledTemplate<?> template, TemplateSchema<?> schema, SourceStamp stamp, long checkedAtNanos) {
+            this.template = template;
+            this.schema = schema;
+            this.stamp = stamp;
+            this.checkedAtNanos = checkedAtNanos;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.worksphere.billing.infrastructure.email.template;
+
+/**
+ * Error de sintaxis o referencia desconocida al compilar una plantilla de correo.
+ */
+public class TemplateCompilationException extends RuntimeException {
+
+    public TemplateCompilationException(String templateName, int position, String message) {
+        super("Plantilla '" + templateName + "' inválida en la posición " + position + ": " + message);
+    }
+}
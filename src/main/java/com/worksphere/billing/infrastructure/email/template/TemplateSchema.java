@@ -0,0 +1,78 @@
+package com.worksphere.billing.infrastructure.email.template;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Conjunto de slots y secciones que una plantilla puede referenciar para un tipo de contexto.
+ *
+ * Los nombres se resuelven una sola vez al compilar: una plantilla que referencia un slot
+ * inexistente falla al compilarse, no al renderizar.
+ *
+ * @param <T> tipo del contexto de renderizado (p. ej. factura + tenant)
+ */
+public final class TemplateSchema<T> {
+
+    private final String name;
+    private final Map<String, Function<? super T, ?>> slots;
+    private final Map<String, Predicate<? super T>> sections;
+
+    private TemplateSchema(Builder<T> builder) {
+        this.name = builder.name;
+        this.slots = Collections.unmodifiableMap(new LinkedHashMap<>(builder.slots));
+        this.sections = Collections.unmodifiableMap(new LinkedHashMap<>(builder.sections));
+    }
+
+    public static <T> Builder<T> builder(String name) {
+        return new Builder<>(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    Function<? super T, ?> slot(String slotName) {
+        return slots.get(slotName);
+    }
+
+    Predicate<? super T> section(String sectionName) {
+        return sections.get(sectionName);
+    }
+
+    // -----------------------------
+    // Builder
+    // -----------------------------
+    public static final class Builder<T> {
+        private final String name;
+        private final Map<String, Function<? super T, ?>> slots = new LinkedHashMap<>();
+        private final Map<String, Predicate<? super T>> sections = new LinkedHashMap<>();
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Registra un slot; el valor se escribe con {@code {{nombre}}} (escapado HTML) o {@code {{{nombre}}}} (sin escapar).
+         * Conviene devolver valores ya existentes (String, CharSequence) para no asignar memoria al renderizar.
+         */
+        public Builder<T> slot(String slotName, Function<? super T, ?> accessor) {
+            slots.put(slotName, accessor);
+            return this;
+        }
+
+        /**
+         * Registra una sección condicional {@code {{#nombre}}...{{/nombre}}}; {@code {{^nombre}}} la invierte.
+         */
+        public Builder<T> section(String sectionName, Predicate<? super T> condition) {
+            sections.put(sectionName, condition);
+            return this;
+        }
+
+        public TemplateSchema<T> build() {
+            return new TemplateSchema<>(this);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.worksphere.billing.infrastructure.kafka;
+
+/**
+ * Formato de las claves de los mensajes de facturación: {@code <tenantId>} o
+ * {@code <tenantId>|<claveDeOrden>}.
+ *
+ * El tenant decide la partición (afinidad por tenant); la clave de orden (normalmente el id de
+ * factura) solo se usa para repartir un tenant caliente entre sub-particiones sin perder el
+ * orden de los eventos de una misma factura.
+ */
+public final class BillingMessageKey {
+
+    public static final char SEPARATOR = '|';
+
+    private BillingMessageKey() {
+    }
+
+    public static String of(String tenantId, String orderingKey) {
+        if (orderingKey == null || orderingKey.isEmpty()) {
+            return tenantId;
+        }
+        return tenantId + SEPARATOR + orderingKey;
+    }
+
+    public static String tenantOf(String key) {
+        if (key == null) {
+            return null;
+        }
+        int separator = key.indexOf(SEPARATOR);
+        return separator < 0 ? key : key.substring(0, separator);
+    }
+
+    /**
+     * @return clave de orden, o null si la clave solo contiene el tenant
+     */
+    public static String orderingKeyOf(String key) {
+        if (key == null) {
+            return null;
+        }
+        int separator = key.indexOf(SEPARATOR);
+        return separator < 0 || separator == key.length() - 1 ? null : key.substring(separator + 1);
+    }
+}
@@ -0,0 +1,66 @@
+package com.worksphere.billing.infrastructure.kafka;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Afinidad por tenant con reparto de tenants calientes entre sub-particiones.
+ *
+ * Un tenant declarado caliente con N sub-particiones ocupa las particiones consecutivas
+ * {@code base, base+1, ..., base+N-1} (módulo el total), eligiendo la sub-partición por el hash
+ * de la clave de orden. Así los eventos de una misma factura siguen en una única partición
+ * (orden por factura) mientras el volumen del tenant se reparte. Los mensajes del tenant sin
+ * clave de orden van a la partición base. Los tenants no declarados se comportan como en
+ * {@link TenantAffinityStrategy}.
+ *
+ * Configuración: {@value #HOT_TENANTS_CONFIG} = {@code tenantA:4,tenantB:8}.
+ */
+public class HotTenantSplitStrategy implements PartitionStrategy {
+
+    public static final String HOT_TENANTS_CONFIG = "billing.partitioner.hot-tenants";
+
+    private Map<String, Integer> subPartitions = Map.of();
+
+    public HotTenantSplitStrategy() {
+    }
+
+    public HotTenantSplitStrategy(Map<String, Integer> subPartitions) {
+        this.subPartitions = Map.copyOf(subPartitions);
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        Object value = configs.get(HOT_TENANTS_CONFIG);
+        if (value != null) {
+            subPartitions = parse(value.toString());
+        }
+    }
+
+    @Override
+    public int partition(String tenantId, String orderingKey, int numPartitions) {
+        int base = TenantAffinityStrategy.basePartition(tenantId, numPartitions);
+        Integer split = subPartitions.get(tenantId);
+        if (split == null || split <= 1 || orderingKey == null) {
+            return base;
+        }
+        int width = Math.min(split, numPartitions);
+        int sub = TenantAffinityStrategy.hash(orderingKey) % width;
+        return (base + sub) % numPartitions;
+    }
+
+    static Map<String, Integer> parse(String spec) {
+        Map<String, Integer> parsed = new HashMap<>();
+        for (String entry : spec.split(",")) {
+            String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int colon = trimmed.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Tenant caliente mal configurado (se espera tenant:N): " + trimmed);
+            }
+            parsed.put(trimmed.substring(0, colon), Integer.parseInt(trimmed.substring(colon + 1).trim()));
+        }
+        return Map.copyOf(parsed);
+    }
+}
@@ -0,0 +1,70 @@
+package com.worksphere.billing.infrastructure.kafka;
+
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Métricas de los productores Kafka por grupo de templates y perfil.
+ *
+ * Expone las métricas del cliente que permiten ajustar los perfiles: tasa de envío,
+ * tamaño medio de lote, latencia de petición, tiempo en cola y ratio de compresión.
+ */
+@Component
+public class KafkaProducerMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger(KafkaProducerMetrics.class);
+
+    private static final String PRODUCER_GROUP = "producer-metrics";
+
+    public static final Set<String> EXPOSED = Set.of(
+            "record-send-rate",
+            "batch-size-avg",
+            "request-latency-avg",
+            "request-latency-max",
+            "record-queue-time-avg",
+            "compression-rate-avg",
+            "buffer-available-bytes");
+
+    private final List<ProfiledKafkaTemplates<?>> templateGroups;
+
+    public KafkaProducerMetrics(List<ProfiledKafkaTemplates<?>> templateGroups) {
+        this.templateGroups = templateGroups;
+    }
+
+    /**
+     * Instantánea de métricas con clave {@code <grupo>/<perfil>}.
+     */
+    public Map<String, Map<String, Double>> snapshot() {
+        Map<String, Map<String, Double>> snapshot = new LinkedHashMap<>();
+        for (ProfiledKafkaTemplates<?> group : templateGroups) {
+            group.activeTemplates().forEach((profile, template) ->
+                    snapshot.put(group.getName() + "/" + profile, read(template.metrics())));
+        }
+        return snapshot;
+    }
+
+    @Scheduled(fixedDelayString = "${billing.kafka.producer.metrics-log-interval-ms:60000}")
+    public void logMetrics() {
+        snapshot().forEach((producer, metrics) -> log.info("📈 Productor Kafka {}: {}", producer, metrics));
+    }
+
+    private static Map<String, Double> read(Map<MetricName, ? extends Metric> metrics) {
+        Map<String, Double> values = new LinkedHashMap<>();
+        metrics.forEach((name, metric) -> {
+            if (PRODUCER_GROUP.equals(name.group()) && EXPOSED.contains(name.name())
+                    && metric.metricValue() instanceof Number number) {
+                values.put(name.name(), number.doubleValue());
+            }
+        });
+        return values;
+    }
+}
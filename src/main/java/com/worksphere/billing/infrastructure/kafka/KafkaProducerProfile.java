@@ -0,0 +1,126 @@
+package com.worksphere.billing.infrastructure.kafka;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Perfil de ajuste de un productor Kafka (lotes, espera, compresión, memoria y peticiones en vuelo).
+ *
+ * Todos los perfiles mantienen acks=all e idempotencia; solo cambia el compromiso entre
+ * latencia y rendimiento. La idempotencia exige como máximo 5 peticiones en vuelo por conexión.
+ */
+public class KafkaProducerProfile {
+
+    public static final String STANDARD = "standard";
+    public static final String LOW_LATENCY = "low-latency";
+    public static final String BULK = "bulk";
+
+    private final String name;
+    private final int batchSize;
+    private final int lingerMs;
+    private final String compressionType;
+    private final long bufferMemory;
+    private final int maxInFlight;
+    private final long maxBlockMs;
+
+    private KafkaProducerProfile(Builder builder) {
+        this.name = builder.name;
+        this.batchSize = builder.batchSize;
+        this.lingerMs = builder.lingerMs;
+        this.compressionType = builder.compressionType;
+        this.bufferMemory = builder.bufferMemory;
+        this.maxInFlight = builder.maxInFlight;
+        this.maxBlockMs = builder.maxBlockMs;
+    }
+
+    public static Builder builder(String name) {
+        return new Builder(name);
+    }
+
+    /**
+     * Propiedades del productor correspondientes a este perfil, para combinar con las de conexión.
+     */
+    public Map<String, Object> producerProperties() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, maxInFlight);
+        props.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        props.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
+        props.put(ProducerConfig.BUFFER_MEMORY_CONFIG, bufferMemory);
+        props.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, maxBlockMs);
+        return props;
+    }
+
+    public String getName() { return name; }
+    public int getBatchSize() { return batchSize; }
+    public int getLingerMs() { return lingerMs; }
+    public String getCompressionType() { return compressionType; }
+    public long getBufferMemory() { return bufferMemory; }
+    public int getMaxInFlight() { return maxInFlight; }
+    public long getMaxBlockMs() { return maxBlockMs; }
+
+    @Override
+    public String toString() {
+        return name + "[batch-size=" + batchSize + ", linger-ms=" + lingerMs + ", compression=" + compressionType
+                + ", buffer-memory=" + bufferMemory + ", max-in-flight=" + maxInFlight + ", max-block-ms=" + maxBlockMs + "]";
+    }
+
+    public static class Builder {
+        private final String name;
+        private int batchSize = 16384;
+        private int lingerMs = 5;
+        private String compressionType = "none";
+        private long bufferMemory = 33554432L;
+        private int maxInFlight = 5;
+        private long maxBlockMs = 60000L;
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        public Builder lingerMs(int lingerMs) {
+            this.lingerMs = lingerMs;
+            return this;
+        }
+
+        public Builder compressionType(String compressionType) {
+            this.compressionType = compressionType;
+            return this;
+        }
+
+        public Builder bufferMemory(long bufferMemory) {
+            this.bufferMemory = bufferMemory;
+            return this;
+        }
+
+        public Builder maxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        public Builder maxBlockMs(long maxBlockMs) {
+            this.maxBlockMs = maxBlockMs;
+            return this;
+        }
+
+        public KafkaProducerProfile build() {
+            if (maxInFlight < 1 || maxInFlight > 5) {
+                throw new IllegalArgumentException("El perfil " + name
+                        + " requiere max-in-flight entre 1 y 5 para conservar la idempotencia: " + maxInFlight);
+            }
+            if (batchSize <= 0 || lingerMs < 0 || bufferMemory < batchSize) {
+                throw new IllegalArgumentException("Parámetros de lote inválidos en el perfil " + name);
+            }
+            return new KafkaProducerProfile(this);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.worksphere.billing.infrastructure.kafka;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Perfiles de productor disponibles y asignación de cada topic a un perfil.
+ *
+ * Los topics sin asignación explícita usan el perfil por defecto.
+ */
+public class KafkaProducerProfiles {
+
+    private final Map<String, KafkaProducerProfile> profiles = new LinkedHashMap<>();
+    private final Map<String, String> topicProfiles;
+    private final String defaultProfile;
+
+    public KafkaProducerProfiles(Iterable<KafkaProducerProfile> profiles, Map<String, String> topicProfiles,
+                                 String defaultProfile) {
+        for (KafkaProducerProfile profile : profiles) {
+            this.profiles.put(profile.getName(), profile);
+        }
+        if (!this.profiles.containsKey(defaultProfile)) {
+            throw new IllegalArgumentException("Perfil de productor por defecto desconocido: " + defaultProfile);
+        }
+        topicProfiles.forEach((topic, profile) -> {
+            if (!this.profiles.containsKey(profile)) {
+                throw new IllegalArgumentException("El topic " + topic + " usa un perfil de productor desconocido: " + profile);
+            }
+        });
+        this.topicProfiles = Map.copyOf(topicProfiles);
+        this.defaultProfile = defaultProfile;
+    }
+
+    public KafkaProducerProfile profileFor(String topic) {
+        return profiles.get(topicProfiles.getOrDefault(topic, defaultProfile));
+    }
+
+    public KafkaProducerProfile defaultProfile() {
+        return profiles.get(defaultProfile);
+    }
+
+    public KafkaProducerProfile profile(String name) {
+        KafkaProducerProfile profile = profiles.get(name);
+        if (profile == null) {
+            throw new IllegalArgumentException("Perfil de productor desconocido: " + name);
+        }
+        return profile;
+    }
+
+    public Map<String, KafkaProducerProfile> all() {
+        return Collections.unmodifiableMap(profiles);
+    }
+
+    public Map<String, String> topicBindings() {
+        return topicProfiles;
+    }
+}
@@ -0,0 +1,27 @@
+package com.worksphere.billing.infrastructure.kafka;
+
+import java.util.Map;
+
+/**
+ * Estrategia de asignación de partición para los mensajes de facturación.
+ *
+ * Una implementación debe ser determinista para un mismo (tenant, clave de orden, número de
+ * particiones): de ello depende el orden de los eventos. Se instancia por productor a partir de
+ * {@link TenantAffinityPartitioner#STRATEGY_CONFIG}.
+ */
+public interface PartitionStrategy {
+
+    /**
+     * Recibe la configuración del productor (incluidas las claves {@code billing.partitioner.*}).
+     */
+    default void configure(Map<String, ?> configs) {
+    }
+
+    /**
+     * @param tenantId      tenant del mensaje (nunca null)
+     * @param orderingKey   clave de orden dentro del tenant, o null
+     * @param numPartitions particiones del topic
+     * @return partición en [0, numPartitions)
+     */
+    int partition(String tenantId, String orderingKey, int numPartitions);
+}
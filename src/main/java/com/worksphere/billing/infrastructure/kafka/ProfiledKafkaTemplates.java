@@ -0,0 +1,93 @@
+package com.worksphere.billing.infrastructure.kafka;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.SendResult;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * KafkaTemplates de un mismo tipo de valor, uno por perfil de productor.
+ *
+ * Cada envío se enruta al template del perfil asignado al topic, de modo que un mismo
+ * serializador puede publicar en topics de baja latencia y en topics masivos sin compartir
+ * lotes ni buffer. Los productores se crean al primer uso de cada perfil y se cierran (tras
+ * vaciar sus lotes) al destruirse el bean.
+ *
+ * @param <V> tipo del valor publicado
+ */
+public class ProfiledKafkaTemplates<V> implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ProfiledKafkaTemplates.class);
+
+    private final String name;
+    private final KafkaProducerProfiles profiles;
+    private final Function<KafkaProducerProfile, ProducerFactory<String, V>> factories;
+    private final Map<String, KafkaTemplate<String, V>> templates = new ConcurrentHashMap<>();
+
+    public ProfiledKafkaTemplates(String name, KafkaProducerProfiles profiles,
+                                  Function<KafkaProducerProfile, ProducerFactory<String, V>> factories) {
+        this.name = name;
+        this.profiles = profiles;
+        this.factories = factories;
+    }
+
+    public KafkaTemplate<String, V> forTopic(String topic) {
+        return forProfile(profiles.profileFor(topic).getName());
+    }
+
+    public KafkaTemplate<String, V> forProfile(String profileName) {
+        KafkaProducerProfile profile = profiles.profile(profileName);
+        return templates.computeIfAbsent(profile.getName(), p -> new KafkaTemplate<>(factories.apply(profile)));
+    }
+
+    public CompletableFuture<SendResult<String, V>> send(String topic, String key, V value) {
+        return forTopic(topic).send(topic, key, value);
+    }
+
+    /**
+     * Fuerza el envío de los lotes pendientes de todos los perfiles usados.
+     */
+    public void flush() {
+        templates.values().forEach(KafkaTemplate::flush);
+    }
+
+    /**
+     * Vacía y cierra los productores creados por este conjunto de templates.
+     */
+    @Override
+    public void destroy() {
+        templates.forEach((profile, template) -> {
+            try {
+                template.flush();
+                ProducerFactory<String, V> factory = template.getProducerFactory();
+                if (factory instanceof DisposableBean disposable) {
+                    disposable.destroy();
+                } else {
+                    factory.reset();
+                }
+            } catch (Exception e) {
+                log.warn("No se pudo cerrar el productor {}/{}: {}", name, profile, e.getMessage());
+            }
+        });
+        templates.clear();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Templates ya creados, por nombre de perfil.
+     */
+    public Map<String, KafkaTemplate<String, V>> activeTemplates() {
+        return Collections.unmodifiableMap(templates);
+    }
+}
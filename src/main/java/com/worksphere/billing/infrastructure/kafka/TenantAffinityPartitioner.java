@@ -0,0 +1,63 @@
+package com.worksphere.billing.infrastructure.kafka;
+
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.common.Cluster;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Particionador Kafka para los topics de facturación.
+ *
+ * Interpreta la clave con {@link BillingMessageKey} y delega en la {@link PartitionStrategy}
+ * configurada en {@value #STRATEGY_CONFIG}: {@code tenant-affinity} (por defecto),
+ * {@code hot-tenant-split} o el nombre de una clase propia. Los mensajes sin clave se reparten
+ * en round-robin, ya que no tienen orden que preservar.
+ */
+public class TenantAffinityPartitioner implements Partitioner {
+
+    public static final String STRATEGY_CONFIG = "billing.partitioner.strategy";
+
+    private final Map<String, AtomicInteger> roundRobin = new ConcurrentHashMap<>();
+    private PartitionStrategy strategy = new TenantAffinityStrategy();
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        Object configured = configs.get(STRATEGY_CONFIG);
+        strategy = createStrategy(configured == null ? "tenant-affinity" : configured.toString().trim());
+        strategy.configure(configs);
+    }
+
+    @Override
+    public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes, Cluster cluster) {
+        int numPartitions = cluster.partitionCountForTopic(topic);
+        if (key == null) {
+            int next = roundRobin.computeIfAbsent(topic, t -> new AtomicInteger()).getAndIncrement();
+            return (next & Integer.MAX_VALUE) % numPartitions;
+        }
+        String messageKey = key.toString();
+        return strategy.partition(BillingMessageKey.tenantOf(messageKey), BillingMessageKey.orderingKeyOf(messageKey),
+                numPartitions);
+    }
+
+    @Override
+    public void close() {
+        // sin recursos propios
+    }
+
+    static PartitionStrategy createStrategy(String name) {
+        switch (name) {
+            case "tenant-affinity":
+                return new TenantAffinityStrategy();
+            case "hot-tenant-split":
+                return new HotTenantSplitStrategy();
+            default:
+                try {
+                    return (PartitionStrategy) Class.forName(name).getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    throw new IllegalArgumentException("Estrategia de particionado inválida: " + name, e);
+                }
+        }
+    }
+}
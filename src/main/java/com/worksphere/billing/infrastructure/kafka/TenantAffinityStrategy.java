@@ -0,0 +1,27 @@
+package com.worksphere.billing.infrastructure.kafka;
+
+import org.apache.kafka.common.utils.Utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Afinidad por tenant: todos los mensajes de un tenant van a la misma partición.
+ *
+ * Usa el mismo hash (murmur2) que el particionador por defecto de Kafka, de modo que una clave
+ * que solo contiene el tenant cae en la misma partición que antes de adoptar esta estrategia.
+ */
+public class TenantAffinityStrategy implements PartitionStrategy {
+
+    @Override
+    public int partition(String tenantId, String orderingKey, int numPartitions) {
+        return basePartition(tenantId, numPartitions);
+    }
+
+    static int basePartition(String tenantId, int numPartitions) {
+        return hash(tenantId) % numPartitions;
+    }
+
+    static int hash(String value) {
+        return Utils.toPositive(Utils.murmur2(value.getBytes(StandardCharsets.UTF_8)));
+    }
+}
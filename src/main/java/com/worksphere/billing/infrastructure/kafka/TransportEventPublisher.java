@@ -0,0 +1,37 @@
+package com.worksphere.billing.infrastructure.kafka;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Publica eventos de transporte ({@code com.worksphere.billing.transport.events}) con el serde
+ * binario con esquema, usando el productor del perfil asignado a cada topic.
+ */
+@Component
+public class TransportEventPublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(TransportEventPublisher.class);
+
+    private final ProfiledKafkaTemplates<Object> transportEventKafkaTemplates;
+
+    public TransportEventPublisher(ProfiledKafkaTemplates<Object> transportEventKafkaTemplates) {
+        this.transportEventKafkaTemplates = transportEventKafkaTemplates;
+    }
+
+    /**
+     * Publica el evento sin bloquear; la clave es el tenant para conservar el orden por tenant.
+     */
+    public CompletableFuture<SendResult<String, Object>> publish(String topic, String tenantId, Object event) {
+        return transportEventKafkaTemplates.send(topic, tenantId, event)
+                .whenComplete((result, ex) -> {
+                    if (ex != null) {
+                        log.error("❌ Error al publicar {} del tenant [{}] en {}: {}",
+                                event.getClass().getSimpleName(), tenantId, topic, ex.getMessage());
+                    }
+                });
+    }
+}
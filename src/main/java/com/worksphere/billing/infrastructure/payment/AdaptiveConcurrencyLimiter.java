@@ -0,0 +1,193 @@
+package com.worksphere.billing.infrastructure.payment;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Límite de concurrencia adaptativo (AIMD con señal de latencia) para las llamadas a un proveedor.
+ *
+ * - Cada llamada correcta suma {@code 1/limit} (≈ +1 por ventana completa) mientras la latencia
+ *   no supere {@code rttTolerance} veces la mínima observada; si la supera, el límite se mantiene.
+ * - Una respuesta de sobrecarga (429, 503, timeout) multiplica el límite por {@code backoffRatio};
+ *   como mucho una vez por latencia mínima, para que una ráfaga de errores no lo hunda.
+ * - Sin hueco, la petición espera en una cola FIFO acotada hasta {@code maxWait}; vencido el plazo
+ *   o llena la cola se rechaza con {@link LimitExceededException}. Ningún hilo se bloquea.
+ */
+public final class AdaptiveConcurrencyLimiter {
+
+    private static final int RTT_PROBE_SAMPLES = 1000;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double rttTolerance;
+    private final int maxQueue;
+
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private long minRttNanos = Long.MAX_VALUE;
+    private long lastDropNanos;
+    private int samplesSinceProbe;
+
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit,
+                                      double backoffRatio, double rttTolerance, int maxQueue) {
+        if (minLimit <= 0 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Límites de concurrencia inválidos: min=" + minLimit + ", max=" + maxLimit);
+        }
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.rttTolerance = rttTolerance;
+        this.maxQueue = maxQueue;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Obtiene un permiso esperando como máximo {@code maxWait}.
+     */
+    public Mono<Permit> acquire(Duration maxWait) {
+        Mono<Permit> permit = Mono.create(sink -> {
+            Waiter waiter = new Waiter(sink);
+            Permit granted = null;
+            boolean full = false;
+            synchronized (this) {
+                if (inFlight < (int) limit && waiters.isEmpty()) {
+                    inFlight++;
+                    granted = new Permit();
+                } else if (waiters.size() >= maxQueue) {
+                    full = true;
+                } else {
+                    waiters.add(waiter);
+                }
+            }
+            if (granted != null) {
+                sink.success(granted);
+            } else if (full) {
+                rejected.increment();
+                sink.error(new LimitExceededException(name + ": cola de espera llena (" + maxQueue + ")"));
+            } else {
+                sink.onCancel(() -> cancel(waiter));
+            }
+        });
+        return permit.timeout(maxWait, Mono.defer(() -> {
+            rejected.increment();
+            return Mono.error(new LimitExceededException(name + ": sin capacidad tras " + maxWait.toMillis() + " ms en cola"));
+        }));
+    }
+
+    private void cancel(Waiter waiter) {
+        Permit assigned;
+        synchronized (this) {
+            if (waiters.remove(waiter)) {
+                return;
+            }
+            assigned = waiter.permit;
+        }
+        if (assigned != null) {
+            assigned.release(Outcome.IGNORED);
+        }
+    }
+
+    private void onRelease(Permit permit, Outcome outcome) {
+        long rtt = System.nanoTime() - permit.startNanos;
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            switch (outcome) {
+                case SUCCESS -> {
+                    // Se vuelve a medir la latencia base periódicamente: un mínimo antiguo no debe frenar el crecimiento
+                    if (++samplesSinceProbe >= RTT_PROBE_SAMPLES) {
+                        minRttNanos = rtt;
+                        samplesSinceProbe = 0;
+                    }
+                    minRttNanos = Math.min(minRttNanos, rtt);
+                    if (rtt <= minRttNanos * rttTolerance) {
+                        limit = Math.min(maxLimit, limit + 1.0 / limit);
+                    }
+                }
+                case DROPPED -> {
+                    dropped.increment();
+                    long now = System.nanoTime();
+                    long window = minRttNanos == Long.MAX_VALUE ? 0 : minRttNanos;
+                    if (now - lastDropNanos >= window) {
+                        limit = Math.max(minLimit, limit * backoffRatio);
+                        lastDropNanos = now;
+                    }
+                }
+                case IGNORED -> {
+                    // Cancelaciones y rechazos de negocio no informan de la capacidad
+                }
+            }
+            while (inFlight < (int) limit && !waiters.isEmpty()) {
+                Waiter next = waiters.poll();
+                inFlight++;
+                next.permit = new Permit();
+                granted.add(next);
+            }
+        }
+        granted.forEach(w -> w.sink.success(w.permit));
+    }
+
+    // -----------------------------
+    // Métricas
+    // -----------------------------
+    public synchronized int getLimit() { return (int) limit; }
+    public synchronized int getInFlight() { return inFlight; }
+    public synchronized int getQueueDepth() { return waiters.size(); }
+    public long getDroppedCount() { return dropped.sum(); }
+    public long getRejectedCount() { return rejected.sum(); }
+
+    /**
+     * Resultado de la llamada que usó el permiso.
+     */
+    public enum Outcome {
+        SUCCESS,  // el proveedor respondió con normalidad
+        DROPPED,  // sobrecarga: 429, 503 o timeout
+        IGNORED   // sin información de capacidad (cancelación, error local)
+    }
+
+    private static final class Waiter {
+        private final MonoSink<Permit> sink;
+        private Permit permit; // asignado bajo el lock del limitador
+
+        private Waiter(MonoSink<Permit> sink) {
+            this.sink = sink;
+        }
+    }
+
+    /**
+     * Permiso de una llamada en curso. Liberarlo es idempotente.
+     */
+    public final class Permit {
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        public void release(Outcome outcome) {
+            if (released.compareAndSet(false, true)) {
+                onRelease(this, outcome);
+            }
+        }
+    }
+
+    /**
+     * La petición no obtuvo capacidad dentro de su plazo.
+     */
+    public static final class LimitExceededException extends RuntimeException {
+        public LimitExceededException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.worksphere.billing.infrastructure.payment;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Envío de cargos por lotes a un proveedor que acepta ficheros o APIs masivas.
+ *
+ * El envío y la consulta de resultados están desacoplados: el proveedor procesa el lote por su
+ * cuenta y los resultados por ítem se concilian después con {@link #poll(String)}.
+ */
+public interface BatchPaymentSubmitter {
+
+    /**
+     * Clave del proveedor en {@code PaymentConfig.paymentProviders}.
+     */
+    String provider();
+
+    /**
+     * Entrega el lote al proveedor. El future se completa cuando el lote quedó aceptado y falla
+     * solo si es seguro que el proveedor no lo recibió; ante la duda, {@link #poll(String)} decide.
+     */
+    CompletableFuture<Void> submit(String batchId, List<BatchChargeItem> items);
+
+    /**
+     * Consulta el estado de un lote enviado. {@code UNKNOWN} solo si es seguro que el lote nunca
+     * llegó al proveedor: un lote entregado no debe volver a enviarse.
+     */
+    CompletableFuture<BatchStatus> poll(String batchId);
+
+    /**
+     * Marca el lote como conciliado (p. ej. archiva el fichero de respuesta).
+     */
+    default void acknowledge(String batchId) {
+    }
+
+    /**
+     * Cargo individual dentro de un lote.
+     */
+    final class BatchChargeItem {
+        private final UUID paymentResultId;
+        private final String reference;
+        private final UUID tokenId;
+        private final String token;
+        private final BigDecimal amount;
+
+        public BatchChargeItem(UUID paymentResultId, String reference, UUID tokenId, String token, BigDecimal amount) {
+            this.paymentResultId = paymentResultId;
+            this.reference = reference;
+            this.tokenId = tokenId;
+            this.token = token;
+            this.amount = amount;
+        }
+
+        public UUID getPaymentResultId() { return paymentResultId; }
+        public String getReference() { return reference; }
+        public UUID getTokenId() { return tokenId; } // referencia del mandato registrado al tokenizar
+        public String getToken() { return token; } // solo para envíos por API cifrada, nunca a fichero
+        public BigDecimal getAmount() { return amount; }
+    }
+
+    /**
+     * Resultado de un cargo del lote.
+     */
+    final class BatchChargeOutcome {
+        private final UUID paymentResultId;
+        private final boolean success;
+        private final String transactionId;
+        private final String error;
+
+        public BatchChargeOutcome(UUID paymentResultId, boolean success, String transactionId, String error) {
+            this.paymentResultId = paymentResultId;
+            this.success = success;
+            this.transactionId = transactionId;
+            this.error = error;
+        }
+
+        public static BatchChargeOutcome failed(UUID paymentResultId, String error) {
+            return new BatchChargeOutcome(paymentResultId, false, null, error);
+        }
+
+        public UUID getPaymentResultId() { return paymentResultId; }
+        public boolean isSuccess() { return success; }
+        public String getTransactionId() { return transactionId; }
+        public String getError() { return error; }
+    }
+
+    /**
+     * Estado de un lote en el proveedor.
+     */
+    final class BatchStatus {
+        public enum State {
+            PROCESSING, // aceptado, sin resultados todavía
+            COMPLETED,  // resultados por ítem disponibles
+            UNKNOWN     // el proveedor no tiene constancia del lote
+        }
+
+        private final State state;
+        private final List<BatchChargeOutcome> outcomes;
+
+        private BatchStatus(State state, List<BatchChargeOutcome> outcomes) {
+            this.state = state;
+            this.outcomes = outcomes;
+        }
+
+        public static BatchStatus processing() { return new BatchStatus(State.PROCESSING, List.of()); }
+        public static BatchStatus unknown() { return new BatchStatus(State.UNKNOWN, List.of()); }
+        public static BatchStatus completed(List<BatchChargeOutcome> outcomes) { return new BatchStatus(State.COMPLETED, outcomes); }
+
+        public State getState() { return state; }
+        public List<BatchChargeOutcome> getOutcomes() { return outcomes; }
+    }
+}
@@ -0,0 +1,52 @@
+package com.worksphere.billing.infrastructure.payment;
+
+import com.worksphere.billingengine.config.PaymentConfig.PaymentProviderConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Proveedores que cobran por lotes: aquellos con {@code batchMode} en su configuración y un
+ * {@link BatchPaymentSubmitter} disponible.
+ */
+@Component
+public class BatchPaymentSubmitters {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchPaymentSubmitters.class);
+
+    private final Map<String, BatchPaymentSubmitter> submitters = new HashMap<>();
+    private final Map<String, Integer> batchSizes = new HashMap<>();
+
+    public BatchPaymentSubmitters(Map<String, PaymentProviderConfig> paymentProviders,
+                                  List<BatchPaymentSubmitter> available) {
+        for (BatchPaymentSubmitter submitter : available) {
+            PaymentProviderConfig config = paymentProviders.get(submitter.provider());
+            if (config != null && config.isBatchMode()) {
+                submitters.put(submitter.provider(), submitter);
+                batchSizes.put(submitter.provider(), Math.max(1, config.getBatchSize()));
+                log.info("Proveedor de pago [{}] en modo lote (tamaño {})", submitter.provider(), config.getBatchSize());
+            }
+        }
+    }
+
+    public boolean isBatchProvider(String providerKey) {
+        return providerKey != null && submitters.containsKey(providerKey);
+    }
+
+    public BatchPaymentSubmitter get(String providerKey) {
+        return submitters.get(providerKey);
+    }
+
+    public int batchSize(String providerKey) {
+        return batchSizes.getOrDefault(providerKey, 1000);
+    }
+
+    public Set<String> providers() {
+        return submitters.keySet();
+    }
+}
@@ -0,0 +1,214 @@
+package com.worksphere.billing.infrastructure.payment;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Lotes de cargo por fichero para el banco local.
+ *
+ * El lote se escribe como CSV en el directorio de salida ({@code <batchId>.csv}, escrito en un
+ * temporal y movido de forma atómica). El banco deja la respuesta en el directorio de entrada
+ * como {@code <batchId>.result.csv} con una línea por cargo:
+ * {@code payment_result_id,OK|REJECTED,transaction_id,error}. La E/S de ficheros se hace en un
+ * hilo propio, nunca en el del llamador.
+ *
+ * La entrega se registra con una marca {@code <batchId>.sent} en un directorio local que el banco
+ * no ve, escrita antes de publicar el CSV: el banco puede retirar el fichero de salida, pero un lote
+ * con marca nunca se da por desconocido ni se vuelve a enviar. Si el proceso cae entre la marca y
+ * la publicación, la siguiente consulta completa la entrega pendiente.
+ *
+ * El fichero no lleva el token de pago: cada cargo identifica el mandato por su {@code token_ref}
+ * (el id del token registrado en el banco al tokenizar).
+ */
+@Component
+public class FileBatchPaymentSubmitter implements BatchPaymentSubmitter {
+
+    private static final Logger log = LoggerFactory.getLogger(FileBatchPaymentSubmitter.class);
+
+    private static final String HEADER = "payment_result_id,reference,amount,token_ref";
+
+    private final Path outboundDir;
+    private final Path inboundDir;
+    private final Path sentDir;
+    private final ExecutorService io = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "bank-batch-io");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public FileBatchPaymentSubmitter(@Value("${payment.bank.local.batch.outbound-dir:./data/bank/outbound}") String outboundDir,
+                                     @Value("${payment.bank.local.batch.inbound-dir:./data/bank/inbound}") String inboundDir,
+                                     @Value("${payment.bank.local.batch.sent-dir:./data/bank/sent}") String sentDir) {
+        this.outboundDir = Paths.get(outboundDir);
+        this.inboundDir = Paths.get(inboundDir);
+        this.sentDir = Paths.get(sentDir);
+    }
+
+    @Override
+    public String provider() {
+        return "bank_local";
+    }
+
+    @Override
+    public CompletableFuture<Void> submit(String batchId, List<BatchChargeItem> items) {
+        return CompletableFuture.runAsync(() -> {
+            Path tmp = temporaryFile(batchId);
+            try {
+                Files.createDirectories(outboundDir);
+                Files.createDirectories(sentDir);
+                try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                    writer.write(HEADER);
+                    writer.newLine();
+                    for (BatchChargeItem item : items) {
+                        writer.write(item.getPaymentResultId() + "," + item.getReference() + ","
+                                + item.getAmount().toPlainString() + "," + item.getTokenId());
+                        writer.newLine();
+                    }
+                }
+                Files.writeString(sentMarker(batchId), items.size() + "\n", StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                // Nada llegó al banco: el llamador puede liberar el lote
+                deleteQuietly(tmp);
+                deleteQuietly(sentMarker(batchId));
+                throw new UncheckedIOException("No se pudo escribir el lote " + batchId, e);
+            }
+            try {
+                publish(batchId);
+            } catch (IOException e) {
+                // Con la marca escrita, la siguiente consulta reintenta la publicación
+                log.warn("Lote {} escrito pero no publicado, se completará al consultarlo: {}", batchId, e.getMessage());
+                return;
+            }
+            log.info("Lote de cargos {} enviado al banco local ({} cargos)", batchId, items.size());
+        }, io);
+    }
+
+    @Override
+    public CompletableFuture<BatchStatus> poll(String batchId) {
+        return CompletableFuture.supplyAsync(() -> {
+            Path result = inboundDir.resolve(batchId + ".result.csv");
+            if (!Files.exists(result)) {
+                if (Files.exists(sentMarker(batchId))) {
+                    resumePublication(batchId);
+                    return BatchStatus.processing();
+                }
+                // Sin marca ni fichero, el lote nunca se entregó
+                return Files.exists(outboundDir.resolve(batchId + ".csv")) ? BatchStatus.processing() : BatchStatus.unknown();
+            }
+            try (BufferedReader reader = Files.newBufferedReader(result, StandardCharsets.UTF_8)) {
+                List<BatchChargeOutcome> outcomes = new ArrayList<>();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    BatchChargeOutcome outcome = parse(line);
+                    if (outcome != null) {
+                        outcomes.add(outcome);
+                    }
+                }
+                return BatchStatus.completed(outcomes);
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se pudo leer la respuesta del lote " + batchId, e);
+            }
+        }, io);
+    }
+
+    @Override
+    public void acknowledge(String batchId) {
+        io.execute(() -> {
+            try {
+                Path processed = inboundDir.resolve("processed");
+                Files.createDirectories(processed);
+                Path result = inboundDir.resolve(batchId + ".result.csv");
+                if (Files.exists(result)) {
+                    Files.move(result, processed.resolve(result.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+                }
+                Files.deleteIfExists(sentMarker(batchId));
+            } catch (IOException e) {
+                log.warn("No se pudo archivar la respuesta del lote {}: {}", batchId, e.getMessage());
+            }
+        });
+    }
+
+    // -----------------------------
+    // Entrega
+    // -----------------------------
+
+    private void publish(String batchId) throws IOException {
+        Files.move(temporaryFile(batchId), outboundDir.resolve(batchId + ".csv"), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Completa la publicación de un lote marcado cuyo CSV quedó en el temporal.
+     */
+    private void resumePublication(String batchId) {
+        if (!Files.exists(temporaryFile(batchId))) {
+            return;
+        }
+        try {
+            publish(batchId);
+            log.info("Publicación pendiente del lote {} completada", batchId);
+        } catch (IOException e) {
+            log.warn("No se pudo completar la publicación del lote {}: {}", batchId, e.getMessage());
+        }
+    }
+
+    private Path temporaryFile(String batchId) {
+        return outboundDir.resolve(batchId + ".csv.tmp");
+    }
+
+    private Path sentMarker(String batchId) {
+        return sentDir.resolve(batchId + ".sent");
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("No se pudo eliminar {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static BatchChargeOutcome parse(String line) {
+        String[] cols = line.split(",", 4);
+        if (cols.length < 2 || cols[0].isBlank() || cols[0].startsWith("payment_result_id")) {
+            return null;
+        }
+        UUID id;
+        try {
+            id = UUID.fromString(cols[0].trim());
+        } catch (IllegalArgumentException e) {
+            log.warn("Línea de respuesta de lote ignorada: {}", line);
+            return null;
+        }
+        boolean ok = "OK".equalsIgnoreCase(cols[1].trim());
+        String transactionId = cols.length > 2 && !cols[2].isBlank() ? cols[2].trim() : null;
+        String error = cols.length > 3 ? cols[3].trim() : null;
+        if (ok && transactionId == null) {
+            return BatchChargeOutcome.failed(id, "Cargo aceptado sin transaction_id");
+        }
+        return new BatchChargeOutcome(id, ok, transactionId, ok ? null : error);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        io.shutdown();
+    }
+}
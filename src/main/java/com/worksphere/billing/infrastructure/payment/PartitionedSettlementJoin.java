@@ -0,0 +1,428 @@
+package com.worksphere.billing.infrastructure.payment;
+
+import com.worksphere.billing.infrastructure.payment.SettlementFileReader.Kind;
+import com.worksphere.billing.infrastructure.payment.SettlementFileReader.SettlementRecord;
+import com.worksphere.billing.infrastructure.repository.PaymentLedgerReader.LedgerRow;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Hash join particionado entre una liquidación y los resultados de pago, con memoria acotada.
+ *
+ * Fase 1: cada fila de la liquidación y cada pago de la ventana se escriben en la partición
+ * {@code hash(transactionId) % partitions} de su lado, en ficheros del directorio de trabajo.
+ * Fase 2: por cada partición se carga la liquidación en un mapa (agregando cargos y devoluciones
+ * de una misma transacción) y se recorre la partición de pagos contra él. Las transacciones de la
+ * liquidación que no aparecen en la ventana se buscan por id en lotes de {@code lookupChunkSize}.
+ *
+ * En memoria solo hay una partición de la liquidación a la vez, de modo que el consumo depende del
+ * tamaño de partición elegido por el llamador y no del tamaño del fichero. Como el número de
+ * particiones está acotado por los ficheros abiertos, una partición de liquidación que supere
+ * {@code maxPartitionBytes} se reparte de nuevo (junto con su partición de pagos, con otra semilla
+ * de hash) antes de cargarla, hasta {@code MAX_LEVELS} niveles; solo una transacción repetida
+ * miles de veces puede dejar una partición por encima. Una instancia sirve para una única
+ * conciliación y no es thread-safe; {@link #close()} borra los ficheros.
+ */
+public class PartitionedSettlementJoin implements Closeable {
+
+    private static final int WRITE_BUFFER = 16 * 1024;
+    private static final int READ_BUFFER = 256 * 1024;
+    private static final int MAX_LEVELS = 4;
+
+    private final Path workDir;
+    private final int partitions;
+    private final int lookupChunkSize;
+    private final long maxPartitionBytes;
+    private final BufferedWriter[] settlementWriters;
+    private final BufferedWriter[] ledgerWriters;
+
+    public PartitionedSettlementJoin(Path workDir, int partitions, int lookupChunkSize) throws IOException {
+        this(workDir, partitions, lookupChunkSize, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxPartitionBytes tamaño máximo de una partición de liquidación al cargarla; las mayores se reparten de nuevo
+     */
+    public PartitionedSettlementJoin(Path workDir, int partitions, int lookupChunkSize, long maxPartitionBytes) throws IOException {
+        this.workDir = Files.createDirectories(workDir);
+        this.partitions = Math.max(1, partitions);
+        this.lookupChunkSize = Math.max(1, lookupChunkSize);
+        this.maxPartitionBytes = Math.max(1, maxPartitionBytes);
+        this.settlementWriters = new BufferedWriter[this.partitions];
+        this.ledgerWriters = new BufferedWriter[this.partitions];
+    }
+
+    // -----------------------------
+    // Fase 1: particionado
+    // -----------------------------
+
+    public void addSettlement(SettlementRecord record) {
+        int p = partitionOf(record.getTransactionId(), 0, partitions);
+        write(settlementWriters, "s", p, record.getTransactionId() + '\t' + record.getKind().name() + '\t'
+                + record.getAmount().toPlainString());
+    }
+
+    public void addLedger(LedgerRow row) {
+        int p = partitionOf(row.getTransactionId(), 0, partitions);
+        write(ledgerWriters, "l", p, row.getTransactionId() + '\t' + row.getPaymentResultId() + '\t'
+                + nullToEmpty(row.getTenantId()) + '\t' + nullToEmpty(row.getInvoiceId()) + '\t' + row.getStatus() + '\t'
+                + (row.getAmount() == null ? "" : row.getAmount().toPlainString()) + '\t' + row.isReversed() + '\t'
+                + nullToEmpty(row.getProvider()));
+    }
+
+    private void write(BufferedWriter[] writers, String side, int partition, String line) {
+        try {
+            BufferedWriter writer = writers[partition];
+            if (writer == null) {
+                writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file(side, partition)),
+                        StandardCharsets.UTF_8), WRITE_BUFFER);
+                writers[partition] = writer;
+            }
+            writer.write(line);
+            writer.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo escribir la partición " + partition + " de conciliación", e);
+        }
+    }
+
+    /**
+     * Partición de la transacción en un nivel de particionado; cada nivel usa otra semilla para
+     * que las transacciones de una partición se repartan al volver a particionarla.
+     */
+    private static int partitionOf(String transactionId, int level, int count) {
+        int h = transactionId.hashCode() ^ (level * 0x9E3779B9);
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return Math.floorMod(h, count);
+    }
+
+    // -----------------------------
+    // Fase 2: join por partición
+    // -----------------------------
+
+    /**
+     * Cruza todas las particiones y entrega cada discrepancia al consumidor.
+     *
+     * @param ledgerLookup búsqueda de pagos por id de transacción (para las transacciones de la
+     *                     liquidación que no estaban en la ventana)
+     */
+    public JoinResult join(Function<Collection<String>, List<LedgerRow>> ledgerLookup,
+                           Consumer<Mismatch> mismatches) throws IOException {
+        flush(settlementWriters);
+        flush(ledgerWriters);
+        JoinResult result = new JoinResult();
+        for (int p = 0; p < partitions; p++) {
+            joinPartition(file("s", p), file("l", p), 1, ledgerLookup, mismatches, result);
+        }
+        return result;
+    }
+
+    private void joinPartition(Path settlementFile, Path ledgerFile, int level,
+                               Function<Collection<String>, List<LedgerRow>> ledgerLookup,
+                               Consumer<Mismatch> mismatches, JoinResult result) throws IOException {
+        long size = Files.exists(settlementFile) ? Files.size(settlementFile) : 0;
+        if (size > maxPartitionBytes && level < MAX_LEVELS) {
+            int count = (int) Math.max(2, Math.min(partitions, (size + maxPartitionBytes - 1) / maxPartitionBytes));
+            Path[] settlementParts = repartition(settlementFile, level, count);
+            Path[] ledgerParts = repartition(ledgerFile, level, count);
+            result.repartitioned++;
+            for (int i = 0; i < count; i++) {
+                joinPartition(settlementParts[i], ledgerParts[i], level + 1, ledgerLookup, mismatches, result);
+            }
+            return;
+        }
+
+        Map<String, Settled> settled = new HashMap<>();
+        if (Files.exists(settlementFile)) {
+            try (BufferedReader reader = reader(settlementFile)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] cols = line.split("\t", -1);
+                    settled.computeIfAbsent(cols[0], tx -> new Settled()).add(Kind.valueOf(cols[1]), new BigDecimal(cols[2]));
+                }
+            }
+        }
+
+        if (Files.exists(ledgerFile)) {
+            try (BufferedReader reader = reader(ledgerFile)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    LedgerRow row = parseLedger(line);
+                    result.ledgerRows++;
+                    compare(row.getTransactionId(), row, settled.remove(row.getTransactionId()), mismatches, result);
+                }
+            }
+        }
+
+        // Transacciones liquidadas cuyo pago no estaba en la ventana (otra fecha u otro estado)
+        Iterator<Map.Entry<String, Settled>> pending = settled.entrySet().iterator();
+        List<String> chunk = new ArrayList<>(Math.min(lookupChunkSize, settled.size()));
+        while (pending.hasNext()) {
+            chunk.add(pending.next().getKey());
+            if (chunk.size() == lookupChunkSize || !pending.hasNext()) {
+                Map<String, LedgerRow> found = new HashMap<>();
+                for (LedgerRow row : ledgerLookup.apply(chunk)) {
+                    found.put(row.getTransactionId(), row);
+                }
+                for (String transactionId : chunk) {
+                    compare(transactionId, found.get(transactionId), settled.get(transactionId), mismatches, result);
+                }
+                chunk.clear();
+            }
+        }
+    }
+
+    /**
+     * Compara un pago con lo liquidado para su transacción; cualquiera de los dos puede faltar.
+     */
+    static void compare(String transactionId, LedgerRow row, Settled settled,
+                        Consumer<Mismatch> mismatches, JoinResult result) {
+        if (settled != null) {
+            result.settledTransactions++;
+        }
+        Mismatch mismatch = evaluate(transactionId, row, settled);
+        if (mismatch == null) {
+            if (row != null && settled != null) {
+                result.matched++;
+            }
+            return;
+        }
+        result.count(mismatch.getType());
+        mismatches.accept(mismatch);
+    }
+
+    private static Mismatch evaluate(String transactionId, LedgerRow row, Settled s) {
+        if (row == null) {
+            return s.chargeCount > 0 || s.refundCount > 0
+                    ? new Mismatch(MismatchType.MISSING_IN_LEDGER, transactionId, null, s, "liquidado sin resultado de pago")
+                    : null;
+        }
+        boolean success = "SUCCESS".equals(row.getStatus());
+        if (s == null) {
+            return success && !row.isReversed()
+                    ? new Mismatch(MismatchType.MISSING_IN_SETTLEMENT, transactionId, row, null, "cobro sin liquidar")
+                    : null;
+        }
+        if (s.chargeCount > 1) {
+            return new Mismatch(MismatchType.DUPLICATE_SETTLEMENT, transactionId, row, s,
+                    s.chargeCount + " cargos liquidados para la misma transacción");
+        }
+        if (s.chargeCount == 1 && !success) {
+            return new Mismatch(MismatchType.STATUS_MISMATCH, transactionId, row, s,
+                    "liquidado por el proveedor con estado " + row.getStatus() + " en el ledger");
+        }
+        if (s.chargeCount == 0 && s.refundCount == 0) {
+            // El proveedor solo informa la transacción como fallida o pendiente
+            return success
+                    ? new Mismatch(MismatchType.STATUS_MISMATCH, transactionId, row, s, "cobro no liquidado por el proveedor")
+                    : null;
+        }
+        if (s.chargeCount == 1 && !sameAmount(s.chargeAmount, row.getAmount())) {
+            return new Mismatch(MismatchType.AMOUNT_MISMATCH, transactionId, row, s,
+                    "liquidado " + s.chargeAmount.toPlainString() + " frente a " + row.getAmount());
+        }
+        if (s.refundCount > 0 && !row.isReversed()) {
+            return new Mismatch(MismatchType.STATUS_MISMATCH, transactionId, row, s, "devolución sin reversión registrada");
+        }
+        if (s.refundCount > 0 && !sameAmount(s.refundAmount, row.getAmount())) {
+            return new Mismatch(MismatchType.AMOUNT_MISMATCH, transactionId, row, s,
+                    "devuelto " + s.refundAmount.toPlainString() + " frente a " + row.getAmount());
+        }
+        return null;
+    }
+
+    private static boolean sameAmount(BigDecimal settled, BigDecimal ledger) {
+        return ledger != null && settled.compareTo(ledger) == 0;
+    }
+
+    private static LedgerRow parseLedger(String line) {
+        String[] cols = line.split("\t", -1);
+        return new LedgerRow(cols[0], cols[1], emptyToNull(cols[2]), emptyToNull(cols[3]), cols[4],
+                cols[5].isEmpty() ? null : new BigDecimal(cols[5]), Boolean.parseBoolean(cols[6]), emptyToNull(cols[7]));
+    }
+
+    // -----------------------------
+    // Ficheros
+    // -----------------------------
+
+    private Path file(String side, int partition) {
+        return workDir.resolve(side + "-" + partition + ".tsv");
+    }
+
+    /**
+     * Reparte un fichero de partición en {@code count} sub-particiones del nivel indicado y lo borra.
+     */
+    private Path[] repartition(Path source, int level, int count) throws IOException {
+        String base = source.getFileName().toString().replace(".tsv", "");
+        Path[] parts = new Path[count];
+        for (int i = 0; i < count; i++) {
+            parts[i] = workDir.resolve(base + "." + i + ".tsv");
+        }
+        if (!Files.exists(source)) {
+            return parts;
+        }
+        BufferedWriter[] writers = new BufferedWriter[count];
+        try (BufferedReader reader = reader(source)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int p = partitionOf(line.substring(0, line.indexOf('\t')), level, count);
+                if (writers[p] == null) {
+                    writers[p] = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(parts[p]),
+                            StandardCharsets.UTF_8), WRITE_BUFFER);
+                }
+                writers[p].write(line);
+                writers[p].newLine();
+            }
+        } finally {
+            flush(writers);
+        }
+        Files.delete(source);
+        return parts;
+    }
+
+    private static BufferedReader reader(Path file) throws IOException {
+        return new BufferedReader(new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8), READ_BUFFER);
+    }
+
+    private static void flush(BufferedWriter[] writers) throws IOException {
+        for (int i = 0; i < writers.length; i++) {
+            if (writers[i] != null) {
+                writers[i].close();
+                writers[i] = null;
+            }
+        }
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush(settlementWriters);
+            flush(ledgerWriters);
+        } finally {
+            try (Stream<Path> files = Files.list(workDir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(workDir);
+        }
+    }
+
+    // -----------------------------
+    // Tipos
+    // -----------------------------
+
+    public enum MismatchType {
+        MISSING_IN_LEDGER,      // el proveedor liquidó una transacción sin resultado de pago
+        MISSING_IN_SETTLEMENT,  // cobro registrado como SUCCESS que el proveedor no liquidó
+        AMOUNT_MISMATCH,        // importe liquidado o devuelto distinto del registrado
+        STATUS_MISMATCH,        // el estado del proveedor contradice el del ledger
+        DUPLICATE_SETTLEMENT    // la misma transacción liquidada más de una vez
+    }
+
+    /**
+     * Lo liquidado para una transacción (puede tener cargo y devolución en el mismo fichero).
+     */
+    static final class Settled {
+        private int chargeCount;
+        private BigDecimal chargeAmount = BigDecimal.ZERO;
+        private int refundCount;
+        private BigDecimal refundAmount = BigDecimal.ZERO;
+
+        void add(Kind kind, BigDecimal amount) {
+            switch (kind) {
+                case CHARGE -> {
+                    chargeCount++;
+                    chargeAmount = chargeAmount.add(amount);
+                }
+                case REFUND -> {
+                    refundCount++;
+                    refundAmount = refundAmount.add(amount.abs());
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    /**
+     * Una discrepancia entre la liquidación y el ledger.
+     */
+    public static final class Mismatch {
+        private final MismatchType type;
+        private final String transactionId;
+        private final LedgerRow ledger;
+        private final BigDecimal settledAmount;
+        private final BigDecimal refundedAmount;
+        private final String detail;
+
+        private Mismatch(MismatchType type, String transactionId, LedgerRow ledger, Settled settled, String detail) {
+            this.type = type;
+            this.transactionId = transactionId;
+            this.ledger = ledger;
+            this.settledAmount = settled == null ? null : settled.chargeAmount;
+            this.refundedAmount = settled == null ? null : settled.refundAmount;
+            this.detail = detail;
+        }
+
+        public MismatchType getType() { return type; }
+        public String getTransactionId() { return transactionId; }
+        public LedgerRow getLedger() { return ledger; }
+        public BigDecimal getSettledAmount() { return settledAmount; }
+        public BigDecimal getRefundedAmount() { return refundedAmount; }
+        public String getDetail() { return detail; }
+    }
+
+    /**
+     * Totales del join.
+     */
+    public static final class JoinResult {
+        private long ledgerRows;
+        private long settledTransactions;
+        private long matched;
+        private long repartitioned;
+        private final Map<MismatchType, Long> mismatches = new HashMap<>();
+
+        private void count(MismatchType type) {
+            mismatches.merge(type, 1L, Long::sum);
+        }
+
+        public long getLedgerRows() { return ledgerRows; }
+        public long getSettledTransactions() { return settledTransactions; }
+        public long getMatched() { return matched; }
+        /** Particiones que superaban el tamaño máximo y se repartieron de nuevo. */
+        public long getRepartitioned() { return repartitioned; }
+        public Map<MismatchType, Long> getMismatches() { return mismatches; }
+        public long getMismatchCount() { return mismatches.values().stream().mapToLong(Long::longValue).sum(); }
+    }
+}
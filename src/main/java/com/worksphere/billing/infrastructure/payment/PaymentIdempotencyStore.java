@@ -0,0 +1,222 @@
+package com.worksphere.billing.infrastructure.payment;
+
+import com.worksphere.billing.domain.exception.PaymentException;
+import com.worksphere.billing.domain.exception.PaymentException.FailureReason;
+import com.worksphere.billing.domain.model.PaymentIdempotencyKey;
+import com.worksphere.billing.domain.model.PaymentResult;
+import com.worksphere.billing.domain.model.PaymentResult.PaymentStatus;
+import com.worksphere.billing.domain.repository.PaymentResultRepository;
+import com.worksphere.billing.infrastructure.repository.PaymentIdempotencyKeyRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Ejecuta cada cobro una sola vez por clave de idempotencia.
+ *
+ * - En proceso: los llamadores concurrentes con la misma clave esperan el mismo future
+ *   (single-flight) en lugar de competir por la base de datos.
+ * - Entre instancias: la clave se reclama con un INSERT sobre su clave primaria; quien no la
+ *   obtiene y la encuentra en curso recibe un error recuperable.
+ * - Respuesta almacenada: una clave completada devuelve el PaymentResult original sin llamar a
+ *   la pasarela.
+ * - Fallos: la clave solo se libera cuando es seguro que no hubo cargo (proveedor no disponible,
+ *   rechazo o token no válido) y un reintento vuelve a cobrar. Con un resultado en duda (error de
+ *   red o desconocido) la clave sigue reclamada hasta que vence su lease; el reintento posterior
+ *   repite el mismo cargo, que el proveedor deduplica por su clave de idempotencia.
+ * - Cada reclamo lleva un token de dueño: si el lease vence y otra instancia retoma la clave, el
+ *   dueño anterior ya no puede completarla ni liberarla.
+ */
+@Component
+public class PaymentIdempotencyStore {
+
+    private static final Logger log = LoggerFactory.getLogger(PaymentIdempotencyStore.class);
+
+    private final PaymentIdempotencyKeyRepository keyRepository;
+    private final PaymentResultRepository paymentResultRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final long leaseSeconds;
+    private final int retentionDays;
+
+    private final Map<String, CompletableFuture<PaymentResult>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder busy = new LongAdder();
+    private final LongAdder fenced = new LongAdder();
+
+    public PaymentIdempotencyStore(PaymentIdempotencyKeyRepository keyRepository,
+                                   PaymentResultRepository paymentResultRepository,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${payment.idempotency.lease-seconds:120}") long leaseSeconds,
+                                   @Value("${payment.idempotency.retention-days:30}") int retentionDays) {
+        this.keyRepository = keyRepository;
+        this.paymentResultRepository = paymentResultRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.leaseSeconds = leaseSeconds;
+        this.retentionDays = retentionDays;
+    }
+
+    /**
+     * Clave por defecto: un único cobro por factura y tenant.
+     */
+    public static String invoiceKey(String tenantId, UUID invoiceId) {
+        return "invoice:" + tenantId + ":" + invoiceId;
+    }
+
+    /**
+     * Ejecuta {@code payment} si nadie lo ha hecho con esta clave; si no, devuelve el resultado
+     * en curso o el almacenado.
+     */
+    public CompletableFuture<PaymentResult> execute(String idempotencyKey,
+                                                    String tenantId,
+                                                    UUID invoiceId,
+                                                    Supplier<CompletableFuture<PaymentResult>> payment) {
+        CompletableFuture<PaymentResult> mine = new CompletableFuture<>();
+        CompletableFuture<PaymentResult> shared = inFlight.putIfAbsent(idempotencyKey, mine);
+        if (shared != null) {
+            coalesced.increment();
+            return shared;
+        }
+
+        String owner = UUID.randomUUID().toString();
+        PaymentResult stored;
+        try {
+            stored = transactionTemplate.execute(status -> claim(idempotencyKey, owner, tenantId, invoiceId));
+        } catch (RuntimeException e) {
+            finish(idempotencyKey, mine, null, e);
+            return mine;
+        }
+        if (stored != null) {
+            replayed.increment();
+            log.info("Cobro con clave [{}] ya realizado: se devuelve el PaymentResult {}",
+                    idempotencyKey, stored.getPaymentResultId());
+            finish(idempotencyKey, mine, stored, null);
+            return mine;
+        }
+
+        executed.increment();
+        CompletableFuture<PaymentResult> call;
+        try {
+            call = payment.get();
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((result, error) -> {
+            Throwable failure = unwrap(error);
+            try {
+                Integer closed = transactionTemplate.execute(status -> {
+                    if (failure == null) {
+                        return keyRepository.complete(idempotencyKey, owner, result.getPaymentResultId(),
+                                result.getStatus().name(), Instant.now());
+                    }
+                    if (isSafeToRetry(failure)) {
+                        return keyRepository.release(idempotencyKey, owner);
+                    }
+                    // El cargo pudo procesarse: la clave vence con su lease, no se libera
+                    log.warn("Cobro con clave [{}] en duda: la clave sigue reclamada hasta que venza su lease",
+                            idempotencyKey);
+                    return 1;
+                });
+                if (closed != null && closed == 0) {
+                    fenced.increment();
+                    log.warn("La clave de idempotencia [{}] fue retomada por otra instancia; no se modifica", idempotencyKey);
+                }
+            } catch (RuntimeException e) {
+                // El lease vence y otra llamada podrá retomar la clave; el PaymentResult ya está registrado
+                log.error("No se pudo cerrar la clave de idempotencia [{}]: {}", idempotencyKey, e.getMessage(), e);
+            }
+            finish(idempotencyKey, mine, result, failure);
+        });
+        return mine;
+    }
+
+    /**
+     * @return el PaymentResult almacenado, o null si el llamador obtuvo la clave
+     */
+    private PaymentResult claim(String idempotencyKey, String owner, String tenantId, UUID invoiceId) {
+        Instant now = Instant.now();
+        Instant leaseUntil = now.plusSeconds(leaseSeconds);
+        if (keyRepository.tryAcquire(idempotencyKey, tenantId, invoiceId, owner, leaseUntil, now) == 1) {
+            return null;
+        }
+
+        PaymentIdempotencyKey key = keyRepository.findById(idempotencyKey)
+                .orElseThrow(() -> new IllegalStateException("Clave de idempotencia no encontrada: " + idempotencyKey));
+        if (key.getStatus() == PaymentIdempotencyKey.Status.IN_PROGRESS) {
+            busy.increment();
+            throw new PaymentException("Cobro en curso en otra instancia para la clave " + idempotencyKey,
+                    null, null, String.valueOf(invoiceId), FailureReason.UNKNOWN_ERROR, true);
+        }
+
+        PaymentResult stored = paymentResultRepository.findById(key.getPaymentResultId()).orElse(null);
+        if (stored == null || stored.getStatus() == PaymentStatus.FAILED) {
+            // El pago completado terminó fallando (p. ej. lote rechazado): se permite un nuevo cobro
+            if (keyRepository.reopen(idempotencyKey, key.getPaymentResultId(), owner, leaseUntil, now) == 1) {
+                return null;
+            }
+            busy.increment();
+            throw new PaymentException("Cobro en curso en otra instancia para la clave " + idempotencyKey,
+                    null, null, String.valueOf(invoiceId), FailureReason.UNKNOWN_ERROR, true);
+        }
+        return stored;
+    }
+
+    private void finish(String idempotencyKey, CompletableFuture<PaymentResult> mine, PaymentResult result, Throwable error) {
+        inFlight.remove(idempotencyKey, mine);
+        if (error == null) {
+            mine.complete(result);
+        } else {
+            mine.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * Fallos tras los que es seguro que el proveedor no procesó el cargo.
+     */
+    private static boolean isSafeToRetry(Throwable failure) {
+        if (!(failure instanceof PaymentException paymentException)) {
+            return false;
+        }
+        return switch (paymentException.getFailureReason()) {
+            case PROVIDER_UNAVAILABLE, BANK_REJECTED, TOKEN_EXPIRED, INVALID_CREDENTIALS, INSUFFICIENT_FUNDS -> true;
+            case NETWORK_ERROR, UNKNOWN_ERROR -> false;
+        };
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    @Scheduled(cron = "${payment.idempotency.purge-cron:0 45 3 * * ?}")
+    public void purgeCompleted() {
+        Instant before = Instant.now().minus(retentionDays, ChronoUnit.DAYS);
+        Integer deleted = transactionTemplate.execute(status -> keyRepository.deleteCompletedBefore(before));
+        log.info("Claves de idempotencia de pago: {} purgadas (anteriores a {})", deleted, before);
+    }
+
+    // -----------------------------
+    // Métricas
+    // -----------------------------
+    public long getExecutedCount() { return executed.sum(); }
+    public long getCoalescedCount() { return coalesced.sum(); }
+    public long getReplayedCount() { return replayed.sum(); }
+    public long getBusyCount() { return busy.sum(); }
+    public long getFencedCount() { return fenced.sum(); }
+    public int getInFlight() { return inFlight.size(); }
+}
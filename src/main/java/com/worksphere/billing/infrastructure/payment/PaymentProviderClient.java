@@ -0,0 +1,210 @@
+package com.worksphere.billing.infrastructure.payment;
+
+import com.worksphere.billing.domain.exception.PaymentException;
+import com.worksphere.billing.domain.exception.PaymentException.FailureReason;
+import com.worksphere.billing.infrastructure.payment.AdaptiveConcurrencyLimiter.LimitExceededException;
+import com.worksphere.billing.infrastructure.payment.AdaptiveConcurrencyLimiter.Outcome;
+import com.worksphere.billingengine.config.PaymentConfig.PaymentProviderConfig;
+import io.netty.channel.ChannelOption;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Cliente HTTP de un proveedor de pago.
+ *
+ * Cada proveedor tiene su propio pool de conexiones, su timeout y un límite de concurrencia
+ * adaptativo ({@link AdaptiveConcurrencyLimiter}) que crece con las respuestas normales y se
+ * reduce ante 429/503/timeouts, de modo que el caudal se ajusta a la capacidad real del proveedor.
+ * Una respuesta 429 o 503 significa que el cargo no se procesó, así que se reintenta tras un
+ * backoff breve; agotados los reintentos (o si la petición ni siquiera obtuvo permiso del limitador)
+ * se informa como {@code PROVIDER_UNAVAILABLE}, el único fallo tras el que es seguro cobrar con otro
+ * proveedor. Un timeout, un error de comunicación o un 5xx dejan el resultado del cargo en duda y se
+ * informan como error de red: el llamador no debe darlo por fallido, sino dejarlo pendiente de conciliar.
+ * Los cobros y las reversiones llevan la cabecera {@code Idempotency-Key}, de modo que repetir una
+ * operación en duda (o los reintentos tras 429/503) no la procesa dos veces en el proveedor.
+ */
+final class PaymentProviderClient {
+
+    private static final ParameterizedTypeReference<Map<String, Object>> JSON_MAP = new ParameterizedTypeReference<>() {};
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    private final String key;
+    private final ConnectionProvider connectionProvider;
+    private final WebClient webClient;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final Duration timeout;
+    private final Duration queueTimeout;
+    private final int throttleRetries;
+
+    PaymentProviderClient(String key, PaymentProviderConfig config, LimiterSettings limiterSettings) {
+        this.key = key;
+        this.timeout = Duration.ofMillis(config.getTimeoutMs());
+        this.queueTimeout = Duration.ofMillis(limiterSettings.queueTimeoutMs);
+        this.throttleRetries = limiterSettings.throttleRetries;
+        int maxConcurrency = Math.max(1, config.getMaxConcurrency());
+        int minConcurrency = Math.min(maxConcurrency, Math.max(1, limiterSettings.minLimit));
+        this.limiter = new AdaptiveConcurrencyLimiter("payment-" + key,
+                Math.min(maxConcurrency, Math.max(minConcurrency, limiterSettings.initialLimit)),
+                minConcurrency, maxConcurrency, limiterSettings.backoffRatio, limiterSettings.rttTolerance,
+                limiterSettings.maxQueue);
+        this.connectionProvider = ConnectionProvider.builder("payment-" + key)
+                .maxConnections(Math.max(1, config.getMaxConnections()))
+                .pendingAcquireMaxCount(Math.max(1, config.getMaxConnections()) * 4)
+                .maxIdleTime(Duration.ofSeconds(30))
+                .evictInBackground(Duration.ofSeconds(30))
+                .build();
+
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) Math.min(timeout.toMillis(), 5000))
+                .responseTimeout(timeout);
+
+        this.webClient = WebClient.builder()
+                .baseUrl(config.getEndpoint())
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .defaultHeaders(headers -> {
+                    if (config.getApiKey() != null && !config.getApiKey().isEmpty()) {
+                        headers.setBearerAuth(config.getApiKey());
+                    } else if (config.getClientId() != null) {
+                        headers.setBasicAuth(config.getClientId(), config.getClientSecret());
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * POST JSON al proveedor. Los errores se emiten como {@link PaymentException}.
+     *
+     * @param idempotencyKey valor de la cabecera {@code Idempotency-Key}; null si la operación no la necesita
+     */
+    Mono<Map<String, Object>> post(String path, Object body, String paymentId, String invoiceId, String idempotencyKey) {
+        return Mono.defer(() -> limiter.acquire(queueTimeout))
+                .flatMap(permit -> exchange(path, body, paymentId, invoiceId, idempotencyKey)
+                        .timeout(timeout)
+                        .doOnSuccess(response -> permit.release(Outcome.SUCCESS))
+                        .doOnError(ex -> permit.release(outcomeOf(ex)))
+                        .doOnCancel(() -> permit.release(Outcome.IGNORED)))
+                .retryWhen(Retry.backoff(throttleRetries, Duration.ofMillis(200))
+                        .filter(ProviderOverloadedException.class::isInstance)
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+                .onErrorMap(ProviderOverloadedException.class, ex -> new PaymentException(
+                        key + " saturado: " + ex.getMessage(),
+                        paymentId, null, invoiceId, FailureReason.PROVIDER_UNAVAILABLE, true))
+                .onErrorMap(LimitExceededException.class, ex -> new PaymentException(
+                        "Capacidad de " + key + " agotada: " + ex.getMessage(),
+                        paymentId, null, invoiceId, FailureReason.PROVIDER_UNAVAILABLE, true))
+                .onErrorMap(TimeoutException.class, ex -> new PaymentException(
+                        "Sin respuesta de " + key + " en " + timeout.toMillis() + " ms",
+                        paymentId, null, invoiceId, FailureReason.NETWORK_ERROR, true))
+                .onErrorMap(WebClientRequestException.class, ex -> new PaymentException(
+                        "Error de comunicación con " + key + ": " + ex.getMessage(),
+                        paymentId, null, invoiceId, FailureReason.NETWORK_ERROR, true));
+    }
+
+    private Mono<Map<String, Object>> exchange(String path, Object body, String paymentId, String invoiceId,
+                                               String idempotencyKey) {
+        return webClient.post()
+                .uri(path)
+                .headers(headers -> {
+                    if (idempotencyKey != null) {
+                        headers.set(IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+                    }
+                })
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .exchangeToMono(response -> {
+                    if (response.statusCode().is2xxSuccessful()) {
+                        return response.bodyToMono(JSON_MAP).defaultIfEmpty(Map.of());
+                    }
+                    return response.bodyToMono(String.class).defaultIfEmpty("")
+                            .flatMap(error -> Mono.error(isOverload(response.statusCode())
+                                    ? new ProviderOverloadedException("HTTP " + response.statusCode().value() + ": " + error)
+                                    : rejection(response.statusCode(), error, paymentId, invoiceId)));
+                });
+    }
+
+    private static boolean isOverload(HttpStatusCode status) {
+        return status.value() == 429 || status.value() == 503;
+    }
+
+    private static Outcome outcomeOf(Throwable error) {
+        if (error instanceof ProviderOverloadedException || error instanceof TimeoutException) {
+            return Outcome.DROPPED;
+        }
+        // Un rechazo de negocio es una respuesta normal del proveedor
+        return error instanceof PaymentException ? Outcome.SUCCESS : Outcome.IGNORED;
+    }
+
+    private PaymentException rejection(HttpStatusCode status, String error, String paymentId, String invoiceId) {
+        FailureReason reason;
+        boolean recoverable = false;
+        if (status.value() == 401 || status.value() == 403) {
+            reason = FailureReason.INVALID_CREDENTIALS;
+        } else if (status.value() == 402) {
+            reason = FailureReason.INSUFFICIENT_FUNDS;
+        } else if (status.value() == 408 || status.is5xxServerError()) {
+            reason = FailureReason.NETWORK_ERROR;
+            recoverable = true;
+        } else {
+            reason = FailureReason.BANK_REJECTED;
+        }
+        return new PaymentException(key + " respondió HTTP " + status.value() + ": " + error,
+                paymentId, null, invoiceId, reason, recoverable);
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    AdaptiveConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    void dispose() {
+        connectionProvider.disposeLater().block(Duration.ofSeconds(10));
+    }
+
+    /**
+     * Parámetros comunes del limitador adaptativo.
+     */
+    static final class LimiterSettings {
+        final int initialLimit;
+        final int minLimit;
+        final double backoffRatio;
+        final double rttTolerance;
+        final int maxQueue;
+        final long queueTimeoutMs;
+        final int throttleRetries;
+
+        LimiterSettings(int initialLimit, int minLimit, double backoffRatio, double rttTolerance,
+                        int maxQueue, long queueTimeoutMs, int throttleRetries) {
+            this.initialLimit = initialLimit;
+            this.minLimit = minLimit;
+            this.backoffRatio = backoffRatio;
+            this.rttTolerance = rttTolerance;
+            this.maxQueue = maxQueue;
+            this.queueTimeoutMs = queueTimeoutMs;
+            this.throttleRetries = throttleRetries;
+        }
+    }
+
+    /**
+     * El proveedor indicó sobrecarga (429/503): el cargo no se procesó.
+     */
+    private static final class ProviderOverloadedException extends RuntimeException {
+        private ProviderOverloadedException(String message) {
+            super(message);
+        }
+    }
+}
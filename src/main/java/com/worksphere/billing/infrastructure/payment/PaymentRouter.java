@@ -0,0 +1,354 @@
+package com.worksphere.billing.infrastructure.payment;
+
+import com.worksphere.billing.domain.exception.PaymentException;
+import com.worksphere.billing.domain.exception.PaymentException.FailureReason;
+import com.worksphere.billing.domain.model.PaymentToken;
+import com.worksphere.billing.domain.repository.PaymentTokenRepository;
+import com.worksphere.billing.infrastructure.payment.ProviderHealthTracker.ProviderHealth;
+import com.worksphere.billing.service.PaymentGatewayAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Enrutado de cobros entre los proveedores de pago de un tenant.
+ *
+ * Cuando el tenant tiene varios tokens reutilizables y vigentes (uno por proveedor), el cobro va
+ * primero al proveedor sano más rápido según {@link ProviderHealthTracker}: los sanos con p99
+ * conocido por orden de latencia, después los que aún no tienen muestras suficientes y al final
+ * los que no alcanzan la tasa de éxito mínima. A igualdad se respeta el token indicado por el
+ * llamador. Los proveedores que cobran por lotes nunca son alternativa.
+ *
+ * Solo se pasa al siguiente proveedor cuando es seguro que el cargo no se procesó
+ * ({@link FailureReason#PROVIDER_UNAVAILABLE}: 429/503, sin capacidad, proveedor no configurado).
+ * Un timeout o un 5xx dejan el cargo en duda y se devuelven sin failover para no cobrar dos veces.
+ * El failover se limita a {@code failover-budget-ms} desde el inicio del cobro: no se inicia un
+ * intento si quedan menos de {@code min-attempt-ms} o si el p99 del proveedor supera lo que queda.
+ * Un token alternativo se valida (con caché) antes de su primer intento, también cuando el orden
+ * lo pone por delante del indicado; si no es válido se pasa al siguiente candidato.
+ */
+@Component
+public class PaymentRouter {
+
+    private static final Logger log = LoggerFactory.getLogger(PaymentRouter.class);
+    private static final int MAX_DECISION_LENGTH = 1000;
+
+    private final PaymentGatewayAdapter paymentGatewayAdapter;
+    private final PaymentTokenRepository paymentTokenRepository;
+    private final PaymentTokenValidationCache validationCache;
+    private final ProviderHealthTracker healthTracker;
+    private final BatchPaymentSubmitters batchSubmitters;
+    private final boolean enabled;
+    private final long failoverBudgetMs;
+    private final long minAttemptMs;
+
+    private final LongAdder routed = new LongAdder();
+    private final LongAdder rerouted = new LongAdder();
+    private final LongAdder failovers = new LongAdder();
+
+    public PaymentRouter(PaymentGatewayAdapter paymentGatewayAdapter,
+                         PaymentTokenRepository paymentTokenRepository,
+                         PaymentTokenValidationCache validationCache,
+                         ProviderHealthTracker healthTracker,
+                         BatchPaymentSubmitters batchSubmitters,
+                         @Value("${payment.routing.enabled:true}") boolean enabled,
+                         @Value("${payment.routing.failover-budget-ms:20000}") long failoverBudgetMs,
+                         @Value("${payment.routing.min-attempt-ms:2000}") long minAttemptMs) {
+        this.paymentGatewayAdapter = paymentGatewayAdapter;
+        this.paymentTokenRepository = paymentTokenRepository;
+        this.validationCache = validationCache;
+        this.healthTracker = healthTracker;
+        this.batchSubmitters = batchSubmitters;
+        this.enabled = enabled;
+        this.failoverBudgetMs = failoverBudgetMs;
+        this.minAttemptMs = minAttemptMs;
+    }
+
+    /**
+     * Cobra con el mejor proveedor disponible del tenant, con failover dentro del presupuesto.
+     *
+     * @param preferred token indicado por el llamador (ya validado)
+     * @param idempotencyKey clave de idempotencia que se envía al proveedor en cada intento
+     * @return future que siempre se completa con el resultado del enrutado; el fallo del cobro,
+     *         si lo hubo, está en {@link RoutedCharge#getFailure()}
+     */
+    public CompletableFuture<RoutedCharge> charge(PaymentToken preferred, BigDecimal amount, String tenantId, String invoiceId,
+                                                  String idempotencyKey) {
+        List<Candidate> candidates = candidates(preferred, tenantId);
+        Route route = new Route(preferred, candidates, System.nanoTime() + failoverBudgetMs * 1_000_000L);
+        routed.increment();
+        int first = firstCandidate(route);
+        if (candidates.get(first).token != preferred) {
+            rerouted.increment();
+        }
+        return attempt(route, first, amount, tenantId, invoiceId, idempotencyKey);
+    }
+
+    // -----------------------------
+    // Candidatos y orden
+    // -----------------------------
+
+    List<Candidate> candidates(PaymentToken preferred, String tenantId) {
+        List<Candidate> candidates = new ArrayList<>();
+        candidates.add(candidate(preferred));
+        if (!enabled) {
+            return candidates;
+        }
+
+        Set<String> providers = new HashSet<>();
+        providers.add(candidates.get(0).provider);
+        List<PaymentToken> usable;
+        try {
+            usable = paymentTokenRepository.findUsableByTenantId(tenantId, LocalDateTime.now());
+        } catch (RuntimeException e) {
+            // Sin alternativas el cobro sigue con el token indicado
+            log.warn("No se pudieron consultar los tokens del tenant [{}] para enrutar: {}", tenantId, e.getMessage());
+            return candidates;
+        }
+        for (PaymentToken token : usable) {
+            String provider = paymentGatewayAdapter.providerKeyOf(token.getGatewayProvider());
+            if (provider != null && !batchSubmitters.isBatchProvider(provider) && providers.add(provider)) {
+                candidates.add(candidate(token));
+            }
+        }
+        // Orden estable: a igualdad, el token indicado sigue primero
+        candidates.sort(Comparator.comparingInt((Candidate c) -> c.health.isHealthy() ? 0 : 1)
+                .thenComparingInt(c -> c.health.isKnown() ? 0 : 1)
+                .thenComparingLong(c -> Math.max(0, c.health.getP99Ms())));
+        return candidates;
+    }
+
+    private Candidate candidate(PaymentToken token) {
+        String provider = paymentGatewayAdapter.providerKeyOf(token.getGatewayProvider());
+        return new Candidate(token, provider, healthTracker.snapshot(provider));
+    }
+
+    // -----------------------------
+    // Intentos y failover
+    // -----------------------------
+
+    private CompletableFuture<RoutedCharge> attempt(Route route, int index, BigDecimal amount, String tenantId, String invoiceId,
+                                                    String idempotencyKey) {
+        Candidate candidate = route.candidates.get(index);
+        long started = System.nanoTime();
+        CompletableFuture<String> gatewayCall;
+        try {
+            gatewayCall = paymentGatewayAdapter.processPaymentAsync(candidate.token, amount, tenantId, invoiceId, idempotencyKey);
+        } catch (RuntimeException e) {
+            gatewayCall = CompletableFuture.failedFuture(e);
+        }
+
+        return gatewayCall.handle((transactionId, error) -> {
+            Throwable failure = error == null ? null : unwrap(error);
+            long latencyMs = (System.nanoTime() - started) / 1_000_000L;
+            healthTracker.record(candidate.provider, latencyMs, failure == null || isProviderResponse(failure));
+            route.hops.add(new Hop(candidate, latencyMs, transactionId, failure));
+            return failure;
+        }).thenCompose(failure -> {
+            if (!isUnavailable(failure)) {
+                return CompletableFuture.completedFuture(route.result());
+            }
+            int next = nextCandidate(route, index + 1);
+            if (next < 0) {
+                return CompletableFuture.completedFuture(route.result());
+            }
+            failovers.increment();
+            log.warn("Failover del pago de invoice {} del tenant {}: {} no disponible, se cobra con {}",
+                    invoiceId, tenantId, candidate.provider, route.candidates.get(next).provider);
+            return attempt(route, next, amount, tenantId, invoiceId, idempotencyKey);
+        });
+    }
+
+    /**
+     * Primer candidato con token utilizable; el token indicado ya viene validado y siempre lo es.
+     */
+    private int firstCandidate(Route route) {
+        for (int i = 0; i < route.candidates.size(); i++) {
+            Candidate candidate = route.candidates.get(i);
+            if (candidate.token == route.preferred || isValid(candidate.token)) {
+                return i;
+            }
+            route.notes.add(candidate.provider + " omitido: token no válido");
+        }
+        throw new IllegalStateException("El token indicado no figura entre los candidatos");
+    }
+
+    /**
+     * Siguiente candidato que puede intentarse dentro del presupuesto, o -1.
+     */
+    private int nextCandidate(Route route, int from) {
+        for (int i = from; i < route.candidates.size(); i++) {
+            Candidate candidate = route.candidates.get(i);
+            long remainingMs = (route.deadlineNanos - System.nanoTime()) / 1_000_000L;
+            if (remainingMs < minAttemptMs) {
+                route.notes.add("presupuesto de failover agotado (" + Math.max(0, remainingMs) + " ms restantes)");
+                return -1;
+            }
+            if (candidate.health.isKnown() && candidate.health.getP99Ms() > remainingMs) {
+                route.notes.add(candidate.provider + " omitido: p99 " + candidate.health.getP99Ms() + " ms > " + remainingMs + " ms restantes");
+                continue;
+            }
+            if (candidate.token != route.preferred && !isValid(candidate.token)) {
+                route.notes.add(candidate.provider + " omitido: token no válido");
+                continue;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private boolean isValid(PaymentToken token) {
+        try {
+            return validationCache.isValid(token);
+        } catch (RuntimeException e) {
+            log.warn("No se pudo validar el token alternativo {}: {}", token.getTokenId(), e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean isUnavailable(Throwable failure) {
+        return failure instanceof PaymentException paymentException
+                && paymentException.getFailureReason() == FailureReason.PROVIDER_UNAVAILABLE;
+    }
+
+    /**
+     * Un rechazo de negocio es una respuesta normal del proveedor y no resta salud.
+     */
+    private static boolean isProviderResponse(Throwable failure) {
+        if (!(failure instanceof PaymentException paymentException)) {
+            return false;
+        }
+        FailureReason reason = paymentException.getFailureReason();
+        return reason != FailureReason.NETWORK_ERROR
+                && reason != FailureReason.PROVIDER_UNAVAILABLE
+                && reason != FailureReason.UNKNOWN_ERROR;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    // -----------------------------
+    // Métricas
+    // -----------------------------
+
+    public long getRoutedCount() { return routed.sum(); }
+    public long getReroutedCount() { return rerouted.sum(); }
+    public long getFailoverCount() { return failovers.sum(); }
+
+    // -----------------------------
+    // Estado de un cobro enrutado
+    // -----------------------------
+
+    static final class Candidate {
+        private final PaymentToken token;
+        private final String provider;
+        private final ProviderHealth health;
+
+        private Candidate(PaymentToken token, String provider, ProviderHealth health) {
+            this.token = token;
+            this.provider = provider;
+            this.health = health;
+        }
+    }
+
+    private static final class Route {
+        private final PaymentToken preferred;
+        private final List<Candidate> candidates;
+        private final long deadlineNanos;
+        // Los intentos son secuenciales: cada uno se añade en la continuación del anterior
+        private final List<Hop> hops = new ArrayList<>();
+        private final List<String> notes = new ArrayList<>();
+
+        private Route(PaymentToken preferred, List<Candidate> candidates, long deadlineNanos) {
+            this.preferred = preferred;
+            this.candidates = candidates;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        private RoutedCharge result() {
+            StringBuilder decision = new StringBuilder("candidatos=");
+            decision.append(candidates.stream().map(c -> c.health.toString()).toList());
+            for (Hop hop : hops) {
+                decision.append("; ").append(hop.describe());
+            }
+            for (String note : notes) {
+                decision.append("; ").append(note);
+            }
+            String text = decision.length() > MAX_DECISION_LENGTH
+                    ? decision.substring(0, MAX_DECISION_LENGTH - 3) + "..."
+                    : decision.toString();
+            return new RoutedCharge(List.copyOf(hops), text);
+        }
+    }
+
+    /**
+     * Un intento de cobro contra un proveedor.
+     */
+    public static final class Hop {
+        private final PaymentToken token;
+        private final String provider;
+        private final long latencyMs;
+        private final String transactionId;
+        private final Throwable failure;
+
+        private Hop(Candidate candidate, long latencyMs, String transactionId, Throwable failure) {
+            this.token = candidate.token;
+            this.provider = candidate.provider;
+            this.latencyMs = latencyMs;
+            this.transactionId = transactionId;
+            this.failure = failure;
+        }
+
+        public PaymentToken getToken() { return token; }
+        public String getProvider() { return provider; }
+        public long getLatencyMs() { return latencyMs; }
+        public String getTransactionId() { return transactionId; }
+        public Throwable getFailure() { return failure; }
+
+        public String describe() {
+            if (failure == null) {
+                return provider + ": OK " + latencyMs + " ms";
+            }
+            String reason = failure instanceof PaymentException paymentException
+                    ? paymentException.getFailureReason().name()
+                    : failure.getClass().getSimpleName();
+            return provider + ": " + reason + " " + latencyMs + " ms";
+        }
+    }
+
+    /**
+     * Resultado de un cobro enrutado: el último intento decide el resultado; los anteriores son
+     * proveedores no disponibles que se descartaron por failover.
+     */
+    public static final class RoutedCharge {
+        private final List<Hop> hops;
+        private final String decision;
+
+        private RoutedCharge(List<Hop> hops, String decision) {
+            this.hops = hops;
+            this.decision = decision;
+        }
+
+        public Hop getFinalHop() { return hops.get(hops.size() - 1); }
+        public PaymentToken getToken() { return getFinalHop().getToken(); }
+        public String getProvider() { return getFinalHop().getProvider(); }
+        public String getTransactionId() { return getFinalHop().getTransactionId(); }
+        public Throwable getFailure() { return getFinalHop().getFailure(); }
+        public List<Hop> getFailedOverHops() { return hops.subList(0, hops.size() - 1); }
+        public List<Hop> getHops() { return hops; }
+        public String getDecision() { return decision; }
+    }
+}
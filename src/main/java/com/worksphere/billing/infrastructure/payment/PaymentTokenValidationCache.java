@@ -0,0 +1,224 @@
+package com.worksphere.billing.infrastructure.payment;
+
+import com.worksphere.billing.domain.model.PaymentToken;
+import com.worksphere.billing.service.PaymentGatewayAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caché del resultado de validar un token de pago contra su pasarela.
+ *
+ * - Índice por id del token; dentro, un resultado por proveedor canónico.
+ * - Un token aceptado se recuerda {@code positive-ttl} (un día por defecto), nunca más allá de
+ *   {@code PaymentToken.expiresAt}; uno rechazado, {@code negative-ttl}.
+ * - Validaciones simultáneas del mismo token comparten una única llamada remota.
+ * - Los errores de comunicación no se guardan: el siguiente intento vuelve a consultar.
+ * - {@link #invalidate(UUID)} descarta las entradas del token al revocarlo o al recibir un aviso de
+ *   la pasarela. Cada token lleva una generación que la invalidación incrementa; una validación
+ *   remota iniciada antes no guarda su resultado, aunque termine después.
+ */
+@Component
+public class PaymentTokenValidationCache {
+
+    private static final Logger log = LoggerFactory.getLogger(PaymentTokenValidationCache.class);
+
+    private final PaymentGatewayAdapter paymentGatewayAdapter;
+    private final Duration positiveTtl;
+    private final Duration negativeTtl;
+    private final int maxEntries;
+
+    // Los estados son inmutables y solo se sustituyen con compute, atómico por token
+    private final Map<UUID, TokenEntries> cache = new ConcurrentHashMap<>();
+    private final Map<CacheKey, CompletableFuture<Boolean>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder remoteValidations = new LongAdder();
+    private final LongAdder discardedResults = new LongAdder();
+
+    public PaymentTokenValidationCache(PaymentGatewayAdapter paymentGatewayAdapter,
+                                       @Value("${payment.token-validation.positive-ttl-ms:86400000}") long positiveTtlMs,
+                                       @Value("${payment.token-validation.negative-ttl-ms:600000}") long negativeTtlMs,
+                                       @Value("${payment.token-validation.max-entries:200000}") int maxEntries) {
+        this.paymentGatewayAdapter = paymentGatewayAdapter;
+        this.positiveTtl = Duration.ofMillis(positiveTtlMs);
+        this.negativeTtl = Duration.ofMillis(negativeTtlMs);
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Indica si la pasarela acepta el token, consultándola solo si no hay un resultado vigente.
+     */
+    public boolean isValid(PaymentToken token) {
+        UUID tokenId = token.getTokenId();
+        String gateway = paymentGatewayAdapter.providerKeyOf(token.getGatewayProvider());
+        LocalDateTime now = LocalDateTime.now();
+        TokenEntries entries = cache.get(tokenId);
+        CacheEntry entry = entries == null ? null : entries.byGateway.get(gateway);
+        if (entry != null && now.isBefore(entry.expiresAt)) {
+            hits.increment();
+            return entry.valid;
+        }
+
+        CacheKey key = new CacheKey(tokenId, gateway);
+        CompletableFuture<Boolean> mine = new CompletableFuture<>();
+        CompletableFuture<Boolean> shared = inFlight.putIfAbsent(key, mine);
+        if (shared != null) {
+            hits.increment();
+            return shared.join();
+        }
+        // La generación se fija antes de la llamada remota: una invalidación posterior la descarta
+        long generation = cache.compute(tokenId, (id, current) -> current == null
+                ? new TokenEntries(0, 1, Map.of())
+                : current.withValidating(current.validating + 1)).generation;
+        try {
+            remoteValidations.increment();
+            boolean valid = paymentGatewayAdapter.validateToken(token);
+            store(tokenId, gateway, token, valid, now, generation);
+            mine.complete(valid);
+            return valid;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            cache.computeIfPresent(tokenId, (id, current) -> current.withValidating(current.validating - 1).orNullIfUnused());
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private void store(UUID tokenId, String gateway, PaymentToken token, boolean valid, LocalDateTime now, long generation) {
+        LocalDateTime expiresAt = now.plus(valid ? positiveTtl : negativeTtl);
+        if (token.getExpiresAt() != null && token.getExpiresAt().isBefore(expiresAt)) {
+            expiresAt = token.getExpiresAt();
+        }
+        if (cache.size() >= maxEntries) {
+            purgeExpired();
+            if (cache.size() >= maxEntries) {
+                return;
+            }
+        }
+        CacheEntry entry = new CacheEntry(valid, expiresAt);
+        cache.computeIfPresent(tokenId, (id, current) -> {
+            if (current.generation != generation) {
+                discardedResults.increment();
+                return current;
+            }
+            return current.with(gateway, entry);
+        });
+    }
+
+    // -----------------------------
+    // Invalidación
+    // -----------------------------
+
+    /**
+     * Descarta los resultados de un token en todas sus pasarelas, incluidos los de validaciones en curso.
+     */
+    public void invalidate(UUID tokenId) {
+        TokenEntries previous = cache.get(tokenId);
+        cache.computeIfPresent(tokenId, (id, current) -> current.validating == 0
+                ? null
+                : new TokenEntries(current.generation + 1, current.validating, Map.of()));
+        if (previous != null) {
+            log.info("Validación en caché del token {} invalidada", tokenId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${payment.token-validation.purge-interval-ms:300000}")
+    public void purgeExpired() {
+        LocalDateTime now = LocalDateTime.now();
+        for (UUID tokenId : cache.keySet()) {
+            cache.computeIfPresent(tokenId, (id, current) -> current.withoutExpired(now).orNullIfUnused());
+        }
+    }
+
+    // -----------------------------
+    // Métricas
+    // -----------------------------
+    public long getHitCount() { return hits.sum(); }
+    public long getRemoteValidationCount() { return remoteValidations.sum(); }
+    public long getDiscardedResultCount() { return discardedResults.sum(); }
+    public int size() { return cache.values().stream().mapToInt(entries -> entries.byGateway.size()).sum(); }
+
+    private static final class CacheKey {
+        private final UUID tokenId;
+        private final String gateway;
+
+        private CacheKey(UUID tokenId, String gateway) {
+            this.tokenId = tokenId;
+            this.gateway = gateway;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CacheKey other)) return false;
+            return tokenId.equals(other.tokenId) && Objects.equals(gateway, other.gateway);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * tokenId.hashCode() + Objects.hashCode(gateway);
+        }
+    }
+
+    /**
+     * Resultados de un token por proveedor, su generación y las validaciones remotas en curso.
+     */
+    private static final class TokenEntries {
+        private final long generation;
+        private final int validating;
+        private final Map<String, CacheEntry> byGateway;
+
+        private TokenEntries(long generation, int validating, Map<String, CacheEntry> byGateway) {
+            this.generation = generation;
+            this.validating = validating;
+            this.byGateway = byGateway;
+        }
+
+        private TokenEntries withValidating(int validating) {
+            return new TokenEntries(generation, validating, byGateway);
+        }
+
+        private TokenEntries with(String gateway, CacheEntry entry) {
+            Map<String, CacheEntry> updated = new HashMap<>(byGateway);
+            updated.put(gateway, entry);
+            return new TokenEntries(generation, validating, updated);
+        }
+
+        private TokenEntries withoutExpired(LocalDateTime now) {
+            Map<String, CacheEntry> live = new HashMap<>(byGateway);
+            live.values().removeIf(entry -> !now.isBefore(entry.expiresAt));
+            return live.size() == byGateway.size() ? this : new TokenEntries(generation, validating, live);
+        }
+
+        /**
+         * Sin resultados ni validaciones en curso el token sale del índice; su generación ya no protege nada.
+         */
+        private TokenEntries orNullIfUnused() {
+            return byGateway.isEmpty() && validating == 0 ? null : this;
+        }
+    }
+
+    private static final class CacheEntry {
+        private final boolean valid;
+        private final LocalDateTime expiresAt;
+
+        private CacheEntry(boolean valid, LocalDateTime expiresAt) {
+            this.valid = valid;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
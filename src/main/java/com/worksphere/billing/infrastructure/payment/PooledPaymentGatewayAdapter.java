@@ -0,0 +1,156 @@
+package com.worksphere.billing.infrastructure.payment;
+
+import com.worksphere.billing.domain.exception.PaymentException;
+import com.worksphere.billing.domain.exception.PaymentException.FailureReason;
+import com.worksphere.billing.domain.model.PaymentResult;
+import com.worksphere.billing.domain.model.PaymentToken;
+import com.worksphere.billing.service.PaymentGatewayAdapter;
+import com.worksphere.billingengine.config.PaymentConfig.PaymentProviderConfig;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Adaptador no bloqueante de pasarelas de pago.
+ *
+ * Cualidades:
+ * - Un {@link PaymentProviderClient} por proveedor de {@code PaymentConfig.paymentProviders}:
+ *   pool de conexiones, timeout y límite de concurrencia adaptativo propios (el máximo es
+ *   {@code max-concurrency} del proveedor; el valor efectivo se ajusta a su capacidad real).
+ * - Ningún hilo espera la respuesta de la pasarela; los futures se completan en un scheduler
+ *   elástico para que el llamador pueda abrir transacciones en la continuación.
+ */
+@Component
+public class PooledPaymentGatewayAdapter implements PaymentGatewayAdapter {
+
+    private static final Logger log = LoggerFactory.getLogger(PooledPaymentGatewayAdapter.class);
+
+    private final Map<String, PaymentProviderClient> clients = new HashMap<>();
+    private final Map<String, String> aliases = new HashMap<>();
+
+    public PooledPaymentGatewayAdapter(Map<String, PaymentProviderConfig> paymentProviders,
+                                       @Value("${payment.limiter.initial-limit:4}") int initialLimit,
+                                       @Value("${payment.limiter.min-limit:1}") int minLimit,
+                                       @Value("${payment.limiter.backoff-ratio:0.7}") double backoffRatio,
+                                       @Value("${payment.limiter.rtt-tolerance:2.0}") double rttTolerance,
+                                       @Value("${payment.limiter.max-queue:1000}") int maxQueue,
+                                       @Value("${payment.limiter.queue-timeout-ms:5000}") long queueTimeoutMs,
+                                       @Value("${payment.limiter.throttle-retries:2}") int throttleRetries) {
+        PaymentProviderClient.LimiterSettings limiterSettings = new PaymentProviderClient.LimiterSettings(
+                initialLimit, minLimit, backoffRatio, rttTolerance, maxQueue, queueTimeoutMs, throttleRetries);
+        paymentProviders.forEach((key, config) -> {
+            aliases.put(normalize(key), key);
+            aliases.put(normalize(config.getName()), key);
+            if (config.getEndpoint() == null || config.getEndpoint().isEmpty()) {
+                log.warn("Proveedor de pago [{}] sin endpoint configurado: sus operaciones fallarán", key);
+                return;
+            }
+            clients.put(key, new PaymentProviderClient(key, config, limiterSettings));
+            log.info("Proveedor de pago [{}]: endpoint={}, timeout-ms={}, max-connections={}, max-concurrency={}",
+                    key, config.getEndpoint(), config.getTimeoutMs(), config.getMaxConnections(), config.getMaxConcurrency());
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> processPaymentAsync(PaymentToken token, BigDecimal amount, String tenantId, String invoiceId,
+                                                         String idempotencyKey) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("token", token.getEncryptedToken());
+        body.put("amount", amount);
+        body.put("tenant_id", tenantId);
+        body.put("reference", invoiceId);
+
+        return call(token.getGatewayProvider(), "/payments", body, null, invoiceId, idempotencyKey)
+                .flatMap(response -> {
+                    Object transactionId = response.get("transaction_id");
+                    if (transactionId == null) {
+                        return Mono.error(new PaymentException("Respuesta de la pasarela sin transaction_id",
+                                null, null, invoiceId, FailureReason.UNKNOWN_ERROR, false));
+                    }
+                    return Mono.just(transactionId.toString());
+                })
+                .publishOn(Schedulers.boundedElastic())
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> validateTokenAsync(PaymentToken token) {
+        Map<String, Object> body = Map.of("token", token.getEncryptedToken());
+        return call(token.getGatewayProvider(), "/tokens/validate", body, null, null, null)
+                .map(response -> Boolean.TRUE.equals(response.get("valid")))
+                .publishOn(Schedulers.boundedElastic())
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Void> reversePaymentAsync(PaymentResult paymentResult, String idempotencyKey) {
+        String transactionId = paymentResult.getGatewayTransactionId();
+        String invoiceId = paymentResult.getInvoiceId() != null ? paymentResult.getInvoiceId().toString() : null;
+        return call(paymentResult.getGatewayProvider(), "/payments/" + transactionId + "/reversal",
+                Map.of("transaction_id", transactionId), transactionId, invoiceId, idempotencyKey)
+                .then()
+                .publishOn(Schedulers.boundedElastic())
+                .toFuture();
+    }
+
+    @Override
+    public String providerKeyOf(String gatewayProvider) {
+        return gatewayProvider == null ? null : aliases.getOrDefault(normalize(gatewayProvider), gatewayProvider);
+    }
+
+    private Mono<Map<String, Object>> call(String provider, String path, Object body, String paymentId, String invoiceId,
+                                           String idempotencyKey) {
+        String key = provider == null ? null : aliases.get(normalize(provider));
+        PaymentProviderClient client = key == null ? null : clients.get(key);
+        if (client == null) {
+            return Mono.error(new PaymentException("Proveedor de pago no disponible: " + provider,
+                    paymentId, null, invoiceId, FailureReason.PROVIDER_UNAVAILABLE, false));
+        }
+        return client.post(path, body, paymentId, invoiceId, idempotencyKey);
+    }
+
+    private static String normalize(String provider) {
+        return provider == null ? "" : provider.toLowerCase(Locale.ROOT).replaceAll("[\\s_-]", "");
+    }
+
+    /**
+     * Estado del limitador de cada proveedor: límite actual, llamadas en curso, profundidad de
+     * la cola, respuestas de sobrecarga y peticiones rechazadas por falta de capacidad.
+     */
+    public Map<String, Map<String, Number>> getProviderLimits() {
+        Map<String, Map<String, Number>> snapshot = new LinkedHashMap<>();
+        clients.forEach((key, client) -> {
+            AdaptiveConcurrencyLimiter limiter = client.getLimiter();
+            Map<String, Number> metrics = new LinkedHashMap<>();
+            metrics.put("limit", limiter.getLimit());
+            metrics.put("in-flight", limiter.getInFlight());
+            metrics.put("queue-depth", limiter.getQueueDepth());
+            metrics.put("dropped", limiter.getDroppedCount());
+            metrics.put("rejected", limiter.getRejectedCount());
+            snapshot.put(key, metrics);
+        });
+        return snapshot;
+    }
+
+    @Scheduled(fixedDelayString = "${payment.limiter.metrics-log-interval-ms:60000}")
+    public void logLimits() {
+        getProviderLimits().forEach((key, metrics) -> log.info("Limitador de pagos [{}]: {}", key, metrics));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        clients.values().forEach(PaymentProviderClient::dispose);
+    }
+}
@@ -0,0 +1,138 @@
+package com.worksphere.billing.infrastructure.payment;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Salud de cada proveedor de pago según sus cobros recientes.
+ *
+ * Por proveedor se guarda una ventana circular con las últimas {@code window-size} llamadas
+ * (latencia y si el proveedor respondió); solo cuentan las de los últimos {@code window-ms}.
+ * Un rechazo de negocio (fondos insuficientes, tarjeta rechazada) es una respuesta sana del
+ * proveedor: solo la sobrecarga, los timeouts y los errores de comunicación cuentan como fallo.
+ *
+ * Un proveedor con menos de {@code min-samples} llamadas en la ventana no tiene estadística
+ * fiable: se considera sano y sin latencia conocida. El estado vive en memoria de cada instancia.
+ */
+@Component
+public class ProviderHealthTracker {
+
+    private final int windowSize;
+    private final long windowMs;
+    private final int minSamples;
+    private final double minSuccessRate;
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    public ProviderHealthTracker(@Value("${payment.routing.health.window-size:200}") int windowSize,
+                                 @Value("${payment.routing.health.window-ms:300000}") long windowMs,
+                                 @Value("${payment.routing.health.min-samples:20}") int minSamples,
+                                 @Value("${payment.routing.health.min-success-rate:0.9}") double minSuccessRate) {
+        this.windowSize = Math.max(1, windowSize);
+        this.windowMs = windowMs;
+        this.minSamples = Math.max(1, Math.min(minSamples, this.windowSize));
+        this.minSuccessRate = minSuccessRate;
+    }
+
+    public void record(String provider, long latencyMs, boolean success) {
+        windows.computeIfAbsent(provider, key -> new Window(windowSize)).add(System.currentTimeMillis(), latencyMs, success);
+    }
+
+    public ProviderHealth snapshot(String provider) {
+        Window window = windows.get(provider);
+        if (window == null) {
+            return new ProviderHealth(provider, 0, 1.0, -1, true);
+        }
+        return window.snapshot(provider, System.currentTimeMillis() - windowMs);
+    }
+
+    /**
+     * Estado de todos los proveedores con llamadas registradas.
+     */
+    public Map<String, ProviderHealth> getProviderHealth() {
+        Map<String, ProviderHealth> health = new LinkedHashMap<>();
+        windows.keySet().forEach(provider -> health.put(provider, snapshot(provider)));
+        return health;
+    }
+
+    private final class Window {
+        private final long[] timestamps;
+        private final long[] latencies;
+        private final boolean[] successes;
+        private int next;
+        private int size;
+
+        private Window(int capacity) {
+            this.timestamps = new long[capacity];
+            this.latencies = new long[capacity];
+            this.successes = new boolean[capacity];
+        }
+
+        private synchronized void add(long now, long latencyMs, boolean success) {
+            timestamps[next] = now;
+            latencies[next] = latencyMs;
+            successes[next] = success;
+            next = (next + 1) % timestamps.length;
+            size = Math.min(size + 1, timestamps.length);
+        }
+
+        private synchronized ProviderHealth snapshot(String provider, long since) {
+            long[] recent = new long[size];
+            int samples = 0;
+            int ok = 0;
+            for (int i = 0; i < size; i++) {
+                if (timestamps[i] >= since) {
+                    recent[samples++] = latencies[i];
+                    if (successes[i]) {
+                        ok++;
+                    }
+                }
+            }
+            if (samples < minSamples) {
+                return new ProviderHealth(provider, samples, samples == 0 ? 1.0 : (double) ok / samples, -1, true);
+            }
+            Arrays.sort(recent, 0, samples);
+            long p99 = recent[Math.min(samples - 1, (int) Math.ceil(samples * 0.99) - 1)];
+            double successRate = (double) ok / samples;
+            return new ProviderHealth(provider, samples, successRate, p99, successRate >= minSuccessRate);
+        }
+    }
+
+    /**
+     * Estado de un proveedor; {@code p99Ms} es -1 mientras no hay muestras suficientes.
+     */
+    public static final class ProviderHealth {
+        private final String provider;
+        private final int samples;
+        private final double successRate;
+        private final long p99Ms;
+        private final boolean healthy;
+
+        ProviderHealth(String provider, int samples, double successRate, long p99Ms, boolean healthy) {
+            this.provider = provider;
+            this.samples = samples;
+            this.successRate = successRate;
+            this.p99Ms = p99Ms;
+            this.healthy = healthy;
+        }
+
+        public String getProvider() { return provider; }
+        public int getSamples() { return samples; }
+        public double getSuccessRate() { return successRate; }
+        public long getP99Ms() { return p99Ms; }
+        public boolean isHealthy() { return healthy; }
+        public boolean isKnown() { return p99Ms >= 0; }
+
+        @Override
+        public String toString() {
+            return isKnown()
+                    ? String.format(Locale.ROOT, "%s(p99=%dms, ok=%.1f%%, n=%d)", provider, p99Ms, successRate * 100, samples)
+                    : provider + "(sin datos, n=" + samples + ")";
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package com.worksphere.billing.infrastructure.payment;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Lectura en streaming de ficheros de liquidación de los proveedores de pago.
+ *
+ * Formatos admitidos según la extensión:
+ * - {@code .csv}: primera línea de cabecera; admite campos entre comillas.
+ * - {@code .json}: un array de objetos (o un único objeto con un array dentro, p. ej. {@code {"data": [...]}}).
+ * - {@code .jsonl}: un objeto por línea.
+ *
+ * Columnas reconocidas: {@code transaction_id} (o {@code gateway_transaction_id}, {@code id}),
+ * {@code amount}, {@code status} (o {@code type}) y opcionalmente la fecha del cargo
+ * ({@code created_at} o {@code date}) o, en su defecto, la de liquidación ({@code settled_at});
+ * {@link SettlementRecord#isChargeDate()} indica cuál de las dos se leyó. Ningún formato se carga
+ * completo en memoria: cada fila se entrega al consumidor y se descarta. Las filas sin
+ * identificador o con importe ilegible se cuentan como descartadas.
+ */
+@Component
+public class SettlementFileReader {
+
+    private static final Logger log = LoggerFactory.getLogger(SettlementFileReader.class);
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int MAX_LOGGED_SKIPS = 10;
+
+    private static final Set<String> TRANSACTION_ID = Set.of("transaction_id", "gateway_transaction_id", "id");
+    private static final Set<String> AMOUNT = Set.of("amount", "gross_amount");
+    private static final Set<String> STATUS = Set.of("status", "type");
+    private static final Set<String> CHARGE_DATE = Set.of("created_at", "date");
+    private static final Set<String> SETTLEMENT_DATE = Set.of("settled_at");
+
+    private static final Set<String> CHARGE_VALUES = Set.of("settled", "succeeded", "success", "paid", "captured",
+            "charge", "completed", "ok");
+    private static final Set<String> REFUND_VALUES = Set.of("refunded", "refund", "reversed", "reversal", "chargeback");
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    public static boolean isSupported(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".csv") || name.endsWith(".json") || name.endsWith(".jsonl");
+    }
+
+    /**
+     * Entrega cada fila válida del fichero al consumidor, en el orden del fichero.
+     */
+    public ReadResult read(Path file, Consumer<SettlementRecord> consumer) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        ReadResult result = new ReadResult();
+        if (name.endsWith(".csv")) {
+            readCsv(file, consumer, result);
+        } else if (name.endsWith(".jsonl")) {
+            readJsonLines(file, consumer, result);
+        } else if (name.endsWith(".json")) {
+            try (InputStream in = Files.newInputStream(file); JsonParser parser = jsonFactory.createParser(in)) {
+                readJson(parser, consumer, result);
+            }
+        } else {
+            throw new IllegalArgumentException("Formato de liquidación no soportado: " + file.getFileName());
+        }
+        return result;
+    }
+
+    // -----------------------------
+    // CSV
+    // -----------------------------
+
+    private void readCsv(Path file, Consumer<SettlementRecord> consumer, ReadResult result) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            String header = reader.readLine();
+            if (header == null) {
+                return;
+            }
+            List<String> cols = new ArrayList<>();
+            split(stripBom(header), cols);
+            int txCol = -1, amountCol = -1, statusCol = -1, chargeDateCol = -1, settledDateCol = -1;
+            for (int i = 0; i < cols.size(); i++) {
+                String col = cols.get(i).trim().toLowerCase(Locale.ROOT);
+                if (txCol < 0 && TRANSACTION_ID.contains(col)) txCol = i;
+                else if (amountCol < 0 && AMOUNT.contains(col)) amountCol = i;
+                else if (statusCol < 0 && STATUS.contains(col)) statusCol = i;
+                else if (chargeDateCol < 0 && CHARGE_DATE.contains(col)) chargeDateCol = i;
+                else if (settledDateCol < 0 && SETTLEMENT_DATE.contains(col)) settledDateCol = i;
+            }
+            if (txCol < 0 || amountCol < 0) {
+                throw new IOException("Cabecera de liquidación sin transaction_id o amount: " + header);
+            }
+            boolean chargeDate = chargeDateCol >= 0;
+            int dateCol = chargeDate ? chargeDateCol : settledDateCol;
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                split(line, cols);
+                accept(column(cols, txCol), column(cols, amountCol), column(cols, statusCol), column(cols, dateCol),
+                        chargeDate, line, consumer, result);
+            }
+        }
+    }
+
+    /**
+     * Divide una línea CSV; la ruta sin comillas solo busca comas.
+     */
+    static void split(String line, List<String> out) {
+        out.clear();
+        if (line.indexOf('"') < 0) {
+            int start = 0;
+            int comma;
+            while ((comma = line.indexOf(',', start)) >= 0) {
+                out.add(line.substring(start, comma));
+                start = comma + 1;
+            }
+            out.add(line.substring(start));
+            return;
+        }
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                out.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        out.add(field.toString());
+    }
+
+    private static String column(List<String> cols, int index) {
+        return index >= 0 && index < cols.size() ? cols.get(index) : null;
+    }
+
+    private static String stripBom(String header) {
+        return !header.isEmpty() && header.charAt(0) == '\uFEFF' ? header.substring(1) : header;
+    }
+
+    // -----------------------------
+    // JSON
+    // -----------------------------
+
+    private void readJsonLines(Path file, Consumer<SettlementRecord> consumer, ReadResult result) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try (JsonParser parser = jsonFactory.createParser(line)) {
+                    if (parser.nextToken() == JsonToken.START_OBJECT) {
+                        readObject(parser, consumer, result);
+                    } else {
+                        skip(result, line);
+                    }
+                } catch (IOException e) {
+                    skip(result, line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Recorre el documento y trata como fila cada objeto que contenga un identificador de
+     * transacción, a cualquier profundidad dentro de arrays.
+     */
+    private void readJson(JsonParser parser, Consumer<SettlementRecord> consumer, ReadResult result) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            if (token == JsonToken.START_ARRAY) {
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+                    if (token == JsonToken.START_OBJECT) {
+                        readObject(parser, consumer, result);
+                    } else if (token == JsonToken.START_ARRAY) {
+                        parser.skipChildren();
+                    }
+                }
+            } else if (token == JsonToken.START_OBJECT && parser.getParsingContext().getParent().inRoot()) {
+                // Objeto raíz: se busca el array de filas entre sus campos
+                continue;
+            } else if (token == JsonToken.START_OBJECT) {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readObject(JsonParser parser, Consumer<SettlementRecord> consumer, ReadResult result) throws IOException {
+        String transactionId = null, amount = null, status = null, chargedAt = null, settledAt = null;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_OBJECT && token != null) {
+            String field = parser.currentName().toLowerCase(Locale.ROOT);
+            token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            if (token == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            if (transactionId == null && TRANSACTION_ID.contains(field)) transactionId = parser.getText();
+            else if (amount == null && AMOUNT.contains(field)) amount = parser.getText();
+            else if (status == null && STATUS.contains(field)) status = parser.getText();
+            else if (chargedAt == null && CHARGE_DATE.contains(field)) chargedAt = parser.getText();
+            else if (settledAt == null && SETTLEMENT_DATE.contains(field)) settledAt = parser.getText();
+        }
+        accept(transactionId, amount, status, chargedAt != null ? chargedAt : settledAt, chargedAt != null,
+                transactionId, consumer, result);
+    }
+
+    // -----------------------------
+    // Filas
+    // -----------------------------
+
+    private static void accept(String transactionId, String amount, String status, String occurredAt, boolean chargeDate,
+                               String raw, Consumer<SettlementRecord> consumer, ReadResult result) {
+        if (transactionId == null || transactionId.isBlank() || amount == null) {
+            skip(result, raw);
+            return;
+        }
+        BigDecimal parsedAmount;
+        try {
+            parsedAmount = new BigDecimal(amount.trim());
+        } catch (NumberFormatException e) {
+            skip(result, raw);
+            return;
+        }
+        result.rows++;
+        consumer.accept(new SettlementRecord(sanitize(transactionId.trim()), kindOf(status), parsedAmount,
+                parseDate(occurredAt), chargeDate));
+    }
+
+    private static void skip(ReadResult result, String raw) {
+        if (result.skipped++ < MAX_LOGGED_SKIPS) {
+            log.warn("Fila de liquidación descartada: {}", raw);
+        }
+    }
+
+    private static Kind kindOf(String status) {
+        if (status == null) {
+            return Kind.CHARGE;
+        }
+        String value = status.trim().toLowerCase(Locale.ROOT);
+        if (CHARGE_VALUES.contains(value)) {
+            return Kind.CHARGE;
+        }
+        return REFUND_VALUES.contains(value) ? Kind.REFUND : Kind.OTHER;
+    }
+
+    private static LocalDateTime parseDate(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String text = value.trim();
+        try {
+            if (text.length() == 10) {
+                return LocalDate.parse(text).atStartOfDay();
+            }
+            if (text.endsWith("Z")) {
+                return LocalDateTime.ofInstant(Instant.parse(text), ZoneId.systemDefault());
+            }
+            if (text.length() > 19 && (text.charAt(text.length() - 6) == '+' || text.charAt(text.length() - 6) == '-')) {
+                return OffsetDateTime.parse(text).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+            }
+            return LocalDateTime.parse(text);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Los ficheros de partición usan tabuladores y saltos de línea como separadores.
+     */
+    private static String sanitize(String transactionId) {
+        for (int i = 0; i < transactionId.length(); i++) {
+            char c = transactionId.charAt(i);
+            if (c == '\t' || c == '\n' || c == '\r') {
+                return transactionId.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+            }
+        }
+        return transactionId;
+    }
+
+    // -----------------------------
+    // Tipos
+    // -----------------------------
+
+    public enum Kind {
+        CHARGE,   // cargo liquidado
+        REFUND,   // devolución o contracargo
+        OTHER     // fallido, pendiente u otro estado del proveedor
+    }
+
+    /**
+     * Una fila de la liquidación.
+     */
+    public static final class SettlementRecord {
+        private final String transactionId;
+        private final Kind kind;
+        private final BigDecimal amount;
+        private final LocalDateTime occurredAt;
+        private final boolean chargeDate;
+
+        public SettlementRecord(String transactionId, Kind kind, BigDecimal amount, LocalDateTime occurredAt,
+                                boolean chargeDate) {
+            this.transactionId = transactionId;
+            this.kind = kind;
+            this.amount = amount;
+            this.occurredAt = occurredAt;
+            this.chargeDate = chargeDate;
+        }
+
+        public String getTransactionId() { return transactionId; }
+        public Kind getKind() { return kind; }
+        public BigDecimal getAmount() { return amount; }
+        public LocalDateTime getOccurredAt() { return occurredAt; }
+        /** true si la fecha es la del cargo; false si es la de liquidación. */
+        public boolean isChargeDate() { return chargeDate; }
+    }
+
+    /**
+     * Filas entregadas y filas descartadas por ilegibles.
+     */
+    public static final class ReadResult {
+        private long rows;
+        private long skipped;
+
+        public long getRows() { return rows; }
+        public long getSkipped() { return skipped; }
+    }
+}
@@ -0,0 +1,90 @@
+package com.worksphere.billing.infrastructure.repository;
+
+import com.worksphere.billing.domain.model.BillingEventOutboxMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repositorio del outbox transaccional de eventos de facturación.
+ */
+public interface BillingEventOutboxRepository extends JpaRepository<BillingEventOutboxMessage, Long> {
+
+    /**
+     * Inserta el evento salvo que ya exista (idempotencia por restricción única, sin lectura previa).
+     *
+     * @return 1 si se insertó, 0 si el evento ya estaba en el outbox
+     */
+    @Modifying
+    @Query(value = "INSERT INTO billing_event_outbox " +
+            "(event_id, tenant_id, event_type, topic, message_key, payload, created_at, attempts) " +
+            "VALUES (:eventId, :tenantId, :eventType, :topic, :messageKey, :payload, :createdAt, 0) " +
+            "ON CONFLICT (event_id) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("eventId") String eventId,
+                       @Param("tenantId") String tenantId,
+                       @Param("eventType") String eventType,
+                       @Param("topic") String topic,
+                       @Param("messageKey") String messageKey,
+                       @Param("payload") String payload,
+                       @Param("createdAt") Instant createdAt);
+
+    /**
+     * Lock asesor de transacción: serializa el reclamo de lotes entre instancias. Solo se mantiene
+     * durante la transacción corta del reclamo, nunca mientras se espera a Kafka.
+     */
+    @Query(value = "SELECT pg_try_advisory_xact_lock(:lockId)", nativeQuery = true)
+    boolean tryRelayLock(@Param("lockId") long lockId);
+
+    /**
+     * Indica si hay un lote en vuelo con lease vigente: mientras exista, ninguna otra instancia
+     * reclama, de modo que solo hay un relay publicando y se conserva el orden.
+     */
+    @Query(value = "SELECT EXISTS (SELECT 1 FROM billing_event_outbox " +
+            "WHERE sent_at IS NULL AND dead_lettered_at IS NULL AND claimed_until > :now)", nativeQuery = true)
+    boolean hasActiveClaim(@Param("now") Instant now);
+
+    @Query(value = "SELECT * FROM billing_event_outbox WHERE sent_at IS NULL AND dead_lettered_at IS NULL " +
+            "ORDER BY id LIMIT :limit", nativeQuery = true)
+    List<BillingEventOutboxMessage> findPendingBatch(@Param("limit") int limit);
+
+    @Modifying
+    @Query("UPDATE BillingEventOutboxMessage m SET m.claimToken = :token, m.claimedUntil = :until WHERE m.id IN :ids")
+    int claim(@Param("ids") Collection<Long> ids, @Param("token") String token, @Param("until") Instant until);
+
+    // Las marcas exigen el token del reclamo: un relay cuyo lease venció no pisa al que lo sustituyó
+
+    @Modifying
+    @Query("UPDATE BillingEventOutboxMessage m SET m.sentAt = :sentAt, m.attempts = m.attempts + 1, m.lastError = null, " +
+            "m.claimedUntil = null WHERE m.id IN :ids AND m.claimToken = :token")
+    int markSent(@Param("ids") Collection<Long> ids, @Param("token") String token, @Param("sentAt") Instant sentAt);
+
+    @Modifying
+    @Query("UPDATE BillingEventOutboxMessage m SET m.attempts = m.attempts + 1, m.lastError = :error, m.claimedUntil = null " +
+            "WHERE m.id IN :ids AND m.claimToken = :token")
+    int markFailed(@Param("ids") Collection<Long> ids, @Param("token") String token, @Param("error") String error);
+
+    @Modifying
+    @Query("UPDATE BillingEventOutboxMessage m SET m.attempts = m.attempts + 1, m.lastError = :error, m.claimedUntil = null, " +
+            "m.deadLetteredAt = :at WHERE m.id IN :ids AND m.claimToken = :token")
+    int markDeadLettered(@Param("ids") Collection<Long> ids, @Param("token") String token,
+                         @Param("error") String error, @Param("at") Instant at);
+
+    @Modifying
+    @Query("UPDATE BillingEventOutboxMessage m SET m.claimedUntil = null WHERE m.id IN :ids AND m.claimToken = :token")
+    int releaseClaim(@Param("ids") Collection<Long> ids, @Param("token") String token);
+
+    @Modifying
+    @Query("DELETE FROM BillingEventOutboxMessage m WHERE m.sentAt IS NOT NULL AND m.sentAt < :before")
+    int deleteSentBefore(@Param("before") Instant before);
+
+    @Query("SELECT COUNT(m) FROM BillingEventOutboxMessage m WHERE m.sentAt IS NULL AND m.deadLetteredAt IS NULL")
+    long countPending();
+
+    @Query("SELECT COUNT(m) FROM BillingEventOutboxMessage m WHERE m.deadLetteredAt IS NOT NULL")
+    long countDeadLettered();
+}
@@ -0,0 +1,69 @@
+package com.worksphere.billing.infrastructure.repository;
+
+import com.worksphere.billing.domain.model.EmailOutboxMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Repositorio de la bandeja de salida de correos.
+ */
+public interface EmailOutboxRepository extends JpaRepository<EmailOutboxMessage, UUID> {
+
+    /**
+     * Reclama los correos listos para entrega respetando el orden por tenant: de cada tenant se
+     * devuelven, por orden de creación, los que caen dentro de sus primeras {@code tenantWindow}
+     * posiciones no finalizadas (las ocupadas por envíos en curso o adjuntos pendientes cuentan).
+     * Con {@code tenantWindow} = 1 solo se toma la cabeza y el orden es estricto; con más, los correos
+     * de la ventana se entregan sin orden entre ellos.
+     * Si la cabeza del tenant espera un reintento, el tenant entero espera. Las filas quedan
+     * bloqueadas con SKIP LOCKED para que varios workers no tomen el mismo correo.
+     */
+    @Query(value = "SELECT o.* FROM email_outbox o " +
+            "WHERE o.id IN (" +
+            "    SELECT w.id FROM (" +
+            "        SELECT q.id, q.next_attempt_at, q.attachment_pending, " +
+            "               ROW_NUMBER() OVER tenant_order AS position, " +
+            "               FIRST_VALUE(CASE WHEN q.status = 'RETRY' AND q.next_attempt_at > :now THEN 1 ELSE 0 END) " +
+            "                   OVER tenant_order AS head_backing_off " +
+            "        FROM email_outbox q " +
+            "        WHERE q.status IN ('PENDING', 'RETRY', 'IN_PROGRESS') " +
+            "        WINDOW tenant_order AS (PARTITION BY q.tenant_id ORDER BY q.created_at, q.id)) w " +
+            "    WHERE w.position <= :tenantWindow AND w.next_attempt_at <= :now " +
+            "      AND w.attachment_pending = false AND w.head_backing_off = 0) " +
+            "  AND o.status IN ('PENDING', 'RETRY', 'IN_PROGRESS') " +
+            "  AND o.next_attempt_at <= :now " +
+            "ORDER BY o.created_at " +
+            "LIMIT :limit " +
+            "FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<EmailOutboxMessage> claimDueTenantWindows(@Param("now") Instant now,
+                                                   @Param("tenantWindow") int tenantWindow,
+                                                   @Param("limit") int limit);
+
+    /**
+     * Asocia el adjunto materializado solo si el correo sigue esperándolo: si el barrido de
+     * adjuntos vencidos ya lo resolvió, no se pisa y se devuelve 0.
+     */
+    @Modifying
+    @Query("UPDATE EmailOutboxMessage m SET m.attachmentDocumentId = :documentId, m.attachmentPending = false, " +
+            "m.updatedAt = :now WHERE m.id = :id AND m.attachmentPending = true")
+    int markAttachmentReady(@Param("id") UUID id, @Param("documentId") String documentId, @Param("now") Instant now);
+
+    /**
+     * Correos que siguen esperando su adjunto después del plazo (p. ej. la instancia cayó entre el
+     * commit y la materialización del PDF).
+     */
+    @Query(value = "SELECT o.* FROM email_outbox o " +
+            "WHERE o.attachment_pending = true AND o.created_at < :before " +
+            "ORDER BY o.created_at " +
+            "LIMIT :limit " +
+            "FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<EmailOutboxMessage> findStalePendingAttachments(@Param("before") Instant before, @Param("limit") int limit);
+
+    long countByStatus(EmailOutboxMessage.Status status);
+}
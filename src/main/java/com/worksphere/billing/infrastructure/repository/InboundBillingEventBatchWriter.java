@@ -0,0 +1,53 @@
+package com.worksphere.billing.infrastructure.repository;
+
+import com.worksphere.billing.domain.model.InboundBillingEvent;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inserción por lotes de eventos entrantes.
+ *
+ * Usa batching JDBC (un único round-trip por lote con {@code reWriteBatchedInserts} en el
+ * driver de Postgres) en lugar de persistir entidad a entidad con JPA, que con ids IDENTITY
+ * desactiva el batching de Hibernate.
+ */
+@Repository
+public class InboundBillingEventBatchWriter {
+
+    private static final String INSERT_SQL = "INSERT INTO billing_inbound_event " +
+            "(topic, partition_no, record_offset, tenant_id, event_type, payload, received_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (topic, partition_no, record_offset) DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public InboundBillingEventBatchWriter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Inserta los eventos ignorando los ya persistidos (reentregas).
+     *
+     * @return número de eventos nuevos insertados
+     */
+    public int insertAll(List<InboundBillingEvent> events) {
+        if (events.isEmpty()) {
+            return 0;
+        }
+        List<Object[]> rows = new ArrayList<>(events.size());
+        for (InboundBillingEvent e : events) {
+            rows.add(new Object[]{e.getTopic(), e.getPartition(), e.getOffset(), e.getTenantId(),
+                    e.getEventType(), e.getPayload(), Timestamp.from(e.getReceivedAt())});
+        }
+        int inserted = 0;
+        for (int count : jdbcTemplate.batchUpdate(INSERT_SQL, rows)) {
+            // SUCCESS_NO_INFO (-2) cuando el driver reescribe el lote: se cuenta como insertado
+            inserted += count == 0 ? 0 : 1;
+        }
+        return inserted;
+    }
+}
@@ -0,0 +1,45 @@
+package com.worksphere.billing.infrastructure.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implementación JDBC del log de webhooks: los resultados de un fan-out se insertan con una
+ * única sentencia en batch.
+ */
+@Repository
+public class JdbcWebhookLogRepository implements WebhookLogRepository {
+
+    private static final String INSERT_SQL = "INSERT INTO webhook_log " +
+            "(tenant_id, endpoint_url, payload, status, logged_at, response) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public JdbcWebhookLogRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void saveWebhookLog(String tenantId, String endpointUrl, String payload, String status,
+                               Instant timestamp, String response) {
+        jdbcTemplate.update(INSERT_SQL, tenantId, endpointUrl, payload, status, Timestamp.from(timestamp), response);
+    }
+
+    @Override
+    public void saveWebhookLogs(List<WebhookLogEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(entries.size());
+        for (WebhookLogEntry e : entries) {
+            rows.add(new Object[]{e.getTenantId(), e.getEndpointUrl(), e.getPayload(), e.getStatus(),
+                    Timestamp.from(e.getTimestamp()), e.getResponse()});
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+    }
+}
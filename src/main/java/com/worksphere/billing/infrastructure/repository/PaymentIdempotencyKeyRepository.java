@@ -0,0 +1,84 @@
+package com.worksphere.billing.infrastructure.repository;
+
+import com.worksphere.billing.domain.model.PaymentIdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Repositorio de claves de idempotencia de cobros.
+ */
+public interface PaymentIdempotencyKeyRepository extends JpaRepository<PaymentIdempotencyKey, String> {
+
+    /**
+     * Reclama la clave: la inserta IN_PROGRESS o, si quedó IN_PROGRESS con el lease vencido (la
+     * instancia que cobraba murió o no respondió a tiempo), la retoma. La restricción única de la
+     * clave primaria decide entre instancias concurrentes. Cada reclamo lleva su propio
+     * {@code owner}: el dueño anterior ya no puede completar ni liberar la clave.
+     *
+     * @return 1 si la clave quedó reclamada por el llamador, 0 si ya existe
+     */
+    @Modifying
+    @Query(value = "INSERT INTO payment_idempotency_keys " +
+            "(idempotency_key, tenant_id, invoice_id, status, locked_until, owner_token, created_at, updated_at) " +
+            "VALUES (:key, :tenantId, :invoiceId, 'IN_PROGRESS', :lockedUntil, :owner, :now, :now) " +
+            "ON CONFLICT (idempotency_key) DO UPDATE " +
+            "SET locked_until = EXCLUDED.locked_until, owner_token = EXCLUDED.owner_token, " +
+            "    updated_at = EXCLUDED.updated_at " +
+            "WHERE payment_idempotency_keys.status = 'IN_PROGRESS' " +
+            "  AND payment_idempotency_keys.locked_until < EXCLUDED.updated_at", nativeQuery = true)
+    int tryAcquire(@Param("key") String key,
+                   @Param("tenantId") String tenantId,
+                   @Param("invoiceId") UUID invoiceId,
+                   @Param("owner") String owner,
+                   @Param("lockedUntil") Instant lockedUntil,
+                   @Param("now") Instant now);
+
+    /**
+     * Vuelve a abrir una clave completada cuyo pago terminó fallando (p. ej. un lote rechazado).
+     */
+    @Modifying
+    @Query(value = "UPDATE payment_idempotency_keys " +
+            "SET status = 'IN_PROGRESS', payment_result_id = NULL, response_status = NULL, " +
+            "    locked_until = :lockedUntil, owner_token = :owner, updated_at = :now " +
+            "WHERE idempotency_key = :key AND status = 'COMPLETED' AND payment_result_id = :paymentResultId",
+            nativeQuery = true)
+    int reopen(@Param("key") String key,
+               @Param("paymentResultId") UUID paymentResultId,
+               @Param("owner") String owner,
+               @Param("lockedUntil") Instant lockedUntil,
+               @Param("now") Instant now);
+
+    /**
+     * Guarda el resultado del cobro si el llamador sigue siendo el dueño del reclamo.
+     */
+    @Modifying
+    @Query(value = "UPDATE payment_idempotency_keys " +
+            "SET status = 'COMPLETED', payment_result_id = :paymentResultId, response_status = :responseStatus, " +
+            "    owner_token = NULL, updated_at = :now " +
+            "WHERE idempotency_key = :key AND status = 'IN_PROGRESS' AND owner_token = :owner", nativeQuery = true)
+    int complete(@Param("key") String key,
+                 @Param("owner") String owner,
+                 @Param("paymentResultId") UUID paymentResultId,
+                 @Param("responseStatus") String responseStatus,
+                 @Param("now") Instant now);
+
+    /**
+     * Libera una clave cuyo cobro no llegó a procesarse para que un reintento pueda volver a
+     * cobrar. Solo el dueño del reclamo vigente puede liberarla.
+     */
+    @Modifying
+    @Query(value = "DELETE FROM payment_idempotency_keys " +
+            "WHERE idempotency_key = :key AND status = 'IN_PROGRESS' AND owner_token = :owner",
+            nativeQuery = true)
+    int release(@Param("key") String key, @Param("owner") String owner);
+
+    @Modifying
+    @Query("DELETE FROM PaymentIdempotencyKey k WHERE k.status = com.worksphere.billing.domain.model.PaymentIdempotencyKey.Status.COMPLETED " +
+            "AND k.updatedAt < :before")
+    int deleteCompletedBefore(@Param("before") Instant before);
+}
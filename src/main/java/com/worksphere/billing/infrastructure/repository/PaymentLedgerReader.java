@@ -0,0 +1,129 @@
+package com.worksphere.billing.infrastructure.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Lectura de resultados de pago para conciliar contra las liquidaciones de los proveedores.
+ *
+ * Solo se leen las columnas que intervienen en la conciliación, con JDBC y sin entidades JPA:
+ * la ventana de un fichero de liquidación puede contener millones de pagos y se recorre con un
+ * cursor de servidor ({@code fetch-size}), sin cargar el resultado completo en memoria.
+ */
+@Repository
+public class PaymentLedgerReader {
+
+    private static final String COLUMNS = "gateway_transaction_id, payment_result_id, tenant_id, invoice_id, " +
+            "status, amount, reversed, gateway_provider";
+
+    // processed_at es la fecha del cargo: el llamador pasa una ventana de fechas de cargo
+    private static final String WINDOW_SQL = "SELECT " + COLUMNS + " FROM payment_results " +
+            "WHERE gateway_provider = ? AND gateway_transaction_id IS NOT NULL " +
+            "  AND processed_at >= ? AND processed_at <= ?";
+
+    private static final String BY_TRANSACTION_SQL = "SELECT " + COLUMNS + " FROM payment_results " +
+            "WHERE gateway_transaction_id = ANY(?)";
+
+    private static final RowMapper<LedgerRow> MAPPER = (rs, rowNum) -> map(rs);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int fetchSize;
+
+    public PaymentLedgerReader(JdbcTemplate jdbcTemplate,
+                               @Value("${payment.reconciliation.fetch-size:10000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Recorre los pagos con id de transacción del proveedor procesados en la ventana indicada.
+     * Requiere transacción: PostgreSQL solo usa el cursor con autocommit desactivado.
+     *
+     * @return filas entregadas
+     */
+    @Transactional(readOnly = true)
+    public long streamWindow(String provider, LocalDateTime from, LocalDateTime to, Consumer<LedgerRow> consumer) {
+        long[] rows = {0};
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(WINDOW_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            ps.setString(1, provider);
+            ps.setTimestamp(2, Timestamp.valueOf(from));
+            ps.setTimestamp(3, Timestamp.valueOf(to));
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            consumer.accept(map(rs));
+            rows[0]++;
+        });
+        return rows[0];
+    }
+
+    /**
+     * Pagos de los identificadores de transacción indicados, de cualquier proveedor y fecha
+     * (una sola consulta con el conjunto como array).
+     */
+    public List<LedgerRow> findByTransactionIds(Collection<String> gatewayTransactionIds) {
+        if (gatewayTransactionIds.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(BY_TRANSACTION_SQL);
+            ps.setArray(1, con.createArrayOf("text", gatewayTransactionIds.toArray()));
+            return ps;
+        }, MAPPER);
+    }
+
+    private static LedgerRow map(ResultSet rs) throws SQLException {
+        return new LedgerRow(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                rs.getString(5), rs.getBigDecimal(6), rs.getBoolean(7), rs.getString(8));
+    }
+
+    /**
+     * Columnas de un resultado de pago relevantes para la conciliación.
+     */
+    public static final class LedgerRow {
+        private final String transactionId;
+        private final String paymentResultId;
+        private final String tenantId;
+        private final String invoiceId;
+        private final String status;
+        private final BigDecimal amount;
+        private final boolean reversed;
+        private final String provider;
+
+        public LedgerRow(String transactionId, String paymentResultId, String tenantId, String invoiceId,
+                         String status, BigDecimal amount, boolean reversed, String provider) {
+            this.transactionId = transactionId;
+            this.paymentResultId = paymentResultId;
+            this.tenantId = tenantId;
+            this.invoiceId = invoiceId;
+            this.status = status;
+            this.amount = amount;
+            this.reversed = reversed;
+            this.provider = provider;
+        }
+
+        public String getTransactionId() { return transactionId; }
+        public String getPaymentResultId() { return paymentResultId; }
+        public String getTenantId() { return tenantId; }
+        public String getInvoiceId() { return invoiceId; }
+        public String getStatus() { return status; }
+        public BigDecimal getAmount() { return amount; }
+        public boolean isReversed() { return reversed; }
+        public String getProvider() { return provider; }
+    }
+}
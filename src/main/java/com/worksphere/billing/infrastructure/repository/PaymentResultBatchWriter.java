@@ -0,0 +1,197 @@
+package com.worksphere.billing.infrastructure.repository;
+
+import com.worksphere.billing.domain.model.PaymentResult;
+import com.worksphere.billing.infrastructure.payment.BatchPaymentSubmitter.BatchChargeOutcome;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Escritura por lotes de resultados de pago.
+ *
+ * - Conciliación: un lote de miles de cargos se aplica con dos sentencias JDBC en batch (estado
+ *   y log de intentos) en lugar de cargar y guardar cada entidad con JPA. Solo se actualizan
+ *   filas aún PENDING, por lo que reaplicar la misma respuesta del proveedor no tiene efecto.
+ * - Registro: resultados recibidos en bloque (webhooks, ficheros de liquidación) se deduplican
+ *   con una sola consulta y se insertan con ON CONFLICT DO NOTHING sobre el id de transacción.
+ *   Si la factura ya tiene un cobro PENDING, el resultado completa esa fila con la misma
+ *   sentencia de la conciliación en lugar de insertar una segunda.
+ */
+@Repository
+public class PaymentResultBatchWriter {
+
+    private static final String UPDATE_SQL = "UPDATE payment_results " +
+            "SET status = ?, paid = ?, gateway_transaction_id = ?, attempts = attempts + 1, processed_at = ? " +
+            "WHERE payment_result_id = ? AND status = 'PENDING'";
+
+    // Se ejecuta tras UPDATE_SQL: attempts ya incluye el intento que se registra
+    private static final String ATTEMPT_LOG_SQL = "INSERT INTO payment_attempt_log " +
+            "(id, payment_result_id, attempt_no, detail, recorded_at) " +
+            "SELECT gen_random_uuid(), p.payment_result_id, p.attempts, ?, ? " +
+            "FROM payment_results p WHERE p.payment_result_id = ?";
+
+    private static final String INSERT_SQL = "INSERT INTO payment_results " +
+            "(payment_result_id, tenant_id, billing_cycle_id, invoice_id, status, gateway_transaction_id, " +
+            " gateway_provider, amount, payment_token_id, batch_id, processed_at, attempts, paid, reversed) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, false) " +
+            "ON CONFLICT DO NOTHING";
+
+    private static final String EXISTING_TRANSACTIONS_SQL = "SELECT gateway_transaction_id FROM payment_results " +
+            "WHERE gateway_transaction_id = ANY(?)";
+
+    // Cobro PENDING más reciente de cada factura
+    private static final String PENDING_BY_INVOICE_SQL = "SELECT DISTINCT ON (invoice_id) invoice_id, payment_result_id " +
+            "FROM payment_results WHERE invoice_id = ANY(?) AND status = 'PENDING' " +
+            "ORDER BY invoice_id, processed_at DESC";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PaymentResultBatchWriter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Aplica los resultados del lote.
+     *
+     * @return resultados que cambiaron una fila PENDING (los demás ya estaban conciliados)
+     */
+    public List<BatchChargeOutcome> applyOutcomes(String batchId, List<BatchChargeOutcome> outcomes) {
+        if (outcomes.isEmpty()) {
+            return List.of();
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(outcomes.size());
+        for (BatchChargeOutcome o : outcomes) {
+            rows.add(new Object[]{o.isSuccess() ? "SUCCESS" : "FAILED", o.isSuccess(), o.getTransactionId(), now,
+                    o.getPaymentResultId()});
+        }
+        int[] counts = jdbcTemplate.batchUpdate(UPDATE_SQL, rows);
+
+        List<BatchChargeOutcome> applied = new ArrayList<>(outcomes.size());
+        List<Object[]> logRows = new ArrayList<>(outcomes.size());
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                BatchChargeOutcome o = outcomes.get(i);
+                applied.add(o);
+                logRows.add(new Object[]{o.isSuccess()
+                        ? "SUCCESS batch=" + batchId + " transactionId=" + o.getTransactionId()
+                        : "FAILED batch=" + batchId + ": " + o.getError(), now, o.getPaymentResultId()});
+            }
+        }
+        if (!logRows.isEmpty()) {
+            jdbcTemplate.batchUpdate(ATTEMPT_LOG_SQL, logRows);
+        }
+        return applied;
+    }
+
+    /**
+     * Identificadores de transacción que ya tienen un resultado registrado (una sola consulta
+     * con el conjunto completo como array).
+     */
+    public Set<String> findExistingTransactionIds(Collection<String> gatewayTransactionIds) {
+        if (gatewayTransactionIds.isEmpty()) {
+            return Set.of();
+        }
+        List<String> existing = jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(EXISTING_TRANSACTIONS_SQL);
+            ps.setArray(1, con.createArrayOf("text", gatewayTransactionIds.toArray()));
+            return ps;
+        }, (rs, rowNum) -> rs.getString(1));
+        return new HashSet<>(existing);
+    }
+
+    /**
+     * Cobro PENDING más reciente de cada factura (una sola consulta con el conjunto completo).
+     *
+     * @return id de la fila PENDING por id de factura; las facturas sin cobro pendiente no aparecen
+     */
+    public Map<UUID, UUID> findPendingByInvoice(Collection<UUID> invoiceIds) {
+        if (invoiceIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<UUID, UUID> pending = new HashMap<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(PENDING_BY_INVOICE_SQL);
+            ps.setArray(1, con.createArrayOf("uuid", invoiceIds.toArray()));
+            return ps;
+        }, rs -> {
+            pending.put(rs.getObject(1, UUID.class), rs.getObject(2, UUID.class));
+        });
+        return pending;
+    }
+
+    /**
+     * Completa filas PENDING con el resultado recibido para ellas y registra el intento.
+     *
+     * @param byPendingRow resultado recibido por id de la fila PENDING que completa
+     * @return resultados que cambiaron su fila (las que otro camino completó antes se omiten)
+     */
+    public List<PaymentResult> completePending(Map<UUID, PaymentResult> byPendingRow) {
+        if (byPendingRow.isEmpty()) {
+            return List.of();
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<UUID> rowIds = new ArrayList<>(byPendingRow.keySet());
+        List<Object[]> rows = new ArrayList<>(rowIds.size());
+        for (UUID rowId : rowIds) {
+            PaymentResult r = byPendingRow.get(rowId);
+            rows.add(new Object[]{r.getStatus().name(), r.isPaid(), r.getGatewayTransactionId(),
+                    Timestamp.valueOf(r.getProcessedAt()), rowId});
+        }
+        int[] counts = jdbcTemplate.batchUpdate(UPDATE_SQL, rows);
+
+        List<PaymentResult> applied = new ArrayList<>(rowIds.size());
+        List<Object[]> logRows = new ArrayList<>(rowIds.size());
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                PaymentResult r = byPendingRow.get(rowIds.get(i));
+                applied.add(r);
+                logRows.add(new Object[]{r.getStatus().name() + " resultado recibido transactionId="
+                        + r.getGatewayTransactionId(), now, rowIds.get(i)});
+            }
+        }
+        if (!logRows.isEmpty()) {
+            jdbcTemplate.batchUpdate(ATTEMPT_LOG_SQL, logRows);
+        }
+        return applied;
+    }
+
+    /**
+     * Inserta los resultados ignorando los que ya existen (mismo id o mismo id de transacción).
+     *
+     * @return resultados insertados; si el driver reescribe el lote no informa filas y se
+     *         consideran insertados todos los que no estaban al deduplicar
+     */
+    public List<PaymentResult> insertNew(List<PaymentResult> results) {
+        if (results.isEmpty()) {
+            return List.of();
+        }
+        List<Object[]> rows = new ArrayList<>(results.size());
+        for (PaymentResult r : results) {
+            rows.add(new Object[]{r.getPaymentResultId(), r.getTenantId(), r.getBillingCycleId(), r.getInvoiceId(),
+                    r.getStatus().name(), r.getGatewayTransactionId(), r.getGatewayProvider(), r.getAmount(),
+                    r.getPaymentTokenId(), r.getBatchId(), Timestamp.valueOf(r.getProcessedAt()), r.getAttempts(),
+                    r.isPaid()});
+        }
+        int[] counts = jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+
+        List<PaymentResult> inserted = new ArrayList<>(results.size());
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                inserted.add(results.get(i));
+            }
+        }
+        return inserted;
+    }
+}
@@ -0,0 +1,45 @@
+package com.worksphere.billing.infrastructure.repository;
+
+import com.worksphere.billing.domain.model.PaymentReversalItem;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Repositorio de la cola persistente de reversiones.
+ */
+public interface PaymentReversalItemRepository extends JpaRepository<PaymentReversalItem, UUID> {
+
+    /**
+     * Proveedores con reversiones vencidas (cadena vacía para pagos sin proveedor registrado).
+     */
+    @Query(value = "SELECT DISTINCT COALESCE(i.gateway_provider, '') FROM payment_reversal_items i " +
+            "WHERE i.status IN ('PENDING', 'RETRY', 'IN_PROGRESS') AND i.next_attempt_at <= :now",
+            nativeQuery = true)
+    List<String> findDueProviders(@Param("now") Instant now);
+
+    /**
+     * Reclama hasta {@code limit} reversiones vencidas de un proveedor. SKIP LOCKED reparte la cola
+     * entre instancias sin que dos tomen la misma reversión.
+     */
+    @Query(value = "SELECT i.* FROM payment_reversal_items i " +
+            "WHERE COALESCE(i.gateway_provider, '') = :provider " +
+            "  AND i.status IN ('PENDING', 'RETRY', 'IN_PROGRESS') " +
+            "  AND i.next_attempt_at <= :now " +
+            "ORDER BY i.created_at " +
+            "LIMIT :limit " +
+            "FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<PaymentReversalItem> claimDue(@Param("provider") String provider,
+                                       @Param("now") Instant now,
+                                       @Param("limit") int limit);
+
+    /**
+     * Conteo por estado de las reversiones de una solicitud: filas [status, count].
+     */
+    @Query("SELECT i.status, COUNT(i) FROM PaymentReversalItem i WHERE i.jobId = :jobId GROUP BY i.status")
+    List<Object[]> countByStatus(@Param("jobId") UUID jobId);
+}
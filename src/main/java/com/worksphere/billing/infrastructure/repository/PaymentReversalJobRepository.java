@@ -0,0 +1,27 @@
+package com.worksphere.billing.infrastructure.repository;
+
+import com.worksphere.billing.domain.model.PaymentReversalJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Repositorio de solicitudes de reversión masiva.
+ */
+public interface PaymentReversalJobRepository extends JpaRepository<PaymentReversalJob, UUID> {
+
+    /**
+     * Cierra las solicitudes que ya no tienen reversiones pendientes.
+     */
+    @Modifying
+    @Query(value = "UPDATE payment_reversal_jobs j SET status = 'COMPLETED', completed_at = :now " +
+            "WHERE j.status = 'QUEUED' " +
+            "  AND NOT EXISTS (SELECT 1 FROM payment_reversal_items i " +
+            "                  WHERE i.job_id = j.id AND i.status IN ('PENDING', 'RETRY', 'IN_PROGRESS'))",
+            nativeQuery = true)
+    int completeFinished(@Param("now") Instant now);
+}
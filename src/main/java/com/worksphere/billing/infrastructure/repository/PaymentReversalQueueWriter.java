@@ -0,0 +1,156 @@
+package com.worksphere.billing.infrastructure.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Encolado masivo de reversiones.
+ *
+ * Las filas se generan en la base de datos con INSERT ... SELECT sobre payment_results, de modo
+ * que encolar cientos de miles de reversiones no carga ningún pago en memoria. La restricción
+ * única por pago descarta los ya encolados; solo una reversión FAILED vuelve a la cola, ahora
+ * asociada a la nueva solicitud.
+ */
+@Repository
+public class PaymentReversalQueueWriter {
+
+    private static final String INSERT_PREFIX = "INSERT INTO payment_reversal_items " +
+            "(id, job_id, payment_result_id, gateway_provider, status, attempts, next_attempt_at, created_at, updated_at) " +
+            "SELECT gen_random_uuid(), ?, p.payment_result_id, p.gateway_provider, 'PENDING', 0, ?, ?, ? " +
+            "FROM payment_results p ";
+
+    private static final String ON_CONFLICT = " ON CONFLICT (payment_result_id) DO UPDATE " +
+            "SET job_id = EXCLUDED.job_id, status = 'PENDING', attempts = 0, last_error = NULL, " +
+            "    next_attempt_at = EXCLUDED.next_attempt_at, updated_at = EXCLUDED.updated_at " +
+            "WHERE payment_reversal_items.status = 'FAILED'";
+
+    private static final String BY_TRANSACTION_ID_SQL = INSERT_PREFIX +
+            "WHERE p.gateway_transaction_id = ?" + ON_CONFLICT;
+
+    private static final int CHUNK_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PaymentReversalQueueWriter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Encola la reversión de los pagos exitosos y no revertidos que cumplen el filtro.
+     *
+     * @return reversiones encoladas
+     */
+    public int enqueueMatching(UUID jobId, ReversalQuery query) {
+        Timestamp now = Timestamp.from(Instant.now());
+        List<Object> params = new ArrayList<>(List.of(jobId, now, now, now));
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX)
+                .append("WHERE p.status = 'SUCCESS' AND p.reversed = false");
+        if (query.getTenantId() != null) {
+            sql.append(" AND p.tenant_id = ?");
+            params.add(query.getTenantId());
+        }
+        if (query.getGatewayProvider() != null) {
+            sql.append(" AND p.gateway_provider = ?");
+            params.add(query.getGatewayProvider());
+        }
+        if (query.getProcessedFrom() != null) {
+            sql.append(" AND p.processed_at >= ?");
+            params.add(Timestamp.valueOf(query.getProcessedFrom()));
+        }
+        if (query.getProcessedTo() != null) {
+            sql.append(" AND p.processed_at < ?");
+            params.add(Timestamp.valueOf(query.getProcessedTo()));
+        }
+        sql.append(ON_CONFLICT);
+        return jdbcTemplate.update(sql.toString(), params.toArray());
+    }
+
+    /**
+     * Encola la reversión de los pagos con los identificadores de transacción indicados. Los
+     * identificadores desconocidos se ignoran; los pagos no exitosos los descarta el worker.
+     *
+     * @return reversiones encoladas
+     */
+    public int enqueueTransactions(UUID jobId, Collection<String> gatewayTransactionIds) {
+        Timestamp now = Timestamp.from(Instant.now());
+        List<Object[]> rows = new ArrayList<>(Math.min(gatewayTransactionIds.size(), CHUNK_SIZE));
+        int enqueued = 0;
+        for (String transactionId : gatewayTransactionIds) {
+            rows.add(new Object[]{jobId, now, now, now, transactionId});
+            if (rows.size() == CHUNK_SIZE) {
+                enqueued += batchInsert(rows);
+                rows.clear();
+            }
+        }
+        if (!rows.isEmpty()) {
+            enqueued += batchInsert(rows);
+        }
+        return enqueued;
+    }
+
+    private int batchInsert(List<Object[]> rows) {
+        int inserted = 0;
+        for (int count : jdbcTemplate.batchUpdate(BY_TRANSACTION_ID_SQL, rows)) {
+            // SUCCESS_NO_INFO (-2) cuando el driver reescribe el lote: se cuenta como encolado
+            inserted += count == 0 ? 0 : 1;
+        }
+        return inserted;
+    }
+
+    // -----------------------------
+    // Filtro de selección
+    // -----------------------------
+
+    /**
+     * Filtro de pagos a revertir. Exige al menos un criterio para no revertir todo por accidente.
+     */
+    public static final class ReversalQuery {
+        private String tenantId;
+        private String gatewayProvider;
+        private LocalDateTime processedFrom;
+        private LocalDateTime processedTo;
+
+        private ReversalQuery() {
+        }
+
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public String getTenantId() { return tenantId; }
+        public String getGatewayProvider() { return gatewayProvider; }
+        public LocalDateTime getProcessedFrom() { return processedFrom; }
+        public LocalDateTime getProcessedTo() { return processedTo; }
+
+        @Override
+        public String toString() {
+            return "tenantId=" + tenantId + " gatewayProvider=" + gatewayProvider
+                    + " processedFrom=" + processedFrom + " processedTo=" + processedTo;
+        }
+
+        public static class Builder {
+            private final ReversalQuery query = new ReversalQuery();
+
+            public Builder tenantId(String tenantId) { query.tenantId = tenantId; return this; }
+            public Builder gatewayProvider(String gatewayProvider) { query.gatewayProvider = gatewayProvider; return this; }
+            public Builder processedFrom(LocalDateTime processedFrom) { query.processedFrom = processedFrom; return this; }
+            public Builder processedTo(LocalDateTime processedTo) { query.processedTo = processedTo; return this; }
+
+            public ReversalQuery build() {
+                if (query.tenantId == null && query.gatewayProvider == null
+                        && query.processedFrom == null && query.processedTo == null) {
+                    throw new IllegalArgumentException("El filtro de reversión masiva requiere al menos un criterio");
+                }
+                return query;
+            }
+        }
+    }
+}
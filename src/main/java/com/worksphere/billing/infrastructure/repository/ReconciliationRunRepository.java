@@ -0,0 +1,15 @@
+package com.worksphere.billing.infrastructure.repository;
+
+import com.worksphere.billing.domain.model.ReconciliationRun;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Repositorio de conciliaciones de ficheros de liquidación.
+ */
+public interface ReconciliationRunRepository extends JpaRepository<ReconciliationRun, UUID> {
+
+    List<ReconciliationRun> findTop20ByProviderOrderByStartedAtDesc(String provider);
+}
@@ -0,0 +1,21 @@
+package com.worksphere.billing.infrastructure.repository;
+
+import com.worksphere.billing.domain.model.TenantWebhookConfig;
+
+import java.util.List;
+
+/**
+ * Repositorio de los endpoints de webhook configurados por cada tenant.
+ *
+ * Soporta múltiples implementaciones (JPA, vault de secretos, servicio de configuración, etc.).
+ */
+public interface TenantWebhookConfigRepository {
+
+    /**
+     * Endpoints configurados actualmente por un tenant, con sus credenciales.
+     *
+     * @param tenantId id del tenant
+     * @return configuraciones del tenant (vacía si no tiene ninguna)
+     */
+    List<TenantWebhookConfig> findByTenantId(String tenantId);
+}
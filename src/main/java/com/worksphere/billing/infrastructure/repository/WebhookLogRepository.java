@@ -0,0 +1,58 @@
+package com.worksphere.billing.infrastructure.repository;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Repositorio para registrar los envíos de webhooks a sistemas externos.
+ *
+ * Soporta múltiples implementaciones (JPA, MongoDB, Cassandra, etc.).
+ */
+public interface WebhookLogRepository {
+
+    /**
+     * Persiste el resultado de un envío de webhook.
+     *
+     * @param tenantId    id del tenant
+     * @param endpointUrl endpoint destino
+     * @param payload     cuerpo enviado
+     * @param status      estado del envío (ej: SUCCESS, FAILED)
+     * @param timestamp   instante del resultado
+     * @param response    respuesta del endpoint o detalle del error
+     */
+    void saveWebhookLog(String tenantId, String endpointUrl, String payload, String status, Instant timestamp, String response);
+
+    /**
+     * Persiste varios resultados en una sola operación (un fan-out completo) con una inserción por lotes.
+     */
+    void saveWebhookLogs(List<WebhookLogEntry> entries);
+
+    /**
+     * Registro de un envío de webhook.
+     */
+    class WebhookLogEntry {
+        private final String tenantId;
+        private final String endpointUrl;
+        private final String payload;
+        private final String status;
+        private final Instant timestamp;
+        private final String response;
+
+        public WebhookLogEntry(String tenantId, String endpointUrl, String payload, String status,
+                               Instant timestamp, String response) {
+            this.tenantId = tenantId;
+            this.endpointUrl = endpointUrl;
+            this.payload = payload;
+            this.status = status;
+            this.timestamp = timestamp;
+            this.response = response;
+        }
+
+        public String getTenantId() { return tenantId; }
+        public String getEndpointUrl() { return endpointUrl; }
+        public String getPayload() { return payload; }
+        public String getStatus() { return status; }
+        public Instant getTimestamp() { return timestamp; }
+        public String getResponse() { return response; }
+    }
+}
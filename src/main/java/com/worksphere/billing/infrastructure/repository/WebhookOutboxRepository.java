@@ -0,0 +1,58 @@
+package com.worksphere.billing.infrastructure.repository;
+
+import com.worksphere.billing.domain.model.WebhookOutboxMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Repositorio de la cola persistente de webhooks.
+ */
+public interface WebhookOutboxRepository extends JpaRepository<WebhookOutboxMessage, UUID> {
+
+    /**
+     * Reclama los webhooks listos para entrega respetando el orden por endpoint: de cada endpoint
+     * se devuelven, por orden de creación, los que caen dentro de sus primeras
+     * {@code max_concurrency} posiciones no finalizadas (las ocupadas por entregas en curso de
+     * cualquier instancia cuentan). Si la cabeza del endpoint espera un reintento, el endpoint
+     * entero espera. Las filas quedan bloqueadas con SKIP LOCKED para que varios workers no tomen
+     * el mismo webhook (FOR UPDATE no admite funciones ventana en el mismo nivel, de ahí la subconsulta).
+     * Con una ventana de 1 (el valor por defecto) solo se toma la cabeza y el orden es estricto; con
+     * más, los webhooks de la ventana se entregan sin orden entre ellos.
+     */
+    @Query(value = "SELECT o.* FROM webhook_outbox o " +
+            "WHERE o.id IN (" +
+            "    SELECT w.id FROM (" +
+            "        SELECT q.id, q.next_attempt_at, " +
+            "               ROW_NUMBER() OVER endpoint_order AS position, " +
+            "               COALESCE(q.max_concurrency, :defaultConcurrency) AS window_size, " +
+            "               FIRST_VALUE(CASE WHEN q.status = 'RETRY' AND q.next_attempt_at > :now THEN 1 ELSE 0 END) " +
+            "                   OVER endpoint_order AS head_backing_off " +
+            "        FROM webhook_outbox q " +
+            "        WHERE q.status IN ('PENDING', 'RETRY', 'IN_PROGRESS') " +
+            "        WINDOW endpoint_order AS (PARTITION BY q.endpoint_url ORDER BY q.created_at, q.id)) w " +
+            "    WHERE w.position <= w.window_size AND w.next_attempt_at <= :now AND w.head_backing_off = 0) " +
+            "  AND o.status IN ('PENDING', 'RETRY', 'IN_PROGRESS') " +
+            "  AND o.next_attempt_at <= :now " +
+            "ORDER BY o.created_at " +
+            "LIMIT :limit " +
+            "FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<WebhookOutboxMessage> claimDueEndpointWindows(@Param("now") Instant now,
+                                                       @Param("defaultConcurrency") int defaultConcurrency,
+                                                       @Param("limit") int limit);
+
+    /**
+     * Purga los webhooks entregados antes del instante indicado.
+     */
+    @Modifying
+    @Query("DELETE FROM WebhookOutboxMessage m WHERE m.status = com.worksphere.billing.domain.model.WebhookOutboxMessage.Status.SENT " +
+            "AND m.updatedAt < :before")
+    int deleteSentBefore(@Param("before") Instant before);
+
+    long countByStatus(WebhookOutboxMessage.Status status);
+}
@@ -0,0 +1,443 @@
+package com.worksphere.billing.infrastructure.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Almacén local de documentos (PDFs de facturas y adjuntos) direccionado por contenido.
+ *
+ * Cualidades:
+ * - Deduplicación: la clave es el SHA-256 del contenido; el mismo documento se guarda una sola vez.
+ * - Directorios fragmentados: blobs/ab/cd/abcd... para no saturar un único directorio.
+ * - Escritura única y atómica: archivo temporal + fsync + rename atómico; un blob nunca se reescribe.
+ * - Lectura zero-copy: {@link #transferTo} usa {@link FileChannel#transferTo} hacia el canal destino.
+ * - Conteo de referencias: cada propietario (p. ej. una factura) se registra como marcador en
+ *   refs/&lt;hash&gt;/&lt;owner&gt;, de modo que retener dos veces es idempotente y el blob se elimina
+ *   cuando se libera la última referencia.
+ * - Alias: punteros nombrados (p. ej. invoice + huella de datos) hacia un hash, para resolver
+ *   un documento ya generado sin volver a renderizarlo.
+ * - Documento vigente por propietario ({@link #putAndReplace}): al regenerarse, la versión
+ *   anterior se libera.
+ */
+@Component
+public class ContentAddressedDocumentStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ContentAddressedDocumentStore.class);
+
+    private static final String BLOBS = "blobs";
+    private static final String REFS = "refs";
+    private static final String ALIASES = "aliases";
+    private static final String TMP = "tmp";
+
+    private final Path root;
+
+    private static final String CURRENT_PREFIX = "current-";
+    private static final int LOCK_STRIPES = 256;
+
+    // Serializa put/retain/release por hash dentro del proceso. Cerrojos por franjas del hash:
+    // número fijo, sin crear ni retirar objetos de cerrojo mientras otro hilo espera en ellos
+    private final Object[] hashLocks = new Object[LOCK_STRIPES];
+    // Serializa el reemplazo del documento vigente por alias; se toma siempre antes que el del hash
+    private final Object[] aliasLocks = new Object[LOCK_STRIPES];
+
+    public ContentAddressedDocumentStore(@Value("${billing.documents.root-dir:./data/documents}") String rootDir) {
+        this.root = Paths.get(rootDir).toAbsolutePath().normalize();
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            hashLocks[i] = new Object();
+            aliasLocks[i] = new Object();
+        }
+        try {
+            Files.createDirectories(root.resolve(BLOBS));
+            Files.createDirectories(root.resolve(REFS));
+            Files.createDirectories(root.resolve(ALIASES));
+            Files.createDirectories(root.resolve(TMP));
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo inicializar el almacén de documentos en " + root, e);
+        }
+        log.info("Almacén de documentos direccionado por contenido en {}", root);
+    }
+
+    /**
+     * Guarda el contenido si no existe y devuelve su hash SHA-256 (hex).
+     * Si el blob ya existe no se copia ni un byte.
+     *
+     * @param content bytes del documento
+     * @return hash del contenido
+     */
+    public String put(byte[] content) {
+        String hash = sha256(content);
+        synchronized (lockFor(hash)) {
+            store(hash, content);
+        }
+        return hash;
+    }
+
+    /**
+     * Guarda el contenido y registra al propietario como referencia en una sola operación:
+     * la comprobación de existencia, la escritura y la referencia se hacen bajo el mismo
+     * cerrojo que {@link #release}, de modo que un release concurrente no puede borrar el blob
+     * entre medias.
+     */
+    public String putAndRetain(byte[] content, String ownerId) {
+        String hash = sha256(content);
+        synchronized (lockFor(hash)) {
+            store(hash, content);
+            addReference(hash, ownerId);
+        }
+        return hash;
+    }
+
+    /**
+     * Guarda el contenido como documento vigente del propietario y libera el que tuviera antes
+     * si era distinto (p. ej. la factura cambió de datos y su PDF se regeneró), para que la
+     * versión anterior no quede retenida para siempre. Retener, leer el alias, moverlo y liberar
+     * la versión anterior se hace bajo el cerrojo del alias: dos reemplazos concurrentes del mismo
+     * propietario no pueden liberar el blob que el otro acaba de vincular.
+     */
+    public String putAndReplace(byte[] content, String ownerId) {
+        String currentAlias = CURRENT_PREFIX + ownerId;
+        synchronized (aliasLockFor(currentAlias)) {
+            String hash = putAndRetain(content, ownerId);
+            Optional<String> previous = readAlias(currentAlias);
+            bindAlias(currentAlias, hash);
+            previous.filter(p -> !p.equals(hash)).ifPresent(p -> {
+                release(p, ownerId);
+                log.debug("Documento {} de {} reemplazado por {}", p, ownerId, hash);
+            });
+            return hash;
+        }
+    }
+
+    /**
+     * Documento vigente de un propietario registrado con {@link #putAndReplace}, si el blob sigue existiendo.
+     */
+    public Optional<String> currentDocument(String ownerId) {
+        return resolveAlias(CURRENT_PREFIX + ownerId);
+    }
+
+    private void store(String hash, byte[] content) {
+        Path target = blobPath(hash);
+        if (Files.exists(target)) {
+            log.debug("Documento {} ya presente, se omite escritura", hash);
+            return;
+        }
+
+        Path tmp = root.resolve(TMP).resolve(hash + "." + UUID.randomUUID() + ".part");
+        try {
+            Files.createDirectories(target.getParent());
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            moveAtomically(tmp, target);
+            log.info("Documento {} almacenado ({} bytes)", hash, content.length);
+        } catch (FileAlreadyExistsException e) {
+            // Otro proceso escribió el mismo contenido primero: el blob es idéntico
+            log.debug("Documento {} escrito concurrentemente, se reutiliza", hash);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error almacenando documento " + hash, e);
+        } finally {
+            deleteQuietly(tmp);
+        }
+    }
+
+    public boolean exists(String hash) {
+        return Files.exists(blobPath(hash));
+    }
+
+    /**
+     * Ruta del blob para consumidores que necesitan un recurso de archivo (p. ej. adjuntos MIME).
+     * El archivo es de solo lectura lógica: nunca debe modificarse.
+     */
+    public Optional<Path> path(String hash) {
+        Path p = blobPath(hash);
+        return Files.exists(p) ? Optional.of(p) : Optional.empty();
+    }
+
+    public long size(String hash) {
+        try {
+            return Files.size(blobPath(hash));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Documento no encontrado: " + hash, e);
+        }
+    }
+
+    /**
+     * Copia el documento al canal destino usando transferencia zero-copy del sistema operativo.
+     *
+     * @param hash   hash del documento
+     * @param target canal de salida (socket, respuesta HTTP, adjunto)
+     * @return bytes transferidos
+     */
+    public long transferTo(String hash, WritableByteChannel target) {
+        try (FileChannel channel = FileChannel.open(blobPath(hash), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                position += channel.transferTo(position, size - position, target);
+            }
+            return position;
+        } catch (NoSuchFileException e) {
+            throw new UncheckedIOException("Documento no encontrado: " + hash, e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error leyendo documento " + hash, e);
+        }
+    }
+
+    /**
+     * Lee el documento completo en memoria. Solo para consumidores que exigen byte[].
+     */
+    public byte[] read(String hash) {
+        try {
+            return Files.readAllBytes(blobPath(hash));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error leyendo documento " + hash, e);
+        }
+    }
+
+    // -----------------------------
+    // Conteo de referencias
+    // -----------------------------
+
+    /**
+     * Registra a un propietario como referencia del documento. Idempotente por propietario.
+     */
+    public void retain(String hash, String ownerId) {
+        synchronized (lockFor(hash)) {
+            if (!exists(hash)) {
+                throw new IllegalStateException("No se puede retener un documento inexistente: " + hash);
+            }
+            addReference(hash, ownerId);
+        }
+    }
+
+    private void addReference(String hash, String ownerId) {
+        Path marker = refDir(hash).resolve(safeName(ownerId));
+        try {
+            Files.createDirectories(marker.getParent());
+            Files.createFile(marker);
+        } catch (FileAlreadyExistsException e) {
+            // ya retenido por este propietario
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error registrando referencia " + ownerId + " de " + hash, e);
+        }
+    }
+
+    /**
+     * Libera la referencia de un propietario; si era la última, elimina el blob.
+     *
+     * @return true si el blob fue eliminado
+     */
+    public boolean release(String hash, String ownerId) {
+        synchronized (lockFor(hash)) {
+            Path dir = refDir(hash);
+            deleteQuietly(dir.resolve(safeName(ownerId)));
+            if (referenceCount(hash) > 0) {
+                return false;
+            }
+            deleteQuietly(dir);
+            boolean deleted = deleteQuietly(blobPath(hash));
+            if (deleted) {
+                log.info("Documento {} eliminado al liberar su última referencia", hash);
+            }
+            return deleted;
+        }
+    }
+
+    public int referenceCount(String hash) {
+        Path dir = refDir(hash);
+        if (!Files.isDirectory(dir)) {
+            return 0;
+        }
+        int count = 0;
+        try (DirectoryStream<Path> refs = Files.newDirectoryStream(dir)) {
+            for (Path ignored : refs) {
+                count++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error contando referencias de " + hash, e);
+        }
+        return count;
+    }
+
+    /**
+     * Referencias cuyo propietario empieza por el prefijo indicado, con la fecha de su marcador.
+     * Recorre refs/ completo: pensado para reconstruir índices en memoria al arrancar.
+     */
+    public List<StoredReference> listReferences(String ownerPrefix) {
+        String prefix = safeName(ownerPrefix);
+        List<StoredReference> found = new ArrayList<>();
+        try (DirectoryStream<Path> hashes = Files.newDirectoryStream(root.resolve(REFS))) {
+            for (Path hashDir : hashes) {
+                String hash = hashDir.getFileName().toString();
+                try (DirectoryStream<Path> markers = Files.newDirectoryStream(hashDir)) {
+                    for (Path marker : markers) {
+                        String owner = marker.getFileName().toString();
+                        if (owner.startsWith(prefix)) {
+                            found.add(new StoredReference(hash, owner, Files.getLastModifiedTime(marker).toInstant()));
+                        }
+                    }
+                } catch (NoSuchFileException | NotDirectoryException e) {
+                    // Liberado mientras se recorría
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error recorriendo las referencias del almacén", e);
+        }
+        return found;
+    }
+
+    /**
+     * Marcador de referencia de un propietario sobre un documento.
+     */
+    public static final class StoredReference {
+        private final String hash;
+        private final String ownerId;
+        private final Instant retainedAt;
+
+        private StoredReference(String hash, String ownerId, Instant retainedAt) {
+            this.hash = hash;
+            this.ownerId = ownerId;
+            this.retainedAt = retainedAt;
+        }
+
+        public String getHash() { return hash; }
+        public String getOwnerId() { return ownerId; }
+        public Instant getRetainedAt() { return retainedAt; }
+    }
+
+    // -----------------------------
+    // Alias
+    // -----------------------------
+
+    /**
+     * Asocia un alias (p. ej. "invoice-&lt;id&gt;-&lt;huella&gt;") a un hash. Escritura atómica.
+     */
+    public void bindAlias(String alias, String hash) {
+        Path target = root.resolve(ALIASES).resolve(safeName(alias));
+        Path tmp = root.resolve(TMP).resolve(safeName(alias) + "." + UUID.randomUUID() + ".alias");
+        try {
+            Files.write(tmp, hash.getBytes(StandardCharsets.US_ASCII), StandardOpenOption.CREATE_NEW);
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error registrando alias " + alias, e);
+        } finally {
+            deleteQuietly(tmp);
+        }
+    }
+
+    /**
+     * Resuelve un alias a su hash si el blob sigue existiendo.
+     */
+    public Optional<String> resolveAlias(String alias) {
+        return readAlias(alias).filter(this::exists);
+    }
+
+    private Optional<String> readAlias(String alias) {
+        Path p = root.resolve(ALIASES).resolve(safeName(alias));
+        try {
+            return Optional.of(Files.readString(p, StandardCharsets.US_ASCII).trim());
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error resolviendo alias " + alias, e);
+        }
+    }
+
+    // -----------------------------
+    // Auxiliares
+    // -----------------------------
+
+    public static String sha256(byte[] content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    private Path blobPath(String hash) {
+        validateHash(hash);
+        return root.resolve(BLOBS).resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    private Path refDir(String hash) {
+        validateHash(hash);
+        return root.resolve(REFS).resolve(hash);
+    }
+
+    private Object lockFor(String hash) {
+        validateHash(hash);
+        return hashLocks[Integer.parseInt(hash.substring(0, 2), 16) % LOCK_STRIPES];
+    }
+
+    private Object aliasLockFor(String alias) {
+        return aliasLocks[Math.floorMod(safeName(alias).hashCode(), LOCK_STRIPES)];
+    }
+
+    private static void validateHash(String hash) {
+        if (hash == null || hash.length() != 64 || !hash.chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+            throw new IllegalArgumentException("Hash SHA-256 inválido: " + hash);
+        }
+    }
+
+    private static String safeName(String name) {
+        return name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            // Si otro escritor ganó la carrera, el rename puede pisar un blob idéntico (mismo hash): es inocuo
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target);
+        }
+    }
+
+    private static boolean deleteQuietly(Path path) {
+        try {
+            return Files.deleteIfExists(path);
+        } catch (DirectoryNotEmptyException e) {
+            return false;
+        } catch (IOException e) {
+            log.warn("No se pudo eliminar {}: {}", path, e.getMessage());
+            return false;
+        }
+    }
+}
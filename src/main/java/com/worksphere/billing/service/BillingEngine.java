@@ -1,5 +1,6 @@
 package com.worksphere.billing.service;
 
+import com.worksphere.billing.domain.event.BillingEvent;
 import com.worksphere.billing.model.*;
 import com.worksphere.billing.usecase.calculation.CalculateBillingForTenant;
 import com.worksphere.billing.usecase.calculation.GenerateInvoice;
@@ -81,7 +82,8 @@ public class BillingEngine {
             log.info("Factura generada: invoice_id {}", invoice.getInvoiceId());
 
             // 4. Emitir evento Kafka
-            emitBillingEventToKafka.emit(invoice, "invoice_generated");
+            emitBillingEventToKafka.emit(new BillingEvent(tenantId, invoice.getInvoiceId(),
+                    "invoice_generated", invoice.getInvoiceId()));
 
             // 5. Iniciar transacción de pago
             PaymentToken paymentToken = billingRequest.getPaymentToken();
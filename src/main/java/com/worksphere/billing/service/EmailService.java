@@ -1,19 +1,16 @@
 package com.worksphere.billing.service;
 
+import com.worksphere.billing.infrastructure.email.template.EmailTemplateEngine;
+import com.worksphere.billing.infrastructure.email.template.TemplateSchema;
+import com.worksphere.billing.infrastructure.storage.ContentAddressedDocumentStore;
 import com.worksphere.billing.model.Invoice;
-import com.worksphere.billing.usecase.notification.EmitBillingEventToKafka;
+import com.worksphere.billing.usecase.notification.EnqueueInvoiceEmail;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
 
-import javax.mail.MessagingException;
-import javax.mail.internet.MimeMessage;
-import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.List;
 
 /**
  * Servicio encargado de enviar correos electrónicos confiables y auditables.
@@ -24,66 +21,73 @@ public class EmailService {
 
     private static final Logger log = LoggerFactory.getLogger(EmailService.class);
 
-    private final JavaMailSender mailSender;
-    private final EmitBillingEventToKafka eventEmitter;
+    private static final String TEMPLATE_NAME = "invoice_email_basic";
 
-    @Value("${billing.email.from:no-reply@worksphere.com}")
-    private String defaultFrom;
+    private static final TemplateSchema<Invoice> TEMPLATE_SCHEMA = TemplateSchema.<Invoice>builder(TEMPLATE_NAME)
+            .slot("invoice_id", Invoice::getInvoiceId)
+            .slot("tenant_name", Invoice::getTenantName)
+            .slot("billing_cycle", Invoice::getBillingCyclePeriod)
+            .slot("total_amount", Invoice::getTotalAmount)
+            .slot("currency", Invoice::getCurrency)
+            .slot("invoice_date", invoice -> Instant.now())
+            .build();
 
-    public EmailService(JavaMailSender mailSender, EmitBillingEventToKafka eventEmitter) {
-        this.mailSender = mailSender;
-        this.eventEmitter = eventEmitter;
+    private final ContentAddressedDocumentStore documentStore;
+    private final EnqueueInvoiceEmail enqueueInvoiceEmail;
+    private final EmailTemplateEngine templateEngine;
+
+    public EmailService(ContentAddressedDocumentStore documentStore,
+                        EnqueueInvoiceEmail enqueueInvoiceEmail,
+                        EmailTemplateEngine templateEngine) {
+        this.documentStore = documentStore;
+        this.enqueueInvoiceEmail = enqueueInvoiceEmail;
+        this.templateEngine = templateEngine;
     }
 
     /**
-     * Envía una factura por correo electrónico al tenant.
+     * Encola una factura para su envío por correo electrónico al tenant.
+     * Se une a la transacción del llamador si existe; la entrega y los reintentos
+     * los realiza el worker de la bandeja de salida.
      *
      * @param invoice factura a enviar
      */
     public void sendInvoice(Invoice invoice) {
-        try {
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, StandardCharsets.UTF_8.name());
-
-            helper.setFrom(defaultFrom);
-            helper.setTo(invoice.getTenantEmail());
-            helper.setSubject("Factura Electrónica #" + invoice.getInvoiceId());
-            helper.setText(buildEmailBody(invoice), true);
+        String documentId = invoice.getPdfDocumentId();
+        if ((documentId == null || !documentStore.exists(documentId)) && invoice.getPdfContent() != null) {
+            documentId = documentStore.putAndRetain(invoice.getPdfContent(), "invoice-" + invoice.getInvoiceId());
+        }
 
-            if (invoice.getPdfContent() != null) {
-                helper.addAttachment("invoice_" + invoice.getInvoiceId() + ".pdf",
-                        new ByteArrayResource(invoice.getPdfContent()));
-            }
+        enqueueInvoiceEmail.enqueue(String.valueOf(invoice.getTenantId()), String.valueOf(invoice.getInvoiceId()),
+                invoice.getTenantEmail(), subjectFor(invoice), buildEmailBody(invoice), documentId);
 
-            // Enviar email
-            mailSender.send(message);
+        log.info("Factura encolada para {} con invoice_id {}", invoice.getTenantEmail(), invoice.getInvoiceId());
+    }
 
-            log.info("Factura enviada correctamente a {} para invoice_id {}", invoice.getTenantEmail(), invoice.getInvoiceId());
-            eventEmitter.emit(invoice, "invoice_email_sent");
+    /**
+     * Encola un lote de facturas. Cada correo pasa por la bandeja de salida como en
+     * {@link #sendInvoice}; el worker los reparte entre las conexiones del pool SMTP.
+     *
+     * @param invoices facturas a enviar
+     * @return número de correos encolados
+     */
+    public int sendAll(List<Invoice> invoices) {
+        invoices.forEach(this::sendInvoice);
+        log.info("Lote de facturas encolado: {} correos", invoices.size());
+        return invoices.size();
+    }
 
-        } catch (MessagingException ex) {
-            log.error("Error al enviar factura a {} para invoice_id {}: {}",
-                    invoice.getTenantEmail(), invoice.getInvoiceId(), ex.getMessage(), ex);
-            eventEmitter.emit(invoice, "invoice_email_failed");
-            // Aquí se pueden implementar reintentos automáticos según política de negocio
-        }
+    private String subjectFor(Invoice invoice) {
+        return "Factura Electrónica #" + invoice.getInvoiceId();
     }
 
     /**
-     * Construye el cuerpo del correo electrónico para la factura.
+     * Construye el cuerpo del correo electrónico para la factura a partir de la plantilla
+     * precompilada del tenant.
      *
      * @param invoice factura
      * @return HTML de email
      */
     private String buildEmailBody(Invoice invoice) {
-        // Plantilla básica, se puede externalizar a Thymeleaf o FreeMarker para branding por tenant
-        return "<html><body>"
-                + "<h3>Factura Electrónica #" + invoice.getInvoiceId() + "</h3>"
-                + "<p>Tenant: " + invoice.getTenantName() + "</p>"
-                + "<p>Período: " + invoice.getBillingCyclePeriod() + "</p>"
-                + "<p>Total a pagar: " + invoice.getTotalAmount() + " " + invoice.getCurrency() + "</p>"
-                + "<p>Emitida el: " + Instant.now() + "</p>"
-                + "<p>Gracias por su preferencia.</p>"
-                + "</body></html>";
+        return templateEngine.render(String.valueOf(invoice.getTenantId()), TEMPLATE_NAME, TEMPLATE_SCHEMA, invoice);
     }
 }
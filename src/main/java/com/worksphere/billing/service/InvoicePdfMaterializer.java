@@ -0,0 +1,254 @@
+package com.worksphere.billing.service;
+
+import com.worksphere.billing.domain.model.Invoice;
+import com.worksphere.billing.infrastructure.storage.ContentAddressedDocumentStore;
+import com.worksphere.billing.infrastructure.storage.ContentAddressedDocumentStore.StoredReference;
+import com.worksphere.billing.utils.PdfUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Servicio que decide cuándo se materializa el PDF de una factura.
+ *
+ * Cualidades:
+ * - Modo EAGER: renderiza y firma el PDF al generar la factura (comportamiento histórico).
+ * - Modo LAZY: la factura firmada se persiste sin PDF; el documento se renderiza en la primera
+ *   solicitud real (envío de correo, descarga, exportación de auditoría).
+ * - Single-flight: solicitudes concurrentes de la misma versión de una factura comparten un único
+ *   renderizado.
+ * - Caché en disco acotada: los PDFs materializados viven en el {@link ContentAddressedDocumentStore}
+ *   y se desalojan por LRU cuando se supera el presupuesto de bytes. La clave es la factura más la
+ *   huella de sus datos ({@link PdfUtils#documentAlias}): una factura regenerada con otros datos
+ *   no recibe el PDF anterior.
+ * - El índice se reconstruye al arrancar a partir de los marcadores {@code invoice-<id>} del
+ *   almacén (en orden de retención), de modo que el presupuesto se respeta tras un reinicio sin
+ *   esperar a que alguien vuelva a pedir cada PDF.
+ */
+@Service
+public class InvoicePdfMaterializer {
+
+    private static final Logger log = LoggerFactory.getLogger(InvoicePdfMaterializer.class);
+
+    private static final String OWNER_PREFIX = "invoice-";
+    // Clave de las entradas reconstruidas: se desconoce la huella con la que se generaron
+    private static final String RESTORED_PREFIX = "restored-";
+
+    public enum RenderMode { EAGER, LAZY }
+
+    private final PdfUtils pdfUtils;
+    private final ContentAddressedDocumentStore documentStore;
+    private final RenderMode renderMode;
+    private final long maxCacheBytes;
+    private final boolean pdfA;
+
+    // Índice LRU versión de factura (alias) → documento materializado (accessOrder = true)
+    private final LinkedHashMap<String, CachedPdf> lru = new LinkedHashMap<>(256, 0.75f, true);
+    // Versión vigente en caché de cada factura, para retirar la anterior al regenerarse
+    private final Map<String, String> keyByInvoice = new HashMap<>();
+    private long cachedBytes;
+
+    private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    // -----------------------------
+    // Métricas
+    // -----------------------------
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public InvoicePdfMaterializer(PdfUtils pdfUtils,
+                                  ContentAddressedDocumentStore documentStore,
+                                  @Value("${billing.pdf.render-mode:LAZY}") RenderMode renderMode,
+                                  @Value("${billing.pdf.cache.max-bytes:2147483648}") long maxCacheBytes,
+                                  @Value("${billing.pdf.pdf-a:true}") boolean pdfA) {
+        this.pdfUtils = pdfUtils;
+        this.documentStore = documentStore;
+        this.renderMode = renderMode;
+        this.maxCacheBytes = maxCacheBytes;
+        this.pdfA = pdfA;
+        restoreIndex();
+        log.info("Materialización de PDFs en modo {} con caché en disco de {} bytes ({} documentos, {} bytes al arrancar)",
+                renderMode, maxCacheBytes, lru.size(), cachedBytes);
+    }
+
+    /**
+     * Reconstruye el índice LRU con los PDFs retenidos por facturas, del más antiguo al más
+     * reciente, y desaloja lo que exceda el presupuesto.
+     */
+    private synchronized void restoreIndex() {
+        List<StoredReference> references;
+        try {
+            references = new ArrayList<>(documentStore.listReferences(OWNER_PREFIX));
+        } catch (UncheckedIOException e) {
+            log.warn("No se pudo reconstruir el índice de PDFs en caché: {}", e.getMessage());
+            return;
+        }
+        references.sort(Comparator.comparing(StoredReference::getRetainedAt));
+        for (StoredReference reference : references) {
+            if (!documentStore.exists(reference.getHash())) {
+                continue;
+            }
+            String invoiceId = reference.getOwnerId().substring(OWNER_PREFIX.length());
+            String key = RESTORED_PREFIX + invoiceId + "-" + reference.getHash();
+            CachedPdf entry = new CachedPdf(invoiceId, reference.getHash(), documentStore.size(reference.getHash()));
+            lru.put(key, entry);
+            keyByInvoice.put(invoiceId, key);
+            cachedBytes += entry.sizeBytes;
+        }
+        evictIfNeeded(null);
+    }
+
+    /**
+     * Punto de enganche al generar una factura: en EAGER dispara el renderizado en segundo plano,
+     * en LAZY no hace nada y el PDF queda pendiente hasta que alguien lo pida.
+     */
+    public void onInvoiceGenerated(Invoice invoice) {
+        if (renderMode == RenderMode.EAGER) {
+            materialize(invoice, "eager");
+        }
+    }
+
+    /**
+     * Obtiene el PDF de la factura, renderizándolo solo si no está en caché.
+     *
+     * @param invoice factura con sus datos canónicos firmados
+     * @param reason  motivo de la solicitud (email, download, audit_export...), para trazabilidad
+     * @return future con el hash del documento en el almacén
+     */
+    public CompletableFuture<String> materialize(Invoice invoice, String reason) {
+        String invoiceId = invoice.getInvoiceId();
+        String key = pdfUtils.documentAlias(invoice, pdfA);
+
+        String cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            invoice.setPdfDocumentId(cached);
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, pending);
+        if (existing != null) {
+            return existing;
+        }
+
+        // Otro llamador pudo terminar y registrar el PDF entre la consulta y la reserva
+        cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            invoice.setPdfDocumentId(cached);
+            inFlight.remove(key, pending);
+            pending.complete(cached);
+            return pending;
+        }
+
+        log.info("Materializando PDF de invoice {} (motivo={})", invoiceId, reason);
+        misses.increment();
+        pdfUtils.generateAndSignInvoicePdfAsync(invoice, pdfA)
+                .whenComplete((documentId, error) -> {
+                    if (error == null) {
+                        register(invoiceId, key, documentId);
+                    }
+                    inFlight.remove(key, pending);
+                    if (error != null) {
+                        pending.completeExceptionally(error);
+                    } else {
+                        pending.complete(documentId);
+                    }
+                });
+        return pending;
+    }
+
+    // -----------------------------
+    // Caché LRU acotada
+    // -----------------------------
+
+    private synchronized String lookup(String key) {
+        CachedPdf entry = lru.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!documentStore.exists(entry.documentId)) {
+            remove(key, entry);
+            return null;
+        }
+        return entry.documentId;
+    }
+
+    private synchronized void register(String invoiceId, String key, String documentId) {
+        String previousKey = keyByInvoice.put(invoiceId, key);
+        if (previousKey != null && !previousKey.equals(key)) {
+            // El documento anterior ya lo liberó el almacén al reemplazarlo; solo sale del índice
+            CachedPdf stale = lru.remove(previousKey);
+            if (stale != null) {
+                cachedBytes -= stale.sizeBytes;
+            }
+        }
+        CachedPdf entry = new CachedPdf(invoiceId, documentId, documentStore.size(documentId));
+        CachedPdf previous = lru.put(key, entry);
+        if (previous != null) {
+            cachedBytes -= previous.sizeBytes;
+        }
+        cachedBytes += entry.sizeBytes;
+        evictIfNeeded(key);
+    }
+
+    private void remove(String key, CachedPdf entry) {
+        lru.remove(key);
+        keyByInvoice.remove(entry.invoiceId, key);
+        cachedBytes -= entry.sizeBytes;
+    }
+
+    private void evictIfNeeded(String justAdded) {
+        Iterator<Map.Entry<String, CachedPdf>> it = lru.entrySet().iterator();
+        while (cachedBytes > maxCacheBytes && it.hasNext()) {
+            Map.Entry<String, CachedPdf> eldest = it.next();
+            if (eldest.getKey().equals(justAdded)) {
+                continue;
+            }
+            CachedPdf entry = eldest.getValue();
+            it.remove();
+            keyByInvoice.remove(entry.invoiceId, eldest.getKey());
+            cachedBytes -= entry.sizeBytes;
+            documentStore.release(entry.documentId, "invoice-" + entry.invoiceId);
+            evictions.increment();
+            log.debug("PDF de invoice {} desalojado de la caché", entry.invoiceId);
+        }
+    }
+
+    // -----------------------------
+    // Métricas expuestas
+    // -----------------------------
+    public RenderMode getRenderMode() { return renderMode; }
+    public long getHitCount() { return hits.sum(); }
+    public long getMissCount() { return misses.sum(); }
+    public long getEvictionCount() { return evictions.sum(); }
+    public synchronized long getCachedBytes() { return cachedBytes; }
+    public synchronized int getCachedDocuments() { return lru.size(); }
+
+    private static final class CachedPdf {
+        private final String invoiceId;
+        private final String documentId;
+        private final long sizeBytes;
+
+        private CachedPdf(String invoiceId, String documentId, long sizeBytes) {
+            this.invoiceId = invoiceId;
+            this.documentId = documentId;
+            this.sizeBytes = sizeBytes;
+        }
+    }
+}
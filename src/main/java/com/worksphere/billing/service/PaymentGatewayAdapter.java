@@ -0,0 +1,74 @@
+package com.worksphere.billing.service;
+
+import com.worksphere.billing.domain.exception.PaymentException;
+import com.worksphere.billing.domain.model.PaymentResult;
+import com.worksphere.billing.domain.model.PaymentToken;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Contrato de acceso a las pasarelas de pago (Stripe, PayPal, banco local).
+ *
+ * Todas las operaciones son asíncronas: el future se completa fuera de los hilos de E/S, de modo
+ * que el llamador puede encadenar trabajo de base de datos sin bloquear el cliente HTTP. Los
+ * fallos se entregan como {@link PaymentException}. Los métodos síncronos existen para los
+ * llamadores que no tienen transacción abierta y pueden esperar.
+ */
+public interface PaymentGatewayAdapter {
+
+    /**
+     * Cobra el importe con el proveedor del token.
+     *
+     * @param idempotencyKey clave que el proveedor usa para no procesar dos veces el mismo cargo
+     *                       (se repite en los reintentos de un cargo cuyo resultado quedó en duda)
+     * @return future con el identificador de la transacción en la pasarela
+     */
+    CompletableFuture<String> processPaymentAsync(PaymentToken token, BigDecimal amount, String tenantId, String invoiceId,
+                                                  String idempotencyKey);
+
+    /**
+     * Valida el token contra su proveedor.
+     */
+    CompletableFuture<Boolean> validateTokenAsync(PaymentToken token);
+
+    /**
+     * Revierte un pago ya cobrado en el proveedor que lo procesó.
+     *
+     * @param idempotencyKey clave con la que el proveedor descarta una reversión repetida del mismo pago
+     */
+    CompletableFuture<Void> reversePaymentAsync(PaymentResult paymentResult, String idempotencyKey);
+
+    /**
+     * Clave canónica del proveedor (la de {@code PaymentConfig.paymentProviders}) para el valor
+     * de {@code PaymentToken.gatewayProvider}.
+     */
+    default String providerKeyOf(String gatewayProvider) {
+        return gatewayProvider;
+    }
+
+    default String processPayment(PaymentToken token, BigDecimal amount, String tenantId, String invoiceId,
+                                  String idempotencyKey) {
+        return await(processPaymentAsync(token, amount, tenantId, invoiceId, idempotencyKey));
+    }
+
+    default boolean validateToken(PaymentToken token) {
+        return Boolean.TRUE.equals(await(validateTokenAsync(token)));
+    }
+
+    default void reversePayment(PaymentResult paymentResult, String idempotencyKey) {
+        await(reversePaymentAsync(paymentResult, idempotencyKey));
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.worksphere.billing.transport.codec;
+
+/**
+ * Codec binario de un tipo de evento de transporte ligado a un esquema versionado.
+ *
+ * @param <T> tipo del evento
+ */
+public interface EventCodec<T> {
+
+    /** Esquema con el que este codec escribe (la versión más reciente que conoce). */
+    EventSchema schema();
+
+    Class<T> type();
+
+    /** Escribe los campos del evento; la cabecera ya fue escrita por el llamador. */
+    void write(T event, EventWriter writer);
+
+    /** Construye el evento desde un mensaje ya indexado, de cualquier versión compatible. */
+    T read(EventReader reader);
+}
@@ -0,0 +1,218 @@
+package com.worksphere.billing.transport.codec;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Lector reutilizable del formato binario de eventos (ver {@link EventWriter}).
+ *
+ * {@link #wrap} solo indexa el mensaje: registra por tag la posición y longitud de cada campo
+ * sobre el array original, sin copiarlo. Los valores se decodifican bajo demanda con los
+ * getters; los tags desconocidos (añadidos por versiones más nuevas del esquema) se ignoran.
+ * Una instancia se reutiliza entre mensajes; no es segura para uso concurrente (una por hilo).
+ */
+public final class EventReader {
+
+    private final int[] offsets = new int[EventSchema.MAX_TAG + 1];
+    private final int[] lengths = new int[EventSchema.MAX_TAG + 1];
+    private final long[] varints = new long[EventSchema.MAX_TAG + 1];
+    private final int[] wireTypes = new int[EventSchema.MAX_TAG + 1];
+    private final int[] seenGeneration = new int[EventSchema.MAX_TAG + 1];
+    private int generation;
+
+    private byte[] data;
+    private int position;
+    private int limit;
+    private int subjectId;
+    private int version;
+    private byte[] scratch = new byte[0];
+
+    public static boolean isBinary(byte[] data) {
+        return data != null && data.length > 0 && data[0] == EventWriter.MAGIC;
+    }
+
+    /**
+     * Indexa un mensaje binario contenido en {@code data[offset, offset + length)}.
+     */
+    public EventReader wrap(byte[] data, int offset, int length) {
+        this.data = data;
+        this.position = offset;
+        this.limit = offset + length;
+        if (++generation == 0) {
+            // Desbordamiento del contador: se reinicia el marcado de presencia
+            Arrays.fill(seenGeneration, 0);
+            generation = 1;
+        }
+
+        if (position >= limit || data[position++] != EventWriter.MAGIC) {
+            throw new IllegalArgumentException("El mensaje no está en formato binario de eventos");
+        }
+        subjectId = (int) readVarint();
+        version = (int) readVarint();
+
+        while (position < limit) {
+            int key = (int) readVarint();
+            int tag = key >>> 3;
+            int wireType = key & 0x7;
+            boolean known = tag > 0 && tag <= EventSchema.MAX_TAG;
+
+            if (wireType == EventWriter.WIRE_VARINT) {
+                long value = readVarint();
+                if (known) {
+                    mark(tag, wireType);
+                    varints[tag] = value;
+                }
+            } else if (wireType == EventWriter.WIRE_LEN) {
+                int fieldLength = (int) readVarint();
+                if (fieldLength < 0 || position + fieldLength > limit) {
+                    throw new IllegalArgumentException("Campo truncado con tag " + tag);
+                }
+                if (known) {
+                    mark(tag, wireType);
+                    offsets[tag] = position;
+                    lengths[tag] = fieldLength;
+                }
+                position += fieldLength;
+            } else {
+                throw new IllegalArgumentException("Tipo de cable no soportado " + wireType + " en tag " + tag);
+            }
+        }
+        return this;
+    }
+
+    public EventReader wrap(byte[] data) {
+        return wrap(data, 0, data.length);
+    }
+
+    /**
+     * Indexa un mensaje desde un ByteBuffer; sin copia si el buffer tiene array accesible.
+     */
+    public EventReader wrap(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return wrap(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        int length = buffer.remaining();
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.duplicate().get(scratch, 0, length);
+        return wrap(scratch, 0, length);
+    }
+
+    public int getSubjectId() {
+        return subjectId;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public boolean has(int tag) {
+        return tag > 0 && tag <= EventSchema.MAX_TAG && seenGeneration[tag] == generation;
+    }
+
+    // -----------------------------
+    // Getters por tag
+    // -----------------------------
+
+    public String getString(int tag) {
+        if (!present(tag, EventWriter.WIRE_LEN)) {
+            return null;
+        }
+        return new String(data, offsets[tag], lengths[tag], StandardCharsets.UTF_8);
+    }
+
+    public BigDecimal getDecimal(int tag) {
+        if (!present(tag, EventWriter.WIRE_LEN)) {
+            return null;
+        }
+        int saved = position;
+        position = offsets[tag];
+        int end = position + lengths[tag];
+        byte kind = data[position++];
+        int zzScale = (int) readVarint();
+        int scale = (zzScale >>> 1) ^ -(zzScale & 1);
+        BigDecimal value;
+        if (kind == EventWriter.DECIMAL_LONG) {
+            long zz = readVarint();
+            value = BigDecimal.valueOf((zz >>> 1) ^ -(zz & 1), scale);
+        } else {
+            value = new BigDecimal(new BigInteger(data, position, end - position), scale);
+        }
+        position = saved;
+        return value;
+    }
+
+    public String getUuid(int tag) {
+        if (!present(tag, EventWriter.WIRE_LEN)) {
+            return null;
+        }
+        if (lengths[tag] != 16) {
+            throw new IllegalArgumentException("UUID inválido en tag " + tag);
+        }
+        int offset = offsets[tag];
+        return new UUID(getLong(offset), getLong(offset + 8)).toString();
+    }
+
+    public Instant getInstant(int tag) {
+        return present(tag, EventWriter.WIRE_VARINT) ? Instant.ofEpochMilli(getInstantMillis(tag)) : null;
+    }
+
+    /**
+     * Variante sin asignación de {@link #getInstant}; devuelve {@link Long#MIN_VALUE} si el campo no está.
+     */
+    public long getInstantMillis(int tag) {
+        if (!present(tag, EventWriter.WIRE_VARINT)) {
+            return Long.MIN_VALUE;
+        }
+        long zz = varints[tag];
+        return (zz >>> 1) ^ -(zz & 1);
+    }
+
+    // -----------------------------
+    // Decodificación de bajo nivel
+    // -----------------------------
+
+    private boolean present(int tag, int expectedWireType) {
+        if (!has(tag)) {
+            return false;
+        }
+        if (wireTypes[tag] != expectedWireType) {
+            throw new IllegalArgumentException("Tipo de cable inesperado en tag " + tag);
+        }
+        return true;
+    }
+
+    private void mark(int tag, int wireType) {
+        seenGeneration[tag] = generation;
+        wireTypes[tag] = wireType;
+    }
+
+    private long readVarint() {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position >= limit) {
+                throw new IllegalArgumentException("Varint truncado");
+            }
+            byte b = data[position++];
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Varint demasiado largo");
+    }
+
+    private long getLong(int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,166 @@
+package com.worksphere.billing.transport.codec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Esquema versionado de un evento de transporte para el codec binario.
+ *
+ * Cada campo se identifica por un tag numérico estable (1..63): el nombre es solo documental.
+ * Los tags, no el orden, son el contrato entre productor y consumidor; ver las reglas de
+ * evolución en {@link SchemaRegistry}. Las versiones de una misma versión mayor son compatibles
+ * entre sí; un cambio incompatible exige una versión mayor nueva, que empieza un historial propio.
+ */
+public final class EventSchema {
+
+    public static final int MAX_TAG = 63;
+
+    private final String subject;
+    private final int major;
+    private final int version;
+    private final List<Field> fields;
+
+    private EventSchema(String subject, int major, int version, List<Field> fields) {
+        this.subject = subject;
+        this.major = major;
+        this.version = version;
+        this.fields = Collections.unmodifiableList(fields);
+    }
+
+    public static Builder builder(String subject, int version) {
+        return new Builder(subject, 1, version);
+    }
+
+    public static Builder builder(String subject, int major, int version) {
+        return new Builder(subject, major, version);
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public int getMajor() {
+        return major;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public List<Field> getFields() {
+        return fields;
+    }
+
+    public Field field(int tag) {
+        for (Field field : fields) {
+            if (field.tag == tag) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Forma canónica usada como huella para registrar esquemas de forma idempotente.
+     */
+    String canonicalForm() {
+        StringBuilder sb = new StringBuilder(subject).append('@').append(major).append('.').append(version);
+        for (Field field : fields) {
+            sb.append('|').append(field.tag).append(':').append(field.name).append(':')
+                    .append(field.type).append(':').append(field.required ? 'R' : 'O');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return subject + " v" + major + "." + version;
+    }
+
+    // -----------------------------
+    // Campo
+    // -----------------------------
+    public static final class Field {
+        private final int tag;
+        private final String name;
+        private final FieldType type;
+        private final boolean required;
+
+        private Field(int tag, String name, FieldType type, boolean required) {
+            this.tag = tag;
+            this.name = name;
+            this.type = type;
+            this.required = required;
+        }
+
+        public int getTag() { return tag; }
+        public String getName() { return name; }
+        public FieldType getType() { return type; }
+        public boolean isRequired() { return required; }
+    }
+
+    /**
+     * Tipos lógicos soportados y su representación en el cable.
+     */
+    public enum FieldType {
+        STRING(EventWriter.WIRE_LEN),
+        DECIMAL(EventWriter.WIRE_LEN),
+        UUID(EventWriter.WIRE_LEN),
+        INSTANT(EventWriter.WIRE_VARINT);
+
+        private final int wireType;
+
+        FieldType(int wireType) {
+            this.wireType = wireType;
+        }
+
+        int wireType() {
+            return wireType;
+        }
+    }
+
+    // -----------------------------
+    // Builder
+    // -----------------------------
+    public static final class Builder {
+        private final String subject;
+        private final int major;
+        private final int version;
+        private final List<Field> fields = new ArrayList<>();
+
+        private Builder(String subject, int major, int version) {
+            if (major < 1) {
+                throw new IllegalArgumentException("Versión mayor fuera de rango en " + subject + ": " + major);
+            }
+            this.subject = subject;
+            this.major = major;
+            this.version = version;
+        }
+
+        public Builder required(int tag, String name, FieldType type) {
+            return add(new Field(tag, name, type, true));
+        }
+
+        public Builder optional(int tag, String name, FieldType type) {
+            return add(new Field(tag, name, type, false));
+        }
+
+        private Builder add(Field field) {
+            if (field.tag < 1 || field.tag > MAX_TAG) {
+                throw new IllegalArgumentException("Tag fuera de rango (1.." + MAX_TAG + "): " + field.tag);
+            }
+            for (Field existing : fields) {
+                if (existing.tag == field.tag) {
+                    throw new IllegalArgumentException("Tag duplicado " + field.tag + " en " + subject);
+                }
+            }
+            fields.add(field);
+            return this;
+        }
+
+        public EventSchema build() {
+            return new EventSchema(subject, major, version, new ArrayList<>(fields));
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.worksphere.billing.transport.codec;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Escritor reutilizable del formato binario de eventos.
+ *
+ * Formato: {@code MAGIC | varint(subjectId) | varint(versión) | campo*}, donde {@code subjectId}
+ * identifica el subject y su versión mayor (ver {@link SchemaRegistry#subjectId}) y cada campo es
+ * {@code varint(tag << 3 | wireType)} seguido de un varint (wireType 0) o de
+ * {@code varint(longitud) | bytes} (wireType 2). Los campos nulos se omiten.
+ *
+ * Una instancia escribe sobre un buffer interno que crece según se necesita y se
+ * reutiliza entre mensajes; no es segura para uso concurrente (una por hilo).
+ */
+public final class EventWriter {
+
+    public static final byte MAGIC = 0x00;
+
+    static final int WIRE_VARINT = 0;
+    static final int WIRE_LEN = 2;
+
+    static final byte DECIMAL_LONG = 0;
+    static final byte DECIMAL_BIG = 1;
+
+    private byte[] buffer;
+    private int position;
+
+    public EventWriter() {
+        this(256);
+    }
+
+    public EventWriter(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+    }
+
+    /**
+     * Reinicia el buffer y escribe la cabecera del mensaje.
+     */
+    public EventWriter begin(int subjectId, int version) {
+        position = 0;
+        ensure(1 + 5 + 5);
+        buffer[position++] = MAGIC;
+        writeVarint(subjectId);
+        writeVarint(version);
+        return this;
+    }
+
+    // -----------------------------
+    // Campos
+    // -----------------------------
+
+    public EventWriter writeString(int tag, String value) {
+        if (value == null) {
+            return this;
+        }
+        int utf8Length = utf8Length(value);
+        writeKey(tag, WIRE_LEN);
+        writeVarint(utf8Length);
+        ensure(utf8Length);
+        encodeUtf8(value);
+        return this;
+    }
+
+    public EventWriter writeDecimal(int tag, BigDecimal value) {
+        if (value == null) {
+            return this;
+        }
+        long zzScale = zigZag32(value.scale()) & 0xFFFFFFFFL;
+        BigInteger unscaled = value.unscaledValue();
+        writeKey(tag, WIRE_LEN);
+        if (unscaled.bitLength() < 64) {
+            long zzUnscaled = zigZag64(unscaled.longValue());
+            writeVarint(1 + varintSize(zzScale) + varintSize(zzUnscaled));
+            ensure(1);
+            buffer[position++] = DECIMAL_LONG;
+            writeVarint(zzScale);
+            writeVarint(zzUnscaled);
+        } else {
+            byte[] bytes = unscaled.toByteArray();
+            writeVarint(1 + varintSize(zzScale) + bytes.length);
+            ensure(1);
+            buffer[position++] = DECIMAL_BIG;
+            writeVarint(zzScale);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+        return this;
+    }
+
+    public EventWriter writeUuid(int tag, String value) {
+        if (value == null) {
+            return this;
+        }
+        UUID uuid = UUID.fromString(value);
+        writeKey(tag, WIRE_LEN);
+        writeVarint(16);
+        ensure(16);
+        putLong(uuid.getMostSignificantBits());
+        putLong(uuid.getLeastSignificantBits());
+        return this;
+    }
+
+    public EventWriter writeInstant(int tag, Instant value) {
+        if (value == null) {
+            return this;
+        }
+        writeKey(tag, WIRE_VARINT);
+        writeVarint(zigZag64(value.toEpochMilli()));
+        return this;
+    }
+
+    // -----------------------------
+    // Salida
+    // -----------------------------
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    /** Buffer interno (válido hasta {@link #size()}); permite escribir sin copiar. */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    public int size() {
+        return position;
+    }
+
+    // -----------------------------
+    // Codificación de bajo nivel
+    // -----------------------------
+
+    private void writeKey(int tag, int wireType) {
+        writeVarint((tag << 3) | wireType);
+    }
+
+    private void writeVarint(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void putLong(long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (value >>> shift);
+        }
+    }
+
+    private void encodeUtf8(String value) {
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | (cp >> 18));
+                buffer[position++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (cp & 0x3F));
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private void ensure(int extra) {
+        if (position + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+        }
+    }
+
+    static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    static int zigZag32(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static long zigZag64(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
@@ -0,0 +1,11 @@
+package com.worksphere.billing.transport.codec;
+
+/**
+ * Se lanza al registrar una versión de esquema que rompe las reglas de evolución.
+ */
+public class SchemaCompatibilityException extends RuntimeException {
+
+    public SchemaCompatibilityException(String message) {
+        super(message);
+    }
+}
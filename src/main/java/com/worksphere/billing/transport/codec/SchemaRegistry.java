@@ -0,0 +1,147 @@
+package com.worksphere.billing.transport.codec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro local de esquemas (sustituto en proceso de un schema registry).
+ *
+ * Cada mensaje binario lleva en su cabecera el id del subject y su versión mayor, y la versión
+ * (menor) con la que se escribió. El id se deriva de forma determinista del subject y la versión
+ * mayor (huella SHA-256 de {@code subject#major}), de modo que todas las instancias y todos los
+ * reinicios asignan el mismo id sin importar el orden de registro, y un consumidor reconoce el
+ * subject aunque no tenga registrada la versión con la que se escribió el mensaje. Una versión
+ * publicada no puede redefinirse con otros campos: cualquier cambio exige una versión nueva.
+ * Al registrar una nueva versión dentro de la misma versión mayor se aplican las reglas de
+ * evolución (compatibilidad en ambos sentidos entre versiones consecutivas):
+ * 1. Un tag conserva para siempre su tipo, incluso si el campo se eliminó en una versión intermedia.
+ * 2. Los campos nuevos deben ser opcionales (los mensajes antiguos no los traen).
+ * 3. Un campo requerido no puede eliminarse ni pasar a opcional (los lectores antiguos lo exigen).
+ * 4. Las versiones de un subject son estrictamente crecientes.
+ * Los lectores ignoran los tags desconocidos, por lo que un consumidor antiguo lee mensajes nuevos
+ * con su propio esquema. Una versión mayor nueva empieza un historial propio sin estas reglas.
+ */
+@Component
+public class SchemaRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaRegistry.class);
+
+    // Lecturas sin bloqueo desde el camino de decodificación
+    private final Map<Integer, Map<Integer, EventSchema>> bySubjectId = new ConcurrentHashMap<>();
+    private final Map<String, Integer> idsByCanonicalForm = new HashMap<>();
+    private final Map<Integer, List<EventSchema>> historyBySubjectId = new HashMap<>();
+    private final Map<String, EventSchema> latestBySubject = new HashMap<>();
+
+    /**
+     * Registra un esquema (idempotente) validando las reglas de evolución.
+     *
+     * @return id del subject en su versión mayor
+     * @throws SchemaCompatibilityException si la versión no es compatible con las anteriores
+     */
+    public synchronized int register(EventSchema schema) {
+        Integer existing = idsByCanonicalForm.get(schema.canonicalForm());
+        if (existing != null) {
+            return existing;
+        }
+
+        int id = subjectId(schema.getSubject(), schema.getMajor());
+        List<EventSchema> history = historyBySubjectId.computeIfAbsent(id, i -> new ArrayList<>());
+        if (!history.isEmpty()) {
+            EventSchema first = history.get(0);
+            if (!first.getSubject().equals(schema.getSubject()) || first.getMajor() != schema.getMajor()) {
+                throw new SchemaCompatibilityException("Colisión de id " + id + " entre " + first + " y " + schema
+                        + "; renombre el subject");
+            }
+            for (EventSchema published : history) {
+                if (published.getVersion() == schema.getVersion()) {
+                    throw new SchemaCompatibilityException("La versión " + schema + " ya está registrada con otros "
+                            + "campos; los cambios requieren una versión nueva");
+                }
+            }
+            checkCompatible(history, schema);
+        }
+
+        history.add(schema);
+        bySubjectId.computeIfAbsent(id, i -> new ConcurrentHashMap<>()).put(schema.getVersion(), schema);
+        idsByCanonicalForm.put(schema.canonicalForm(), id);
+        latestBySubject.merge(schema.getSubject(), schema,
+                (current, candidate) -> candidate.getMajor() >= current.getMajor() ? candidate : current);
+        log.info("Esquema {} registrado con id {}", schema, id);
+        return id;
+    }
+
+    /**
+     * Id estable de un subject en una versión mayor: los 31 bits bajos de la huella SHA-256 de
+     * {@code subject#major} (nunca 0). No depende del proceso ni del orden de registro.
+     */
+    public static int subjectId(String subject, int major) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest((subject + "#" + major).getBytes(StandardCharsets.UTF_8));
+            int id = ((digest[0] & 0x7F) << 24) | ((digest[1] & 0xFF) << 16) | ((digest[2] & 0xFF) << 8) | (digest[3] & 0xFF);
+            return id == 0 ? 1 : id;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    /**
+     * Esquema con el que se escribió un mensaje.
+     *
+     * @return el esquema, o null si esa versión no está registrada localmente (un productor más nuevo)
+     */
+    public EventSchema schema(int subjectId, int version) {
+        Map<Integer, EventSchema> versions = bySubjectId.get(subjectId);
+        return versions == null ? null : versions.get(version);
+    }
+
+    public synchronized EventSchema latest(String subject) {
+        return latestBySubject.get(subject);
+    }
+
+    private void checkCompatible(List<EventSchema> versions, EventSchema candidate) {
+        EventSchema latest = versions.get(versions.size() - 1);
+        if (candidate.getVersion() <= latest.getVersion()) {
+            throw new SchemaCompatibilityException("La versión de " + candidate.getSubject() + " debe ser mayor que "
+                    + latest.getVersion() + ": " + candidate.getVersion());
+        }
+
+        // Regla 1: un tag nunca cambia de tipo en todo el historial
+        for (EventSchema previous : versions) {
+            for (EventSchema.Field field : candidate.getFields()) {
+                EventSchema.Field old = previous.field(field.getTag());
+                if (old != null && old.getType() != field.getType()) {
+                    throw new SchemaCompatibilityException("El tag " + field.getTag() + " de " + candidate.getSubject()
+                            + " era " + old.getType() + " en v" + previous.getVersion() + " y no puede ser " + field.getType());
+                }
+            }
+        }
+
+        // Regla 2: campos nuevos opcionales
+        for (EventSchema.Field field : candidate.getFields()) {
+            if (latest.field(field.getTag()) == null && field.isRequired()) {
+                throw new SchemaCompatibilityException("El campo nuevo '" + field.getName() + "' de "
+                        + candidate.getSubject() + " debe ser opcional");
+            }
+        }
+
+        // Regla 3: los requeridos se mantienen requeridos
+        for (EventSchema.Field old : latest.getFields()) {
+            EventSchema.Field current = candidate.field(old.getTag());
+            if (old.isRequired() && (current == null || !current.isRequired())) {
+                throw new SchemaCompatibilityException("El campo requerido '" + old.getName() + "' de "
+                        + candidate.getSubject() + " no puede eliminarse ni volverse opcional");
+            }
+        }
+    }
+}
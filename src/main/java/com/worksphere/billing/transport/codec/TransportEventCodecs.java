@@ -0,0 +1,253 @@
+package com.worksphere.billing.transport.codec;
+
+import com.worksphere.billing.transport.codec.EventSchema.FieldType;
+import com.worksphere.billing.transport.events.BillingCompletedEvent;
+import com.worksphere.billing.transport.events.InvoiceGeneratedEvent;
+import com.worksphere.billing.transport.events.PaymentFailedEvent;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Codecs binarios de los eventos de transporte y punto de entrada para codificar/decodificar.
+ *
+ * Registra en el {@link SchemaRegistry} el esquema de cada evento al arrancar. Escritores y
+ * lectores se reutilizan por hilo, de modo que codificar solo asigna el array de salida y
+ * decodificar solo asigna el evento resultante y sus valores.
+ *
+ * El codec se elige por el subject y la versión mayor de la cabecera. Si el mensaje viene de una
+ * versión menor que este proceso no tiene registrada (un productor más nuevo), se lee con el
+ * esquema propio del lector y los tags desconocidos se ignoran.
+ */
+@Component
+public class TransportEventCodecs {
+
+    private final SchemaRegistry registry;
+    private final Map<Class<?>, RegisteredCodec<?>> byType = new ConcurrentHashMap<>();
+    private final Map<String, RegisteredCodec<?>> bySubject = new ConcurrentHashMap<>();
+    private final Map<Integer, RegisteredCodec<?>> bySubjectId = new ConcurrentHashMap<>();
+    private final ThreadLocal<EventWriter> writers = ThreadLocal.withInitial(EventWriter::new);
+    private final ThreadLocal<EventReader> readers = ThreadLocal.withInitial(EventReader::new);
+
+    public TransportEventCodecs(SchemaRegistry registry) {
+        this.registry = registry;
+        register(new BillingCompletedCodec());
+        register(new InvoiceGeneratedCodec());
+        register(new PaymentFailedCodec());
+    }
+
+    /**
+     * Registra un codec (y su esquema). Una versión nueva del mismo subject reemplaza a la anterior para escritura.
+     */
+    public <T> int register(EventCodec<T> codec) {
+        int subjectId = registry.register(codec.schema());
+        RegisteredCodec<T> registered = new RegisteredCodec<>(codec, subjectId);
+        byType.put(codec.type(), registered);
+        bySubject.put(codec.schema().getSubject(), registered);
+        bySubjectId.put(subjectId, registered);
+        return subjectId;
+    }
+
+    public boolean supports(Class<?> type) {
+        return byType.containsKey(type);
+    }
+
+    /**
+     * Tipos de evento por subject, para resolver el tipo al deserializar el fallback JSON.
+     */
+    public Map<String, Class<?>> subjectTypes() {
+        Map<String, Class<?>> types = new HashMap<>();
+        bySubject.forEach((subject, registered) -> types.put(subject, registered.codec.type()));
+        return types;
+    }
+
+    public String subjectOf(Class<?> type) {
+        RegisteredCodec<?> registered = byType.get(type);
+        return registered == null ? null : registered.codec.schema().getSubject();
+    }
+
+    // -----------------------------
+    // Codificación
+    // -----------------------------
+
+    public byte[] encode(Object event) {
+        return encodeInto(event).toByteArray();
+    }
+
+    /**
+     * Codifica en el escritor reutilizable del hilo, sin copiar la salida; válido hasta la siguiente llamada.
+     */
+    @SuppressWarnings("unchecked")
+    public EventWriter encodeInto(Object event) {
+        RegisteredCodec<Object> registered = (RegisteredCodec<Object>) byType.get(event.getClass());
+        if (registered == null) {
+            throw new IllegalArgumentException("No hay codec binario para " + event.getClass().getName());
+        }
+        EventWriter writer = writers.get().begin(registered.subjectId, registered.codec.schema().getVersion());
+        registered.codec.write(event, writer);
+        return writer;
+    }
+
+    // -----------------------------
+    // Decodificación
+    // -----------------------------
+
+    public Object decode(byte[] data) {
+        return decode(readers.get().wrap(data));
+    }
+
+    public Object decode(ByteBuffer data) {
+        return decode(readers.get().wrap(data));
+    }
+
+    /**
+     * Indexa el mensaje en el lector reutilizable del hilo, para consumidores que solo necesitan
+     * algunos campos y quieren evitar construir el evento completo.
+     */
+    public EventReader index(byte[] data) {
+        return readers.get().wrap(data);
+    }
+
+    /**
+     * Esquema con el que se escribió el mensaje, o el del lector si esa versión no está registrada
+     * localmente.
+     */
+    public EventSchema writerSchema(EventReader reader) {
+        EventSchema writerSchema = registry.schema(reader.getSubjectId(), reader.getVersion());
+        return writerSchema != null ? writerSchema : codecFor(reader).codec.schema();
+    }
+
+    private Object decode(EventReader reader) {
+        RegisteredCodec<?> registered = codecFor(reader);
+        EventSchema readerSchema = registered.codec.schema();
+        for (EventSchema.Field field : readerSchema.getFields()) {
+            if (field.isRequired() && !reader.has(field.getTag())) {
+                throw new IllegalArgumentException("Falta el campo requerido '" + field.getName() + "' en "
+                        + readerSchema.getSubject() + " v" + readerSchema.getMajor() + "." + reader.getVersion());
+            }
+        }
+        return registered.codec.read(reader);
+    }
+
+    private RegisteredCodec<?> codecFor(EventReader reader) {
+        RegisteredCodec<?> registered = bySubjectId.get(reader.getSubjectId());
+        if (registered == null) {
+            throw new IllegalArgumentException("No hay codec para el subject con id " + reader.getSubjectId()
+                    + " (subject o versión mayor desconocidos)");
+        }
+        return registered;
+    }
+
+    private static final class RegisteredCodec<T> {
+        private final EventCodec<T> codec;
+        private final int subjectId;
+
+        private RegisteredCodec(EventCodec<T> codec, int subjectId) {
+            this.codec = codec;
+            this.subjectId = subjectId;
+        }
+    }
+
+    // -----------------------------
+    // Codecs de los eventos de transporte
+    // -----------------------------
+
+    static final class BillingCompletedCodec implements EventCodec<BillingCompletedEvent> {
+        private static final EventSchema SCHEMA = EventSchema.builder("billing.BillingCompletedEvent", 1)
+                .required(1, "event_id", FieldType.UUID)
+                .required(2, "tenant_id", FieldType.STRING)
+                .optional(3, "billing_cycle_id", FieldType.STRING)
+                .optional(4, "total_amount", FieldType.DECIMAL)
+                .optional(5, "currency", FieldType.STRING)
+                .optional(6, "completed_at", FieldType.INSTANT)
+                .optional(7, "status", FieldType.STRING)
+                .build();
+
+        @Override public EventSchema schema() { return SCHEMA; }
+        @Override public Class<BillingCompletedEvent> type() { return BillingCompletedEvent.class; }
+
+        @Override
+        public void write(BillingCompletedEvent e, EventWriter w) {
+            w.writeUuid(1, e.getEventId())
+                    .writeString(2, e.getTenantId())
+                    .writeString(3, e.getBillingCycleId())
+                    .writeDecimal(4, e.getTotalAmount())
+                    .writeString(5, e.getCurrency())
+                    .writeInstant(6, e.getCompletedAt())
+                    .writeString(7, e.getStatus());
+        }
+
+        @Override
+        public BillingCompletedEvent read(EventReader r) {
+            return new BillingCompletedEvent(r.getUuid(1), r.getString(2), r.getString(3),
+                    r.getDecimal(4), r.getString(5), r.getInstant(6), r.getString(7));
+        }
+    }
+
+    static final class InvoiceGeneratedCodec implements EventCodec<InvoiceGeneratedEvent> {
+        private static final EventSchema SCHEMA = EventSchema.builder("billing.InvoiceGeneratedEvent", 1)
+                .required(1, "event_id", FieldType.UUID)
+                .required(2, "tenant_id", FieldType.STRING)
+                .required(3, "invoice_id", FieldType.STRING)
+                .optional(4, "billing_cycle_id", FieldType.STRING)
+                .optional(5, "total_amount", FieldType.DECIMAL)
+                .optional(6, "tax_amount", FieldType.DECIMAL)
+                .optional(7, "issued_at", FieldType.INSTANT)
+                .build();
+
+        @Override public EventSchema schema() { return SCHEMA; }
+        @Override public Class<InvoiceGeneratedEvent> type() { return InvoiceGeneratedEvent.class; }
+
+        @Override
+        public void write(InvoiceGeneratedEvent e, EventWriter w) {
+            w.writeUuid(1, e.getEventId())
+                    .writeString(2, e.getTenantId())
+                    .writeString(3, e.getInvoiceId())
+                    .writeString(4, e.getBillingCycleId())
+                    .writeDecimal(5, e.getTotalAmount())
+                    .writeDecimal(6, e.getTaxAmount())
+                    .writeInstant(7, e.getIssuedAt());
+        }
+
+        @Override
+        public InvoiceGeneratedEvent read(EventReader r) {
+            return new InvoiceGeneratedEvent(r.getUuid(1), r.getString(2), r.getString(3), r.getString(4),
+                    r.getDecimal(5), r.getDecimal(6), r.getInstant(7));
+        }
+    }
+
+    static final class PaymentFailedCodec implements EventCodec<PaymentFailedEvent> {
+        private static final EventSchema SCHEMA = EventSchema.builder("billing.PaymentFailedEvent", 1)
+                .required(1, "event_id", FieldType.UUID)
+                .required(2, "tenant_id", FieldType.STRING)
+                .required(3, "invoice_id", FieldType.STRING)
+                .optional(4, "billing_cycle_id", FieldType.STRING)
+                .optional(5, "failed_amount", FieldType.DECIMAL)
+                .optional(6, "failure_type", FieldType.STRING)
+                .optional(7, "occurred_at", FieldType.INSTANT)
+                .build();
+
+        @Override public EventSchema schema() { return SCHEMA; }
+        @Override public Class<PaymentFailedEvent> type() { return PaymentFailedEvent.class; }
+
+        @Override
+        public void write(PaymentFailedEvent e, EventWriter w) {
+            w.writeUuid(1, e.getEventId())
+                    .writeString(2, e.getTenantId())
+                    .writeString(3, e.getInvoiceId())
+                    .writeString(4, e.getBillingCycleId())
+                    .writeDecimal(5, e.getFailedAmount())
+                    .writeString(6, e.getFailureType())
+                    .writeInstant(7, e.getOccurredAt());
+        }
+
+        @Override
+        public PaymentFailedEvent read(EventReader r) {
+            return new PaymentFailedEvent(r.getUuid(1), r.getString(2), r.getString(3), r.getString(4),
+                    r.getDecimal(5), r.getString(6), r.getInstant(7));
+        }
+    }
+}
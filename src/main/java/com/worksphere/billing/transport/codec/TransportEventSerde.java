@@ -0,0 +1,120 @@
+package com.worksphere.billing.transport.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serializer/Deserializer de Kafka para los eventos de transporte.
+ *
+ * En formato BINARY usa {@link TransportEventCodecs}; los tipos sin codec y el formato JSON
+ * se serializan con Jackson (fallback) añadiendo la cabecera {@value #SUBJECT_HEADER} para
+ * poder reconstruir el tipo. Al deserializar se detecta el formato por el primer byte, de modo
+ * que un consumidor lee ambos formatos durante una migración.
+ */
+public class TransportEventSerde implements Serializer<Object>, Deserializer<Object> {
+
+    public static final String SUBJECT_HEADER = "event-subject";
+
+    public enum Format { BINARY, JSON }
+
+    private final TransportEventCodecs codecs;
+    private final ObjectMapper objectMapper;
+    private final Format format;
+    private final Map<String, Class<?>> jsonTypes = new ConcurrentHashMap<>();
+
+    public TransportEventSerde(TransportEventCodecs codecs, ObjectMapper objectMapper, Format format) {
+        this.codecs = codecs;
+        this.objectMapper = objectMapper;
+        this.format = format;
+        this.jsonTypes.putAll(codecs.subjectTypes());
+    }
+
+    /**
+     * Declara el tipo a usar al deserializar JSON con la cabecera de subject indicada.
+     */
+    public TransportEventSerde jsonType(String subject, Class<?> type) {
+        jsonTypes.put(subject, type);
+        return this;
+    }
+
+    // -----------------------------
+    // Serializer
+    // -----------------------------
+
+    @Override
+    public byte[] serialize(String topic, Object data) {
+        return serialize(topic, null, data);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, Object data) {
+        if (data == null) {
+            return null;
+        }
+        if (format == Format.BINARY && codecs.supports(data.getClass())) {
+            return codecs.encode(data);
+        }
+        try {
+            if (headers != null) {
+                String subject = codecs.subjectOf(data.getClass());
+                headers.add(SUBJECT_HEADER, (subject != null ? subject : data.getClass().getName())
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+            return objectMapper.writeValueAsBytes(data);
+        } catch (IOException e) {
+            throw new SerializationException("Error serializando evento a JSON para " + topic, e);
+        }
+    }
+
+    // -----------------------------
+    // Deserializer
+    // -----------------------------
+
+    @Override
+    public Object deserialize(String topic, byte[] data) {
+        return deserialize(topic, null, data);
+    }
+
+    @Override
+    public Object deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if (EventReader.isBinary(data)) {
+            try {
+                return codecs.decode(data);
+            } catch (IllegalArgumentException e) {
+                throw new SerializationException("Evento binario inválido en " + topic, e);
+            }
+        }
+        try {
+            Class<?> type = jsonTypeFor(headers);
+            return objectMapper.readValue(data, type);
+        } catch (IOException e) {
+            throw new SerializationException("Error deserializando evento JSON de " + topic, e);
+        }
+    }
+
+    private Class<?> jsonTypeFor(Headers headers) {
+        Header header = headers == null ? null : headers.lastHeader(SUBJECT_HEADER);
+        if (header == null) {
+            return Map.class;
+        }
+        Class<?> type = jsonTypes.get(new String(header.value(), StandardCharsets.UTF_8));
+        return type != null ? type : Map.class;
+    }
+
+    @Override
+    public void close() {
+        // sin recursos propios
+    }
+}
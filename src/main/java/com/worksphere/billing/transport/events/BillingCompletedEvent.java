@@ -1,5 +1,6 @@
 package com.worksphere.billing.transport.events;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.io.Serializable;
@@ -39,7 +40,21 @@ public class BillingCompletedEvent implements Serializable {
     private final String status;
 
     public BillingCompletedEvent(String tenantId, String billingCycleId, BigDecimal totalAmount, String currency, Instant completedAt, String status) {
-        this.eventId = UUID.randomUUID().toString(); // Garantiza idempotencia por eventId único
+        this(UUID.randomUUID().toString(), tenantId, billingCycleId, totalAmount, currency, completedAt, status); // Garantiza idempotencia por eventId único
+    }
+
+    /**
+     * Reconstruye un evento existente conservando su eventId (deserialización JSON o binaria).
+     */
+    @JsonCreator
+    public BillingCompletedEvent(@JsonProperty("event_id") String eventId,
+                                 @JsonProperty("tenant_id") String tenantId,
+                                 @JsonProperty("billing_cycle_id") String billingCycleId,
+                                 @JsonProperty("total_amount") BigDecimal totalAmount,
+                                 @JsonProperty("currency") String currency,
+                                 @JsonProperty("completed_at") Instant completedAt,
+                                 @JsonProperty("status") String status) {
+        this.eventId = eventId;
         this.tenantId = tenantId;
         this.billingCycleId = billingCycleId;
         this.totalAmount = totalAmount;
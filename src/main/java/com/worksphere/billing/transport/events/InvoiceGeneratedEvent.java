@@ -1,5 +1,6 @@
 package com.worksphere.billing.transport.events;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.io.Serializable;
@@ -40,7 +41,21 @@ public class InvoiceGeneratedEvent implements Serializable {
 
     public InvoiceGeneratedEvent(String tenantId, String invoiceId, String billingCycleId,
                                  BigDecimal totalAmount, BigDecimal taxAmount, Instant issuedAt) {
-        this.eventId = UUID.randomUUID().toString(); // Idempotencia
+        this(UUID.randomUUID().toString(), tenantId, invoiceId, billingCycleId, totalAmount, taxAmount, issuedAt); // Idempotencia
+    }
+
+    /**
+     * Reconstruye un evento existente conservando su eventId (deserialización JSON o binaria).
+     */
+    @JsonCreator
+    public InvoiceGeneratedEvent(@JsonProperty("event_id") String eventId,
+                                 @JsonProperty("tenant_id") String tenantId,
+                                 @JsonProperty("invoice_id") String invoiceId,
+                                 @JsonProperty("billing_cycle_id") String billingCycleId,
+                                 @JsonProperty("total_amount") BigDecimal totalAmount,
+                                 @JsonProperty("tax_amount") BigDecimal taxAmount,
+                                 @JsonProperty("issued_at") Instant issuedAt) {
+        this.eventId = eventId;
         this.tenantId = tenantId;
         this.invoiceId = invoiceId;
         this.billingCycleId = billingCycleId;
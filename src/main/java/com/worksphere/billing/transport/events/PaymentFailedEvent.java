@@ -1,5 +1,6 @@
 package com.worksphere.billing.transport.events;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.io.Serializable;
@@ -39,7 +40,21 @@ public class PaymentFailedEvent implements Serializable {
     private final Instant occurredAt;
 
     public PaymentFailedEvent(String tenantId, String invoiceId, String billingCycleId, BigDecimal failedAmount, String failureType, Instant occurredAt) {
-        this.eventId = UUID.randomUUID().toString(); // Idempotencia por eventId único
+        this(UUID.randomUUID().toString(), tenantId, invoiceId, billingCycleId, failedAmount, failureType, occurredAt); // Idempotencia por eventId único
+    }
+
+    /**
+     * Reconstruye un evento existente conservando su eventId (deserialización JSON o binaria).
+     */
+    @JsonCreator
+    public PaymentFailedEvent(@JsonProperty("event_id") String eventId,
+                              @JsonProperty("tenant_id") String tenantId,
+                              @JsonProperty("invoice_id") String invoiceId,
+                              @JsonProperty("billing_cycle_id") String billingCycleId,
+                              @JsonProperty("failed_amount") BigDecimal failedAmount,
+                              @JsonProperty("failure_type") String failureType,
+                              @JsonProperty("occurred_at") Instant occurredAt) {
+        this.eventId = eventId;
         this.tenantId = tenantId;
         this.invoiceId = invoiceId;
         this.billingCycleId = billingCycleId;
@@ -0,0 +1,172 @@
+package com.worksphere.billing.transport.webhook;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Circuit breaker por endpoint de webhook.
+ *
+ * Tras {@code failure-threshold} fallos consecutivos el circuito se abre y el endpoint deja de
+ * recibir entregas durante {@code open-ms}. Al vencer se permite una única entrega de prueba
+ * (HALF_OPEN): si tiene éxito el circuito se cierra; si falla se vuelve a abrir con el doble de
+ * duración, hasta {@code max-open-ms}. El estado vive en memoria de cada instancia.
+ */
+@Component
+public class EndpointCircuitBreakers {
+
+    private static final Logger log = LoggerFactory.getLogger(EndpointCircuitBreakers.class);
+
+    private final int failureThreshold;
+    private final long openMs;
+    private final long maxOpenMs;
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+    public EndpointCircuitBreakers(@Value("${billing.webhooks.circuit-breaker.failure-threshold:5}") int failureThreshold,
+                                   @Value("${billing.webhooks.circuit-breaker.open-ms:30000}") long openMs,
+                                   @Value("${billing.webhooks.circuit-breaker.max-open-ms:600000}") long maxOpenMs) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMs = openMs;
+        this.maxOpenMs = Math.max(openMs, maxOpenMs);
+    }
+
+    /**
+     * Indica si se puede entregar al endpoint. Con el circuito vencido concede la entrega de
+     * prueba a un único llamador; el resto sigue viendo el circuito abierto.
+     */
+    public boolean allowRequest(String endpointUrl, Instant now) {
+        Breaker breaker = breakers.get(endpointUrl);
+        return breaker == null || breaker.allow(now);
+    }
+
+    /**
+     * Instante hasta el que el circuito permanece abierto (o {@code now} si está cerrado).
+     */
+    public Instant openUntil(String endpointUrl, Instant now) {
+        Breaker breaker = breakers.get(endpointUrl);
+        if (breaker == null) {
+            return now;
+        }
+        synchronized (breaker) {
+            return breaker.state == State.CLOSED || breaker.openUntil.isBefore(now) ? now : breaker.openUntil;
+        }
+    }
+
+    public void onSuccess(String endpointUrl) {
+        Breaker breaker = breakers.get(endpointUrl);
+        if (breaker == null) {
+            return;
+        }
+        synchronized (breaker) {
+            if (breaker.state != State.CLOSED) {
+                log.info("Circuito del endpoint de webhook [{}] cerrado", endpointUrl);
+            }
+            breaker.state = State.CLOSED;
+            breaker.consecutiveFailures = 0;
+            breaker.currentOpenMs = openMs;
+        }
+    }
+
+    public void onFailure(String endpointUrl, Instant now) {
+        Breaker breaker = breakers.computeIfAbsent(endpointUrl, url -> new Breaker(openMs));
+        synchronized (breaker) {
+            breaker.consecutiveFailures++;
+            if (breaker.state == State.HALF_OPEN) {
+                // Falló la entrega de prueba: se reabre con más margen
+                breaker.currentOpenMs = Math.min(maxOpenMs, breaker.currentOpenMs * 2);
+                open(endpointUrl, breaker, now);
+            } else if (breaker.state == State.CLOSED && breaker.consecutiveFailures >= failureThreshold) {
+                open(endpointUrl, breaker, now);
+            }
+        }
+    }
+
+    /**
+     * Devuelve la entrega de prueba si su resultado no llegó a registrarse (p. ej. falló la
+     * transacción que lo anota): el circuito vuelve a OPEN ya vencido y el siguiente ciclo
+     * concede otra prueba. Sin efecto si el resultado ya se registró.
+     */
+    public void releaseTrial(String endpointUrl, Instant now) {
+        Breaker breaker = breakers.get(endpointUrl);
+        if (breaker == null) {
+            return;
+        }
+        synchronized (breaker) {
+            if (breaker.state == State.HALF_OPEN) {
+                breaker.state = State.OPEN;
+                breaker.openUntil = now;
+                log.warn("Entrega de prueba del endpoint de webhook [{}] sin resultado registrado; se liberará otra", endpointUrl);
+            }
+        }
+    }
+
+    public State state(String endpointUrl) {
+        Breaker breaker = breakers.get(endpointUrl);
+        if (breaker == null) {
+            return State.CLOSED;
+        }
+        synchronized (breaker) {
+            return breaker.state;
+        }
+    }
+
+    /**
+     * Endpoints con el circuito abierto o en prueba.
+     */
+    public Map<String, State> getOpenCircuits() {
+        Map<String, State> open = new ConcurrentHashMap<>();
+        breakers.forEach((url, breaker) -> {
+            State state = state(url);
+            if (state != State.CLOSED) {
+                open.put(url, state);
+            }
+        });
+        return open;
+    }
+
+    private void open(String endpointUrl, Breaker breaker, Instant now) {
+        breaker.state = State.OPEN;
+        breaker.openUntil = now.plus(Duration.ofMillis(breaker.currentOpenMs));
+        log.warn("Circuito del endpoint de webhook [{}] abierto hasta {} tras {} fallos consecutivos",
+                endpointUrl, breaker.openUntil, breaker.consecutiveFailures);
+    }
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static final class Breaker {
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long currentOpenMs;
+        private Instant openUntil = Instant.EPOCH;
+
+        private Breaker(long openMs) {
+            this.currentOpenMs = openMs;
+        }
+
+        private synchronized boolean allow(Instant now) {
+            switch (state) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if (now.isBefore(openUntil)) {
+                        return false;
+                    }
+                    state = State.HALF_OPEN;
+                    return true;
+                default:
+                    // Ya hay una entrega de prueba en curso
+                    return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.worksphere.billing.transport.webhook;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Límite de entregas simultáneas hacia un endpoint, sin bloquear hilos.
+ *
+ * {@link #acquire()} devuelve un permiso en cuanto hay hueco; si no, el suscriptor queda en
+ * una cola FIFO y se le entrega el permiso cuando otra entrega libera el suyo. Cancelar la
+ * espera (p. ej. por timeout) retira al suscriptor de la cola o devuelve el permiso si ya se
+ * le había asignado. Liberar un permiso es idempotente.
+ *
+ * El límite puede cambiarse en caliente con {@link #resize(int)}: las entregas en curso se
+ * siguen contando, de modo que nunca hay más de {@code limit} permisos vivos tras reducirlo
+ * (los nuevos esperan a que terminen las sobrantes).
+ */
+public final class EndpointConcurrencyLimiter {
+
+    private int limit;
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    private int inFlight;
+
+    public EndpointConcurrencyLimiter(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("El límite de concurrencia debe ser positivo: " + limit);
+        }
+        this.limit = limit;
+    }
+
+    public Mono<Permit> acquire() {
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(sink);
+            Permit granted = null;
+            synchronized (this) {
+                if (inFlight < limit) {
+                    inFlight++;
+                    granted = new Permit();
+                } else {
+                    waiters.add(waiter);
+                }
+            }
+            if (granted != null) {
+                sink.success(granted);
+            } else {
+                sink.onCancel(() -> cancel(waiter));
+            }
+        });
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getWaiting() {
+        return waiters.size();
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Cambia el límite sin perder la cuenta de entregas en curso. Al ampliarlo se despiertan
+     * tantos suscriptores en espera como huecos nuevos haya.
+     */
+    public void resize(int newLimit) {
+        if (newLimit <= 0) {
+            throw new IllegalArgumentException("El límite de concurrencia debe ser positivo: " + newLimit);
+        }
+        ArrayDeque<Waiter> granted = new ArrayDeque<>();
+        synchronized (this) {
+            limit = newLimit;
+            while (inFlight < limit && !waiters.isEmpty()) {
+                Waiter next = waiters.poll();
+                next.permit = new Permit();
+                inFlight++;
+                granted.add(next);
+            }
+        }
+        granted.forEach(waiter -> waiter.sink.success(waiter.permit));
+    }
+
+    private void cancel(Waiter waiter) {
+        Permit assigned;
+        synchronized (this) {
+            if (waiters.remove(waiter)) {
+                return;
+            }
+            assigned = waiter.permit;
+        }
+        if (assigned != null) {
+            assigned.release();
+        }
+    }
+
+    private void releaseOne() {
+        Waiter next;
+        synchronized (this) {
+            next = inFlight > limit ? null : waiters.poll();
+            if (next == null) {
+                // Sin espera, o por encima de un límite reducido: el permiso se retira
+                inFlight--;
+                return;
+            }
+            // El permiso pasa directamente al siguiente en espera (inFlight no cambia)
+            next.permit = new Permit();
+        }
+        next.sink.success(next.permit);
+    }
+
+    private static final class Waiter {
+        private final MonoSink<Permit> sink;
+        private Permit permit; // asignado bajo el lock del limitador
+
+        private Waiter(MonoSink<Permit> sink) {
+            this.sink = sink;
+        }
+    }
+
+    /**
+     * Permiso de una entrega en curso.
+     */
+    public final class Permit {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                releaseOne();
+            }
+        }
+    }
+}
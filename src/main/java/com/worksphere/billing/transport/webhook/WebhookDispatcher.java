@@ -1,53 +1,53 @@
 package com.worksphere.billing.transport.webhook;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.worksphere.billing.domain.model.WebhookOutboxMessage;
+import com.worksphere.billing.infrastructure.repository.WebhookOutboxRepository;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.*;
-import org.springframework.retry.annotation.Backoff;
-import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
 @Slf4j
 @Component
 public class WebhookDispatcher {
 
-    private final RestTemplate restTemplate;
+    private static final String SYSTEM_TENANT = "system";
 
-    public WebhookDispatcher() {
-        this.restTemplate = new RestTemplate();
+    private final WebhookOutboxRepository outboxRepository;
+    private final ObjectMapper objectMapper;
+
+    public WebhookDispatcher(WebhookOutboxRepository outboxRepository, ObjectMapper objectMapper) {
+        this.outboxRepository = outboxRepository;
+        this.objectMapper = objectMapper;
     }
 
     /**
-     * Envía un evento JSON a la URL del webhook.
-     * Se reintenta hasta 3 veces en caso de fallo.
+     * Encola un evento JSON para la URL del webhook.
+     * La entrega y sus reintentos los hace el worker de la cola persistente; el llamador nunca espera.
      */
-    @Retryable(
-        value = { Exception.class },
-        maxAttempts = 3,
-        backoff = @Backoff(delay = 2000)
-    )
     public void dispatch(String webhookUrl, Object eventPayload) {
+        dispatch(SYSTEM_TENANT, webhookUrl, eventPayload);
+    }
+
+    /**
+     * Encola un evento JSON de un tenant para la URL del webhook, en la transacción del llamador si la hay.
+     */
+    @Transactional(propagation = Propagation.REQUIRED)
+    public void dispatch(String tenantId, String webhookUrl, Object eventPayload) {
+        String json;
         try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            HttpEntity<Object> entity = new HttpEntity<>(eventPayload, headers);
-
-            ResponseEntity<String> response = restTemplate.exchange(
-                webhookUrl,
-                HttpMethod.POST,
-                entity,
-                String.class
-            );
-
-            if (response.getStatusCode().is2xxSuccessful()) {
-                log.info("Webhook enviado correctamente a {} con payload: {}", webhookUrl, eventPayload);
-            } else {
-                log.warn("Respuesta inesperada del webhook {}: {}", webhookUrl, response.getStatusCode());
-                throw new RuntimeException("Error enviando webhook");
-            }
-        } catch (Exception e) {
-            log.error("Error enviando webhook a {}: {}", webhookUrl, e.getMessage());
-            throw e;  // Para activar reintento
+            json = eventPayload instanceof String s ? s : objectMapper.writeValueAsString(eventPayload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Payload de webhook no serializable: " + e.getMessage(), e);
         }
+
+        WebhookOutboxMessage message = new WebhookOutboxMessage();
+        message.setTenantId(tenantId);
+        message.setEndpointUrl(webhookUrl);
+        message.setPayload(json);
+        outboxRepository.save(message);
+        log.debug("Webhook {} encolado para {}", message.getId(), webhookUrl);
     }
 }
@@ -0,0 +1,148 @@
+package com.worksphere.billing.transport.webhook;
+
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cliente HTTP no bloqueante para la entrega de webhooks.
+ *
+ * Comparte un pool de conexiones (keep-alive) entre todos los endpoints y limita, por
+ * endpoint, el número de entregas simultáneas con {@link EndpointConcurrencyLimiter}: un
+ * endpoint lento agota sus propios permisos pero no las conexiones ni los hilos del resto.
+ * El timeout de cada entrega incluye la espera de permiso. Hay un limitador por URL: las
+ * configuraciones que comparten URL comparten límite y cuenta de entregas en curso, y un
+ * cambio de {@code maxConcurrency} redimensiona el limitador existente en lugar de sustituirlo.
+ */
+@Component
+public class WebhookHttpClient {
+
+    private static final Logger log = LoggerFactory.getLogger(WebhookHttpClient.class);
+
+    private static final int MAX_LOGGED_BODY = 2000;
+
+    private final ConnectionProvider connectionProvider;
+    private final WebClient webClient;
+    private final Map<String, EndpointConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+    public WebhookHttpClient(@Value("${billing.webhooks.http.max-connections:500}") int maxConnections,
+                             @Value("${billing.webhooks.http.connect-timeout-ms:2000}") int connectTimeoutMs,
+                             @Value("${billing.webhooks.http.max-idle-ms:30000}") long maxIdleMs,
+                             @Value("${billing.webhooks.http.response-timeout-ms:30000}") long responseTimeoutMs) {
+        this.connectionProvider = ConnectionProvider.builder("webhooks")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(maxConnections * 4)
+                .maxIdleTime(Duration.ofMillis(maxIdleMs))
+                .evictInBackground(Duration.ofMillis(maxIdleMs))
+                .build();
+
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .responseTimeout(Duration.ofMillis(responseTimeoutMs));
+
+        this.webClient = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+
+        log.info("Cliente de webhooks inicializado: max-connections={}, connect-timeout-ms={}",
+                maxConnections, connectTimeoutMs);
+    }
+
+    /**
+     * Envía un POST JSON respetando el límite de concurrencia del endpoint.
+     * Nunca lanza: los errores de red y timeouts se emiten como error del Mono.
+     *
+     * @param timeout        tiempo máximo total (espera de permiso + petición + respuesta)
+     * @param maxConcurrency entregas simultáneas permitidas hacia este endpoint
+     */
+    public Mono<WebhookResponse> post(String url, String body, HttpHeaders headers, Duration timeout, int maxConcurrency) {
+        return post(url, body.getBytes(StandardCharsets.UTF_8), headers, timeout, maxConcurrency);
+    }
+
+    /**
+     * Igual que {@link #post(String, String, HttpHeaders, Duration, int)} con el cuerpo ya
+     * codificado en UTF-8: los bytes se escriben tal cual, sin volver a codificarlos.
+     */
+    public Mono<WebhookResponse> post(String url, byte[] body, HttpHeaders headers, Duration timeout, int maxConcurrency) {
+        EndpointConcurrencyLimiter limiter = limiterFor(url, maxConcurrency);
+        return Mono.usingWhen(
+                        limiter.acquire(),
+                        permit -> webClient.post()
+                                .uri(url)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .headers(h -> h.addAll(headers))
+                                .bodyValue(body)
+                                .exchangeToMono(response -> response.bodyToMono(String.class)
+                                        .defaultIfEmpty("")
+                                        .map(responseBody -> new WebhookResponse(response.statusCode().value(),
+                                                truncate(responseBody)))),
+                        permit -> Mono.fromRunnable(permit::release))
+                .timeout(timeout);
+    }
+
+    private EndpointConcurrencyLimiter limiterFor(String url, int maxConcurrency) {
+        EndpointConcurrencyLimiter limiter = limiters.computeIfAbsent(url, u -> new EndpointConcurrencyLimiter(maxConcurrency));
+        if (limiter.getLimit() != maxConcurrency) {
+            limiter.resize(maxConcurrency);
+        }
+        return limiter;
+    }
+
+    private static String truncate(String body) {
+        return body.length() <= MAX_LOGGED_BODY ? body : body.substring(0, MAX_LOGGED_BODY);
+    }
+
+    /**
+     * Entregas en curso y en espera por endpoint.
+     */
+    public Map<String, int[]> getEndpointLoad() {
+        Map<String, int[]> load = new ConcurrentHashMap<>();
+        limiters.forEach((url, limiter) -> load.put(url, new int[]{limiter.getInFlight(), limiter.getWaiting()}));
+        return load;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        connectionProvider.disposeLater().block(Duration.ofSeconds(10));
+    }
+
+    /**
+     * Respuesta de un endpoint de webhook.
+     */
+    public static final class WebhookResponse {
+        private final int statusCode;
+        private final String body;
+
+        public WebhookResponse(int statusCode, String body) {
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public boolean isSuccess() {
+            return statusCode >= 200 && statusCode < 300;
+        }
+    }
+}
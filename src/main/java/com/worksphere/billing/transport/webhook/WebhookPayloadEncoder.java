@@ -0,0 +1,90 @@
+package com.worksphere.billing.transport.webhook;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serializa el cuerpo de un webhook una sola vez por evento.
+ *
+ * El sobre {@code {"event": <tipo>, "data": <payload JSON>}} se escribe con un {@link ObjectWriter}
+ * compartido sobre un buffer reutilizable por hilo; los bytes resultantes se firman y se envían
+ * tal cual a todos los endpoints del evento.
+ */
+@Component
+public class WebhookPayloadEncoder {
+
+    private static final int MAX_RETAINED_BUFFER = 256 * 1024;
+
+    private final ObjectWriter writer;
+    private final ThreadLocal<ByteArrayBuilder> buffers = ThreadLocal.withInitial(() -> new ByteArrayBuilder(4096));
+
+    public WebhookPayloadEncoder(ObjectMapper objectMapper) {
+        this.writer = objectMapper.writer();
+    }
+
+    public EncodedPayload encode(Object payload) {
+        return encode(payload.getClass().getSimpleName(), payload);
+    }
+
+    public EncodedPayload encode(String eventType, Object payload) {
+        ByteArrayBuilder buffer = buffers.get();
+        try (JsonGenerator generator = writer.getFactory().createGenerator(buffer, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeStringField("event", eventType);
+            generator.writeFieldName("data");
+            writer.writeValue(generator, payload);
+            generator.writeEndObject();
+        } catch (IOException e) {
+            buffer.reset();
+            throw new UncheckedIOException("No se pudo serializar el payload del webhook " + eventType, e);
+        }
+        byte[] bytes = buffer.toByteArray();
+        // Un evento excepcionalmente grande no debe quedar retenido en el buffer del hilo
+        if (bytes.length > MAX_RETAINED_BUFFER) {
+            buffers.remove();
+        } else {
+            buffer.reset();
+        }
+        return new EncodedPayload(eventType, bytes);
+    }
+
+    /**
+     * Cuerpo de un webhook ya serializado (UTF-8).
+     */
+    public static final class EncodedPayload {
+        private final String eventType;
+        private final byte[] bytes;
+        private String json;
+
+        private EncodedPayload(String eventType, byte[] bytes) {
+            this.eventType = eventType;
+            this.bytes = bytes;
+        }
+
+        public String getEventType() {
+            return eventType;
+        }
+
+        /**
+         * Bytes serializados; no deben modificarse.
+         */
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        public String asString() {
+            if (json == null) {
+                json = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return json;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.worksphere.billing.transport.webhook;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Firma HMAC-SHA256 de los webhooks (cabecera X-Signature).
+ *
+ * Por endpoint y secreto se guarda un {@link Mac} ya inicializado; cada firma trabaja sobre un
+ * clon, que evita la búsqueda del proveedor y el cálculo de la clave en cada webhook. La clave
+ * de la caché es la URL más la huella SHA-256 del secreto, de modo que dos configuraciones que
+ * comparten URL con secretos distintos no se pisan, y la caché es LRU con
+ * {@code cache-size} entradas como máximo (un secreto rotado acaba saliendo por antigüedad).
+ */
+@Component
+public class WebhookSigner {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final Map<String, Mac> prototypes; // nunca se usan directamente: solo se clonan
+
+    public WebhookSigner(@Value("${billing.webhooks.signer.cache-size:1024}") int cacheSize) {
+        int maxEntries = Math.max(1, cacheSize);
+        this.prototypes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Mac> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Firma los bytes del payload con el secreto del endpoint y devuelve la firma en Base64.
+     */
+    public String sign(String endpointUrl, String secret, byte[] payload) {
+        Mac mac = macFor(endpointUrl, secret);
+        return Base64.getEncoder().encodeToString(mac.doFinal(payload));
+    }
+
+    public String sign(String endpointUrl, String secret, String payload) {
+        return sign(endpointUrl, secret, payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac macFor(String endpointUrl, String secret) {
+        String key = endpointUrl + '\n' + fingerprint(secret);
+        Mac prototype;
+        synchronized (prototypes) {
+            prototype = prototypes.get(key);
+            if (prototype == null) {
+                prototype = newMac(secret);
+                prototypes.put(key, prototype);
+            }
+        }
+        try {
+            return (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            // Proveedor sin soporte de clonado: se inicializa una instancia nueva
+            return newMac(secret);
+        }
+    }
+
+    private static String fingerprint(String secret) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(secret.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    private static Mac newMac(String secret) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No se pudo inicializar " + ALGORITHM + ": " + e.getMessage(), e);
+        }
+    }
+
+    public int getCachedEndpoints() {
+        synchronized (prototypes) {
+            return prototypes.size();
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package com.worksphere.billing.usecase.automation;
 
 import com.worksphere.billing.domain.model.BillingCycle;
-import com.worksphere.billing.domain.model.PaymentResult;
+import com.worksphere.billing.domain.model.PaymentResult.PaymentStatus;
 import com.worksphere.billing.domain.exception.PaymentException;
 import com.worksphere.billing.transport.events.EventPublisher;
 import com.worksphere.billing.transport.events.PlanRenewedEvent;
@@ -108,8 +108,7 @@ public class EvaluatePlanRenewal {
         boolean hasSuccessfulPayment = false;
 
         if (cycle.getInvoiceId() != null) {
-            PaymentResult pr = paymentResultRepository.findByInvoiceId(cycle.getInvoiceId());
-            hasSuccessfulPayment = pr != null && "SUCCESS".equalsIgnoreCase(pr.getStatus());
+            hasSuccessfulPayment = paymentResultRepository.existsByInvoiceIdAndStatus(cycle.getInvoiceId(), PaymentStatus.SUCCESS);
         }
 
         if (requiresSuccessfulPayment && !hasSuccessfulPayment) {
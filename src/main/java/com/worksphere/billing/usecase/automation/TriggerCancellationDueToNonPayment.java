@@ -1,7 +1,7 @@
 package com.worksphere.billing.usecase.automation;
 
 import com.worksphere.billing.domain.model.BillingCycle;
-import com.worksphere.billing.domain.model.PaymentResult;
+import com.worksphere.billing.domain.model.PaymentResult.PaymentStatus;
 import com.worksphere.billing.domain.model.Subscription;
 import com.worksphere.billing.domain.repository.BillingCycleRepository;
 import com.worksphere.billing.domain.repository.PaymentResultRepository;
@@ -93,8 +93,7 @@ public class TriggerCancellationDueToNonPayment {
         // 3) Integración con facturación: ¿existe pago válido?
         boolean hasSuccessfulPayment = false;
         if (cycle.getInvoiceId() != null) {
-            PaymentResult pr = paymentResultRepository.findByInvoiceId(cycle.getInvoiceId());
-            hasSuccessfulPayment = pr != null && "SUCCESS".equalsIgnoreCase(pr.getStatus());
+            hasSuccessfulPayment = paymentResultRepository.existsByInvoiceIdAndStatus(cycle.getInvoiceId(), PaymentStatus.SUCCESS);
         }
 
         if (hasSuccessfulPayment) {
@@ -3,6 +3,7 @@ package com.worksphere.billing.usecase.calculation;
 import com.worksphere.billing.domain.model.BillingRequest;
 import com.worksphere.billing.domain.model.BillingCycle;
 import com.worksphere.billing.domain.model.Invoice;
+import com.worksphere.billing.service.InvoicePdfMaterializer;
 import com.worksphere.billing.service.InvoiceSigner;
 import com.worksphere.billing.domain.exception.InvoiceGenerationException;
 import org.springframework.stereotype.Component;
@@ -21,9 +22,11 @@ public class GenerateInvoice {
     private static final Logger logger = LoggerFactory.getLogger(GenerateInvoice.class);
 
     private final InvoiceSigner invoiceSigner;
+    private final InvoicePdfMaterializer pdfMaterializer;
 
-    public GenerateInvoice(InvoiceSigner invoiceSigner) {
+    public GenerateInvoice(InvoiceSigner invoiceSigner, InvoicePdfMaterializer pdfMaterializer) {
         this.invoiceSigner = invoiceSigner;
+        this.pdfMaterializer = pdfMaterializer;
     }
 
     /**
@@ -80,7 +83,9 @@ public class GenerateInvoice {
             // -----------------------------
             // 5. Preparación para distribución
             // -----------------------------
-            // Se puede serializar a PDF/XML mediante utils en otra capa
+            // Solo se persisten los datos canónicos firmados; en modo LAZY el PDF se
+            // renderiza cuando se solicita (email, descarga, exportación de auditoría)
+            pdfMaterializer.onInvoiceGenerated(invoice);
 
             return invoice;
 
@@ -2,12 +2,15 @@ package com.worksphere.billing.usecase.idempotency;
 
 import com.worksphere.billing.domain.model.BillingCycle;
 import com.worksphere.billing.domain.repository.BillingCycleRepository;
+import com.worksphere.billing.infrastructure.kafka.TransportEventPublisher;
 import com.worksphere.billing.transport.events.PaymentFailedEvent;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -20,15 +23,18 @@ public class RetryFailedBillingJob {
     private static final Logger logger = LoggerFactory.getLogger(RetryFailedBillingJob.class);
 
     private final BillingCycleRepository billingCycleRepository;
-    private final EventPublisher eventPublisher; // Servicio para emitir eventos (Kafka, etc.)
+    private final TransportEventPublisher eventPublisher; // Eventos de transporte (binario con esquema)
+    private final String paymentEventsTopic;
 
     private final int maxRetries = 3;          // Número máximo de reintentos
     private final long backoffSeconds = 60L;   // Backoff inicial en segundos
 
     public RetryFailedBillingJob(BillingCycleRepository billingCycleRepository,
-                                 EventPublisher eventPublisher) {
+                                 TransportEventPublisher eventPublisher,
+                                 @Value("${spring.kafka.topic.payment-events}") String paymentEventsTopic) {
         this.billingCycleRepository = billingCycleRepository;
         this.eventPublisher = eventPublisher;
+        this.paymentEventsTopic = paymentEventsTopic;
     }
 
     /**
@@ -61,7 +67,7 @@ public class RetryFailedBillingJob {
             cycle.setStatus("FAILED_EXHAUSTED");
             cycle.setCompletedAt(LocalDateTime.now());
             billingCycleRepository.save(cycle);
-            eventPublisher.publish(new PaymentFailedEvent(tenantId, cycleId, "Retries exhausted"));
+            publishPaymentFailed(tenantId, cycleId, "RETRIES_EXHAUSTED");
             return;
         }
 
@@ -69,7 +75,7 @@ public class RetryFailedBillingJob {
         // 2. Registro de reintento
         // -----------------------------
         logger.info("Iniciando reintento {} para ciclo {} de tenant {}", cycle.getRetryCount() + 1, cycleId, tenantId);
-        eventPublisher.publish(new PaymentFailedEvent(tenantId, cycleId, "Retry started"));
+        publishPaymentFailed(tenantId, cycleId, "RETRY_STARTED");
 
         try {
             // -----------------------------
@@ -98,6 +104,11 @@ public class RetryFailedBillingJob {
         }
     }
 
+    private void publishPaymentFailed(String tenantId, String cycleId, String failureType) {
+        eventPublisher.publish(paymentEventsTopic, tenantId,
+                new PaymentFailedEvent(tenantId, null, cycleId, null, failureType, Instant.now()));
+    }
+
     /**
      * Simula el intento de ejecutar el ciclo de facturación.
      *
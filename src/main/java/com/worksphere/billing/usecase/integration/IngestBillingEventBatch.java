@@ -0,0 +1,227 @@
+package com.worksphere.billing.usecase.integration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.worksphere.billing.domain.model.InboundBillingEvent;
+import com.worksphere.billing.infrastructure.kafka.BillingMessageKey;
+import com.worksphere.billing.infrastructure.kafka.KafkaTopics;
+import com.worksphere.billing.infrastructure.repository.InboundBillingEventBatchWriter;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ingesta por lotes de disparadores de facturación y eventos de uso desde Kafka.
+ *
+ * Cada poll entrega una lista de registros que se procesa así:
+ * 1. Se agrupan por tenant (clave del registro) conservando el orden de offsets.
+ * 2. Cada grupo se normaliza y persiste en paralelo, en su propia transacción, con un único
+ *    INSERT por lotes; los grupos de un mismo tenant nunca se procesan concurrentemente.
+ * 3. Solo cuando todos los grupos están persistidos se confirman los offsets del lote (un
+ *    único commit por poll). Si algo falla se relanza la excepción y el manejador de errores
+ *    del contenedor reintenta el lote con backoff, sin límite de intentos (ver KafkaConfig);
+ *    la restricción única por posición hace idempotente la reentrega.
+ *
+ * Los registros vacíos o sin tenant identificable se descartan con log (no bloquean la partición).
+ */
+@Component
+public class IngestBillingEventBatch {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestBillingEventBatch.class);
+
+    public static final String EVENT_TYPE_HEADER = "event-type";
+
+    private final InboundBillingEventBatchWriter batchWriter;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService tenantExecutor;
+
+    // -----------------------------
+    // Métricas
+    // -----------------------------
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder inserted = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+
+    public IngestBillingEventBatch(InboundBillingEventBatchWriter batchWriter,
+                                   PlatformTransactionManager transactionManager,
+                                   ObjectMapper objectMapper,
+                                   @Value("${billing.ingest.parallelism:0}") int parallelism) {
+        this.batchWriter = batchWriter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger sequence = new AtomicInteger();
+        // Sin rechazo: si la cola se llena el hilo del consumidor procesa el grupo (backpressure al poll)
+        this.tenantExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(threads * 4),
+                r -> {
+                    Thread t = new Thread(r, "billing-ingest-" + sequence.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        log.info("Ingesta por lotes inicializada con {} hilos por tenant", threads);
+    }
+
+    /**
+     * Procesa un poll completo de los topics de entrada y confirma sus offsets una sola vez.
+     */
+    @KafkaListener(
+            id = "billing-ingest",
+            topics = {KafkaTopics.BILLING_TRIGGERS, KafkaTopics.USAGE_EVENTS},
+            containerFactory = "batchKafkaListenerContainerFactory")
+    public void onBatch(List<ConsumerRecord<String, String>> batch, Acknowledgment acknowledgment) {
+        if (batch.isEmpty()) {
+            acknowledgment.acknowledge();
+            return;
+        }
+        long start = System.nanoTime();
+        Instant receivedAt = Instant.now();
+
+        Map<String, List<ConsumerRecord<String, String>>> byTenant = groupByTenant(batch);
+
+        List<CompletableFuture<Integer>> writes = new ArrayList<>(byTenant.size());
+        byTenant.forEach((tenantId, tenantRecords) -> writes.add(
+                CompletableFuture.supplyAsync(() -> persist(tenantId, tenantRecords, receivedAt), tenantExecutor)));
+
+        int newEvents = 0;
+        try {
+            for (CompletableFuture<Integer> write : writes) {
+                newEvents += write.join();
+            }
+        } catch (CompletionException e) {
+            failedBatches.increment();
+            log.error("❌ Falló la ingesta de un lote de {} registros; se reentregará sin confirmar offsets",
+                    batch.size(), e.getCause());
+            throw e;
+        }
+
+        // Escritura durable completa: un único commit de offsets para todo el poll
+        acknowledgment.acknowledge();
+
+        batches.increment();
+        records.add(batch.size());
+        inserted.add(newEvents);
+        log.debug("Lote ingerido: {} registros, {} tenants, {} nuevos en {} ms", batch.size(), byTenant.size(),
+                newEvents, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private Map<String, List<ConsumerRecord<String, String>>> groupByTenant(List<ConsumerRecord<String, String>> batch) {
+        // LinkedHashMap + recorrido en orden: dentro de cada tenant se conserva el orden de offsets
+        Map<String, List<ConsumerRecord<String, String>>> byTenant = new LinkedHashMap<>();
+        for (ConsumerRecord<String, String> record : batch) {
+            String tenantId = record.value() == null ? null : tenantOf(record);
+            if (tenantId == null) {
+                discarded.increment();
+                log.warn("Registro vacío o sin tenant descartado: {}-{}@{}", record.topic(), record.partition(), record.offset());
+                continue;
+            }
+            byTenant.computeIfAbsent(tenantId, t -> new ArrayList<>()).add(record);
+        }
+        return byTenant;
+    }
+
+    private int persist(String tenantId, List<ConsumerRecord<String, String>> tenantRecords, Instant receivedAt) {
+        List<InboundBillingEvent> events = new ArrayList<>(tenantRecords.size());
+        for (ConsumerRecord<String, String> record : tenantRecords) {
+            events.add(new InboundBillingEvent(record.topic(), record.partition(), record.offset(),
+                    tenantId, eventTypeOf(record), record.value(), receivedAt));
+        }
+        Integer count = transactionTemplate.execute(status -> batchWriter.insertAll(events));
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Tenant del registro: el de la clave ({@link BillingMessageKey}) o, si falta, el campo tenant_id/tenantId del payload.
+     */
+    private String tenantOf(ConsumerRecord<String, String> record) {
+        String keyTenant = BillingMessageKey.tenantOf(record.key());
+        if (keyTenant != null && !keyTenant.isBlank()) {
+            return keyTenant;
+        }
+        JsonNode payload = parse(record.value());
+        if (payload == null) {
+            return null;
+        }
+        JsonNode tenant = payload.hasNonNull("tenant_id") ? payload.get("tenant_id") : payload.get("tenantId");
+        return tenant == null || tenant.asText().isBlank() ? null : tenant.asText();
+    }
+
+    private String eventTypeOf(ConsumerRecord<String, String> record) {
+        Header header = record.headers().lastHeader(EVENT_TYPE_HEADER);
+        if (header != null) {
+            return new String(header.value(), StandardCharsets.UTF_8);
+        }
+        return KafkaTopics.USAGE_EVENTS.equals(record.topic()) ? "USAGE" : "BILLING_TRIGGER";
+    }
+
+    private JsonNode parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readTree(value);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        tenantExecutor.shutdown();
+        if (!tenantExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+            tenantExecutor.shutdownNow();
+        }
+    }
+
+    // -----------------------------
+    // Métricas
+    // -----------------------------
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getRecordCount() {
+        return records.sum();
+    }
+
+    public long getInsertedCount() {
+        return inserted.sum();
+    }
+
+    public long getDiscardedCount() {
+        return discarded.sum();
+    }
+
+    public long getFailedBatchCount() {
+        return failedBatches.sum();
+    }
+}
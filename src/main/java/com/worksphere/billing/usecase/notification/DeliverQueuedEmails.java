@@ -0,0 +1,262 @@
+package com.worksphere.billing.usecase.notification;
+
+import com.worksphere.billing.domain.event.BillingEvent;
+import com.worksphere.billing.domain.event.NotificationEvent;
+import com.worksphere.billing.domain.model.EmailOutboxMessage;
+import com.worksphere.billing.infrastructure.email.PooledSmtpEmailDispatcher;
+import com.worksphere.billing.infrastructure.email.PooledSmtpEmailDispatcher.DispatchResult;
+import com.worksphere.billing.infrastructure.email.PooledSmtpEmailDispatcher.OutgoingEmail;
+import com.worksphere.billing.infrastructure.repository.EmailOutboxRepository;
+import com.worksphere.billing.infrastructure.repository.InvoiceEmailLogRepository;
+import com.worksphere.billing.infrastructure.storage.ContentAddressedDocumentStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Worker que entrega los correos de la bandeja de salida persistente.
+ *
+ * Cualidades:
+ * - Orden por tenant: por defecto ({@code tenant-window} = 1) solo se reclama la cabeza de cada tenant
+ *   y la entrega es estrictamente ordenada. Un valor mayor es opcional y permite varios correos del
+ *   mismo tenant en vuelo, sin garantía de orden entre ellos.
+ * - Un correo reclamado de nuevo tras vencer su lease cuenta como intento; si era el último pasa a DEAD_LETTER.
+ * - Reintentos con backoff exponencial (con jitter) y estado DEAD_LETTER al agotar los intentos.
+ * - Los envíos se reparten entre las conexiones del pool SMTP; ninguna transacción queda abierta durante el envío.
+ * - Varias instancias pueden ejecutar el worker a la vez (reclamo con FOR UPDATE SKIP LOCKED y lease).
+ * - El estado final se registra en {@link InvoiceEmailLogRepository} y se publica como evento de
+ *   facturación ({@code invoice_email_sent} / {@code invoice_email_failed}) en la misma transacción,
+ *   a través del outbox de {@link EmitBillingEventToKafka}.
+ */
+@Service
+public class DeliverQueuedEmails {
+
+    private static final Logger log = LoggerFactory.getLogger(DeliverQueuedEmails.class);
+
+    private final EmailOutboxRepository outboxRepository;
+    private final PooledSmtpEmailDispatcher emailDispatcher;
+    private final InvoiceEmailLogRepository emailLogRepository;
+    private final EmitNotificationEvent emitNotificationEvent;
+    private final EmitBillingEventToKafka emitBillingEvent;
+    private final ContentAddressedDocumentStore documentStore;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${billing.email.outbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${billing.email.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${billing.email.outbox.base-backoff-ms:30000}")
+    private long baseBackoffMs;
+
+    @Value("${billing.email.outbox.max-backoff-ms:3600000}")
+    private long maxBackoffMs;
+
+    @Value("${billing.email.outbox.lease-seconds:300}")
+    private long leaseSeconds;
+
+    @Value("${billing.email.outbox.tenant-window:1}")
+    private int tenantWindow;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+
+    public DeliverQueuedEmails(EmailOutboxRepository outboxRepository,
+                               PooledSmtpEmailDispatcher emailDispatcher,
+                               InvoiceEmailLogRepository emailLogRepository,
+                               EmitNotificationEvent emitNotificationEvent,
+                               EmitBillingEventToKafka emitBillingEvent,
+                               ContentAddressedDocumentStore documentStore,
+                               PlatformTransactionManager transactionManager) {
+        this.outboxRepository = outboxRepository;
+        this.emailDispatcher = emailDispatcher;
+        this.emailLogRepository = emailLogRepository;
+        this.emitNotificationEvent = emitNotificationEvent;
+        this.emitBillingEvent = emitBillingEvent;
+        this.documentStore = documentStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Vacía la bandeja de salida: reclama lotes hasta que no queden correos vencidos.
+     */
+    @Scheduled(fixedDelayString = "${billing.email.outbox.poll-interval-ms:2000}")
+    public void drain() {
+        try {
+            int claimed;
+            do {
+                claimed = deliverBatch();
+            } while (claimed == batchSize);
+        } catch (Exception e) {
+            log.error("Error procesando la bandeja de salida de correos", e);
+        }
+    }
+
+    /**
+     * Reclama, envía y registra un lote de correos.
+     *
+     * @return número de correos reclamados
+     */
+    public int deliverBatch() {
+        List<EmailOutboxMessage> batch = claim();
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        // Envío fuera de cualquier transacción
+        Map<String, EmailOutboxMessage> byReference = new HashMap<>();
+        List<OutgoingEmail> emails = new ArrayList<>(batch.size());
+        for (EmailOutboxMessage message : batch) {
+            String reference = message.getId().toString();
+            byReference.put(reference, message);
+            emails.add(toOutgoingEmail(message).withReference(reference));
+        }
+        List<DispatchResult> results = emailDispatcher.sendBatch(emails);
+
+        List<NotificationEvent> events = transactionTemplate.execute(status -> recordOutcomes(results, byReference));
+
+        // Tras el commit: liberar los adjuntos de correos finalizados y emitir eventos derivados
+        batch.stream()
+                .filter(m -> m.getStatus() == EmailOutboxMessage.Status.SENT
+                        || m.getStatus() == EmailOutboxMessage.Status.DEAD_LETTER)
+                .forEach(this::releaseAttachment);
+        events.forEach(emitNotificationEvent::emit);
+        return batch.size();
+    }
+
+    private List<EmailOutboxMessage> claim() {
+        List<EmailOutboxMessage> expired = new ArrayList<>();
+        List<NotificationEvent> events = new ArrayList<>();
+        List<EmailOutboxMessage> claimed = transactionTemplate.execute(status -> {
+            Instant now = Instant.now();
+            List<EmailOutboxMessage> due = outboxRepository.claimDueTenantWindows(now, Math.max(1, tenantWindow), batchSize);
+            Instant leaseUntil = now.plusSeconds(leaseSeconds);
+            List<EmailOutboxMessage> inProgress = new ArrayList<>(due.size());
+            for (EmailOutboxMessage message : due) {
+                boolean leaseExpired = message.getStatus() == EmailOutboxMessage.Status.IN_PROGRESS;
+                if (leaseExpired && message.getAttempts() + 1 >= maxAttempts) {
+                    String error = "LEASE_EXPIRED: sin resultado tras " + (message.getAttempts() + 1) + " intentos";
+                    message.markDeadLetter(error);
+                    deadLettered.increment();
+                    emailLogRepository.saveInvoiceEmailLog(message.getInvoiceId(), message.getTenantId(),
+                            "DEAD_LETTER", now, error);
+                    expired.add(message);
+                    events.add(new NotificationEvent("invoice_email_failed", message.getTenantId(),
+                            message.getInvoiceId(), "Error al enviar factura: " + error));
+                    emitBillingEvent.emit(new BillingEvent(message.getTenantId(), message.getInvoiceId(),
+                            "invoice_email_failed", error));
+                    log.error("Factura [{}] del tenant [{}] enviada a dead letter: lease vencido en el último intento",
+                            message.getInvoiceId(), message.getTenantId());
+                } else {
+                    message.markInProgress(leaseUntil);
+                    inProgress.add(message);
+                }
+            }
+            outboxRepository.saveAll(due);
+            return inProgress;
+        });
+
+        // Tras el commit: los correos dados por perdidos liberan su adjunto y se notifican
+        expired.forEach(this::releaseAttachment);
+        events.forEach(emitNotificationEvent::emit);
+        return claimed;
+    }
+
+    private List<NotificationEvent> recordOutcomes(List<DispatchResult> results, Map<String, EmailOutboxMessage> byReference) {
+        List<NotificationEvent> events = new ArrayList<>(results.size());
+        List<EmailOutboxMessage> updated = new ArrayList<>(results.size());
+        Instant now = Instant.now();
+
+        for (DispatchResult result : results) {
+            EmailOutboxMessage message = byReference.get(result.getEmail().getReference());
+            if (result.isSuccess()) {
+                message.markSent();
+                sent.increment();
+                emailLogRepository.saveInvoiceEmailLog(message.getInvoiceId(), message.getTenantId(), "SENT", now, null);
+                events.add(new NotificationEvent("invoice_email_sent", message.getTenantId(),
+                        message.getInvoiceId(), "Email enviado correctamente"));
+                emitBillingEvent.emit(new BillingEvent(message.getTenantId(), message.getInvoiceId(),
+                        "invoice_email_sent", message.getRecipient()));
+                log.info("Factura [{}] enviada exitosamente al tenant [{}] (intento {})",
+                        message.getInvoiceId(), message.getTenantId(), message.getAttempts());
+
+            } else if (message.getAttempts() + 1 >= maxAttempts) {
+                message.markDeadLetter(result.getError());
+                deadLettered.increment();
+                emailLogRepository.saveInvoiceEmailLog(message.getInvoiceId(), message.getTenantId(),
+                        "DEAD_LETTER", now, result.getError());
+                events.add(new NotificationEvent("invoice_email_failed", message.getTenantId(),
+                        message.getInvoiceId(), "Error al enviar factura: " + result.getError()));
+                emitBillingEvent.emit(new BillingEvent(message.getTenantId(), message.getInvoiceId(),
+                        "invoice_email_failed", result.getError()));
+                log.error("Factura [{}] del tenant [{}] enviada a dead letter tras {} intentos: {}",
+                        message.getInvoiceId(), message.getTenantId(), message.getAttempts(), result.getError());
+
+            } else {
+                Instant nextAttempt = now.plus(backoff(message.getAttempts() + 1));
+                message.markRetry(result.getError(), nextAttempt);
+                retried.increment();
+                emailLogRepository.saveInvoiceEmailLog(message.getInvoiceId(), message.getTenantId(),
+                        "RETRYING", now, result.getError());
+                log.warn("Error al enviar la factura [{}] al tenant [{}] (intento {}), reintento en {}: {}",
+                        message.getInvoiceId(), message.getTenantId(), message.getAttempts(), nextAttempt, result.getError());
+            }
+            updated.add(message);
+        }
+
+        outboxRepository.saveAll(updated);
+        return events;
+    }
+
+    /**
+     * Backoff exponencial: base * 2^(intento-1), acotado y con ±20% de jitter para no sincronizar reintentos.
+     */
+    Duration backoff(int attempt) {
+        long exponential = baseBackoffMs << Math.min(attempt - 1, 30);
+        long capped = exponential <= 0 ? maxBackoffMs : Math.min(maxBackoffMs, exponential);
+        double jitter = 0.8 + ThreadLocalRandom.current().nextDouble() * 0.4;
+        return Duration.ofMillis((long) (capped * jitter));
+    }
+
+    private OutgoingEmail toOutgoingEmail(EmailOutboxMessage message) {
+        OutgoingEmail email = OutgoingEmail.of(message.getRecipient(), message.getSubject(), message.getHtmlBody());
+        if (message.getAttachmentDocumentId() == null) {
+            return email;
+        }
+        return documentStore.path(message.getAttachmentDocumentId())
+                .map(path -> email.withAttachment("invoice_" + message.getInvoiceId() + ".pdf", path))
+                .orElse(email);
+    }
+
+    private void releaseAttachment(EmailOutboxMessage message) {
+        if (message.getAttachmentDocumentId() != null) {
+            documentStore.release(message.getAttachmentDocumentId(), EnqueueInvoiceEmail.outboxOwner(message.getId()));
+        }
+    }
+
+    // -----------------------------
+    // Métricas
+    // -----------------------------
+    public long getSentCount() { return sent.sum(); }
+    public long getRetriedCount() { return retried.sum(); }
+    public long getDeadLetteredCount() { return deadLettered.sum(); }
+    public long getPendingCount() {
+        return outboxRepository.countByStatus(EmailOutboxMessage.Status.PENDING)
+                + outboxRepository.countByStatus(EmailOutboxMessage.Status.RETRY);
+    }
+}
@@ -0,0 +1,387 @@
+package com.worksphere.billing.usecase.notification;
+
+import com.worksphere.billing.domain.event.NotificationEvent;
+import com.worksphere.billing.domain.model.TenantWebhookConfig;
+import com.worksphere.billing.domain.model.WebhookOutboxMessage;
+import com.worksphere.billing.infrastructure.repository.TenantWebhookConfigRepository;
+import com.worksphere.billing.infrastructure.repository.WebhookLogRepository;
+import com.worksphere.billing.infrastructure.repository.WebhookLogRepository.WebhookLogEntry;
+import com.worksphere.billing.infrastructure.repository.WebhookOutboxRepository;
+import com.worksphere.billing.transport.webhook.EndpointCircuitBreakers;
+import com.worksphere.billing.transport.webhook.WebhookHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Worker que entrega los webhooks de la cola persistente.
+ *
+ * Cualidades:
+ * - Orden por endpoint: por defecto ({@code max-concurrency} = 1) solo se reclama la cabeza de cada
+ *   endpoint y la entrega es estrictamente ordenada. Un valor mayor (global o por endpoint) es
+ *   opcional y entrega varios webhooks del endpoint a la vez, sin garantía de orden entre ellos.
+ *   Si la cabeza espera un reintento, el endpoint entero espera.
+ * - Reintentos con backoff exponencial (con jitter) y estado DEAD_LETTER al agotar los intentos
+ *   o ante un rechazo definitivo del endpoint (4xx distinto de 408/429). Un lease vencido (el
+ *   worker murió durante la entrega) cuenta como intento.
+ * - El token de autenticación se resuelve de la configuración actual del tenant al enviar; la
+ *   cola no guarda credenciales.
+ * - Circuit breaker por endpoint: mientras está abierto, los webhooks del endpoint se posponen
+ *   sin consumir intentos.
+ * - Las entregas van en paralelo sobre {@link WebhookHttpClient}; ninguna transacción queda abierta durante el envío.
+ * - Varias instancias pueden ejecutar el worker a la vez (reclamo con FOR UPDATE SKIP LOCKED y lease).
+ */
+@Service
+public class DeliverQueuedWebhooks {
+
+    private static final Logger log = LoggerFactory.getLogger(DeliverQueuedWebhooks.class);
+
+    private final WebhookOutboxRepository outboxRepository;
+    private final WebhookHttpClient webhookHttpClient;
+    private final EndpointCircuitBreakers circuitBreakers;
+    private final WebhookLogRepository webhookLogRepository;
+    private final TenantWebhookConfigRepository webhookConfigRepository;
+    private final EmitNotificationEvent emitNotificationEvent;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${billing.webhooks.outbox.batch-size:200}")
+    private int batchSize;
+
+    @Value("${billing.webhooks.outbox.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${billing.webhooks.outbox.base-backoff-ms:5000}")
+    private long baseBackoffMs;
+
+    @Value("${billing.webhooks.outbox.max-backoff-ms:3600000}")
+    private long maxBackoffMs;
+
+    @Value("${billing.webhooks.outbox.lease-seconds:120}")
+    private long leaseSeconds;
+
+    @Value("${billing.webhooks.outbox.retention-days:7}")
+    private int retentionDays;
+
+    @Value("${billing.webhooks.fan-out.max-parallel:16}")
+    private int maxParallel;
+
+    @Value("${billing.webhooks.endpoint.timeout-ms:5000}")
+    private int defaultTimeoutMs;
+
+    @Value("${billing.webhooks.endpoint.max-concurrency:1}")
+    private int defaultMaxConcurrency;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private final LongAdder deferred = new LongAdder();
+
+    public DeliverQueuedWebhooks(WebhookOutboxRepository outboxRepository,
+                                 WebhookHttpClient webhookHttpClient,
+                                 EndpointCircuitBreakers circuitBreakers,
+                                 WebhookLogRepository webhookLogRepository,
+                                 TenantWebhookConfigRepository webhookConfigRepository,
+                                 EmitNotificationEvent emitNotificationEvent,
+                                 PlatformTransactionManager transactionManager) {
+        this.outboxRepository = outboxRepository;
+        this.webhookHttpClient = webhookHttpClient;
+        this.circuitBreakers = circuitBreakers;
+        this.webhookLogRepository = webhookLogRepository;
+        this.webhookConfigRepository = webhookConfigRepository;
+        this.emitNotificationEvent = emitNotificationEvent;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Vacía la cola: reclama lotes hasta que no queden webhooks vencidos.
+     */
+    @Scheduled(fixedDelayString = "${billing.webhooks.outbox.poll-interval-ms:500}")
+    public void drain() {
+        try {
+            int claimed;
+            do {
+                claimed = deliverBatch();
+            } while (claimed == batchSize);
+        } catch (Exception e) {
+            log.error("Error procesando la cola de webhooks", e);
+        }
+    }
+
+    /**
+     * Reclama, entrega y registra un lote de webhooks.
+     *
+     * @return número de webhooks reclamados
+     */
+    public int deliverBatch() {
+        List<WebhookOutboxMessage> batch = claim();
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        // Endpoints con el circuito abierto: se posponen sin llamarlos
+        Instant now = Instant.now();
+        List<WebhookOutboxMessage> deliverable = new ArrayList<>(batch.size());
+        List<WebhookOutboxMessage> blocked = new ArrayList<>();
+        Set<String> trials = new HashSet<>();
+        for (WebhookOutboxMessage message : batch) {
+            String url = message.getEndpointUrl();
+            if (circuitBreakers.allowRequest(url, now)) {
+                deliverable.add(message);
+                if (circuitBreakers.state(url) == EndpointCircuitBreakers.State.HALF_OPEN) {
+                    trials.add(url);
+                }
+            } else {
+                blocked.add(message);
+            }
+        }
+
+        List<NotificationEvent> events;
+        try {
+            // Envío fuera de cualquier transacción; este hilo es del scheduler, no de facturación
+            Map<String, String> authTokens = authTokens(deliverable);
+            List<DeliveryResult> results = deliverable.isEmpty() ? List.of() : Flux.fromIterable(deliverable)
+                    .flatMap(message -> deliver(message, authTokens.get(tokenKey(message.getTenantId(), message.getEndpointUrl()))),
+                            Math.max(1, maxParallel))
+                    .collectList()
+                    .block();
+
+            events = transactionTemplate.execute(status -> recordOutcomes(results, blocked));
+        } finally {
+            // Si algo falló antes de anotar el resultado, la prueba no puede quedar retenida
+            trials.forEach(url -> circuitBreakers.releaseTrial(url, Instant.now()));
+        }
+
+        // Tras el commit: eventos derivados
+        events.forEach(emitNotificationEvent::emit);
+        return batch.size();
+    }
+
+    private List<WebhookOutboxMessage> claim() {
+        return transactionTemplate.execute(status -> {
+            Instant now = Instant.now();
+            List<WebhookOutboxMessage> due = outboxRepository.claimDueEndpointWindows(now,
+                    Math.max(1, defaultMaxConcurrency), batchSize);
+            Instant leaseUntil = now.plusSeconds(leaseSeconds);
+            List<WebhookOutboxMessage> claimed = new ArrayList<>(due.size());
+            for (WebhookOutboxMessage message : due) {
+                boolean leaseExpired = message.getStatus() == WebhookOutboxMessage.Status.IN_PROGRESS;
+                if (leaseExpired && message.getAttempts() + 1 >= maxAttempts) {
+                    message.markDeadLetter("LEASE_EXPIRED: sin resultado tras " + (message.getAttempts() + 1) + " intentos");
+                    deadLettered.increment();
+                    log.error("Webhook {} al endpoint [{}] del tenant [{}] enviado a dead letter: lease vencido en el último intento",
+                            message.getId(), message.getEndpointUrl(), message.getTenantId());
+                } else {
+                    message.markInProgress(leaseUntil);
+                    claimed.add(message);
+                }
+            }
+            outboxRepository.saveAll(due);
+            return claimed;
+        });
+    }
+
+    /**
+     * Tokens de autenticación vigentes de los endpoints del lote, por tenant y endpoint.
+     */
+    private Map<String, String> authTokens(List<WebhookOutboxMessage> messages) {
+        Map<String, String> tokens = new HashMap<>();
+        Set<String> tenants = new HashSet<>();
+        for (WebhookOutboxMessage message : messages) {
+            if (tenants.add(message.getTenantId())) {
+                for (TenantWebhookConfig config : webhookConfigRepository.findByTenantId(message.getTenantId())) {
+                    if (config.getAuthToken() != null) {
+                        tokens.put(tokenKey(message.getTenantId(), config.getEndpointUrl()), config.getAuthToken());
+                    }
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private static String tokenKey(String tenantId, String endpointUrl) {
+        return tenantId + '\n' + endpointUrl;
+    }
+
+    /**
+     * Entrega a un endpoint; nunca falla: el error queda en el resultado.
+     */
+    private Mono<DeliveryResult> deliver(WebhookOutboxMessage message, String authToken) {
+        Duration timeout = Duration.ofMillis(message.getTimeoutMs() != null ? message.getTimeoutMs() : defaultTimeoutMs);
+        int maxConcurrency = message.getMaxConcurrency() != null ? message.getMaxConcurrency() : defaultMaxConcurrency;
+
+        // El payload se guardó ya serializado y firmado: se envía sin volver a serializarlo
+        byte[] body = message.getPayload().getBytes(StandardCharsets.UTF_8);
+        return webhookHttpClient.post(message.getEndpointUrl(), body, buildHeaders(message, authToken), timeout, maxConcurrency)
+                .map(response -> response.isSuccess()
+                        ? DeliveryResult.success(message, response.getBody())
+                        : DeliveryResult.failure(message, response.getStatusCode(),
+                        "HTTP " + response.getStatusCode() + ": " + response.getBody()))
+                .onErrorResume(TimeoutException.class, ex -> Mono.just(DeliveryResult.failure(message, 0,
+                        "TIMEOUT: sin respuesta en " + timeout.toMillis() + " ms")))
+                .onErrorResume(ex -> Mono.just(DeliveryResult.failure(message, 0, "ERROR: " + ex.getMessage())));
+    }
+
+    private List<NotificationEvent> recordOutcomes(List<DeliveryResult> results, List<WebhookOutboxMessage> blocked) {
+        List<NotificationEvent> events = new ArrayList<>(results.size());
+        List<WebhookOutboxMessage> updated = new ArrayList<>(results.size() + blocked.size());
+        List<WebhookLogEntry> logs = new ArrayList<>(results.size());
+        Instant now = Instant.now();
+
+        for (DeliveryResult result : results) {
+            WebhookOutboxMessage message = result.message;
+            String url = message.getEndpointUrl();
+
+            if (result.success) {
+                circuitBreakers.onSuccess(url);
+                message.markSent();
+                sent.increment();
+                logs.add(new WebhookLogEntry(message.getTenantId(), url, message.getPayload(), "SUCCESS", now, result.response));
+                events.add(new NotificationEvent("webhook_sent", message.getTenantId(), null,
+                        "Webhook enviado correctamente a " + url));
+                log.info("Webhook enviado exitosamente al endpoint [{}] para tenant [{}] (intento {})",
+                        url, message.getTenantId(), message.getAttempts());
+
+            } else if (result.isPermanentRejection() || message.getAttempts() + 1 >= maxAttempts) {
+                // Un rechazo 4xx demuestra que el endpoint está vivo: no cuenta para el circuito
+                if (result.isPermanentRejection()) {
+                    circuitBreakers.onSuccess(url);
+                } else {
+                    circuitBreakers.onFailure(url, now);
+                }
+                message.markDeadLetter(result.response);
+                deadLettered.increment();
+                logs.add(new WebhookLogEntry(message.getTenantId(), url, message.getPayload(), "DEAD_LETTER", now, result.response));
+                events.add(new NotificationEvent("webhook_failed", message.getTenantId(), null,
+                        "Error al enviar webhook a " + url + ": " + result.response));
+                log.error("Webhook {} al endpoint [{}] del tenant [{}] enviado a dead letter tras {} intentos: {}",
+                        message.getId(), url, message.getTenantId(), message.getAttempts(), result.response);
+
+            } else {
+                circuitBreakers.onFailure(url, now);
+                // Si el circuito acaba de abrirse no tiene sentido reintentar antes de que se cierre
+                Instant nextAttempt = max(now.plus(backoff(message.getAttempts() + 1)), circuitBreakers.openUntil(url, now));
+                message.markRetry(result.response, nextAttempt);
+                retried.increment();
+                logs.add(new WebhookLogEntry(message.getTenantId(), url, message.getPayload(), "RETRYING", now, result.response));
+                log.warn("Error enviando webhook al endpoint [{}] para tenant [{}] (intento {}), reintento en {}: {}",
+                        url, message.getTenantId(), message.getAttempts(), nextAttempt, result.response);
+            }
+            updated.add(message);
+        }
+
+        for (WebhookOutboxMessage message : blocked) {
+            // Con una entrega de prueba en curso openUntil ya venció: se revisa en el siguiente ciclo
+            Instant resumeAt = max(circuitBreakers.openUntil(message.getEndpointUrl(), now), now.plusSeconds(1));
+            message.defer(resumeAt, "CIRCUIT_OPEN: endpoint pausado hasta " + resumeAt);
+            deferred.increment();
+            updated.add(message);
+        }
+
+        outboxRepository.saveAll(updated);
+        if (!logs.isEmpty()) {
+            webhookLogRepository.saveWebhookLogs(logs);
+        }
+        return events;
+    }
+
+    /**
+     * Backoff exponencial: base * 2^(intento-1), acotado y con ±20% de jitter para no sincronizar reintentos.
+     */
+    Duration backoff(int attempt) {
+        long exponential = baseBackoffMs << Math.min(attempt - 1, 30);
+        long capped = exponential <= 0 ? maxBackoffMs : Math.min(maxBackoffMs, exponential);
+        double jitter = 0.8 + ThreadLocalRandom.current().nextDouble() * 0.4;
+        return Duration.ofMillis((long) (capped * jitter));
+    }
+
+    /**
+     * Purga los webhooks entregados más antiguos que la retención configurada.
+     */
+    @Scheduled(cron = "${billing.webhooks.outbox.purge-cron:0 30 3 * * ?}")
+    public void purgeSent() {
+        Instant before = Instant.now().minus(retentionDays, ChronoUnit.DAYS);
+        Integer deleted = transactionTemplate.execute(status -> outboxRepository.deleteSentBefore(before));
+        log.info("Cola de webhooks: {} webhooks entregados purgados (anteriores a {})", deleted, before);
+    }
+
+    private static HttpHeaders buildHeaders(WebhookOutboxMessage message, String authToken) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (authToken != null) {
+            headers.setBearerAuth(authToken);
+        }
+        if (message.getSignature() != null) {
+            headers.add("X-Signature", message.getSignature());
+        }
+        // Permite al receptor descartar duplicados si una entrega se repite tras expirar el lease
+        headers.add("X-Webhook-Id", message.getId().toString());
+        return headers;
+    }
+
+    private static Instant max(Instant a, Instant b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    // -----------------------------
+    // Métricas
+    // -----------------------------
+    public long getSentCount() { return sent.sum(); }
+    public long getRetriedCount() { return retried.sum(); }
+    public long getDeadLetteredCount() { return deadLettered.sum(); }
+    public long getDeferredCount() { return deferred.sum(); }
+    public long getPendingCount() {
+        return outboxRepository.countByStatus(WebhookOutboxMessage.Status.PENDING)
+                + outboxRepository.countByStatus(WebhookOutboxMessage.Status.RETRY);
+    }
+
+    /**
+     * Resultado de la entrega de un webhook.
+     */
+    private static final class DeliveryResult {
+        private final WebhookOutboxMessage message;
+        private final boolean success;
+        private final int statusCode; // 0 si no hubo respuesta HTTP
+        private final String response;
+
+        private DeliveryResult(WebhookOutboxMessage message, boolean success, int statusCode, String response) {
+            this.message = message;
+            this.success = success;
+            this.statusCode = statusCode;
+            this.response = response;
+        }
+
+        static DeliveryResult success(WebhookOutboxMessage message, String body) {
+            return new DeliveryResult(message, true, 200, body);
+        }
+
+        static DeliveryResult failure(WebhookOutboxMessage message, int statusCode, String error) {
+            return new DeliveryResult(message, false, statusCode, error);
+        }
+
+        boolean isPermanentRejection() {
+            return statusCode >= 400 && statusCode < 500 && statusCode != 408 && statusCode != 429;
+        }
+    }
+}
@@ -1,85 +1,77 @@
 package com.worksphere.billing.usecase.notification;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.worksphere.billing.domain.event.BillingEvent;
+import com.worksphere.billing.infrastructure.kafka.BillingMessageKey;
 import com.worksphere.billing.infrastructure.kafka.KafkaTopics;
-import com.worksphere.billing.infrastructure.kafka.serializer.BillingEventSerializer;
-import com.worksphere.billing.infrastructure.repository.BillingEventLogRepository;
-import org.apache.kafka.clients.producer.ProducerRecord;
-import org.apache.kafka.clients.producer.RecordMetadata;
+import com.worksphere.billing.infrastructure.repository.BillingEventOutboxRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.kafka.core.KafkaTemplate;
-import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.util.concurrent.ListenableFuture;
-import org.springframework.util.concurrent.ListenableFutureCallback;
-
-import java.time.Instant;
-import java.util.Optional;
-import java.util.UUID;
 
 /**
  * Caso de uso para emitir eventos de facturación al bus de mensajería (Kafka).
- * Garantiza formato estándar, idempotencia y resiliencia en la publicación.
+ *
+ * El evento no se envía aquí: se escribe en el outbox transaccional dentro de la misma
+ * transacción que el estado de facturación, y {@link RelayBillingEventOutbox} lo publica.
+ * Así un evento existe si y solo si el cambio de estado se confirmó, sin lecturas previas
+ * de idempotencia (la restricción única sobre event_id descarta duplicados).
  */
 @Service
 public class EmitBillingEventToKafka {
 
     private static final Logger log = LoggerFactory.getLogger(EmitBillingEventToKafka.class);
 
-    private final KafkaTemplate<String, BillingEvent> kafkaTemplate;
-    private final BillingEventLogRepository eventLogRepository;
+    private final BillingEventOutboxRepository outboxRepository;
+    private final ObjectMapper objectMapper;
 
-    public EmitBillingEventToKafka(KafkaTemplate<String, BillingEvent> kafkaTemplate,
-                                   BillingEventLogRepository eventLogRepository) {
-        this.kafkaTemplate = kafkaTemplate;
-        this.eventLogRepository = eventLogRepository;
+    public EmitBillingEventToKafka(BillingEventOutboxRepository outboxRepository,
+                                   ObjectMapper objectMapper) {
+        this.outboxRepository = outboxRepository;
+        this.objectMapper = objectMapper;
     }
 
     /**
-     * Emite un evento de facturación al topic de Kafka configurado.
+     * Registra un evento de facturación en el outbox para su publicación en el topic configurado.
+     * Se une a la transacción del llamador.
+     *
      * @param event Evento de facturación estandarizado.
      */
     @Transactional
     public void emit(BillingEvent event) {
-        // Idempotencia → verificar si el evento ya fue enviado
-        Optional<BillingEvent> existing = eventLogRepository.findByEventId(event.getEventId());
-        if (existing.isPresent()) {
-            log.info("Evento [{}] ya fue emitido anteriormente, se omite envío duplicado.", event.getEventId());
+        int inserted = outboxRepository.insertIfAbsent(
+                event.getEventId(),
+                event.getTenantId(),
+                event.getEventType(),
+                KafkaTopics.BILLING_EVENTS,
+                buildEventKey(event),
+                serialize(event),
+                event.getCreatedAt());
+
+        if (inserted == 0) {
+            log.info("Evento [{}] ya fue registrado anteriormente, se omite duplicado.", event.getEventId());
             return;
         }
-
-        String topic = KafkaTopics.BILLING_EVENTS;
-        String key = buildEventKey(event);
-
-        ProducerRecord<String, BillingEvent> record = new ProducerRecord<>(topic, key, event);
-
-        ListenableFuture<SendResult<String, BillingEvent>> future = kafkaTemplate.send(record);
-
-        future.addCallback(new ListenableFutureCallback<>() {
-            @Override
-            public void onSuccess(SendResult<String, BillingEvent> result) {
-                RecordMetadata metadata = result.getRecordMetadata();
-                log.info("Evento [{}] emitido a Kafka (topic={}, partition={}, offset={})",
-                        event.getEventId(), metadata.topic(), metadata.partition(), metadata.offset());
-
-                // Persistencia para auditabilidad
-                eventLogRepository.save(event.withEmittedAt(Instant.now()));
-            }
-
-            @Override
-            public void onFailure(Throwable ex) {
-                log.error("Error al emitir evento [{}] a Kafka. Se reintentará automáticamente.", event.getEventId(), ex);
-                // Estrategia de resiliencia: Spring Kafka ya maneja reintentos configurables.
-            }
-        });
+        log.debug("Evento [{}] de tipo {} registrado en el outbox para tenant {}",
+                event.getEventId(), event.getEventType(), event.getTenantId());
     }
 
     /**
-     * Construye la clave del evento para Kafka asegurando orden e idempotencia.
+     * Construye la clave del evento para Kafka: tenant (orden por tenant) y, si existe, factura
+     * (orden por factura cuando el tenant se reparte entre sub-particiones). La idempotencia la
+     * da el eventId del payload, no la clave.
      */
     private String buildEventKey(BillingEvent event) {
-        return event.getTenantId() + "-" + event.getEventType() + "-" + event.getEventId();
+        return BillingMessageKey.of(event.getTenantId(), event.getInvoiceId());
+    }
+
+    private String serialize(BillingEvent event) {
+        try {
+            return objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar el evento " + event.getEventId(), e);
+        }
     }
 }
@@ -1,42 +1,345 @@
 package com.worksphere.billing.usecase.notification;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.worksphere.billing.domain.event.NotificationEvent;
+import com.worksphere.billing.infrastructure.kafka.KafkaTopics;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
-import java.time.Instant;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Emisor no bloqueante de eventos de notificación al topic {@code billing.notifications}.
+ *
+ * Cualidades:
+ * - Nunca espera los acks del broker: {@link #emitAsync} devuelve un future que se completa en el callback.
+ * - Orden por tenant en el camino normal: la clave del mensaje es el tenantId y el productor es idempotente.
+ * - Lotes: batch-size y linger del productor dedicado (ver KafkaConfig).
+ * - Memoria acotada: como máximo {@code max-in-flight} eventos sin confirmar; el excedente y los
+ *   envíos fallidos se derraman a un archivo local de dead letters que se reinyecta periódicamente.
+ *   La escritura del archivo la hace un hilo dedicado: el callback del productor solo encola.
+ *
+ * Orden: este flujo de notificaciones no garantiza orden por tenant cuando un evento pasa por el
+ * dead letter. La reinyección respeta el orden del archivo dentro de cada tenant, pero los eventos
+ * emitidos mientras tanto no esperan a los derramados; los consumidores deben ordenar por la fecha
+ * del evento si la necesitan.
+ */
 @Service
 public class EmitNotificationEvent {
 
     private static final Logger log = LoggerFactory.getLogger(EmitNotificationEvent.class);
 
+    private static final String TOPIC = KafkaTopics.NOTIFICATIONS;
+    private static final int SPILL_WRITE_BATCH = 500;
+    private static final int REPLAY_CHUNK = 1000;
+
     private final KafkaTemplate<String, NotificationEvent> kafkaTemplate;
+    private final ObjectMapper objectMapper;
+    private final Semaphore inFlight;
+    private final Path deadLetterFile;
+
+    // Derrames pendientes de escribir; los escribe por lotes un único hilo
+    private final BlockingQueue<NotificationEvent> spillQueue;
+    private final Thread spillWriter;
+    // Serializa la escritura del archivo con su rotación al reinyectar
+    private final Object fileLock = new Object();
+    private volatile boolean running = true;
+
+    private final LongAdder acknowledged = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
 
-    public EmitNotificationEvent(KafkaTemplate<String, NotificationEvent> kafkaTemplate) {
+    public EmitNotificationEvent(KafkaTemplate<String, NotificationEvent> kafkaTemplate,
+                                 ObjectMapper objectMapper,
+                                 @Value("${billing.notifications.max-in-flight:10000}") int maxInFlight,
+                                 @Value("${billing.notifications.dead-letter-file:./data/notifications-dead-letter.jsonl}") String deadLetterFile,
+                                 @Value("${billing.notifications.spill-queue-capacity:100000}") int spillQueueCapacity) {
         this.kafkaTemplate = kafkaTemplate;
+        this.objectMapper = objectMapper;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.deadLetterFile = Paths.get(deadLetterFile);
+        this.spillQueue = new LinkedBlockingQueue<>(spillQueueCapacity);
+        this.spillWriter = new Thread(this::writeSpills, "notifications-dead-letter-writer");
+        this.spillWriter.setDaemon(true);
+        this.spillWriter.start();
     }
 
+    /**
+     * Emite el evento sin bloquear al llamador.
+     */
     public void emit(NotificationEvent event) {
+        emitAsync(event);
+    }
+
+    /**
+     * Emite el evento sin bloquear al llamador.
+     *
+     * @return future completado con true cuando el broker confirma, o false si el evento se derramó al dead letter
+     */
+    public CompletableFuture<Boolean> emitAsync(NotificationEvent event) {
         Assert.notNull(event, "El evento no puede ser nulo");
         Assert.hasText(event.getTenantId(), "El tenantId no puede estar vacío");
         Assert.hasText(event.getType(), "El tipo de evento no puede estar vacío");
+        return send(event, true);
+    }
+
+    /**
+     * @param spillOnFailure si es false, el evento no confirmado no se derrama y queda a cargo del llamador
+     */
+    private CompletableFuture<Boolean> send(NotificationEvent event, boolean spillOnFailure) {
+        if (!inFlight.tryAcquire()) {
+            // Backpressure sin bloquear la facturación: se difiere al dead letter local
+            if (spillOnFailure) {
+                spill(event, "límite de eventos en vuelo alcanzado");
+            }
+            return CompletableFuture.completedFuture(false);
+        }
 
+        CompletableFuture<SendResult<String, NotificationEvent>> send;
         try {
             // Publicar en Kafka con partición por tenant
-            kafkaTemplate.send("billing.notifications", event.getTenantId(), event).get();
+            send = kafkaTemplate.send(TOPIC, event.getTenantId(), event);
+        } catch (RuntimeException ex) {
+            inFlight.release();
+            if (spillOnFailure) {
+                spill(event, ex.getMessage());
+            }
+            return CompletableFuture.completedFuture(false);
+        }
 
-            log.info("✅ Evento emitido [{}] para tenant [{}], factura [{}] en [{}]",
-                    event.getType(), event.getTenantId(), event.getInvoiceId(), Instant.now());
+        return send.handle((result, ex) -> {
+            inFlight.release();
+            if (ex != null) {
+                log.error("❌ Error al emitir evento [{}] para tenant [{}], factura [{}]: {}",
+                        event.getType(), event.getTenantId(), event.getInvoiceId(), ex.getMessage());
+                if (spillOnFailure) {
+                    spill(event, ex.getMessage());
+                }
+                return false;
+            }
+            acknowledged.increment();
+            log.debug("✅ Evento emitido [{}] para tenant [{}], factura [{}] (partition={}, offset={})",
+                    event.getType(), event.getTenantId(), event.getInvoiceId(),
+                    result.getRecordMetadata().partition(), result.getRecordMetadata().offset());
+            return true;
+        });
+    }
 
-        } catch (Exception ex) {
-            log.error("❌ Error al emitir evento [{}] para tenant [{}], factura [{}]: {}",
-                    event.getType(), event.getTenantId(), event.getInvoiceId(), ex.getMessage(), ex);
+    /**
+     * Emite un conjunto de eventos. Cada uno pasa por {@link #emitAsync} (mismo límite de eventos
+     * en vuelo y mismo derrame al dead letter); como los registros llegan seguidos, el productor
+     * los agrupa en sus lotes por partición. El llamador recibe un único future agregado.
+     *
+     * @return future con el número de eventos confirmados por el broker (el resto fue al dead letter)
+     */
+    public CompletableFuture<Integer> emitAll(List<NotificationEvent> events) {
+        if (events.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        List<CompletableFuture<Boolean>> sends = new ArrayList<>(events.size());
+        for (NotificationEvent event : events) {
+            sends.add(emitAsync(event));
+        }
+        return CompletableFuture.allOf(sends.toArray(new CompletableFuture[0]))
+                .thenApply(ignored -> (int) sends.stream().filter(CompletableFuture::join).count());
+    }
 
-            // TODO: aquí podrías enviar a Dead Letter Queue (DLQ) o reintentar
+    // -----------------------------
+    // Dead letter local
+    // -----------------------------
+
+    /**
+     * Encola el evento para el hilo escritor; no hace E/S en el hilo llamador ni en el callback del productor.
+     */
+    private void spill(NotificationEvent event, String reason) {
+        spilled.increment();
+        if (spillQueue.offer(event)) {
+            log.warn("Evento [{}] del tenant [{}] derramado al dead letter local: {}",
+                    event.getType(), event.getTenantId(), reason);
+        } else {
+            dropped.increment();
+            log.error("Cola del dead letter local llena, se descarta el evento [{}] del tenant [{}]",
+                    event.getEventId(), event.getTenantId());
         }
     }
+
+    private void writeSpills() {
+        List<NotificationEvent> pending = new ArrayList<>();
+        while (running || !spillQueue.isEmpty()) {
+            try {
+                NotificationEvent first = spillQueue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                pending.add(first);
+                spillQueue.drainTo(pending, SPILL_WRITE_BATCH - 1);
+                append(pending);
+            } catch (InterruptedException e) {
+                // Se sale tras vaciar la cola
+                running = false;
+            } finally {
+                pending.clear();
+            }
+        }
+    }
+
+    private boolean append(List<NotificationEvent> events) {
+        synchronized (fileLock) {
+            try {
+                Files.createDirectories(deadLetterFile.toAbsolutePath().getParent());
+                try (BufferedWriter writer = Files.newBufferedWriter(deadLetterFile, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    for (NotificationEvent event : events) {
+                        writer.write(objectMapper.writeValueAsString(event));
+                        writer.newLine();
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                dropped.add(events.size());
+                log.error("No se pudieron escribir {} eventos en el dead letter local: {}", events.size(), e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        spillWriter.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * Reinyecta los eventos del dead letter local. El archivo se rota antes de leerlo, de modo
+     * que los eventos que vuelvan a fallar se acumulan en un archivo nuevo; si quedó un archivo
+     * rotado de una reinyección interrumpida, se reanuda ese en lugar de pisarlo.
+     *
+     * El archivo se lee por tramos de {@code REPLAY_CHUNK} líneas y cada tramo espera a sus
+     * confirmaciones antes de leer el siguiente, así la memoria no depende del tamaño del archivo.
+     * Dentro de cada tenant los eventos se envían en el orden del archivo. Los envíos fallidos
+     * vuelven al dead letter y el archivo rotado solo se elimina cuando todos se han resuelto.
+     */
+    @Scheduled(fixedDelayString = "${billing.notifications.dead-letter-replay-ms:60000}")
+    public void replayDeadLetters() {
+        Path replaying = deadLetterFile.resolveSibling(deadLetterFile.getFileName() + ".replaying");
+        synchronized (fileLock) {
+            try {
+                if (Files.exists(replaying)) {
+                    log.warn("Se reanuda la reinyección interrumpida de {}", replaying);
+                } else if (Files.exists(deadLetterFile)) {
+                    Files.move(deadLetterFile, replaying, StandardCopyOption.ATOMIC_MOVE);
+                } else {
+                    return;
+                }
+            } catch (IOException e) {
+                log.error("No se pudo rotar el dead letter local de notificaciones: {}", e.getMessage());
+                return;
+            }
+        }
+
+        int replayed = 0;
+        int failed = 0;
+        try (BufferedReader reader = Files.newBufferedReader(replaying, StandardCharsets.UTF_8)) {
+            List<NotificationEvent> chunk = new ArrayList<>(REPLAY_CHUNK);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    chunk.add(objectMapper.readValue(line, NotificationEvent.class));
+                } catch (IOException e) {
+                    log.error("Evento ilegible en el dead letter local, se descarta: {}", e.getMessage());
+                }
+                if (chunk.size() == REPLAY_CHUNK) {
+                    failed += replayChunk(chunk);
+                    replayed += chunk.size();
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                failed += replayChunk(chunk);
+                replayed += chunk.size();
+            }
+        } catch (IOException | UncheckedIOException e) {
+            // El archivo rotado se conserva y se reanuda en la siguiente ejecución
+            log.error("Reinyección del dead letter local interrumpida tras {} eventos: {}", replayed, e.getMessage());
+            return;
+        }
+
+        try {
+            Files.deleteIfExists(replaying);
+        } catch (IOException e) {
+            log.warn("No se pudo eliminar {}: {}", replaying, e.getMessage());
+        }
+        log.info("Dead letter de notificaciones: {} eventos reinyectados, {} devueltos al dead letter",
+                replayed - failed, failed);
+    }
+
+    /**
+     * Envía un tramo encadenando los eventos de cada tenant y espera a que todos se resuelvan.
+     * Los que no se confirman se escriben de nuevo en el dead letter antes de volver.
+     *
+     * @return número de eventos devueltos al dead letter
+     */
+    private int replayChunk(List<NotificationEvent> chunk) {
+        Map<String, CompletableFuture<Boolean>> tailByTenant = new HashMap<>();
+        List<CompletableFuture<Boolean>> sends = new ArrayList<>(chunk.size());
+        for (NotificationEvent event : chunk) {
+            CompletableFuture<Boolean> previous = tailByTenant.getOrDefault(event.getTenantId(),
+                    CompletableFuture.completedFuture(true));
+            CompletableFuture<Boolean> send = previous.handle((ok, ex) -> ok)
+                    .thenCompose(ignored -> send(event, false))
+                    .exceptionally(ex -> false);
+            tailByTenant.put(event.getTenantId(), send);
+            sends.add(send);
+        }
+        CompletableFuture.allOf(sends.toArray(new CompletableFuture[0])).join();
+
+        List<NotificationEvent> failed = new ArrayList<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            if (!sends.get(i).join()) {
+                failed.add(chunk.get(i));
+            }
+        }
+        if (!failed.isEmpty() && !append(failed)) {
+            throw new UncheckedIOException(new IOException(
+                    "no se pudieron devolver " + failed.size() + " eventos al dead letter"));
+        }
+        return failed.size();
+    }
+
+    // -----------------------------
+    // Métricas
+    // -----------------------------
+    public long getAcknowledgedCount() { return acknowledged.sum(); }
+    public long getSpilledCount() { return spilled.sum(); }
+    public long getDroppedCount() { return dropped.sum(); }
+    public int getAvailableInFlightPermits() { return inFlight.availablePermits(); }
 }
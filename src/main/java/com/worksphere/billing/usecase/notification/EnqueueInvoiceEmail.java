@@ -0,0 +1,220 @@
+package com.worksphere.billing.usecase.notification;
+
+import com.worksphere.billing.domain.model.EmailOutboxMessage;
+import com.worksphere.billing.infrastructure.repository.EmailOutboxRepository;
+import com.worksphere.billing.infrastructure.storage.ContentAddressedDocumentStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Caso de uso para encolar correos de facturación en la bandeja de salida persistente.
+ *
+ * El insert se une a la transacción de facturación del llamador: si la facturación hace rollback,
+ * el correo no existe (y la referencia al adjunto se libera); si hace commit,
+ * {@link DeliverQueuedEmails} lo entregará tarde o temprano. Ningún envío SMTP ocurre dentro de
+ * la transacción.
+ *
+ * Un correo con adjunto pendiente bloquea la cola de su tenant hasta que el PDF se asocia. Si la
+ * materialización no llega (la instancia cayó tras el commit), el barrido de adjuntos vencidos lo
+ * resuelve con el documento vigente de la factura o, si no existe, lo libera sin adjunto.
+ */
+@Service
+public class EnqueueInvoiceEmail {
+
+    private static final Logger log = LoggerFactory.getLogger(EnqueueInvoiceEmail.class);
+
+    private final EmailOutboxRepository outboxRepository;
+    private final ContentAddressedDocumentStore documentStore;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${billing.email.outbox.attachment-timeout-seconds:900}")
+    private long attachmentTimeoutSeconds;
+
+    @Value("${billing.email.outbox.batch-size:50}")
+    private int batchSize;
+
+    public EnqueueInvoiceEmail(EmailOutboxRepository outboxRepository,
+                               ContentAddressedDocumentStore documentStore,
+                               PlatformTransactionManager transactionManager) {
+        this.outboxRepository = outboxRepository;
+        this.documentStore = documentStore;
+        // La asociación del adjunto se ejecuta tras el commit de la facturación: si se uniera a esa
+        // transacción (ya confirmada) el update nunca se guardaría
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Encola un correo cuyo adjunto (si lo hay) ya está en el almacén de documentos.
+     *
+     * @param attachmentDocumentId hash del PDF en el almacén, o null si el correo no lleva adjunto
+     */
+    @Transactional(propagation = Propagation.REQUIRED)
+    public EmailOutboxMessage enqueue(String tenantId, String invoiceId, String to, String subject,
+                                      String htmlBody, String attachmentDocumentId) {
+        EmailOutboxMessage message = newMessage(tenantId, invoiceId, to, subject, htmlBody);
+        if (attachmentDocumentId != null) {
+            // La bandeja mantiene su propia referencia: el LRU de PDFs no puede borrar el adjunto antes del envío
+            retainUntilRollback(attachmentDocumentId, outboxOwner(message.getId()));
+            message.setAttachmentDocumentId(attachmentDocumentId);
+        }
+        outboxRepository.save(message);
+        log.info("Correo de factura [{}] encolado para tenant [{}] (id {})", invoiceId, tenantId, message.getId());
+        return message;
+    }
+
+    /**
+     * Encola un correo cuyo adjunto se materializa después del commit de la facturación.
+     * Mientras el PDF no esté listo el correo (y los posteriores del mismo tenant) no se entregan.
+     *
+     * @param attachment proveedor del hash del PDF; se invoca tras el commit, fuera de la transacción
+     */
+    @Transactional(propagation = Propagation.REQUIRED)
+    public EmailOutboxMessage enqueueWithPendingAttachment(String tenantId, String invoiceId, String to, String subject,
+                                                           String htmlBody, Supplier<CompletableFuture<String>> attachment) {
+        EmailOutboxMessage message = newMessage(tenantId, invoiceId, to, subject, htmlBody);
+        message.setAttachmentPending(true);
+        outboxRepository.save(message);
+
+        UUID messageId = message.getId();
+        Runnable resolve = () -> attachment.get().whenComplete((documentId, ex) -> {
+            if (ex != null) {
+                // Se entrega sin adjunto antes que bloquear indefinidamente la cola del tenant
+                log.warn("No se pudo materializar el PDF de la factura [{}] para el correo {}: {}",
+                        invoiceId, messageId, ex.getMessage());
+                attachDocument(messageId, null);
+            } else {
+                attachDocument(messageId, documentId);
+            }
+        });
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    resolve.run();
+                }
+            });
+        } else {
+            resolve.run();
+        }
+
+        log.info("Correo de factura [{}] encolado para tenant [{}] a la espera del PDF (id {})", invoiceId, tenantId, messageId);
+        return message;
+    }
+
+    /**
+     * Barrido de correos cuyo adjunto no se asoció dentro del plazo: se adjunta el documento vigente
+     * de la factura si existe y, si no, el correo se libera sin adjunto para no bloquear al tenant.
+     */
+    @Scheduled(fixedDelayString = "${billing.email.outbox.attachment-sweep-interval-ms:60000}")
+    public void resolveStaleAttachments() {
+        try {
+            Integer resolved = transactionTemplate.execute(status -> {
+                Instant now = Instant.now();
+                List<EmailOutboxMessage> stale = outboxRepository.findStalePendingAttachments(
+                        now.minusSeconds(attachmentTimeoutSeconds), batchSize);
+                for (EmailOutboxMessage message : stale) {
+                    String documentId = documentStore.currentDocument(invoiceOwner(message.getInvoiceId())).orElse(null);
+                    if (documentId != null) {
+                        retainUntilRollback(documentId, outboxOwner(message.getId()));
+                    }
+                    outboxRepository.markAttachmentReady(message.getId(), documentId, now);
+                    log.warn("Correo {} de la factura [{}] sin adjunto tras {}s; se resuelve con {}",
+                            message.getId(), message.getInvoiceId(), attachmentTimeoutSeconds,
+                            documentId != null ? "el documento " + documentId : "envío sin adjunto");
+                }
+                return stale.size();
+            });
+            if (resolved != null && resolved > 0) {
+                log.info("Barrido de adjuntos pendientes: {} correos resueltos", resolved);
+            }
+        } catch (Exception e) {
+            log.error("Error resolviendo adjuntos pendientes de la bandeja de correos", e);
+        }
+    }
+
+    static String outboxOwner(UUID messageId) {
+        return "email-outbox-" + messageId;
+    }
+
+    private static String invoiceOwner(String invoiceId) {
+        return "invoice-" + invoiceId;
+    }
+
+    private void attachDocument(UUID messageId, String documentId) {
+        if (documentId != null) {
+            documentStore.retain(documentId, outboxOwner(messageId));
+        }
+        Integer updated;
+        try {
+            updated = transactionTemplate.execute(status ->
+                    outboxRepository.markAttachmentReady(messageId, documentId, Instant.now()));
+        } catch (RuntimeException e) {
+            // El barrido de adjuntos vencidos resolverá el correo; no se retiene un documento huérfano
+            releaseIfNotAttached(messageId, documentId);
+            log.error("No se pudo asociar el adjunto {} al correo {}", documentId, messageId, e);
+            return;
+        }
+        if (updated == null || updated == 0) {
+            // Ya lo resolvió el barrido (o el correo no existe): solo se conserva la referencia si es la asociada
+            releaseIfNotAttached(messageId, documentId);
+        }
+    }
+
+    private void releaseIfNotAttached(UUID messageId, String documentId) {
+        if (documentId == null) {
+            return;
+        }
+        String attached = outboxRepository.findById(messageId)
+                .map(EmailOutboxMessage::getAttachmentDocumentId)
+                .orElse(null);
+        if (!documentId.equals(attached)) {
+            documentStore.release(documentId, outboxOwner(messageId));
+        }
+    }
+
+    /**
+     * Retiene el documento para la bandeja y deshace la referencia si la transacción en curso no
+     * llega a confirmarse: el marcador vive en disco y no participa del rollback.
+     */
+    private void retainUntilRollback(String documentId, String ownerId) {
+        documentStore.retain(documentId, ownerId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        documentStore.release(documentId, ownerId);
+                    }
+                }
+            });
+        }
+    }
+
+    private EmailOutboxMessage newMessage(String tenantId, String invoiceId, String to, String subject, String htmlBody) {
+        EmailOutboxMessage message = new EmailOutboxMessage();
+        message.setTenantId(tenantId);
+        message.setInvoiceId(invoiceId);
+        message.setRecipient(to);
+        message.setSubject(subject);
+        message.setHtmlBody(htmlBody);
+        return message;
+    }
+}
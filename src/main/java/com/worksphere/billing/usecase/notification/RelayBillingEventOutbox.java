@@ -0,0 +1,268 @@
+package com.worksphere.billing.usecase.notification;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.worksphere.billing.domain.event.BillingEvent;
+import com.worksphere.billing.domain.model.BillingEventOutboxMessage;
+import com.worksphere.billing.infrastructure.kafka.ProfiledKafkaTemplates;
+import com.worksphere.billing.infrastructure.repository.BillingEventLogRepository;
+import com.worksphere.billing.infrastructure.repository.BillingEventOutboxRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Relay del outbox transaccional de eventos de facturación.
+ *
+ * Cada lote pasa por tres fases y ninguna transacción queda abierta mientras se espera a Kafka:
+ * 1. Reclamo (transacción corta con lock asesor): si no hay otro lote en vuelo con lease vigente,
+ *    toma los siguientes eventos por orden de inserción y les asigna un token y un lease.
+ * 2. Publicación sin transacción con el productor idempotente del perfil de cada topic (los envíos
+ *    se agrupan en los batches del productor y se esperan juntos).
+ * 3. Registro (segunda transacción): marca los publicados con el token del reclamo y escribe su
+ *    entrada de auditoría en {@code billing_event_log}.
+ *
+ * Orden y fallos:
+ * - Solo hay un lote en vuelo a la vez entre todas las instancias; si la instancia cae, el lease
+ *   vence y otra vuelve a publicar el lote (al menos una vez; los consumidores deduplican por eventId).
+ * - Si un evento falla, los posteriores del lote con la misma clave no se marcan como publicados y
+ *   se republican detrás de él en el siguiente ciclo, de modo que el orden por clave se mantiene
+ *   en lo que ven los consumidores tras deduplicar.
+ * - Al agotar {@code max-attempts} el evento pasa a dead letter: sale del flujo de publicación,
+ *   deja de retener a los de su clave y queda en el outbox para revisión.
+ */
+@Service
+public class RelayBillingEventOutbox {
+
+    private static final Logger log = LoggerFactory.getLogger(RelayBillingEventOutbox.class);
+
+    /** Identificador del lock asesor que serializa el reclamo entre instancias. */
+    private static final long RELAY_LOCK_ID = 0x42494C4C4556L;
+
+    private final BillingEventOutboxRepository outboxRepository;
+    private final BillingEventLogRepository eventLogRepository;
+    private final ProfiledKafkaTemplates<String> kafkaTemplates;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${billing.kafka.outbox.batch-size:500}")
+    private int batchSize;
+
+    @Value("${billing.kafka.outbox.publish-timeout-ms:30000}")
+    private long publishTimeoutMs;
+
+    @Value("${billing.kafka.outbox.claim-lease-ms:60000}")
+    private long claimLeaseMs;
+
+    @Value("${billing.kafka.outbox.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${billing.kafka.outbox.retention-days:7}")
+    private int retentionDays;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+
+    public RelayBillingEventOutbox(BillingEventOutboxRepository outboxRepository,
+                                   BillingEventLogRepository eventLogRepository,
+                                   ProfiledKafkaTemplates<String> kafkaTemplates,
+                                   ObjectMapper objectMapper,
+                                   PlatformTransactionManager transactionManager) {
+        this.outboxRepository = outboxRepository;
+        this.eventLogRepository = eventLogRepository;
+        this.kafkaTemplates = kafkaTemplates;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Publica lotes del outbox hasta vaciarlo o hasta encontrar un fallo.
+     */
+    @Scheduled(fixedDelayString = "${billing.kafka.outbox.poll-interval-ms:500}")
+    public void relay() {
+        try {
+            int relayed;
+            do {
+                relayed = relayBatch();
+            } while (relayed == batchSize);
+        } catch (Exception e) {
+            log.error("Error publicando el outbox de eventos de facturación", e);
+        }
+    }
+
+    /**
+     * Reclama, publica y registra un lote del outbox.
+     *
+     * @return número de eventos publicados correctamente (-1 si otra instancia tiene un lote en vuelo)
+     */
+    public int relayBatch() {
+        String token = UUID.randomUUID().toString();
+        List<BillingEventOutboxMessage> batch = transactionTemplate.execute(status -> claim(token));
+        if (batch == null) {
+            return -1;
+        }
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        PublishOutcome outcome = publish(batch);
+        transactionTemplate.executeWithoutResult(status -> record(token, outcome));
+
+        log.debug("Outbox de eventos: {} publicados, {} fallidos, {} retenidos tras un fallo de su clave",
+                outcome.sent.size(), outcome.failed.size(), outcome.heldBack.size());
+        // Un fallo corta el drenado del ciclo para no adelantar eventos posteriores
+        return outcome.failed.isEmpty() ? outcome.sent.size() : 0;
+    }
+
+    private List<BillingEventOutboxMessage> claim(String token) {
+        Instant now = Instant.now();
+        if (!outboxRepository.tryRelayLock(RELAY_LOCK_ID) || outboxRepository.hasActiveClaim(now)) {
+            return null;
+        }
+        List<BillingEventOutboxMessage> batch = outboxRepository.findPendingBatch(batchSize);
+        if (!batch.isEmpty()) {
+            List<Long> ids = batch.stream().map(BillingEventOutboxMessage::getId).toList();
+            outboxRepository.claim(ids, token, now.plusMillis(Math.max(claimLeaseMs, publishTimeoutMs)));
+        }
+        return batch;
+    }
+
+    private PublishOutcome publish(List<BillingEventOutboxMessage> batch) {
+        List<CompletableFuture<SendResult<String, String>>> futures = new ArrayList<>(batch.size());
+        for (BillingEventOutboxMessage message : batch) {
+            futures.add(kafkaTemplates.send(message.getTopic(), message.getMessageKey(), message.getPayload()));
+        }
+        kafkaTemplates.flush();
+
+        PublishOutcome outcome = new PublishOutcome();
+        Set<String> failedKeys = new HashSet<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(publishTimeoutMs);
+
+        for (int i = 0; i < batch.size(); i++) {
+            BillingEventOutboxMessage message = batch.get(i);
+            String error = null;
+            try {
+                futures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = "interrumpido";
+            } catch (ExecutionException | TimeoutException e) {
+                error = e.getCause() != null ? e.getCause().getMessage() : String.valueOf(e.getMessage());
+            }
+
+            if (error != null) {
+                failedKeys.add(message.getMessageKey());
+                outcome.failed.put(message, error);
+            } else if (failedKeys.contains(message.getMessageKey())) {
+                // Publicado, pero detrás de un evento fallido de su clave: se republica tras él
+                outcome.heldBack.add(message.getId());
+            } else {
+                outcome.sent.add(message);
+            }
+        }
+        return outcome;
+    }
+
+    private void record(String token, PublishOutcome outcome) {
+        Instant now = Instant.now();
+        if (!outcome.sent.isEmpty()) {
+            List<Long> ids = outcome.sent.stream().map(BillingEventOutboxMessage::getId).toList();
+            int marked = outboxRepository.markSent(ids, token, now);
+            if (marked < ids.size()) {
+                log.warn("Lease del lote vencido: {} de {} eventos publicados los marcará otro relay", ids.size() - marked, ids.size());
+            }
+            eventLogRepository.saveAll(auditEntries(outcome.sent, now));
+            published.add(marked);
+        }
+
+        List<Long> retry = new ArrayList<>();
+        List<Long> dead = new ArrayList<>();
+        String lastError = null;
+        for (Map.Entry<BillingEventOutboxMessage, String> entry : outcome.failed.entrySet()) {
+            BillingEventOutboxMessage message = entry.getKey();
+            lastError = entry.getValue();
+            if (message.getAttempts() + 1 >= maxAttempts) {
+                dead.add(message.getId());
+                log.error("Evento [{}] ({}, clave {}) enviado a dead letter tras {} intentos: {}",
+                        message.getEventId(), message.getEventType(), message.getMessageKey(),
+                        message.getAttempts() + 1, entry.getValue());
+            } else {
+                retry.add(message.getId());
+            }
+        }
+        if (!retry.isEmpty()) {
+            outboxRepository.markFailed(retry, token, lastError);
+            failed.add(retry.size());
+            log.warn("{} eventos del outbox no se publicaron y se reintentarán: {}", retry.size(), lastError);
+        }
+        if (!dead.isEmpty()) {
+            outboxRepository.markDeadLettered(dead, token, lastError, now);
+            deadLettered.add(dead.size());
+        }
+        if (!outcome.heldBack.isEmpty()) {
+            outboxRepository.releaseClaim(outcome.heldBack, token);
+        }
+    }
+
+    /**
+     * Entradas de auditoría de los eventos publicados, tal como se enviaron y con la hora de emisión.
+     */
+    private List<BillingEvent> auditEntries(List<BillingEventOutboxMessage> sent, Instant emittedAt) {
+        List<BillingEvent> entries = new ArrayList<>(sent.size());
+        for (BillingEventOutboxMessage message : sent) {
+            try {
+                entries.add(objectMapper.readValue(message.getPayload(), BillingEvent.class).withEmittedAt(emittedAt));
+            } catch (JsonProcessingException e) {
+                log.warn("No se pudo registrar en auditoría el evento [{}]: {}", message.getEventId(), e.getMessage());
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Elimina del outbox los eventos publicados hace más de {@code retention-days}.
+     * Los eventos en dead letter no se purgan.
+     */
+    @Scheduled(cron = "${billing.kafka.outbox.purge-cron:0 15 3 * * ?}")
+    public void purgePublished() {
+        Instant before = Instant.now().minus(Duration.ofDays(retentionDays));
+        Integer deleted = transactionTemplate.execute(status -> outboxRepository.deleteSentBefore(before));
+        log.info("Outbox de eventos: {} eventos publicados anteriores a {} eliminados", deleted, before);
+    }
+
+    private static final class PublishOutcome {
+        private final List<BillingEventOutboxMessage> sent = new ArrayList<>();
+        private final Map<BillingEventOutboxMessage, String> failed = new HashMap<>();
+        private final List<Long> heldBack = new ArrayList<>();
+    }
+
+    // -----------------------------
+    // Métricas
+    // -----------------------------
+    public long getPublishedCount() { return published.sum(); }
+    public long getFailedCount() { return failed.sum(); }
+    public long getDeadLetteredCount() { return deadLettered.sum(); }
+    public long getPendingCount() { return outboxRepository.countPending(); }
+    public long getDeadLetterBacklog() { return outboxRepository.countDeadLettered(); }
+}
@@ -1,10 +1,11 @@
 package com.worksphere.billing.usecase.notification;
 
-import com.worksphere.billing.domain.event.NotificationEvent;
 import com.worksphere.billing.domain.model.Invoice;
 import com.worksphere.billing.domain.model.Tenant;
-import com.worksphere.billing.infrastructure.email.EmailProvider;
+import com.worksphere.billing.infrastructure.email.template.EmailTemplateEngine;
+import com.worksphere.billing.infrastructure.email.template.TemplateSchema;
 import com.worksphere.billing.infrastructure.repository.InvoiceEmailLogRepository;
+import com.worksphere.billing.service.InvoicePdfMaterializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -21,83 +22,79 @@ public class SendInvoiceEmailToTenant {
 
     private static final Logger log = LoggerFactory.getLogger(SendInvoiceEmailToTenant.class);
 
-    private final EmailProvider emailProvider;
+    static final String TEMPLATE_NAME = "invoice_tenant_email";
+
+    static final TemplateSchema<InvoiceEmailContext> TEMPLATE_SCHEMA = TemplateSchema.<InvoiceEmailContext>builder(TEMPLATE_NAME)
+            .slot("tenant_name", c -> c.tenant.getName())
+            .slot("plan_name", c -> c.tenant.getPlanName())
+            .slot("invoice_id", c -> c.invoice.getInvoiceId())
+            .slot("amount", c -> c.invoice.getAmount())
+            .slot("due_date", c -> c.invoice.getDueDate())
+            .section("pdf_attached", c -> c.tenant.isPdfAttachmentEnabled())
+            .build();
+
+    private final EnqueueInvoiceEmail enqueueInvoiceEmail;
     private final InvoiceEmailLogRepository emailLogRepository;
-    private final EmitNotificationEvent emitNotificationEvent;
+    private final InvoicePdfMaterializer pdfMaterializer;
+    private final EmailTemplateEngine templateEngine;
 
-    public SendInvoiceEmailToTenant(EmailProvider emailProvider,
+    public SendInvoiceEmailToTenant(EnqueueInvoiceEmail enqueueInvoiceEmail,
                                     InvoiceEmailLogRepository emailLogRepository,
-                                    EmitNotificationEvent emitNotificationEvent) {
-        this.emailProvider = emailProvider;
+                                    InvoicePdfMaterializer pdfMaterializer,
+                                    EmailTemplateEngine templateEngine) {
+        this.enqueueInvoiceEmail = enqueueInvoiceEmail;
         this.emailLogRepository = emailLogRepository;
-        this.emitNotificationEvent = emitNotificationEvent;
+        this.pdfMaterializer = pdfMaterializer;
+        this.templateEngine = templateEngine;
     }
 
     /**
-     * Envía la factura por correo electrónico al tenant correspondiente.
+     * Encola la factura para su envío por correo electrónico al tenant correspondiente.
+     * Se une a la transacción de facturación del llamador; la entrega, los reintentos y el
+     * registro del estado final los realiza {@link DeliverQueuedEmails}.
      *
      * @param tenant Tenant al que se le enviará la factura
      * @param invoice Factura a enviar
      */
     @Transactional
     public void send(Tenant tenant, Invoice invoice) {
-        try {
-            // Construir plantilla HTML personalizada
-            String subject = String.format("Factura #%s - %s", invoice.getInvoiceId(), tenant.getName());
-            String body = buildInvoiceTemplate(tenant, invoice);
-
-            // Enviar correo (con adjunto PDF si aplica)
-            emailProvider.sendEmail(tenant.getEmail(), subject, body, invoice.getPdfBytes());
-
-            // Registrar éxito
-            emailLogRepository.saveInvoiceEmailLog(invoice.getInvoiceId(), tenant.getTenantId(),
-                    "SENT", Instant.now(), null);
-
-            log.info("Factura [{}] enviada exitosamente al tenant [{}]", invoice.getInvoiceId(), tenant.getTenantId());
-
-            // Emitir evento derivado
-            emitNotificationEvent.emit(new NotificationEvent(
-                    "invoice_email_sent",
-                    tenant.getTenantId(),
-                    invoice.getInvoiceId(),
-                    "Email enviado correctamente"
-            ));
-
-        } catch (Exception ex) {
-            log.error("Error al enviar la factura [{}] al tenant [{}]: {}", invoice.getInvoiceId(), tenant.getTenantId(), ex.getMessage());
-
-            // Registrar fallo
-            emailLogRepository.saveInvoiceEmailLog(invoice.getInvoiceId(), tenant.getTenantId(),
-                    "FAILED", Instant.now(), ex.getMessage());
+        // Construir plantilla HTML personalizada
+        String subject = String.format("Factura #%s - %s", invoice.getInvoiceId(), tenant.getName());
+        String body = buildInvoiceTemplate(tenant, invoice);
+
+        if (tenant.isPdfAttachmentEnabled()) {
+            // El PDF se materializa tras el commit, fuera de la transacción de facturación
+            enqueueInvoiceEmail.enqueueWithPendingAttachment(tenant.getTenantId(), invoice.getInvoiceId(),
+                    tenant.getEmail(), subject, body, () -> pdfMaterializer.materialize(invoice, "email"));
+        } else {
+            enqueueInvoiceEmail.enqueue(tenant.getTenantId(), invoice.getInvoiceId(),
+                    tenant.getEmail(), subject, body, null);
+        }
 
-            // Emitir evento derivado
-            emitNotificationEvent.emit(new NotificationEvent(
-                    "invoice_email_failed",
-                    tenant.getTenantId(),
-                    invoice.getInvoiceId(),
-                    "Error al enviar factura: " + ex.getMessage()
-            ));
+        emailLogRepository.saveInvoiceEmailLog(invoice.getInvoiceId(), tenant.getTenantId(),
+                "QUEUED", Instant.now(), null);
 
-            // Manejo de reintentos: aquí puedes implementar un retry (Quartz, Spring Retry, Dead Letter Queue, etc.)
-        }
+        log.info("Factura [{}] encolada para envío al tenant [{}]", invoice.getInvoiceId(), tenant.getTenantId());
     }
 
     /**
-     * Genera plantilla de email con datos del tenant y de la factura.
+     * Genera plantilla de email con datos del tenant y de la factura (branding por tenant, plan precompilado).
      */
     private String buildInvoiceTemplate(Tenant tenant, Invoice invoice) {
-        return "<html>" +
-                "<body>" +
-                "<h2>Hola " + tenant.getName() + ",</h2>" +
-                "<p>Te compartimos tu factura electrónica.</p>" +
-                "<ul>" +
-                "<li><strong>Factura:</strong> " + invoice.getInvoiceId() + "</li>" +
-                "<li><strong>Plan:</strong> " + tenant.getPlanName() + "</li>" +
-                "<li><strong>Monto:</strong> $" + invoice.getAmount() + "</li>" +
-                "<li><strong>Vencimiento:</strong> " + invoice.getDueDate() + "</li>" +
-                "</ul>" +
-                "<p>Gracias por confiar en nosotros.</p>" +
-                "</body>" +
-                "</html>";
+        return templateEngine.render(tenant.getTenantId(), TEMPLATE_NAME, TEMPLATE_SCHEMA,
+                new InvoiceEmailContext(tenant, invoice));
+    }
+
+    /**
+     * Contexto de renderizado de la plantilla de factura.
+     */
+    static final class InvoiceEmailContext {
+        private final Tenant tenant;
+        private final Invoice invoice;
+
+        InvoiceEmailContext(Tenant tenant, Invoice invoice) {
+            this.tenant = tenant;
+            this.invoice = invoice;
+        }
     }
 }
@@ -2,21 +2,53 @@ package com.worksphere.billing.usecase.payment;
 
 import com.worksphere.billing.domain.model.PaymentToken;
 import com.worksphere.billing.domain.model.PaymentResult;
-import com.worksphere.billing.domain.model.Invoice;
+import com.worksphere.billing.domain.model.PaymentResult.PaymentStatus;
+import com.worksphere.billing.domain.repository.PaymentAttemptRepository;
 import com.worksphere.billing.domain.repository.PaymentResultRepository;
-import com.worksphere.billing.domain.repository.InvoiceRepository;
 import com.worksphere.billing.service.PaymentGatewayAdapter;
 import com.worksphere.billing.domain.exception.PaymentException;
+import com.worksphere.billing.domain.exception.PaymentException.FailureReason;
+import com.worksphere.billing.infrastructure.payment.BatchPaymentSubmitters;
+import com.worksphere.billing.infrastructure.payment.PaymentIdempotencyStore;
+import com.worksphere.billing.infrastructure.payment.PaymentRouter;
+import com.worksphere.billing.infrastructure.payment.PaymentRouter.Hop;
+import com.worksphere.billing.infrastructure.payment.PaymentRouter.RoutedCharge;
 
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Caso de uso para iniciar una transacción de pago hacia el proveedor o pasarela correspondiente.
+ *
+ * El pago se divide en dos transacciones cortas: una registra el pago PENDING y otra su resultado.
+ * La llamada a la pasarela ocurre entre ambas, sin ninguna conexión de base de datos retenida.
+ * Si el proceso cae en medio, el registro queda PENDING y puede conciliarse con la pasarela.
+ *
+ * Un cobro sin respuesta clara (timeout, error de comunicación, 5xx) puede haberse procesado: no se
+ * marca FAILED sino que el pago sigue PENDING, pendiente de conciliación. Cada PaymentResult envía
+ * al proveedor su propia clave de idempotencia, de modo que reintentar un pago en duda reutiliza la
+ * fila y la clave y el proveedor no cobra dos veces; tras un rechazo definitivo (FAILED) el siguiente
+ * intento registra un PaymentResult nuevo y, con él, una clave nueva.
+ *
+ * Los pagos de proveedores que cobran por lotes solo se registran en PENDING; los cobra
+ * {@link ProcessBatchPayments} en el siguiente lote.
+ *
+ * Cada cobro pasa por {@link PaymentIdempotencyStore} con una clave (por defecto, una por factura):
+ * ejecuciones concurrentes de la misma factura comparten un único cobro y los reintentos reciben
+ * el resultado original sin llamar a la pasarela.
+ *
+ * El cobro inmediato pasa por {@link PaymentRouter}: si el tenant tiene tokens de otros proveedores
+ * se cobra con el más rápido de los sanos y, si un proveedor no acepta la petición, con el siguiente.
+ * El proveedor y el token que cobraron, y la decisión de enrutado, quedan en el PaymentResult.
  */
 @Component
 public class InitiatePaymentTransaction {
@@ -24,19 +56,31 @@ public class InitiatePaymentTransaction {
     private static final Logger logger = LoggerFactory.getLogger(InitiatePaymentTransaction.class);
 
     private final PaymentGatewayAdapter paymentGatewayAdapter;
+    private final PaymentRouter paymentRouter;
     private final PaymentResultRepository paymentResultRepository;
-    private final InvoiceRepository invoiceRepository;
+    private final PaymentAttemptRepository paymentAttemptRepository;
+    private final BatchPaymentSubmitters batchSubmitters;
+    private final PaymentIdempotencyStore idempotencyStore;
+    private final TransactionTemplate transactionTemplate;
 
     public InitiatePaymentTransaction(PaymentGatewayAdapter paymentGatewayAdapter,
+                                      PaymentRouter paymentRouter,
                                       PaymentResultRepository paymentResultRepository,
-                                      InvoiceRepository invoiceRepository) {
+                                      PaymentAttemptRepository paymentAttemptRepository,
+                                      BatchPaymentSubmitters batchSubmitters,
+                                      PaymentIdempotencyStore idempotencyStore,
+                                      PlatformTransactionManager transactionManager) {
         this.paymentGatewayAdapter = paymentGatewayAdapter;
+        this.paymentRouter = paymentRouter;
         this.paymentResultRepository = paymentResultRepository;
-        this.invoiceRepository = invoiceRepository;
+        this.paymentAttemptRepository = paymentAttemptRepository;
+        this.batchSubmitters = batchSubmitters;
+        this.idempotencyStore = idempotencyStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     /**
-     * Inicia un pago seguro para la factura e invoice especificados.
+     * Inicia un pago seguro para la factura e invoice especificados y espera su resultado.
      *
      * @param token  Token seguro de pago
      * @param amount Monto a cobrar
@@ -44,58 +88,179 @@ public class InitiatePaymentTransaction {
      * @param invoiceId Identificador de la factura
      * @return PaymentResult con estado final
      */
-    @Transactional
-    public PaymentResult execute(PaymentToken token, 
-                                 String tenantId, 
-                                 String invoiceId, 
-                                 java.math.BigDecimal amount) {
+    public PaymentResult execute(PaymentToken token,
+                                 String tenantId,
+                                 String invoiceId,
+                                 BigDecimal amount) {
+        try {
+            return executeAsync(token, tenantId, invoiceId, amount).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public PaymentResult initiate(PaymentToken token, BigDecimal amount, String tenantId, String invoiceId) {
+        return execute(token, tenantId, invoiceId, amount);
+    }
+
+    /**
+     * Inicia el pago sin bloquear al llamador.
+     *
+     * @return future con el PaymentResult final; falla con {@link PaymentException} si la pasarela rechaza el pago
+     */
+    public CompletableFuture<PaymentResult> executeAsync(PaymentToken token,
+                                                         String tenantId,
+                                                         String invoiceId,
+                                                         BigDecimal amount) {
+        String idempotencyKey = PaymentIdempotencyStore.invoiceKey(tenantId, UUID.fromString(invoiceId));
+        return executeAsync(token, tenantId, invoiceId, amount, idempotencyKey);
+    }
+
+    /**
+     * Inicia el pago con una clave de idempotencia propia del llamador (p. ej. la recibida en una API).
+     */
+    public CompletableFuture<PaymentResult> executeAsync(PaymentToken token,
+                                                         String tenantId,
+                                                         String invoiceId,
+                                                         BigDecimal amount,
+                                                         String idempotencyKey) {
+        return idempotencyStore.execute(idempotencyKey, tenantId, UUID.fromString(invoiceId),
+                () -> charge(token, tenantId, invoiceId, amount));
+    }
 
+    private CompletableFuture<PaymentResult> charge(PaymentToken token,
+                                                    String tenantId,
+                                                    String invoiceId,
+                                                    BigDecimal amount) {
         // -----------------------------
-        // 1. Validar idempotencia: no iniciar pago duplicado
+        // 1. Transacción corta: idempotencia y registro PENDING
         // -----------------------------
-        PaymentResult existingPayment = paymentResultRepository.findByInvoiceId(invoiceId);
-        if (existingPayment != null && "SUCCESS".equals(existingPayment.getStatus())) {
+        PaymentResult pending = transactionTemplate.execute(status -> persistPending(token, tenantId, invoiceId, amount));
+        if (pending.getStatus() == PaymentStatus.SUCCESS) {
             logger.info("Pago ya realizado para invoice {} del tenant {}", invoiceId, tenantId);
-            return existingPayment;
+            return CompletableFuture.completedFuture(pending);
+        }
+        if (batchSubmitters.isBatchProvider(pending.getGatewayProvider())) {
+            logger.info("Pago de invoice {} del tenant {} encolado para el próximo lote de {}",
+                    invoiceId, tenantId, pending.getGatewayProvider());
+            return CompletableFuture.completedFuture(pending);
         }
 
         // -----------------------------
-        // 2. Crear registro inicial de pago
+        // 2. Cobro enrutado entre los proveedores del tenant, sin transacción abierta
         // -----------------------------
+        CompletableFuture<RoutedCharge> routedCall;
+        try {
+            routedCall = paymentRouter.charge(token, amount, tenantId, invoiceId, providerIdempotencyKey(pending));
+        } catch (RuntimeException e) {
+            routedCall = CompletableFuture.failedFuture(e);
+        }
+
+        // -----------------------------
+        // 3. Transacción corta: registrar el resultado
+        // -----------------------------
+        UUID paymentResultId = pending.getPaymentResultId();
+        return routedCall.handle((routed, error) -> {
+            Throwable cause = error != null ? unwrap(error) : routed.getFailure();
+            PaymentException failure = cause == null ? null : toPaymentException(cause, invoiceId);
+            PaymentResult result = transactionTemplate.execute(status ->
+                    recordOutcome(paymentResultId, amount, routed, failure));
+
+            if (failure != null && isInDoubt(failure)) {
+                logger.warn("Resultado en duda del pago para invoice {} del tenant {}, queda PENDING para conciliar: {}",
+                        invoiceId, tenantId, failure.getMessage());
+                throw failure;
+            }
+            if (failure != null) {
+                logger.error("Fallo al procesar pago para invoice {} del tenant {}: {}", invoiceId, tenantId, failure.getMessage());
+                throw failure;
+            }
+            logger.info("Pago exitoso para invoice {} del tenant {} con {} y transactionId {}",
+                    invoiceId, tenantId, routed.getProvider(), routed.getTransactionId());
+            return result;
+        });
+    }
+
+    private PaymentResult persistPending(PaymentToken token, String tenantId, String invoiceId, BigDecimal amount) {
+        UUID invoiceUuid = UUID.fromString(invoiceId);
+        PaymentResult existingPayment = paymentResultRepository.findFirstByInvoiceIdOrderByProcessedAtDesc(invoiceUuid);
+        if (existingPayment != null && existingPayment.getStatus() != PaymentStatus.FAILED) {
+            // Cobrado, encolado para un lote o en duda: no se registra un segundo cargo. Un pago en
+            // duda se repite con su misma clave de idempotencia, que el proveedor deduplica.
+            return existingPayment;
+        }
+
         PaymentResult paymentResult = new PaymentResult();
-        paymentResult.setInvoiceId(invoiceId);
+        paymentResult.setInvoiceId(invoiceUuid);
         paymentResult.setTenantId(tenantId);
+        paymentResult.setGatewayProvider(paymentGatewayAdapter.providerKeyOf(token.getGatewayProvider()));
+        paymentResult.setPaymentTokenId(token.getTokenId());
         paymentResult.setAmount(amount);
-        paymentResult.setStatus("PENDING");
-        paymentResult.setCreatedAt(LocalDateTime.now());
+        paymentResult.setStatus(PaymentStatus.PENDING);
+        paymentResult.setProcessedAt(LocalDateTime.now());
+        return paymentResultRepository.save(paymentResult);
+    }
 
-        paymentResultRepository.save(paymentResult);
+    private PaymentResult recordOutcome(UUID paymentResultId, BigDecimal amount, RoutedCharge routed, PaymentException failure) {
+        PaymentResult paymentResult = paymentResultRepository.findById(paymentResultId)
+                .orElseThrow(() -> new IllegalStateException("PaymentResult PENDING no encontrado: " + paymentResultId));
 
-        try {
-            // -----------------------------
-            // 3. Llamada al PaymentGatewayAdapter
-            // -----------------------------
-            String transactionId = paymentGatewayAdapter.processPayment(token, amount, tenantId, invoiceId);
-
-            // -----------------------------
-            // 4. Actualizar resultado de pago
-            // -----------------------------
-            paymentResult.setTransactionId(transactionId);
-            paymentResult.setStatus("SUCCESS");
-            paymentResult.setCompletedAt(LocalDateTime.now());
-            paymentResultRepository.save(paymentResult);
-
-            logger.info("Pago exitoso para invoice {} del tenant {} con transactionId {}", invoiceId, tenantId, transactionId);
-
-        } catch (PaymentException ex) {
-            paymentResult.setStatus("FAILED");
-            paymentResult.setCompletedAt(LocalDateTime.now());
-            paymentResultRepository.save(paymentResult);
-
-            logger.error("Fallo al procesar pago para invoice {} del tenant {}: {}", invoiceId, tenantId, ex.getMessage());
-            throw ex;
+        if (routed != null) {
+            for (Hop hop : routed.getFailedOverHops()) {
+                paymentAttemptRepository.save(paymentResult.recordAttempt("FAILOVER amount=" + amount
+                        + " provider=" + hop.getProvider() + ": " + hop.getFailure().getMessage()));
+            }
+            paymentResult.setGatewayProvider(routed.getProvider());
+            paymentResult.setPaymentTokenId(routed.getToken().getTokenId());
+            paymentResult.setRoutingDecision(routed.getDecision());
         }
 
-        return paymentResult;
+        if (failure == null) {
+            paymentResult.setGatewayTransactionId(routed.getTransactionId());
+            paymentResult.setStatus(PaymentStatus.SUCCESS);
+            paymentResult.setPaid(true);
+            paymentAttemptRepository.save(paymentResult.recordAttempt("SUCCESS amount=" + amount
+                    + " provider=" + routed.getProvider() + " transactionId=" + routed.getTransactionId()));
+        } else if (isInDoubt(failure)) {
+            // El cargo pudo procesarse: sigue PENDING hasta que la pasarela confirme su resultado
+            paymentAttemptRepository.save(paymentResult.recordAttempt("UNKNOWN amount=" + amount + " reason="
+                    + failure.getFailureReason() + " (pendiente de conciliación): " + failure.getMessage()));
+        } else {
+            paymentResult.setStatus(PaymentStatus.FAILED);
+            paymentAttemptRepository.save(paymentResult.recordAttempt("FAILED amount=" + amount + " reason="
+                    + failure.getFailureReason() + ": " + failure.getMessage()));
+        }
+        paymentResult.setProcessedAt(LocalDateTime.now());
+        return paymentResultRepository.save(paymentResult);
+    }
+
+    /**
+     * Clave de idempotencia del cargo en el proveedor: una por PaymentResult.
+     */
+    private static String providerIdempotencyKey(PaymentResult paymentResult) {
+        return "payment:" + paymentResult.getPaymentResultId();
+    }
+
+    /**
+     * Fallos tras los que no se sabe si el proveedor procesó el cargo.
+     */
+    private static boolean isInDoubt(PaymentException failure) {
+        return failure.getFailureReason() == FailureReason.NETWORK_ERROR
+                || failure.getFailureReason() == FailureReason.UNKNOWN_ERROR;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private static PaymentException toPaymentException(Throwable error, String invoiceId) {
+        if (error instanceof PaymentException paymentException) {
+            return paymentException;
+        }
+        return new PaymentException("Error inesperado procesando el pago: " + error.getMessage(),
+                null, null, invoiceId, FailureReason.UNKNOWN_ERROR, true);
     }
 }
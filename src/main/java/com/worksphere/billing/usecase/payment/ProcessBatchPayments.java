@@ -0,0 +1,302 @@
+package com.worksphere.billing.usecase.payment;
+
+import com.worksphere.billing.domain.event.NotificationEvent;
+import com.worksphere.billing.domain.model.PaymentResult;
+import com.worksphere.billing.domain.model.PaymentResult.PaymentStatus;
+import com.worksphere.billing.domain.model.PaymentToken;
+import com.worksphere.billing.domain.repository.PaymentResultRepository;
+import com.worksphere.billing.domain.repository.PaymentTokenRepository;
+import com.worksphere.billing.infrastructure.payment.BatchPaymentSubmitter;
+import com.worksphere.billing.infrastructure.payment.BatchPaymentSubmitter.BatchChargeItem;
+import com.worksphere.billing.infrastructure.payment.BatchPaymentSubmitter.BatchChargeOutcome;
+import com.worksphere.billing.infrastructure.payment.BatchPaymentSubmitter.BatchStatus;
+import com.worksphere.billing.infrastructure.payment.BatchPaymentSubmitters;
+import com.worksphere.billing.infrastructure.repository.PaymentResultBatchWriter;
+import com.worksphere.billing.usecase.notification.EmitNotificationEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Cobro por lotes para los proveedores que lo soportan (p. ej. ficheros de cargo del banco local).
+ *
+ * Cualidades:
+ * - {@link InitiatePaymentTransaction} deja los pagos de estos proveedores en PENDING sin llamar a la pasarela.
+ * - El envío agrupa hasta {@code batch-size} pagos PENDING por proveedor en un único lote
+ *   (reclamo con FOR UPDATE SKIP LOCKED), de modo que miles de cargos se convierten en unos pocos envíos.
+ * - La conciliación es independiente del envío: consulta los lotes abiertos y aplica los
+ *   resultados por ítem con una actualización JDBC por lotes.
+ * - Un lote que el proveedor no conoce tras el periodo de gracia vuelve a quedar disponible. Un envío
+ *   sin confirmar a tiempo no se libera: el lote sigue abierto y la conciliación decide con poll,
+ *   para no volver a cobrar cargos que el proveedor ya pudo recibir.
+ */
+@Service
+public class ProcessBatchPayments {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessBatchPayments.class);
+
+    private final PaymentResultRepository paymentResultRepository;
+    private final PaymentTokenRepository paymentTokenRepository;
+    private final PaymentResultBatchWriter batchWriter;
+    private final BatchPaymentSubmitters submitters;
+    private final EmitNotificationEvent emitNotificationEvent;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${payment.batch.submit-timeout-ms:60000}")
+    private long submitTimeoutMs;
+
+    @Value("${payment.batch.unknown-grace-ms:600000}")
+    private long unknownGraceMs;
+
+    private final LongAdder batchesSubmitted = new LongAdder();
+    private final LongAdder chargesSubmitted = new LongAdder();
+    private final LongAdder chargesSucceeded = new LongAdder();
+    private final LongAdder chargesFailed = new LongAdder();
+
+    public ProcessBatchPayments(PaymentResultRepository paymentResultRepository,
+                                PaymentTokenRepository paymentTokenRepository,
+                                PaymentResultBatchWriter batchWriter,
+                                BatchPaymentSubmitters submitters,
+                                EmitNotificationEvent emitNotificationEvent,
+                                PlatformTransactionManager transactionManager) {
+        this.paymentResultRepository = paymentResultRepository;
+        this.paymentTokenRepository = paymentTokenRepository;
+        this.batchWriter = batchWriter;
+        this.submitters = submitters;
+        this.emitNotificationEvent = emitNotificationEvent;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // -----------------------------
+    // Envío
+    // -----------------------------
+
+    /**
+     * Agrupa y envía los pagos PENDING de cada proveedor por lotes.
+     */
+    @Scheduled(fixedDelayString = "${payment.batch.submit-interval-ms:60000}")
+    public void submitPending() {
+        for (String provider : submitters.providers()) {
+            try {
+                int batchSize = submitters.batchSize(provider);
+                int claimed;
+                do {
+                    claimed = submitBatch(provider, batchSize);
+                } while (claimed == batchSize);
+            } catch (Exception e) {
+                log.error("Error enviando lotes de cargos al proveedor {}", provider, e);
+            }
+        }
+    }
+
+    /**
+     * Reclama y envía un lote.
+     *
+     * @return pagos reclamados (0 si no había o si el envío falló)
+     */
+    int submitBatch(String provider, int batchSize) {
+        String batchId = newBatchId(provider);
+        PreparedBatch prepared = transactionTemplate.execute(status -> prepare(provider, batchId, batchSize));
+        if (prepared == null) {
+            return 0;
+        }
+        prepared.events.forEach(emitNotificationEvent::emit);
+        if (prepared.items.isEmpty()) {
+            return prepared.claimed;
+        }
+
+        BatchPaymentSubmitter submitter = submitters.get(provider);
+        try {
+            submitter.submit(batchId, prepared.items).get(submitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            // El submitter solo falla si el lote no llegó al proveedor: sus pagos vuelven a estar disponibles
+            transactionTemplate.execute(status -> paymentResultRepository.releaseBatch(batchId));
+            log.error("No se pudo enviar el lote {} al proveedor {}: {}", batchId, provider,
+                    e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            return 0;
+        } catch (TimeoutException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            // El lote pudo llegar al proveedor: sigue abierto y la conciliación decide con poll
+            log.warn("Envío del lote {} al proveedor {} sin confirmar en {} ms: queda abierto para conciliar",
+                    batchId, provider, submitTimeoutMs);
+            return 0;
+        }
+        batchesSubmitted.increment();
+        chargesSubmitted.add(prepared.items.size());
+        log.info("Lote {} enviado al proveedor {} con {} cargos", batchId, provider, prepared.items.size());
+        return prepared.claimed;
+    }
+
+    private PreparedBatch prepare(String provider, String batchId, int batchSize) {
+        List<PaymentResult> due = paymentResultRepository.claimUnbatched(provider, batchSize);
+        if (due.isEmpty()) {
+            return null;
+        }
+        List<UUID> tokenIds = due.stream().map(PaymentResult::getPaymentTokenId).filter(id -> id != null).toList();
+        Map<UUID, PaymentToken> tokens = paymentTokenRepository.findAllById(tokenIds).stream()
+                .collect(Collectors.toMap(PaymentToken::getTokenId, Function.identity()));
+
+        List<BatchChargeItem> items = new ArrayList<>(due.size());
+        List<BatchChargeOutcome> rejected = new ArrayList<>();
+        for (PaymentResult payment : due) {
+            PaymentToken token = payment.getPaymentTokenId() == null ? null : tokens.get(payment.getPaymentTokenId());
+            if (token == null || payment.getAmount() == null) {
+                rejected.add(BatchChargeOutcome.failed(payment.getPaymentResultId(), "Pago sin token o importe para el lote"));
+            } else {
+                items.add(new BatchChargeItem(payment.getPaymentResultId(), String.valueOf(payment.getInvoiceId()),
+                        token.getTokenId(), token.getEncryptedToken(), payment.getAmount()));
+            }
+        }
+
+        paymentResultRepository.assignBatch(batchId, due.stream().map(PaymentResult::getPaymentResultId).toList());
+        List<NotificationEvent> events = toEvents(batchWriter.applyOutcomes(batchId, rejected), index(due));
+        return new PreparedBatch(due.size(), items, events);
+    }
+
+    // -----------------------------
+    // Conciliación
+    // -----------------------------
+
+    /**
+     * Consulta en paralelo los lotes abiertos y aplica los resultados disponibles.
+     */
+    @Scheduled(fixedDelayString = "${payment.batch.reconcile-interval-ms:30000}")
+    public void reconcile() {
+        for (String provider : submitters.providers()) {
+            try {
+                BatchPaymentSubmitter submitter = submitters.get(provider);
+                Map<String, CompletableFuture<BatchStatus>> polls = new LinkedHashMap<>();
+                for (String batchId : paymentResultRepository.findOpenBatchIds(provider)) {
+                    polls.put(batchId, submitter.poll(batchId));
+                }
+                polls.forEach((batchId, poll) -> {
+                    try {
+                        apply(provider, submitter, batchId, poll.join());
+                    } catch (Exception e) {
+                        log.error("Error conciliando el lote {} del proveedor {}", batchId, provider, e);
+                    }
+                });
+            } catch (Exception e) {
+                log.error("Error conciliando lotes del proveedor {}", provider, e);
+            }
+        }
+    }
+
+    private void apply(String provider, BatchPaymentSubmitter submitter, String batchId, BatchStatus status) {
+        switch (status.getState()) {
+            case PROCESSING -> log.debug("Lote {} del proveedor {} aún en proceso", batchId, provider);
+            case UNKNOWN -> {
+                if (System.currentTimeMillis() - batchCreatedAt(batchId) > unknownGraceMs) {
+                    Integer released = transactionTemplate.execute(s -> paymentResultRepository.releaseBatch(batchId));
+                    log.warn("Lote {} desconocido para el proveedor {}: {} pagos vuelven a quedar pendientes de envío",
+                            batchId, provider, released);
+                }
+            }
+            case COMPLETED -> {
+                List<NotificationEvent> events = transactionTemplate.execute(s -> applyCompleted(batchId, status.getOutcomes()));
+                events.forEach(emitNotificationEvent::emit);
+                submitter.acknowledge(batchId);
+            }
+        }
+    }
+
+    private List<NotificationEvent> applyCompleted(String batchId, List<BatchChargeOutcome> reported) {
+        Map<UUID, PaymentResult> payments = index(paymentResultRepository.findByBatchId(batchId));
+
+        Map<UUID, BatchChargeOutcome> outcomes = new LinkedHashMap<>();
+        for (BatchChargeOutcome outcome : reported) {
+            if (payments.containsKey(outcome.getPaymentResultId())) {
+                outcomes.put(outcome.getPaymentResultId(), outcome);
+            }
+        }
+        // Un cargo ausente en la respuesta del lote no se cobró
+        payments.values().stream()
+                .filter(p -> p.getStatus() == PaymentStatus.PENDING && !outcomes.containsKey(p.getPaymentResultId()))
+                .forEach(p -> outcomes.put(p.getPaymentResultId(),
+                        BatchChargeOutcome.failed(p.getPaymentResultId(), "Sin resultado en la respuesta del lote")));
+
+        List<BatchChargeOutcome> applied = batchWriter.applyOutcomes(batchId, new ArrayList<>(outcomes.values()));
+        log.info("Lote {} conciliado: {} resultados aplicados", batchId, applied.size());
+        return toEvents(applied, payments);
+    }
+
+    private List<NotificationEvent> toEvents(List<BatchChargeOutcome> applied, Map<UUID, PaymentResult> payments) {
+        List<NotificationEvent> events = new ArrayList<>(applied.size());
+        for (BatchChargeOutcome outcome : applied) {
+            PaymentResult payment = payments.get(outcome.getPaymentResultId());
+            String invoiceId = String.valueOf(payment.getInvoiceId());
+            if (outcome.isSuccess()) {
+                chargesSucceeded.increment();
+                events.add(new NotificationEvent("payment_succeeded", payment.getTenantId(), invoiceId,
+                        "Pago cobrado por lote con transactionId " + outcome.getTransactionId()));
+            } else {
+                chargesFailed.increment();
+                events.add(new NotificationEvent("payment_failed", payment.getTenantId(), invoiceId,
+                        "Pago rechazado en el lote: " + outcome.getError()));
+            }
+        }
+        return events;
+    }
+
+    private static Map<UUID, PaymentResult> index(List<PaymentResult> payments) {
+        Map<UUID, PaymentResult> byId = new HashMap<>();
+        payments.forEach(p -> byId.put(p.getPaymentResultId(), p));
+        return byId;
+    }
+
+    /**
+     * Identificador de lote: proveedor, instante de creación y sufijo aleatorio.
+     */
+    static String newBatchId(String provider) {
+        return provider + "-" + System.currentTimeMillis() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    static long batchCreatedAt(String batchId) {
+        String[] parts = batchId.split("-");
+        try {
+            return Long.parseLong(parts[parts.length - 2]);
+        } catch (RuntimeException e) {
+            return 0L;
+        }
+    }
+
+    // -----------------------------
+    // Métricas
+    // -----------------------------
+    public long getBatchesSubmitted() { return batchesSubmitted.sum(); }
+    public long getChargesSubmitted() { return chargesSubmitted.sum(); }
+    public long getChargesSucceeded() { return chargesSucceeded.sum(); }
+    public long getChargesFailed() { return chargesFailed.sum(); }
+
+    private static final class PreparedBatch {
+        private final int claimed;
+        private final List<BatchChargeItem> items;
+        private final List<NotificationEvent> events;
+
+        private PreparedBatch(int claimed, List<BatchChargeItem> items, List<NotificationEvent> events) {
+            this.claimed = claimed;
+            this.items = items;
+            this.events = events;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.worksphere.billing.usecase.payment;
+
+import com.worksphere.billing.domain.event.NotificationEvent;
+import com.worksphere.billing.domain.exception.PaymentException;
+import com.worksphere.billing.domain.model.PaymentResult;
+import com.worksphere.billing.domain.model.PaymentResult.PaymentStatus;
+import com.worksphere.billing.domain.model.PaymentReversalItem;
+import com.worksphere.billing.domain.model.PaymentReversalJob;
+import com.worksphere.billing.domain.repository.PaymentResultRepository;
+import com.worksphere.billing.infrastructure.repository.PaymentReversalItemRepository;
+import com.worksphere.billing.infrastructure.repository.PaymentReversalJobRepository;
+import com.worksphere.billing.service.PaymentGatewayAdapter;
+import com.worksphere.billing.usecase.notification.EmitNotificationEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Worker de la cola persistente de reversiones encoladas por {@link ReverseTransaction}.
+ *
+ * Cualidades:
+ * - Cada ronda reclama como máximo {@code max-concurrency-per-provider} reversiones por proveedor
+ *   (FOR UPDATE SKIP LOCKED) y las lanza a la vez: una devolución masiva nunca ocupa más de ese
+ *   número de llamadas por proveedor e instancia, y los cobros conservan su capacidad.
+ * - Las llamadas a la pasarela ocurren fuera de cualquier transacción; los resultados se registran
+ *   en una transacción por ronda y los eventos se emiten tras el commit.
+ * - Idempotencia: un pago ya revertido se descarta sin llamar a la pasarela y el marcado como
+ *   revertido es condicional, de modo que una reversión repetida no emite un segundo evento. Si
+ *   el registro de la ronda falla tras aceptar la pasarela las reversiones, estas siguen
+ *   IN_PROGRESS y se reenvían al vencer el lease con la misma clave de idempotencia
+ *   ({@link ReverseTransaction#reversalKey}), que el proveedor usa para no revertir dos veces.
+ * - Errores recuperables se reintentan con backoff exponencial; un rechazo definitivo o el
+ *   agotamiento de intentos deja la reversión FAILED.
+ */
+@Service
+public class ProcessPaymentReversals {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessPaymentReversals.class);
+
+    private final PaymentReversalItemRepository itemRepository;
+    private final PaymentReversalJobRepository jobRepository;
+    private final PaymentResultRepository paymentResultRepository;
+    private final PaymentGatewayAdapter paymentGatewayAdapter;
+    private final EmitNotificationEvent emitNotificationEvent;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${payment.reversals.max-concurrency-per-provider:8}")
+    private int maxPerProvider;
+
+    @Value("${payment.reversals.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${payment.reversals.base-backoff-ms:10000}")
+    private long baseBackoffMs;
+
+    @Value("${payment.reversals.max-backoff-ms:1800000}")
+    private long maxBackoffMs;
+
+    @Value("${payment.reversals.lease-seconds:120}")
+    private long leaseSeconds;
+
+    private final LongAdder reversed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public ProcessPaymentReversals(PaymentReversalItemRepository itemRepository,
+                                   PaymentReversalJobRepository jobRepository,
+                                   PaymentResultRepository paymentResultRepository,
+                                   PaymentGatewayAdapter paymentGatewayAdapter,
+                                   EmitNotificationEvent emitNotificationEvent,
+                                   PlatformTransactionManager transactionManager) {
+        this.itemRepository = itemRepository;
+        this.jobRepository = jobRepository;
+        this.paymentResultRepository = paymentResultRepository;
+        this.paymentGatewayAdapter = paymentGatewayAdapter;
+        this.emitNotificationEvent = emitNotificationEvent;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Vacía la cola: procesa rondas mientras algún proveedor tenga más reversiones vencidas.
+     */
+    @Scheduled(fixedDelayString = "${payment.reversals.poll-interval-ms:1000}")
+    public void drain() {
+        try {
+            boolean saturated;
+            do {
+                saturated = processRound();
+            } while (saturated);
+        } catch (Exception e) {
+            log.error("Error procesando la cola de reversiones", e);
+        }
+    }
+
+    /**
+     * Reclama, revierte y registra una ronda.
+     *
+     * @return true si algún proveedor llenó su cupo (probablemente queda trabajo)
+     */
+    boolean processRound() {
+        Round round = transactionTemplate.execute(status -> claim());
+        if (round.work.isEmpty()) {
+            return round.saturated;
+        }
+
+        // Llamadas a la pasarela sin transacción; el adaptador aplica además su límite adaptativo
+        List<CompletableFuture<Outcome>> calls = round.work.stream().map(this::reverse).toList();
+        List<Outcome> outcomes = calls.stream().map(CompletableFuture::join).toList();
+
+        List<NotificationEvent> events = transactionTemplate.execute(status -> recordOutcomes(outcomes));
+
+        // Tras el commit: eventos de reversión
+        events.forEach(emitNotificationEvent::emit);
+        return round.saturated;
+    }
+
+    private Round claim() {
+        Instant now = Instant.now();
+        Instant leaseUntil = now.plusSeconds(leaseSeconds);
+        List<PaymentReversalItem> claimed = new ArrayList<>();
+        boolean saturated = false;
+        for (String provider : itemRepository.findDueProviders(now)) {
+            List<PaymentReversalItem> due = itemRepository.claimDue(provider, now, maxPerProvider);
+            saturated |= due.size() == maxPerProvider;
+            claimed.addAll(due);
+        }
+        if (claimed.isEmpty()) {
+            return new Round(List.of(), false);
+        }
+
+        Map<UUID, PaymentResult> payments = paymentResultRepository.findAllById(
+                        claimed.stream().map(PaymentReversalItem::getPaymentResultId).toList()).stream()
+                .collect(Collectors.toMap(PaymentResult::getPaymentResultId, Function.identity()));
+        Map<UUID, PaymentReversalJob> jobs = jobRepository.findAllById(
+                        claimed.stream().map(PaymentReversalItem::getJobId).distinct().toList()).stream()
+                .collect(Collectors.toMap(PaymentReversalJob::getId, Function.identity()));
+
+        List<Work> work = new ArrayList<>(claimed.size());
+        for (PaymentReversalItem item : claimed) {
+            PaymentResult payment = payments.get(item.getPaymentResultId());
+            String skipReason = payment == null ? "Pago no encontrado"
+                    : payment.isReversed() ? "Pago ya revertido"
+                    : payment.getStatus() != PaymentStatus.SUCCESS ? "Pago no exitoso (" + payment.getStatus() + ")"
+                    : null;
+            if (skipReason != null) {
+                item.markSkipped(skipReason);
+                skipped.increment();
+                log.info("Reversión del pago {} descartada: {}", item.getPaymentResultId(), skipReason);
+            } else {
+                item.markInProgress(leaseUntil);
+                work.add(new Work(item.getId(), payment, jobs.get(item.getJobId())));
+            }
+        }
+        itemRepository.saveAll(claimed);
+        if (work.isEmpty()) {
+            jobRepository.completeFinished(now);
+        }
+        return new Round(work, saturated);
+    }
+
+    /**
+     * Revierte un pago; nunca falla: el error queda en el resultado.
+     */
+    private CompletableFuture<Outcome> reverse(Work work) {
+        CompletableFuture<Void> call;
+        try {
+            call = paymentGatewayAdapter.reversePaymentAsync(work.payment, ReverseTransaction.reversalKey(work.payment));
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        return call.handle((ignored, error) -> new Outcome(work, unwrap(error)));
+    }
+
+    private List<NotificationEvent> recordOutcomes(List<Outcome> outcomes) {
+        Map<UUID, PaymentReversalItem> items = new HashMap<>();
+        itemRepository.findAllById(outcomes.stream().map(o -> o.work.itemId).toList())
+                .forEach(item -> items.put(item.getId(), item));
+
+        List<NotificationEvent> events = new ArrayList<>(outcomes.size());
+        Instant now = Instant.now();
+        for (Outcome outcome : outcomes) {
+            PaymentReversalItem item = items.get(outcome.work.itemId);
+            PaymentResult payment = outcome.work.payment;
+            String invoiceId = String.valueOf(payment.getInvoiceId());
+
+            if (outcome.error == null) {
+                item.markReversed();
+                String reason = outcome.work.job != null ? outcome.work.job.getReason() : null;
+                String actor = outcome.work.job != null ? outcome.work.job.getActor() : null;
+                if (paymentResultRepository.markReversed(payment.getPaymentResultId(), reason, actor, LocalDateTime.now()) == 1) {
+                    reversed.increment();
+                    events.add(new NotificationEvent("payment_reversed", payment.getTenantId(), invoiceId,
+                            "Pago " + payment.getGatewayTransactionId() + " revertido: " + reason));
+                }
+                continue;
+            }
+
+            String error = outcome.error.getMessage();
+            boolean permanent = outcome.error instanceof PaymentException paymentException && !paymentException.isRecoverable();
+            if (permanent || item.getAttempts() + 1 >= maxAttempts) {
+                item.markFailed(error);
+                failed.increment();
+                events.add(new NotificationEvent("payment_reversal_failed", payment.getTenantId(), invoiceId,
+                        "No se pudo revertir el pago " + payment.getGatewayTransactionId() + ": " + error));
+                log.error("Reversión del pago {} fallida tras {} intentos: {}",
+                        payment.getPaymentResultId(), item.getAttempts(), error);
+            } else {
+                Instant nextAttempt = now.plus(backoff(item.getAttempts() + 1));
+                item.markRetry(error, nextAttempt);
+                retried.increment();
+                log.warn("Error revirtiendo el pago {} (intento {}), reintento en {}: {}",
+                        payment.getPaymentResultId(), item.getAttempts(), nextAttempt, error);
+            }
+        }
+        itemRepository.saveAll(items.values());
+        jobRepository.completeFinished(now);
+        return events;
+    }
+
+    /**
+     * Backoff exponencial: base * 2^(intento-1), acotado y con ±20% de jitter.
+     */
+    Duration backoff(int attempt) {
+        long exponential = baseBackoffMs << Math.min(attempt - 1, 30);
+        long capped = exponential <= 0 ? maxBackoffMs : Math.min(maxBackoffMs, exponential);
+        double jitter = 0.8 + ThreadLocalRandom.current().nextDouble() * 0.4;
+        return Duration.ofMillis((long) (capped * jitter));
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    // -----------------------------
+    // Métricas
+    // -----------------------------
+    public long getReversedCount() { return reversed.sum(); }
+    public long getSkippedCount() { return skipped.sum(); }
+    public long getRetriedCount() { return retried.sum(); }
+    public long getFailedCount() { return failed.sum(); }
+
+    private static final class Work {
+        private final UUID itemId;
+        private final PaymentResult payment;
+        private final PaymentReversalJob job;
+
+        private Work(UUID itemId, PaymentResult payment, PaymentReversalJob job) {
+            this.itemId = itemId;
+            this.payment = payment;
+            this.job = job;
+        }
+    }
+
+    private static final class Outcome {
+        private final Work work;
+        private final Throwable error;
+
+        private Outcome(Work work, Throwable error) {
+            this.work = work;
+            this.error = error;
+        }
+    }
+
+    private static final class Round {
+        private final List<Work> work;
+        private final boolean saturated;
+
+        private Round(List<Work> work, boolean saturated) {
+            this.work = work;
+            this.saturated = saturated;
+        }
+    }
+}
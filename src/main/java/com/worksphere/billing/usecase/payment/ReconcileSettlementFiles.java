@@ -0,0 +1,380 @@
+package com.worksphere.billing.usecase.payment;
+
+import com.worksphere.billing.domain.event.NotificationEvent;
+import com.worksphere.billing.domain.model.ReconciliationRun;
+import com.worksphere.billing.infrastructure.payment.PartitionedSettlementJoin;
+import com.worksphere.billing.infrastructure.payment.PartitionedSettlementJoin.JoinResult;
+import com.worksphere.billing.infrastructure.payment.PartitionedSettlementJoin.Mismatch;
+import com.worksphere.billing.infrastructure.payment.SettlementFileReader;
+import com.worksphere.billing.infrastructure.payment.SettlementFileReader.Kind;
+import com.worksphere.billing.infrastructure.payment.SettlementFileReader.ReadResult;
+import com.worksphere.billing.infrastructure.payment.SettlementFileReader.SettlementRecord;
+import com.worksphere.billing.infrastructure.repository.PaymentLedgerReader;
+import com.worksphere.billing.infrastructure.repository.PaymentLedgerReader.LedgerRow;
+import com.worksphere.billing.infrastructure.repository.ReconciliationRunRepository;
+import com.worksphere.billing.service.PaymentGatewayAdapter;
+import com.worksphere.billing.usecase.notification.EmitNotificationEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Conciliación de los ficheros de liquidación de los proveedores contra {@code payment_results}.
+ *
+ * Cada proveedor deja sus liquidaciones (CSV, JSON o JSONL) en {@code <inbound-dir>/<proveedor>/}.
+ * Un fichero se reclama moviéndolo de forma atómica a {@code processing/}, de modo que dos
+ * instancias nunca concilian el mismo, y al terminar pasa a {@code processed/} o {@code failed/}.
+ * Si la instancia cae a mitad, el fichero queda en {@code processing/}; para volver a conciliarlo
+ * basta devolverlo al directorio del proveedor (conciliar dos veces no modifica ningún pago).
+ *
+ * Cualidades:
+ * - Memoria acotada: el fichero se lee en streaming y se cruza con los pagos de su ventana de
+ *   fechas mediante {@link PartitionedSettlementJoin}; el número de particiones se calcula para
+ *   que cada una ocupe como mucho {@code partition-bytes} del fichero, hasta {@code max-partitions}
+ *   ficheros abiertos; por encima, el join vuelve a particionar las que excedan ese tamaño.
+ * - Ventana: la forman las fechas de los cargos liquidados (no las de devoluciones). Si el fichero
+ *   solo trae la fecha de liquidación, se retrasa {@code settlement-lag-ms} para aproximar la del
+ *   cargo: así los cobros de las últimas horas, que el proveedor liquidará en el siguiente fichero,
+ *   no se informan como no liquidados.
+ * - Sin JPA en el camino caliente: los pagos se leen con un cursor JDBC y solo las columnas usadas.
+ * - Cada discrepancia se escribe en un informe CSV en {@code <reports-dir>/<proveedor>/} y, si el
+ *   pago tiene tenant, se emite un evento {@code payment_reconciliation_mismatch} (hasta
+ *   {@code max-events-per-run} por fichero; el resto queda solo en el informe).
+ * - Sin fechas en el fichero no hay ventana: se detectan discrepancias de lo liquidado, pero no
+ *   los cobros que el proveedor no liquidó.
+ */
+@Service
+public class ReconcileSettlementFiles {
+
+    private static final Logger log = LoggerFactory.getLogger(ReconcileSettlementFiles.class);
+
+    private static final String REPORT_HEADER = "type,gateway_transaction_id,payment_result_id,tenant_id,invoice_id," +
+            "ledger_status,ledger_amount,settled_amount,refunded_amount,detail";
+
+    private final SettlementFileReader fileReader;
+    private final PaymentLedgerReader ledgerReader;
+    private final ReconciliationRunRepository runRepository;
+    private final PaymentGatewayAdapter paymentGatewayAdapter;
+    private final EmitNotificationEvent emitNotificationEvent;
+
+    @Value("${payment.reconciliation.inbound-dir:./data/settlements/inbound}")
+    private String inboundDir;
+
+    @Value("${payment.reconciliation.reports-dir:./data/settlements/reports}")
+    private String reportsDir;
+
+    @Value("${payment.reconciliation.work-dir:./data/settlements/work}")
+    private String workDir;
+
+    @Value("${payment.reconciliation.partition-bytes:16777216}")
+    private long partitionBytes;
+
+    @Value("${payment.reconciliation.max-partitions:256}")
+    private int maxPartitions;
+
+    @Value("${payment.reconciliation.settlement-lag-ms:86400000}")
+    private long settlementLagMs;
+
+    @Value("${payment.reconciliation.lookup-chunk-size:5000}")
+    private int lookupChunkSize;
+
+    @Value("${payment.reconciliation.max-events-per-run:10000}")
+    private int maxEventsPerRun;
+
+    @Value("${payment.reconciliation.event-batch-size:500}")
+    private int eventBatchSize;
+
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder settlementRows = new LongAdder();
+    private final LongAdder mismatches = new LongAdder();
+
+    public ReconcileSettlementFiles(SettlementFileReader fileReader,
+                                    PaymentLedgerReader ledgerReader,
+                                    ReconciliationRunRepository runRepository,
+                                    PaymentGatewayAdapter paymentGatewayAdapter,
+                                    EmitNotificationEvent emitNotificationEvent) {
+        this.fileReader = fileReader;
+        this.ledgerReader = ledgerReader;
+        this.runRepository = runRepository;
+        this.paymentGatewayAdapter = paymentGatewayAdapter;
+        this.emitNotificationEvent = emitNotificationEvent;
+    }
+
+    /**
+     * Concilia los ficheros pendientes de todos los proveedores.
+     */
+    @Scheduled(fixedDelayString = "${payment.reconciliation.poll-interval-ms:60000}")
+    public void scan() {
+        Path inbound = Paths.get(inboundDir);
+        if (!Files.isDirectory(inbound)) {
+            return;
+        }
+        try (Stream<Path> dirs = Files.list(inbound)) {
+            for (Path providerDir : dirs.filter(Files::isDirectory).toList()) {
+                for (Path file : pendingFiles(providerDir)) {
+                    Path claimed = claim(providerDir, file);
+                    if (claimed != null) {
+                        process(providerDir, claimed);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error buscando ficheros de liquidación en {}", inbound, e);
+        }
+    }
+
+    private static List<Path> pendingFiles(Path providerDir) throws IOException {
+        try (Stream<Path> files = Files.list(providerDir)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(SettlementFileReader::isSupported)
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static Path claim(Path providerDir, Path file) throws IOException {
+        Path processing = Files.createDirectories(providerDir.resolve("processing"));
+        Path target = processing.resolve(file.getFileName());
+        try {
+            return Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException | FileAlreadyExistsException e) {
+            // Otra instancia lo reclamó
+            return null;
+        }
+    }
+
+    private void process(Path providerDir, Path claimed) throws IOException {
+        String dirName = providerDir.getFileName().toString();
+        String provider = paymentGatewayAdapter.providerKeyOf(dirName);
+        ReconciliationRun run = reconcile(provider, claimed);
+        String destination = run.getStatus() == ReconciliationRun.Status.COMPLETED ? "processed" : "failed";
+        Path target = Files.createDirectories(providerDir.resolve(destination)).resolve(claimed.getFileName());
+        Files.move(claimed, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // -----------------------------
+    // Conciliación de un fichero
+    // -----------------------------
+
+    /**
+     * Concilia un fichero de liquidación del proveedor y registra el resultado.
+     */
+    public ReconciliationRun reconcile(String provider, Path file) {
+        String fileName = file.getFileName().toString();
+        ReconciliationRun run = runRepository.save(new ReconciliationRun(provider, fileName));
+        Path report = Paths.get(reportsDir).resolve(provider).resolve(fileName + "." + run.getId() + ".mismatches.csv");
+        long started = System.nanoTime();
+
+        try (PartitionedSettlementJoin join = new PartitionedSettlementJoin(
+                Paths.get(workDir).resolve(run.getId().toString()), partitionsFor(file), lookupChunkSize, partitionBytes)) {
+
+            // -----------------------------
+            // 1. Particionado de la liquidación y de los pagos de su ventana
+            // -----------------------------
+            Window window = new Window(settlementLagMs);
+            ReadResult read = fileReader.read(file, record -> {
+                window.include(record);
+                join.addSettlement(record);
+            });
+            long ledgerRows = 0;
+            if (window.from != null) {
+                ledgerRows = ledgerReader.streamWindow(provider, window.from, window.to, join::addLedger);
+            } else if (read.getRows() > 0) {
+                log.warn("Liquidación {} de {} sin fechas de cargo: no se detectarán cobros ausentes de la liquidación",
+                        fileName, provider);
+            }
+
+            // -----------------------------
+            // 2. Join por partición, informe y eventos
+            // -----------------------------
+            JoinResult result;
+            MismatchReport sink = new MismatchReport(report, run);
+            try (sink) {
+                result = join.join(ledgerReader::findByTransactionIds, sink);
+            }
+
+            run.markCompleted(read.getRows(), read.getSkipped(), ledgerRows, result.getMatched(),
+                    result.getMismatchCount(), new TreeMap<>(result.getMismatches()).toString(),
+                    sink.written > 0 ? report.toString() : null);
+            settlementRows.add(read.getRows());
+            mismatches.add(result.getMismatchCount());
+            long elapsedMs = Math.max(1, (System.nanoTime() - started) / 1_000_000L);
+            log.info("Liquidación {} de {} conciliada en {} ms: {} filas ({} descartadas), {} pagos en ventana, " +
+                            "{} conciliados, {} discrepancias {} ({} filas/min)", fileName, provider, elapsedMs,
+                    read.getRows(), read.getSkipped(), ledgerRows, result.getMatched(), result.getMismatchCount(),
+                    run.getMismatchSummary(), read.getRows() * 60_000L / elapsedMs);
+        } catch (IOException | RuntimeException e) {
+            log.error("Error conciliando la liquidación {} de {}", fileName, provider, e);
+            run.markFailed(e.getMessage());
+        }
+        runs.increment();
+        return runRepository.save(run);
+    }
+
+    private int partitionsFor(Path file) throws IOException {
+        long size = Files.size(file);
+        long partitions = (size + partitionBytes - 1) / Math.max(1, partitionBytes);
+        return (int) Math.max(1, Math.min(maxPartitions, partitions));
+    }
+
+    // -----------------------------
+    // Métricas
+    // -----------------------------
+
+    public long getRunCount() { return runs.sum(); }
+    public long getSettlementRowCount() { return settlementRows.sum(); }
+    public long getMismatchCount() { return mismatches.sum(); }
+
+    // -----------------------------
+    // Soporte
+    // -----------------------------
+
+    /**
+     * Rango de fechas de cargo de la liquidación: solo cuentan los cargos, y una fecha de
+     * liquidación se retrasa el desfase configurado.
+     */
+    private static final class Window {
+        private final long settlementLagMs;
+        private LocalDateTime from;
+        private LocalDateTime to;
+
+        private Window(long settlementLagMs) {
+            this.settlementLagMs = settlementLagMs;
+        }
+
+        private void include(SettlementRecord record) {
+            if (record.getOccurredAt() == null || record.getKind() != Kind.CHARGE) {
+                return;
+            }
+            LocalDateTime occurredAt = record.isChargeDate()
+                    ? record.getOccurredAt()
+                    : record.getOccurredAt().minus(Duration.ofMillis(settlementLagMs));
+            if (from == null || occurredAt.isBefore(from)) {
+                from = occurredAt;
+            }
+            if (to == null || occurredAt.isAfter(to)) {
+                to = occurredAt;
+            }
+        }
+    }
+
+    /**
+     * Escribe cada discrepancia en el informe (abierto en la primera) y emite sus eventos por
+     * lotes, esperando cada lote para no acumular eventos en memoria.
+     */
+    private final class MismatchReport implements Consumer<Mismatch>, Closeable {
+        private final Path file;
+        private final ReconciliationRun run;
+        private final List<NotificationEvent> events = new ArrayList<>();
+        private BufferedWriter writer;
+        private long written;
+        private long emitted;
+        private long suppressed;
+
+        private MismatchReport(Path file, ReconciliationRun run) {
+            this.file = file;
+            this.run = run;
+        }
+
+        @Override
+        public void accept(Mismatch mismatch) {
+            try {
+                if (writer == null) {
+                    Files.createDirectories(file.getParent());
+                    writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+                    writer.write(REPORT_HEADER);
+                    writer.newLine();
+                }
+                writer.write(toCsv(mismatch));
+                writer.newLine();
+                written++;
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se pudo escribir el informe " + file, e);
+            }
+
+            LedgerRow ledger = mismatch.getLedger();
+            if (ledger == null || ledger.getTenantId() == null) {
+                return;
+            }
+            if (emitted + events.size() >= maxEventsPerRun) {
+                suppressed++;
+                return;
+            }
+            events.add(new NotificationEvent("payment_reconciliation_mismatch", ledger.getTenantId(), ledger.getInvoiceId(),
+                    mismatch.getType() + " " + run.getProvider() + " transactionId=" + mismatch.getTransactionId()
+                            + ": " + mismatch.getDetail() + " (conciliación " + run.getId() + ")"));
+            if (events.size() >= eventBatchSize) {
+                flushEvents();
+            }
+        }
+
+        private void flushEvents() {
+            if (events.isEmpty()) {
+                return;
+            }
+            emitNotificationEvent.emitAll(new ArrayList<>(events)).join();
+            emitted += events.size();
+            events.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flushEvents();
+                if (suppressed > 0) {
+                    log.warn("Conciliación {}: {} discrepancias sin evento (máximo {} por fichero); ver el informe {}",
+                            run.getId(), suppressed, maxEventsPerRun, file);
+                }
+            } finally {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        }
+
+        private String toCsv(Mismatch m) {
+            LedgerRow l = m.getLedger();
+            return m.getType() + "," + csv(m.getTransactionId()) + ","
+                    + (l == null ? "" : csv(l.getPaymentResultId())) + ","
+                    + (l == null ? "" : csv(l.getTenantId())) + ","
+                    + (l == null ? "" : csv(l.getInvoiceId())) + ","
+                    + (l == null ? "" : l.getStatus()) + ","
+                    + (l == null || l.getAmount() == null ? "" : l.getAmount().toPlainString()) + ","
+                    + (m.getSettledAmount() == null ? "" : m.getSettledAmount().toPlainString()) + ","
+                    + (m.getRefundedAmount() == null ? "" : m.getRefundedAmount().toPlainString()) + ","
+                    + csv(m.getDetail());
+        }
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
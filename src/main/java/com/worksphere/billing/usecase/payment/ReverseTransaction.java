@@ -1,21 +1,41 @@
 package com.worksphere.billing.usecase.payment;
 
+import com.worksphere.billing.domain.event.NotificationEvent;
 import com.worksphere.billing.domain.model.PaymentResult;
+import com.worksphere.billing.domain.model.PaymentResult.PaymentStatus;
+import com.worksphere.billing.domain.model.PaymentReversalItem;
+import com.worksphere.billing.domain.model.PaymentReversalJob;
 import com.worksphere.billing.domain.exception.PaymentException;
+import com.worksphere.billing.domain.exception.PaymentException.FailureReason;
+import com.worksphere.billing.domain.repository.PaymentResultRepository;
+import com.worksphere.billing.infrastructure.repository.PaymentReversalItemRepository;
+import com.worksphere.billing.infrastructure.repository.PaymentReversalJobRepository;
+import com.worksphere.billing.infrastructure.repository.PaymentReversalQueueWriter;
+import com.worksphere.billing.infrastructure.repository.PaymentReversalQueueWriter.ReversalQuery;
 import com.worksphere.billing.service.PaymentGatewayAdapter;
-import com.worksphere.billing.service.PaymentResultRepository;
-import com.worksphere.billing.transport.events.PaymentReversedEvent;
-import com.worksphere.billing.transport.events.EventPublisher;
+import com.worksphere.billing.usecase.notification.EmitNotificationEvent;
 
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.IntSupplier;
 
 /**
- * Caso de uso para revertir una transacción de pago.
+ * Caso de uso para revertir transacciones de pago.
+ *
+ * Una reversión individual se ejecuta al momento; las masivas (por filtro o por lista de
+ * transacciones) se encolan de forma persistente y las procesa {@link ProcessPaymentReversals}
+ * con concurrencia acotada por proveedor. En ambos casos la llamada a la pasarela ocurre sin
+ * transacción abierta y el marcado como revertido es idempotente.
  */
 @Component
 public class ReverseTransaction {
@@ -24,14 +44,26 @@ public class ReverseTransaction {
 
     private final PaymentResultRepository paymentResultRepository;
     private final PaymentGatewayAdapter paymentGatewayAdapter;
-    private final EventPublisher eventPublisher;
+    private final PaymentReversalJobRepository jobRepository;
+    private final PaymentReversalItemRepository itemRepository;
+    private final PaymentReversalQueueWriter queueWriter;
+    private final EmitNotificationEvent emitNotificationEvent;
+    private final TransactionTemplate transactionTemplate;
 
     public ReverseTransaction(PaymentResultRepository paymentResultRepository,
                               PaymentGatewayAdapter paymentGatewayAdapter,
-                              EventPublisher eventPublisher) {
+                              PaymentReversalJobRepository jobRepository,
+                              PaymentReversalItemRepository itemRepository,
+                              PaymentReversalQueueWriter queueWriter,
+                              EmitNotificationEvent emitNotificationEvent,
+                              PlatformTransactionManager transactionManager) {
         this.paymentResultRepository = paymentResultRepository;
         this.paymentGatewayAdapter = paymentGatewayAdapter;
-        this.eventPublisher = eventPublisher;
+        this.jobRepository = jobRepository;
+        this.itemRepository = itemRepository;
+        this.queueWriter = queueWriter;
+        this.emitNotificationEvent = emitNotificationEvent;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     /**
@@ -42,21 +74,26 @@ public class ReverseTransaction {
      * @param actor Usuario o sistema que solicita la reversión
      * @throws PaymentException si la reversión falla
      */
-    @Transactional
     public void execute(String transactionId, String reason, String actor) throws PaymentException {
 
         // -----------------------------
         // 1. Recuperar transacción
         // -----------------------------
-        PaymentResult paymentResult = paymentResultRepository.findByTransactionId(transactionId)
-                .orElseThrow(() -> new PaymentException("Transacción no encontrada: " + transactionId));
+        PaymentResult paymentResult = transactionTemplate.execute(status ->
+                paymentResultRepository.findByGatewayTransactionId(transactionId).orElse(null));
+        if (paymentResult == null) {
+            throw new PaymentException("Transacción no encontrada: " + transactionId,
+                    null, null, null, FailureReason.UNKNOWN_ERROR, false);
+        }
+        String invoiceId = String.valueOf(paymentResult.getInvoiceId());
 
         // -----------------------------
         // 2. Condición: solo si fue exitosa
         // -----------------------------
-        if (!paymentResult.isSuccess()) {
+        if (paymentResult.getStatus() != PaymentStatus.SUCCESS) {
             logger.warn("No se puede revertir transacción no exitosa: {}", transactionId);
-            throw new PaymentException("Solo se pueden revertir transacciones exitosas");
+            throw new PaymentException("Solo se pueden revertir transacciones exitosas",
+                    String.valueOf(paymentResult.getPaymentResultId()), null, invoiceId, FailureReason.UNKNOWN_ERROR, false);
         }
 
         // -----------------------------
@@ -68,28 +105,32 @@ public class ReverseTransaction {
         }
 
         // -----------------------------
-        // 4. Invocar API de reversión de la pasarela
+        // 4. Invocar API de reversión de la pasarela (sin transacción abierta)
         // -----------------------------
         try {
-            paymentGatewayAdapter.reversePayment(paymentResult);
+            paymentGatewayAdapter.reversePayment(paymentResult, reversalKey(paymentResult));
+        } catch (PaymentException e) {
+            logger.error("Error al revertir transacción {}", transactionId, e);
+            throw e;
         } catch (Exception e) {
             logger.error("Error al revertir transacción {}", transactionId, e);
-            throw new PaymentException("Fallo al revertir la transacción");
+            throw new PaymentException("Fallo al revertir la transacción: " + e.getMessage(),
+                    String.valueOf(paymentResult.getPaymentResultId()), null, invoiceId, FailureReason.UNKNOWN_ERROR, true);
         }
 
         // -----------------------------
         // 5. Registrar reversión
         // -----------------------------
-        paymentResult.setReversed(true);
-        paymentResult.setReversalReason(reason);
-        paymentResult.setReversalActor(actor);
-        paymentResult.setReversalTimestamp(Instant.now());
-        paymentResultRepository.save(paymentResult);
+        Integer updated = transactionTemplate.execute(status -> paymentResultRepository.markReversed(
+                paymentResult.getPaymentResultId(), reason, actor, LocalDateTime.now()));
 
         // -----------------------------
-        // 6. Emitir evento
+        // 6. Emitir evento (solo quien marcó la reversión)
         // -----------------------------
-        eventPublisher.publish(new PaymentReversedEvent(paymentResult));
+        if (updated != null && updated == 1) {
+            emitNotificationEvent.emit(new NotificationEvent("payment_reversed", paymentResult.getTenantId(), invoiceId,
+                    "Pago " + transactionId + " revertido: " + reason));
+        }
 
         // -----------------------------
         // 7. Auditabilidad
@@ -97,4 +138,99 @@ public class ReverseTransaction {
         logger.info("Transacción revertida: transactionId={}, actor={}, reason={}",
                 transactionId, actor, reason);
     }
+
+    /**
+     * Clave de idempotencia de la reversión en el proveedor: una por pago, de modo que reenviar
+     * la reversión (manual o desde la cola masiva) no revierte el cobro dos veces.
+     */
+    public static String reversalKey(PaymentResult paymentResult) {
+        return "reversal:" + paymentResult.getPaymentResultId();
+    }
+
+    // -----------------------------
+    // Reversión masiva
+    // -----------------------------
+
+    /**
+     * Encola la reversión de una lista de transacciones.
+     *
+     * @return identificador de la solicitud, para consultar su progreso
+     */
+    public UUID enqueue(Collection<String> transactionIds, String reason, String actor) {
+        PaymentReversalJob job = new PaymentReversalJob(reason, actor, transactionIds.size() + " transacciones");
+        return createJob(job, () -> queueWriter.enqueueTransactions(job.getId(), transactionIds));
+    }
+
+    /**
+     * Encola la reversión de todos los pagos exitosos que cumplen el filtro.
+     *
+     * @return identificador de la solicitud, para consultar su progreso
+     */
+    public UUID enqueue(ReversalQuery query, String reason, String actor) {
+        PaymentReversalJob job = new PaymentReversalJob(reason, actor, query.toString());
+        return createJob(job, () -> queueWriter.enqueueMatching(job.getId(), query));
+    }
+
+    private UUID createJob(PaymentReversalJob job, IntSupplier enqueue) {
+        transactionTemplate.executeWithoutResult(status -> {
+            // La solicitud se escribe antes de que el INSERT ... SELECT genere sus reversiones
+            jobRepository.saveAndFlush(job);
+            job.setTotalItems(enqueue.getAsInt());
+            jobRepository.save(job);
+        });
+        logger.info("Reversión masiva {} encolada por {}: {} pagos ({}). Motivo: {}",
+                job.getId(), job.getActor(), job.getTotalItems(), job.getSelection(), job.getReason());
+        return job.getId();
+    }
+
+    /**
+     * Progreso de una solicitud de reversión masiva.
+     */
+    public ReversalProgress progress(UUID jobId) {
+        return transactionTemplate.execute(status -> {
+            PaymentReversalJob job = jobRepository.findById(jobId)
+                    .orElseThrow(() -> new IllegalArgumentException("Solicitud de reversión no encontrada: " + jobId));
+            Map<PaymentReversalItem.Status, Long> counts = new EnumMap<>(PaymentReversalItem.Status.class);
+            for (Object[] row : itemRepository.countByStatus(jobId)) {
+                counts.put((PaymentReversalItem.Status) row[0], (Long) row[1]);
+            }
+            return new ReversalProgress(job.getId(), job.getStatus(), job.getTotalItems(), counts, job.getCompletedAt());
+        });
+    }
+
+    /**
+     * Foto del progreso de una reversión masiva.
+     */
+    public static final class ReversalProgress {
+        private final UUID jobId;
+        private final PaymentReversalJob.Status status;
+        private final int total;
+        private final Map<PaymentReversalItem.Status, Long> counts;
+        private final Instant completedAt;
+
+        ReversalProgress(UUID jobId, PaymentReversalJob.Status status, int total,
+                         Map<PaymentReversalItem.Status, Long> counts, Instant completedAt) {
+            this.jobId = jobId;
+            this.status = status;
+            this.total = total;
+            this.counts = counts;
+            this.completedAt = completedAt;
+        }
+
+        public UUID getJobId() { return jobId; }
+        public PaymentReversalJob.Status getStatus() { return status; }
+        public int getTotal() { return total; }
+        public long getReversed() { return count(PaymentReversalItem.Status.REVERSED); }
+        public long getSkipped() { return count(PaymentReversalItem.Status.SKIPPED); }
+        public long getFailed() { return count(PaymentReversalItem.Status.FAILED); }
+        public long getPending() {
+            return count(PaymentReversalItem.Status.PENDING) + count(PaymentReversalItem.Status.IN_PROGRESS)
+                    + count(PaymentReversalItem.Status.RETRY);
+        }
+        public Instant getCompletedAt() { return completedAt; }
+
+        private long count(PaymentReversalItem.Status itemStatus) {
+            return counts.getOrDefault(itemStatus, 0L);
+        }
+    }
 }
@@ -0,0 +1,72 @@
+package com.worksphere.billing.usecase.payment;
+
+import com.worksphere.billing.domain.model.PaymentToken;
+import com.worksphere.billing.domain.repository.PaymentTokenRepository;
+import com.worksphere.billing.infrastructure.payment.PaymentTokenValidationCache;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.UUID;
+
+/**
+ * Caso de uso para revocar un token de pago o reaccionar a un aviso de la pasarela sobre él.
+ *
+ * En ambos casos la validación en caché del token se descarta al confirmar la transacción, de
+ * modo que el siguiente cobro vuelve a validarlo (o lo rechaza por revocado) de inmediato.
+ */
+@Component
+public class RevokePaymentToken {
+
+    private static final Logger logger = LoggerFactory.getLogger(RevokePaymentToken.class);
+
+    private final PaymentTokenRepository paymentTokenRepository;
+    private final PaymentTokenValidationCache validationCache;
+    private final TransactionTemplate transactionTemplate;
+
+    public RevokePaymentToken(PaymentTokenRepository paymentTokenRepository,
+                              PaymentTokenValidationCache validationCache,
+                              PlatformTransactionManager transactionManager) {
+        this.paymentTokenRepository = paymentTokenRepository;
+        this.validationCache = validationCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Marca el token como revocado.
+     *
+     * @return false si el token no existe
+     */
+    public boolean revoke(UUID tokenId) {
+        Boolean found = transactionTemplate.execute(status -> {
+            PaymentToken token = paymentTokenRepository.findById(tokenId).orElse(null);
+            if (token == null) {
+                return false;
+            }
+            token.setRevoked(true);
+            paymentTokenRepository.save(token);
+            return true;
+        });
+        validationCache.invalidate(tokenId);
+        if (Boolean.TRUE.equals(found)) {
+            logger.info("Token de pago {} revocado", tokenId);
+        }
+        return Boolean.TRUE.equals(found);
+    }
+
+    /**
+     * Aviso (webhook) de la pasarela sobre un token: actualización, caducidad o revocación.
+     * Cualquier aviso descarta la validación en caché; si la pasarela informa que el token ya
+     * no es utilizable, además se revoca localmente.
+     */
+    public void onGatewayNotification(UUID tokenId, boolean revokedByGateway) {
+        if (revokedByGateway) {
+            revoke(tokenId);
+        } else {
+            validationCache.invalidate(tokenId);
+        }
+    }
+}
@@ -1,20 +1,39 @@
 package com.worksphere.billing.usecase.payment;
 
+import com.worksphere.billing.domain.event.NotificationEvent;
 import com.worksphere.billing.domain.model.PaymentResult;
+import com.worksphere.billing.domain.model.PaymentResult.PaymentStatus;
 import com.worksphere.billing.domain.exception.PaymentException;
+import com.worksphere.billing.domain.exception.PaymentException.FailureReason;
 import com.worksphere.billing.domain.model.Invoice;
-import com.worksphere.billing.service.PaymentResultRepository;
-import com.worksphere.billing.transport.events.PaymentFailedEvent;
-import com.worksphere.billing.transport.events.PaymentSuccessEvent;
-import com.worksphere.billing.transport.events.EventPublisher;
+import com.worksphere.billing.domain.repository.PaymentResultRepository;
+import com.worksphere.billing.infrastructure.repository.PaymentResultBatchWriter;
+import com.worksphere.billing.usecase.notification.EmitNotificationEvent;
 
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
 /**
  * Caso de uso que registra el resultado de una transacción de pago.
+ *
+ * Los resultados recibidos en bloque (webhooks de pasarela, ficheros de liquidación) se
+ * registran con {@link #executeBatch}: una consulta para deduplicar, otra para localizar los
+ * cobros PENDING de sus facturas, un UPDATE y un INSERT por lotes, y los eventos entregados
+ * juntos al productor tras el commit, en lugar de dos round-trips y una publicación por pago.
  */
 @Component
 public class StorePaymentResult {
@@ -22,12 +41,18 @@ public class StorePaymentResult {
     private static final Logger logger = LoggerFactory.getLogger(StorePaymentResult.class);
 
     private final PaymentResultRepository paymentResultRepository;
-    private final EventPublisher eventPublisher;
+    private final PaymentResultBatchWriter batchWriter;
+    private final EmitNotificationEvent emitNotificationEvent;
+    private final TransactionTemplate transactionTemplate;
 
     public StorePaymentResult(PaymentResultRepository paymentResultRepository,
-                              EventPublisher eventPublisher) {
+                              PaymentResultBatchWriter batchWriter,
+                              EmitNotificationEvent emitNotificationEvent,
+                              PlatformTransactionManager transactionManager) {
         this.paymentResultRepository = paymentResultRepository;
-        this.eventPublisher = eventPublisher;
+        this.batchWriter = batchWriter;
+        this.emitNotificationEvent = emitNotificationEvent;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     /**
@@ -43,43 +68,148 @@ public class StorePaymentResult {
         // -----------------------------
         // 1. Idempotencia: evitar duplicados
         // -----------------------------
-        if (paymentResultRepository.existsByTransactionId(paymentResult.getTransactionId())) {
-            logger.info("Resultado de pago ya registrado para transactionId {}", paymentResult.getTransactionId());
+        String transactionId = paymentResult.getGatewayTransactionId();
+        if (transactionId != null && paymentResultRepository.existsByGatewayTransactionId(transactionId)) {
+            logger.info("Resultado de pago ya registrado para transactionId {}", transactionId);
             return;
         }
 
         // -----------------------------
-        // 2. Asociación con factura y ciclo
+        // 2. Asociación con factura
         // -----------------------------
-        paymentResult.setInvoiceId(invoice.getInvoiceId());
-        paymentResult.setBillingCycleId(invoice.getBillingCycleId());
+        paymentResult.setInvoiceId(UUID.fromString(invoice.getInvoiceId()));
 
         // -----------------------------
         // 3. Persistencia atómica
         // -----------------------------
         try {
             paymentResultRepository.save(paymentResult);
-            logger.info("Pago registrado con transactionId {}", paymentResult.getTransactionId());
+            logger.info("Pago registrado con transactionId {}", transactionId);
         } catch (Exception e) {
             logger.error("Error al almacenar el resultado de pago", e);
-            throw new PaymentException("No se pudo almacenar el resultado del pago");
+            throw new PaymentException("No se pudo almacenar el resultado del pago",
+                    String.valueOf(paymentResult.getPaymentResultId()), null, invoice.getInvoiceId(),
+                    FailureReason.UNKNOWN_ERROR, true);
         }
 
         // -----------------------------
-        // 4. Emisión de eventos según resultado
+        // 4. Emisión de eventos según resultado (tras el commit)
         // -----------------------------
-        if (paymentResult.isSuccess()) {
-            eventPublisher.publish(new PaymentSuccessEvent(paymentResult));
-        } else {
-            eventPublisher.publish(new PaymentFailedEvent(paymentResult));
+        NotificationEvent event = toEvent(paymentResult);
+        if (event != null && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    emitNotificationEvent.emit(event);
+                }
+            });
+        } else if (event != null) {
+            emitNotificationEvent.emit(event);
         }
 
         // -----------------------------
         // 5. Trazabilidad y auditabilidad
         // -----------------------------
         logger.info("PaymentResult almacenado: transactionId={}, invoiceId={}, status={}",
-                paymentResult.getTransactionId(),
+                transactionId,
                 paymentResult.getInvoiceId(),
                 paymentResult.getStatus());
     }
+
+    /**
+     * Registra un bloque de resultados de pago ignorando los ya registrados. Un resultado
+     * definitivo para una factura con un cobro PENDING completa esa fila en lugar de insertar
+     * otra; un resultado PENDING para ella no aporta nada y se descarta.
+     *
+     * @param paymentResults resultados con factura y tenant ya asignados
+     * @return resultados efectivamente registrados (insertados o que completaron un cobro PENDING)
+     */
+    public List<PaymentResult> executeBatch(List<PaymentResult> paymentResults) {
+        if (paymentResults.isEmpty()) {
+            return List.of();
+        }
+
+        // -----------------------------
+        // 1. Duplicados dentro del propio bloque (reentregas del mismo webhook)
+        // -----------------------------
+        Map<String, PaymentResult> byTransaction = new LinkedHashMap<>();
+        List<PaymentResult> withoutTransaction = new ArrayList<>();
+        for (PaymentResult result : paymentResults) {
+            if (result.getGatewayTransactionId() == null) {
+                withoutTransaction.add(result);
+            } else {
+                byTransaction.putIfAbsent(result.getGatewayTransactionId(), result);
+            }
+        }
+
+        List<PaymentResult> inserted = transactionTemplate.execute(status -> {
+            // -----------------------------
+            // 2. Duplicados ya registrados: una sola consulta de conjunto
+            // -----------------------------
+            Set<String> existing = batchWriter.findExistingTransactionIds(byTransaction.keySet());
+            List<PaymentResult> fresh = new ArrayList<>(byTransaction.size() + withoutTransaction.size());
+            byTransaction.forEach((transactionId, result) -> {
+                if (!existing.contains(transactionId)) {
+                    fresh.add(result);
+                }
+            });
+            fresh.addAll(withoutTransaction);
+
+            // -----------------------------
+            // 3. Cobros PENDING de las mismas facturas: se completan, no se duplican
+            // -----------------------------
+            Map<UUID, UUID> pendingByInvoice = batchWriter.findPendingByInvoice(
+                    fresh.stream().map(PaymentResult::getInvoiceId).collect(Collectors.toSet()));
+            Map<UUID, PaymentResult> byPendingRow = new LinkedHashMap<>();
+            List<PaymentResult> toInsert = new ArrayList<>(fresh.size());
+            for (PaymentResult result : fresh) {
+                UUID pendingRow = pendingByInvoice.get(result.getInvoiceId());
+                if (pendingRow == null) {
+                    toInsert.add(result);
+                } else if (result.getStatus() != PaymentStatus.PENDING) {
+                    // El primer resultado definitivo completa el cobro; otro posterior es un cobro distinto
+                    if (byPendingRow.putIfAbsent(pendingRow, result) != null) {
+                        toInsert.add(result);
+                    }
+                }
+            }
+
+            // -----------------------------
+            // 4. Escritura por lotes (ON CONFLICT DO NOTHING cubre carreras con otra instancia)
+            // -----------------------------
+            List<PaymentResult> stored = new ArrayList<>(batchWriter.completePending(byPendingRow));
+            stored.addAll(batchWriter.insertNew(toInsert));
+            return stored;
+        });
+
+        // -----------------------------
+        // 5. Eventos entregados juntos al productor, tras el commit
+        // -----------------------------
+        List<NotificationEvent> events = new ArrayList<>(inserted.size());
+        for (PaymentResult result : inserted) {
+            NotificationEvent event = toEvent(result);
+            if (event != null) {
+                events.add(event);
+            }
+        }
+        emitNotificationEvent.emitAll(events);
+
+        logger.info("Bloque de resultados de pago registrado: {} recibidos, {} registrados, {} eventos",
+                paymentResults.size(), inserted.size(), events.size());
+        return inserted;
+    }
+
+    /**
+     * Evento de éxito o fallo; null para un resultado aún PENDING.
+     */
+    private static NotificationEvent toEvent(PaymentResult paymentResult) {
+        String invoiceId = String.valueOf(paymentResult.getInvoiceId());
+        return switch (paymentResult.getStatus()) {
+            case SUCCESS -> new NotificationEvent("payment_succeeded", paymentResult.getTenantId(), invoiceId,
+                    "Pago registrado con transactionId " + paymentResult.getGatewayTransactionId());
+            case FAILED -> new NotificationEvent("payment_failed", paymentResult.getTenantId(), invoiceId,
+                    "Pago rechazado con transactionId " + paymentResult.getGatewayTransactionId());
+            case PENDING -> null;
+        };
+    }
 }
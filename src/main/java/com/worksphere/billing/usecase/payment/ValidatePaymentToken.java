@@ -2,7 +2,8 @@ package com.worksphere.billing.usecase.payment;
 
 import com.worksphere.billing.domain.model.PaymentToken;
 import com.worksphere.billing.domain.exception.PaymentException;
-import com.worksphere.billing.service.PaymentGatewayAdapter;
+import com.worksphere.billing.domain.exception.PaymentException.FailureReason;
+import com.worksphere.billing.infrastructure.payment.PaymentTokenValidationCache;
 
 import org.springframework.stereotype.Component;
 import org.slf4j.Logger;
@@ -12,16 +13,20 @@ import java.time.LocalDateTime;
 
 /**
  * Caso de uso encargado de validar la autenticidad y vigencia del token de pago.
+ *
+ * La validación remota pasa por {@link PaymentTokenValidationCache}: un token que se cobra cada
+ * mes se consulta con la pasarela como mucho una vez al día, y uno rechazado no se vuelve a
+ * consultar mientras dure el caché negativo. Un token revocado se rechaza sin consultar la caché.
  */
 @Component
 public class ValidatePaymentToken {
 
     private static final Logger logger = LoggerFactory.getLogger(ValidatePaymentToken.class);
 
-    private final PaymentGatewayAdapter paymentGatewayAdapter;
+    private final PaymentTokenValidationCache validationCache;
 
-    public ValidatePaymentToken(PaymentGatewayAdapter paymentGatewayAdapter) {
-        this.paymentGatewayAdapter = paymentGatewayAdapter;
+    public ValidatePaymentToken(PaymentTokenValidationCache validationCache) {
+        this.validationCache = validationCache;
     }
 
     /**
@@ -36,9 +41,15 @@ public class ValidatePaymentToken {
         // -----------------------------
         // 1. Verificación de vigencia
         // -----------------------------
-        if (token.getExpirationDate() == null || token.getExpirationDate().isBefore(LocalDateTime.now())) {
+        if (token.getExpiresAt() == null || token.getExpiresAt().isBefore(LocalDateTime.now())) {
             logger.warn("Token expirado para tenant {}", tenantId);
-            throw new PaymentException("Token de pago expirado");
+            throw new PaymentException("Token de pago expirado", null, null, null, FailureReason.TOKEN_EXPIRED, false);
+        }
+
+        if (token.isRevoked()) {
+            validationCache.invalidate(token.getTokenId());
+            logger.warn("Token revocado para tenant {}", tenantId);
+            throw new PaymentException("Token de pago revocado", null, null, null, FailureReason.INVALID_CREDENTIALS, false);
         }
 
         // -----------------------------
@@ -46,7 +57,7 @@ public class ValidatePaymentToken {
         // -----------------------------
         if (!tenantId.equals(token.getTenantId())) {
             logger.warn("Token no pertenece al tenant {}. Token tenant: {}", tenantId, token.getTenantId());
-            throw new PaymentException("Token no asociado al tenant correcto");
+            throw new PaymentException("Token no asociado al tenant correcto", null, null, null, FailureReason.INVALID_CREDENTIALS, false);
         }
 
         // -----------------------------
@@ -54,16 +65,16 @@ public class ValidatePaymentToken {
         // -----------------------------
         if (!token.isValidSignature()) {
             logger.warn("Token manipulado o inválido para tenant {}", tenantId);
-            throw new PaymentException("Token de pago inválido o manipulado");
+            throw new PaymentException("Token de pago inválido o manipulado", null, null, null, FailureReason.INVALID_CREDENTIALS, false);
         }
 
         // -----------------------------
-        // 4. Validación multi-proveedor
+        // 4. Validación multi-proveedor (con caché)
         // -----------------------------
-        boolean providerValid = paymentGatewayAdapter.validateToken(token);
+        boolean providerValid = validationCache.isValid(token);
         if (!providerValid) {
             logger.warn("Token rechazado por pasarela para tenant {}", tenantId);
-            throw new PaymentException("Token no válido según proveedor de pago");
+            throw new PaymentException("Token no válido según proveedor de pago", null, null, null, FailureReason.INVALID_CREDENTIALS, false);
         }
 
         // -----------------------------
@@ -71,7 +82,7 @@ public class ValidatePaymentToken {
         // -----------------------------
         if (token.isReused()) {
             logger.warn("Intento de reutilización de token detectado para tenant {}", tenantId);
-            throw new PaymentException("Token ya utilizado. Posible intento de fraude.");
+            throw new PaymentException("Token ya utilizado. Posible intento de fraude.", null, null, null, FailureReason.INVALID_CREDENTIALS, false);
         }
 
         logger.info("Token válido para tenant {} y tokenId {}", tenantId, token.getTokenId());
@@ -0,0 +1,190 @@
+package com.worksphere.billing.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Executor acotado para el renderizado y firma de PDFs.
+ *
+ * Cualidades:
+ * - Cola acotada: una ráfaga nocturna no puede crecer sin límite ni agotar la memoria del nodo.
+ * - Backpressure configurable: ABORT rechaza la tarea, CALLER_RUNS la ejecuta en el hilo que la envía.
+ * - Ciclo de vida: el apagado drena el trabajo en curso antes de forzar la terminación.
+ * - Observabilidad: profundidad de cola, rechazos y latencias de espera/ejecución.
+ */
+@Component
+public class PdfRenderExecutor {
+
+    private static final Logger logger = Logger.getLogger(PdfRenderExecutor.class.getName());
+
+    public enum RejectionPolicy { ABORT, CALLER_RUNS }
+
+    private final ThreadPoolExecutor executor;
+    private final RejectionPolicy rejectionPolicy;
+    private final long shutdownTimeoutSeconds;
+
+    // -----------------------------
+    // Métricas
+    // -----------------------------
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder callerRuns = new LongAdder();
+    private final LongAdder totalQueueWaitNanos = new LongAdder();
+    private final LongAdder totalRunNanos = new LongAdder();
+    private final AtomicLong maxQueueWaitNanos = new AtomicLong();
+    private final AtomicLong maxRunNanos = new AtomicLong();
+
+    public PdfRenderExecutor(@Value("${billing.pdf.executor.core-threads:4}") int coreThreads,
+                             @Value("${billing.pdf.executor.max-threads:8}") int maxThreads,
+                             @Value("${billing.pdf.executor.queue-capacity:500}") int queueCapacity,
+                             @Value("${billing.pdf.executor.keep-alive-seconds:60}") long keepAliveSeconds,
+                             @Value("${billing.pdf.executor.rejection-policy:CALLER_RUNS}") RejectionPolicy rejectionPolicy,
+                             @Value("${billing.pdf.executor.shutdown-timeout-seconds:30}") long shutdownTimeoutSeconds) {
+        if (coreThreads <= 0 || maxThreads < coreThreads || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Configuración inválida del executor de PDFs: core=" + coreThreads
+                    + ", max=" + maxThreads + ", queue=" + queueCapacity);
+        }
+        this.rejectionPolicy = rejectionPolicy;
+        this.shutdownTimeoutSeconds = shutdownTimeoutSeconds;
+        this.executor = new ThreadPoolExecutor(
+                coreThreads,
+                maxThreads,
+                keepAliveSeconds,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new NamedThreadFactory("pdf-render-"),
+                new CountingRejectionHandler());
+
+        logger.info("Executor de PDFs inicializado: core=" + coreThreads + ", max=" + maxThreads
+                + ", queue=" + queueCapacity + ", policy=" + rejectionPolicy);
+    }
+
+    /**
+     * Envía una tarea de renderizado y devuelve un future que se completa con su resultado.
+     * Con política ABORT y la cola llena, el future se completa excepcionalmente con
+     * {@link RejectedExecutionException}; con CALLER_RUNS la tarea corre en el hilo llamante.
+     *
+     * @param task tarea a ejecutar
+     * @return future con el resultado o la excepción de la tarea
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        long enqueuedAt = System.nanoTime();
+        submitted.increment();
+
+        Runnable wrapper = () -> {
+            long startedAt = System.nanoTime();
+            record(totalQueueWaitNanos, maxQueueWaitNanos, startedAt - enqueuedAt);
+            try {
+                future.complete(task.get());
+                completed.increment();
+            } catch (Throwable t) {
+                failed.increment();
+                future.completeExceptionally(t);
+            } finally {
+                record(totalRunNanos, maxRunNanos, System.nanoTime() - startedAt);
+            }
+        };
+
+        try {
+            executor.execute(wrapper);
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Apagado ordenado: deja de aceptar tareas, espera a que las encoladas terminen y,
+     * si se supera el tiempo límite, interrumpe las restantes.
+     */
+    @PreDestroy
+    public void shutdown() {
+        logger.info("Apagando executor de PDFs, tareas pendientes=" + executor.getQueue().size()
+                + ", activas=" + executor.getActiveCount());
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(shutdownTimeoutSeconds, TimeUnit.SECONDS)) {
+                List<Runnable> dropped = executor.shutdownNow();
+                logger.warning("Executor de PDFs no drenó a tiempo, tareas descartadas=" + dropped.size());
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // -----------------------------
+    // Métricas expuestas
+    // -----------------------------
+    public int getQueueDepth() { return executor.getQueue().size(); }
+    public int getQueueRemainingCapacity() { return executor.getQueue().remainingCapacity(); }
+    public int getActiveCount() { return executor.getActiveCount(); }
+    public int getPoolSize() { return executor.getPoolSize(); }
+    public long getSubmittedCount() { return submitted.sum(); }
+    public long getCompletedCount() { return completed.sum(); }
+    public long getFailedCount() { return failed.sum(); }
+    public long getRejectedCount() { return rejected.sum(); }
+    public long getCallerRunsCount() { return callerRuns.sum(); }
+    public double getAvgQueueWaitMillis() { return avgMillis(totalQueueWaitNanos); }
+    public double getAvgRunMillis() { return avgMillis(totalRunNanos); }
+    public double getMaxQueueWaitMillis() { return maxQueueWaitNanos.get() / 1_000_000.0; }
+    public double getMaxRunMillis() { return maxRunNanos.get() / 1_000_000.0; }
+
+    private double avgMillis(LongAdder totalNanos) {
+        long finished = completed.sum() + failed.sum();
+        return finished == 0 ? 0.0 : totalNanos.sum() / (double) finished / 1_000_000.0;
+    }
+
+    private static void record(LongAdder total, AtomicLong max, long nanos) {
+        total.add(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    private class CountingRejectionHandler implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor pool) {
+            if (rejectionPolicy == RejectionPolicy.CALLER_RUNS && !pool.isShutdown()) {
+                callerRuns.increment();
+                r.run();
+                return;
+            }
+            rejected.increment();
+            int capacity = pool.getQueue().size() + pool.getQueue().remainingCapacity();
+            throw new RejectedExecutionException("Cola de renderizado de PDFs llena (capacidad=" + capacity + ")");
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, prefix + counter.incrementAndGet());
+            t.setDaemon(false);
+            return t;
+        }
+    }
+}
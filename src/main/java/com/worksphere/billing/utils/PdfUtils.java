@@ -1,17 +1,17 @@
 package com.worksphere.billing.utils;
 
 import com.worksphere.billing.domain.model.Invoice;
+import com.worksphere.billing.infrastructure.storage.ContentAddressedDocumentStore;
 import com.worksphere.billing.service.InvoiceSigner;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.io.ByteArrayOutputStream;
-import java.io.FileOutputStream;
-import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
 import com.itextpdf.kernel.pdf.PdfWriter;
@@ -30,11 +30,17 @@ public class PdfUtils {
 
     private final InvoiceSigner invoiceSigner;
 
-    private final ExecutorService executorService = Executors.newFixedThreadPool(5);
+    private final PdfRenderExecutor renderExecutor;
+
+    private final ContentAddressedDocumentStore documentStore;
 
     @Autowired
-    public PdfUtils(InvoiceSigner invoiceSigner) {
+    public PdfUtils(InvoiceSigner invoiceSigner,
+                    PdfRenderExecutor renderExecutor,
+                    ContentAddressedDocumentStore documentStore) {
         this.invoiceSigner = invoiceSigner;
+        this.renderExecutor = renderExecutor;
+        this.documentStore = documentStore;
     }
 
     /**
@@ -96,24 +102,60 @@ public class PdfUtils {
 
     /**
      * Genera y firma el PDF de la factura de manera asíncrona para no bloquear hilos críticos.
+     * La tarea se ejecuta en el {@link PdfRenderExecutor} acotado y el resultado se guarda en el
+     * {@link ContentAddressedDocumentStore}. Si ya existe un PDF para los mismos datos de la factura
+     * se reutiliza sin volver a renderizar ni firmar.
+     *
+     * @param invoice Factura a renderizar
+     * @param pdfA    Si true, generar PDF/A
+     * @return future con el hash SHA-256 del PDF firmado en el almacén de documentos
      */
-    public void generateAndSignInvoicePdfAsync(Invoice invoice, boolean pdfA) {
-        executorService.submit(() -> {
-            try {
-                byte[] pdfBytes = generateInvoicePdf(invoice, pdfA);
-                byte[] signedPdf = invoiceSigner.signInvoicePdf(invoice, pdfBytes);
+    public CompletableFuture<String> generateAndSignInvoicePdfAsync(Invoice invoice, boolean pdfA) {
+        String alias = documentAlias(invoice, pdfA);
+        Optional<String> existing = documentStore.resolveAlias(alias);
+        if (existing.isPresent()) {
+            invoice.setPdfDocumentId(existing.get());
+            logger.info("PDF de invoice " + invoice.getInvoiceId() + " sin cambios, se reutiliza documento " + existing.get());
+            return CompletableFuture.completedFuture(existing.get());
+        }
 
-                // Guardar en disco o enviar a storage
-                try (OutputStream os = new FileOutputStream("invoice_" + invoice.getInvoiceId() + ".pdf")) {
-                    os.write(signedPdf);
-                }
+        return renderExecutor.submit(() -> {
+            byte[] pdfBytes = generateInvoicePdf(invoice, pdfA);
+            byte[] signedPdf = invoiceSigner.signInvoicePdf(invoice, pdfBytes);
 
-                logger.info("PDF firmado y almacenado para invoice " + invoice.getInvoiceId());
+            // Guardar en el almacén direccionado por contenido (escritura única y atómica);
+            // si la factura tenía un PDF de datos anteriores, se libera
+            String documentId = documentStore.putAndReplace(signedPdf, "invoice-" + invoice.getInvoiceId());
+            documentStore.bindAlias(alias, documentId);
+            invoice.setPdfDocumentId(documentId);
 
-            } catch (Exception e) {
+            logger.info("PDF firmado y almacenado para invoice " + invoice.getInvoiceId() + " como " + documentId);
+            return documentId;
+        }).whenComplete((documentId, error) -> {
+            if (error != null) {
                 logger.severe("Error generando y firmando PDF de invoice " + invoice.getInvoiceId() +
-                        ": " + e.getMessage());
+                        ": " + error.getMessage());
             }
         });
     }
+
+    /**
+     * Alias estable para los datos canónicos de la factura: si los datos no cambian,
+     * el alias tampoco y el documento ya generado se reutiliza. Sirve también de clave de caché
+     * del PDF de una versión concreta de la factura.
+     */
+    public String documentAlias(Invoice invoice, boolean pdfA) {
+        StringBuilder canonical = new StringBuilder()
+                .append(invoice.getTenantId()).append('|')
+                .append(invoice.getInvoiceId()).append('|')
+                .append(pdfA).append('|')
+                .append(invoice.getTaxAmount().toPlainString());
+        invoice.getItems().forEach(item -> canonical.append('|')
+                .append(item.getDescription()).append(';')
+                .append(item.getQuantity()).append(';')
+                .append(item.getSubtotal().toPlainString()));
+
+        String fingerprint = ContentAddressedDocumentStore.sha256(canonical.toString().getBytes(StandardCharsets.UTF_8));
+        return "invoice-" + invoice.getInvoiceId() + "-" + fingerprint.substring(0, 16);
+    }
 }
@@ -0,0 +1,82 @@
+package com.worksphere.billingengine.test.unit;
+
+import com.worksphere.billing.infrastructure.payment.AdaptiveConcurrencyLimiter;
+import com.worksphere.billing.infrastructure.payment.AdaptiveConcurrencyLimiter.LimitExceededException;
+import com.worksphere.billing.infrastructure.payment.AdaptiveConcurrencyLimiter.Outcome;
+import com.worksphere.billing.infrastructure.payment.AdaptiveConcurrencyLimiter.Permit;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final Duration WAIT = Duration.ofSeconds(1);
+
+    @Test
+    void testLimitGrowsOnSuccessAndShrinksOnOverload() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 4, 1, 64, 0.5, 1000.0, 100);
+
+        // Ventanas completas de éxitos: ≈ +1 por ventana
+        for (int window = 0; window < 20; window++) {
+            List<Permit> permits = new ArrayList<>();
+            for (int i = 0; i < limiter.getLimit(); i++) {
+                permits.add(limiter.acquire(WAIT).block());
+            }
+            permits.forEach(p -> p.release(Outcome.SUCCESS));
+        }
+        int grown = limiter.getLimit();
+        assertTrue(grown > 4, "el límite debía crecer: " + grown);
+        assertTrue(grown <= 64);
+
+        limiter.acquire(WAIT).block().release(Outcome.DROPPED);
+        assertTrue(limiter.getLimit() <= grown / 2 + 1, "el límite debía reducirse a la mitad: " + limiter.getLimit());
+        assertEquals(1, limiter.getDroppedCount());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void testLimitNeverDropsBelowMinimum() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 8, 2, 8, 0.1, 2.0, 10);
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire(WAIT).block().release(Outcome.DROPPED);
+        }
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    void testQueuedRequestGetsPermitOnRelease() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 1, 1, 1, 0.5, 2.0, 10);
+        Permit first = limiter.acquire(WAIT).block();
+
+        AtomicReference<Permit> second = new AtomicReference<>();
+        limiter.acquire(WAIT).subscribe(second::set);
+        assertNull(second.get());
+        assertEquals(1, limiter.getQueueDepth());
+
+        first.release(Outcome.SUCCESS);
+        assertNotNull(second.get());
+        assertEquals(0, limiter.getQueueDepth());
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test
+    void testQueueDeadlineAndCapacityRejectRequests() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 1, 1, 1, 0.5, 2.0, 1);
+        Permit held = limiter.acquire(WAIT).block();
+
+        assertThrows(LimitExceededException.class, () -> limiter.acquire(Duration.ofMillis(50)).block());
+        assertEquals(0, limiter.getQueueDepth(), "la espera vencida debe salir de la cola");
+
+        limiter.acquire(WAIT).subscribe();
+        assertThrows(LimitExceededException.class, () -> limiter.acquire(WAIT).block(), "cola llena");
+        assertEquals(2, limiter.getRejectedCount());
+
+        held.release(Outcome.SUCCESS);
+        assertEquals(1, limiter.getInFlight());
+    }
+}
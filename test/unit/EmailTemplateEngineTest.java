@@ -0,0 +1,68 @@
+package com.worksphere.billingengine.test.unit;
+
+import com.worksphere.billing.infrastructure.email.template.CompiledTemplate;
+import com.worksphere.billing.infrastructure.email.template.EmailTemplateEngine;
+import com.worksphere.billing.infrastructure.email.template.TemplateCompilationException;
+import com.worksphere.billing.infrastructure.email.template.TemplateSchema;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmailTemplateEngineTest {
+
+    private static final TemplateSchema<Map<String, Object>> SCHEMA = TemplateSchema.<Map<String, Object>>builder("test")
+            .slot("tenant_name", m -> m.get("tenant_name"))
+            .slot("amount", m -> m.get("amount"))
+            .section("paid", m -> Boolean.TRUE.equals(m.get("paid")))
+            .build();
+
+    @TempDir
+    Path templatesDir;
+
+    @Test
+    void testRendersSlotsSectionsAndEscaping() {
+        CompiledTemplate<Map<String, Object>> template = CompiledTemplate.compile("t",
+                "<p>{{tenant_name}}|{{{tenant_name}}}</p>{{#paid}}pagada{{/paid}}{{^paid}}pendiente {{amount}}{{/paid}}",
+                SCHEMA);
+
+        StringBuilder out = new StringBuilder();
+        template.renderTo(Map.of("tenant_name", "A&B <Corp>", "amount", 10.5, "paid", false), out);
+
+        assertEquals("<p>A&amp;B &lt;Corp&gt;|A&B <Corp></p>pendiente 10.5", out.toString());
+    }
+
+    @Test
+    void testUnknownSlotFailsAtCompileTime() {
+        assertThrows(TemplateCompilationException.class,
+                () -> CompiledTemplate.compile("t", "<p>{{unknown}}</p>", SCHEMA));
+        assertThrows(TemplateCompilationException.class,
+                () -> CompiledTemplate.compile("t", "{{#paid}}sin cerrar", SCHEMA));
+    }
+
+    @Test
+    void testTenantTemplateIsCompiledOnceAndRecompiledOnChange() throws IOException {
+        Path tenantTemplate = templatesDir.resolve("tenant-1").resolve("welcome.html");
+        Files.createDirectories(tenantTemplate.getParent());
+        Files.writeString(tenantTemplate, "Hola {{tenant_name}}");
+
+        EmailTemplateEngine engine = new EmailTemplateEngine(templatesDir.toString(), 0, 65536);
+        Map<String, Object> context = Map.of("tenant_name", "Acme");
+
+        assertEquals("Hola Acme", engine.render("tenant-1", "welcome", SCHEMA, context));
+        assertEquals("Hola Acme", engine.render("tenant-1", "welcome", SCHEMA, context));
+        assertEquals(1, engine.getCompilationCount());
+
+        Files.writeString(tenantTemplate, "Bienvenido {{tenant_name}}");
+        Files.setLastModifiedTime(tenantTemplate, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+
+        assertEquals("Bienvenido Acme", engine.render("tenant-1", "welcome", SCHEMA, context));
+        assertEquals(2, engine.getCompilationCount());
+    }
+}
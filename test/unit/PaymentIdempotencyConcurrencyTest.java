@@ -0,0 +1,397 @@
+package com.worksphere.billingengine.test.unit;
+
+import com.worksphere.billing.domain.exception.PaymentException;
+import com.worksphere.billing.domain.exception.PaymentException.FailureReason;
+import com.worksphere.billing.domain.model.PaymentIdempotencyKey;
+import com.worksphere.billing.domain.model.PaymentResult;
+import com.worksphere.billing.domain.model.PaymentResult.PaymentStatus;
+import com.worksphere.billing.domain.model.PaymentToken;
+import com.worksphere.billing.domain.repository.PaymentAttemptRepository;
+import com.worksphere.billing.domain.repository.PaymentResultRepository;
+import com.worksphere.billing.domain.repository.PaymentTokenRepository;
+import com.worksphere.billing.infrastructure.payment.BatchPaymentSubmitters;
+import com.worksphere.billing.infrastructure.payment.PaymentIdempotencyStore;
+import com.worksphere.billing.infrastructure.payment.PaymentRouter;
+import com.worksphere.billing.infrastructure.payment.PaymentTokenValidationCache;
+import com.worksphere.billing.infrastructure.payment.ProviderHealthTracker;
+import com.worksphere.billing.infrastructure.repository.PaymentIdempotencyKeyRepository;
+import com.worksphere.billing.service.PaymentGatewayAdapter;
+import com.worksphere.billing.usecase.payment.InitiatePaymentTransaction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 64 hilos cobran la misma factura a la vez: la pasarela debe recibir un único cargo.
+ * Los repositorios se simulan en memoria; la restricción única de la clave, el lease y el token de
+ * dueño se emulan con compute sobre un mapa concurrente.
+ */
+class PaymentIdempotencyConcurrencyTest {
+
+    private static final int THREADS = 64;
+
+    private final Map<UUID, PaymentResult> paymentResults = new ConcurrentHashMap<>();
+    private final Map<String, StoredKey> keys = new ConcurrentHashMap<>();
+    private final AtomicInteger gatewayCalls = new AtomicInteger();
+    // Fallos que devuelve la pasarela en las siguientes llamadas; vacía, cobra con éxito
+    private final ConcurrentLinkedQueue<FailureReason> gatewayFailures = new ConcurrentLinkedQueue<>();
+    private final List<String> providerKeys = new CopyOnWriteArrayList<>();
+
+    private PaymentGatewayAdapter gateway;
+    private PaymentResultRepository paymentResultRepository;
+    private PaymentIdempotencyKeyRepository keyRepository;
+    private BatchPaymentSubmitters batchSubmitters;
+    private PlatformTransactionManager transactionManager;
+    private PaymentIdempotencyStore store;
+    private InitiatePaymentTransaction initiatePayment;
+
+    @BeforeEach
+    void setUp() {
+        gateway = mock(PaymentGatewayAdapter.class);
+        when(gateway.providerKeyOf(any())).thenAnswer(inv -> inv.getArgument(0));
+        when(gateway.processPaymentAsync(any(), any(), any(), any(), any())).thenAnswer(inv -> {
+            gatewayCalls.incrementAndGet();
+            providerKeys.add(inv.getArgument(4));
+            FailureReason failure = gatewayFailures.poll();
+            return CompletableFuture.supplyAsync(() -> {
+                sleep(200);
+                if (failure != null) {
+                    throw new PaymentException("pasarela simulada: " + failure, null, null,
+                            inv.getArgument(3), failure, true);
+                }
+                return "tx-" + UUID.randomUUID();
+            });
+        });
+
+        paymentResultRepository = mock(PaymentResultRepository.class);
+        when(paymentResultRepository.save(any(PaymentResult.class))).thenAnswer(inv -> {
+            PaymentResult result = inv.getArgument(0);
+            paymentResults.put(result.getPaymentResultId(), result);
+            return result;
+        });
+        when(paymentResultRepository.findById(any())).thenAnswer(inv -> Optional.ofNullable(paymentResults.get(inv.getArgument(0))));
+        when(paymentResultRepository.findFirstByInvoiceIdOrderByProcessedAtDesc(any())).thenAnswer(inv ->
+                paymentResults.values().stream()
+                        .filter(p -> p.getInvoiceId().equals(inv.getArgument(0)))
+                        .max(Comparator.comparing(PaymentResult::getProcessedAt))
+                        .orElse(null));
+
+        batchSubmitters = mock(BatchPaymentSubmitters.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        keyRepository = inMemoryKeyRepository();
+        useLeaseSeconds(120);
+    }
+
+    /**
+     * Reconstruye el store y el caso de uso con el lease indicado (0: la clave se puede retomar al instante).
+     */
+    private void useLeaseSeconds(long leaseSeconds) {
+        store = newStore(leaseSeconds);
+        PaymentRouter router = new PaymentRouter(gateway, mock(PaymentTokenRepository.class),
+                mock(PaymentTokenValidationCache.class), new ProviderHealthTracker(200, 300000, 20, 0.9),
+                batchSubmitters, true, 20000, 2000);
+        initiatePayment = new InitiatePaymentTransaction(gateway, router, paymentResultRepository,
+                mock(PaymentAttemptRepository.class), batchSubmitters, store, transactionManager);
+    }
+
+    private PaymentIdempotencyStore newStore(long leaseSeconds) {
+        return new PaymentIdempotencyStore(keyRepository, paymentResultRepository, transactionManager, leaseSeconds, 30);
+    }
+
+    @Test
+    void testSixtyFourConcurrentCallersChargeOnce() throws Exception {
+        PaymentToken token = token();
+        String invoiceId = UUID.randomUUID().toString();
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<PaymentResult>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                return initiatePayment.execute(token, "tenant-a", invoiceId, BigDecimal.TEN);
+            }));
+        }
+        start.countDown();
+
+        Set<UUID> paymentIds = ConcurrentHashMap.newKeySet();
+        for (Future<PaymentResult> future : futures) {
+            PaymentResult result = future.get(10, TimeUnit.SECONDS);
+            assertEquals(PaymentStatus.SUCCESS, result.getStatus());
+            paymentIds.add(result.getPaymentResultId());
+        }
+        pool.shutdown();
+
+        assertEquals(1, gatewayCalls.get(), "la pasarela debía recibir un único cargo");
+        assertEquals(1, paymentIds.size(), "todos los llamadores debían recibir el mismo PaymentResult");
+        assertEquals(1, paymentResults.size());
+        assertEquals(1, store.getExecutedCount());
+        assertEquals(0, store.getInFlight());
+    }
+
+    @Test
+    void testRetryAfterCompletionReturnsStoredResult() {
+        PaymentToken token = token();
+        String invoiceId = UUID.randomUUID().toString();
+
+        PaymentResult first = initiatePayment.execute(token, "tenant-a", invoiceId, BigDecimal.TEN);
+        PaymentResult retry = initiatePayment.execute(token, "tenant-a", invoiceId, BigDecimal.TEN);
+
+        assertEquals(first.getPaymentResultId(), retry.getPaymentResultId());
+        assertEquals(1, gatewayCalls.get());
+        assertEquals(1, store.getReplayedCount());
+    }
+
+    @Test
+    void testInDoubtChargeStaysPendingAndIsRetriedWithTheSameProviderKey() {
+        useLeaseSeconds(0);
+        PaymentToken token = token();
+        String invoiceId = UUID.randomUUID().toString();
+        gatewayFailures.add(FailureReason.NETWORK_ERROR);
+
+        PaymentException inDoubt = assertThrows(PaymentException.class,
+                () -> initiatePayment.execute(token, "tenant-a", invoiceId, BigDecimal.TEN));
+        assertEquals(FailureReason.NETWORK_ERROR, inDoubt.getFailureReason());
+        PaymentResult pending = paymentResults.values().iterator().next();
+        assertEquals(PaymentStatus.PENDING, pending.getStatus(), "un cargo en duda no debe marcarse FAILED");
+        assertEquals(PaymentIdempotencyKey.Status.IN_PROGRESS, keys.get(invoiceKey(invoiceId)).getStatus(),
+                "la clave de un cargo en duda no se libera");
+
+        sleep(5); // vence el lease
+        PaymentResult retry = initiatePayment.execute(token, "tenant-a", invoiceId, BigDecimal.TEN);
+
+        assertEquals(PaymentStatus.SUCCESS, retry.getStatus());
+        assertEquals(pending.getPaymentResultId(), retry.getPaymentResultId(), "el reintento reutiliza el pago en duda");
+        assertEquals(1, paymentResults.size());
+        assertEquals(2, providerKeys.size());
+        assertNotNull(providerKeys.get(0));
+        assertEquals(providerKeys.get(0), providerKeys.get(1), "el proveedor debe recibir la misma clave de idempotencia");
+    }
+
+    @Test
+    void testRetryAfterRejectionRegistersNewPaymentWithNewProviderKey() {
+        PaymentToken token = token();
+        String invoiceId = UUID.randomUUID().toString();
+        gatewayFailures.add(FailureReason.INSUFFICIENT_FUNDS);
+
+        assertThrows(PaymentException.class, () -> initiatePayment.execute(token, "tenant-a", invoiceId, BigDecimal.TEN));
+        PaymentResult failed = paymentResults.values().iterator().next();
+        assertEquals(PaymentStatus.FAILED, failed.getStatus());
+
+        PaymentResult retry = initiatePayment.execute(token, "tenant-a", invoiceId, BigDecimal.TEN);
+
+        assertEquals(PaymentStatus.SUCCESS, retry.getStatus());
+        assertNotEquals(failed.getPaymentResultId(), retry.getPaymentResultId());
+        assertEquals(PaymentStatus.FAILED, paymentResults.get(failed.getPaymentResultId()).getStatus());
+        assertEquals(2, providerKeys.size());
+        assertNotEquals(providerKeys.get(0), providerKeys.get(1));
+    }
+
+    @Test
+    void testInDoubtChargeKeepsKeyWhileLeaseIsActive() {
+        PaymentToken token = token();
+        String invoiceId = UUID.randomUUID().toString();
+        gatewayFailures.add(FailureReason.NETWORK_ERROR);
+
+        assertThrows(PaymentException.class, () -> initiatePayment.execute(token, "tenant-a", invoiceId, BigDecimal.TEN));
+        PaymentException busy = assertThrows(PaymentException.class,
+                () -> initiatePayment.execute(token, "tenant-a", invoiceId, BigDecimal.TEN));
+
+        assertTrue(busy.isRecoverable());
+        assertEquals(1, gatewayCalls.get(), "con la clave en lease no se repite el cargo");
+        assertEquals(1, store.getBusyCount());
+    }
+
+    @Test
+    void testRetryAfterProviderUnavailableChargesAgain() {
+        PaymentToken token = token();
+        String invoiceId = UUID.randomUUID().toString();
+        gatewayFailures.add(FailureReason.PROVIDER_UNAVAILABLE);
+
+        assertThrows(PaymentException.class, () -> initiatePayment.execute(token, "tenant-a", invoiceId, BigDecimal.TEN));
+        assertNull(keys.get(invoiceKey(invoiceId)), "sin cargo procesado la clave se libera");
+
+        PaymentResult retry = initiatePayment.execute(token, "tenant-a", invoiceId, BigDecimal.TEN);
+
+        assertEquals(PaymentStatus.SUCCESS, retry.getStatus());
+        assertEquals(2, gatewayCalls.get());
+        assertEquals(PaymentIdempotencyKey.Status.COMPLETED, keys.get(invoiceKey(invoiceId)).getStatus());
+    }
+
+    @Test
+    void testStaleOwnerCannotCompleteOrReleaseKeyTakenOverByAnotherInstance() throws Exception {
+        // Dos instancias con lease 0: la segunda retoma la clave mientras la primera sigue cobrando
+        PaymentIdempotencyStore first = newStore(0);
+        PaymentIdempotencyStore second = newStore(0);
+        String invoiceId = UUID.randomUUID().toString();
+        String key = invoiceKey(invoiceId);
+
+        CompletableFuture<PaymentResult> slowCharge = new CompletableFuture<>();
+        CompletableFuture<PaymentResult> stale = first.execute(key, "tenant-a", UUID.fromString(invoiceId), () -> slowCharge);
+        String staleOwner = keys.get(key).getOwnerToken();
+
+        sleep(5);
+        PaymentResult current = paymentResult(invoiceId, PaymentStatus.SUCCESS);
+        AtomicReference<String> takeoverOwner = new AtomicReference<>();
+        PaymentResult taken = second.execute(key, "tenant-a", UUID.fromString(invoiceId), () -> {
+            takeoverOwner.set(keys.get(key).getOwnerToken());
+            return CompletableFuture.completedFuture(current);
+        }).get(5, TimeUnit.SECONDS);
+        assertEquals(current.getPaymentResultId(), taken.getPaymentResultId());
+        assertNotNull(takeoverOwner.get());
+        assertNotEquals(staleOwner, takeoverOwner.get());
+
+        // El dueño anterior termina tarde: no puede sobrescribir el resultado de la clave
+        slowCharge.complete(paymentResult(invoiceId, PaymentStatus.SUCCESS));
+        stale.get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, first.getFencedCount());
+        assertEquals(PaymentIdempotencyKey.Status.COMPLETED, keys.get(key).getStatus());
+        assertEquals(current.getPaymentResultId(), keys.get(key).getPaymentResultId());
+        assertEquals(0, keyRepository.release(key, staleOwner), "un dueño anterior tampoco puede liberar la clave");
+    }
+
+    // -----------------------------
+    // Soporte
+    // -----------------------------
+
+    private PaymentIdempotencyKeyRepository inMemoryKeyRepository() {
+        PaymentIdempotencyKeyRepository repository = mock(PaymentIdempotencyKeyRepository.class);
+        when(repository.tryAcquire(anyString(), anyString(), any(), anyString(), any(), any())).thenAnswer(inv -> {
+            String owner = inv.getArgument(3);
+            Instant lockedUntil = inv.getArgument(4);
+            Instant now = inv.getArgument(5);
+            StoredKey claimed = keys.compute(inv.getArgument(0), (k, current) ->
+                    current == null || (current.status == PaymentIdempotencyKey.Status.IN_PROGRESS
+                            && current.lockedUntil.isBefore(now))
+                            ? new StoredKey(PaymentIdempotencyKey.Status.IN_PROGRESS, null, owner, lockedUntil)
+                            : current);
+            return owner.equals(claimed.owner) ? 1 : 0;
+        });
+        when(repository.findById(anyString())).thenAnswer(inv -> Optional.ofNullable(keys.get(inv.getArgument(0))));
+        when(repository.reopen(anyString(), any(), anyString(), any(), any())).thenAnswer(inv -> {
+            String owner = inv.getArgument(2);
+            StoredKey reopened = keys.computeIfPresent(inv.getArgument(0), (k, current) ->
+                    current.status == PaymentIdempotencyKey.Status.COMPLETED
+                            && current.paymentResultId.equals(inv.getArgument(1))
+                            ? new StoredKey(PaymentIdempotencyKey.Status.IN_PROGRESS, null, owner, inv.getArgument(3))
+                            : current);
+            return reopened != null && owner.equals(reopened.owner) ? 1 : 0;
+        });
+        when(repository.complete(anyString(), anyString(), any(), anyString(), any())).thenAnswer(inv -> {
+            AtomicInteger updated = new AtomicInteger();
+            keys.computeIfPresent(inv.getArgument(0), (k, current) -> {
+                if (current.status != PaymentIdempotencyKey.Status.IN_PROGRESS || !current.owner.equals(inv.getArgument(1))) {
+                    return current;
+                }
+                updated.set(1);
+                return new StoredKey(PaymentIdempotencyKey.Status.COMPLETED, inv.getArgument(2), null, current.lockedUntil);
+            });
+            return updated.get();
+        });
+        when(repository.release(anyString(), anyString())).thenAnswer(inv -> {
+            AtomicReference<StoredKey> removed = new AtomicReference<>();
+            keys.computeIfPresent(inv.getArgument(0), (k, current) -> {
+                if (current.status == PaymentIdempotencyKey.Status.IN_PROGRESS && current.owner.equals(inv.getArgument(1))) {
+                    removed.set(current);
+                    return null;
+                }
+                return current;
+            });
+            return removed.get() == null ? 0 : 1;
+        });
+        return repository;
+    }
+
+    /**
+     * Fila de payment_idempotency_keys en memoria.
+     */
+    private static final class StoredKey extends PaymentIdempotencyKey {
+        private final Status status;
+        private final UUID paymentResultId;
+        private final String owner;
+        private final Instant lockedUntil;
+
+        private StoredKey(Status status, UUID paymentResultId, String owner, Instant lockedUntil) {
+            this.status = status;
+            this.paymentResultId = paymentResultId;
+            this.owner = owner;
+            this.lockedUntil = lockedUntil;
+        }
+
+        @Override
+        public Status getStatus() {
+            return status;
+        }
+
+        @Override
+        public UUID getPaymentResultId() {
+            return paymentResultId;
+        }
+
+        @Override
+        public String getOwnerToken() {
+            return owner;
+        }
+
+        @Override
+        public Instant getLockedUntil() {
+            return lockedUntil;
+        }
+    }
+
+    private PaymentResult paymentResult(String invoiceId, PaymentStatus status) {
+        PaymentResult result = new PaymentResult();
+        result.setInvoiceId(UUID.fromString(invoiceId));
+        result.setTenantId("tenant-a");
+        result.setStatus(status);
+        paymentResults.put(result.getPaymentResultId(), result);
+        return result;
+    }
+
+    private static String invoiceKey(String invoiceId) {
+        return PaymentIdempotencyStore.invoiceKey("tenant-a", UUID.fromString(invoiceId));
+    }
+
+    private static PaymentToken token() {
+        PaymentToken token = new PaymentToken();
+        token.setTenantId("tenant-a");
+        token.setGatewayProvider("stripe");
+        token.setExpiresAt(LocalDateTime.now().plusDays(30));
+        return token;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.worksphere.billingengine.test.unit;
+
+import com.worksphere.billing.domain.exception.PaymentException;
+import com.worksphere.billing.domain.exception.PaymentException.FailureReason;
+import com.worksphere.billing.domain.model.PaymentResult;
+import com.worksphere.billing.domain.model.PaymentToken;
+import com.worksphere.billing.domain.repository.PaymentTokenRepository;
+import com.worksphere.billing.infrastructure.payment.BatchPaymentSubmitters;
+import com.worksphere.billing.infrastructure.payment.PaymentRouter;
+import com.worksphere.billing.infrastructure.payment.PaymentRouter.RoutedCharge;
+import com.worksphere.billing.infrastructure.payment.PaymentTokenValidationCache;
+import com.worksphere.billing.infrastructure.payment.ProviderHealthTracker;
+import com.worksphere.billing.service.PaymentGatewayAdapter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Enrutado entre pasarelas simuladas en memoria, con latencia y fallos inyectables por proveedor.
+ */
+class PaymentRoutingTest {
+
+    private static final String TENANT = "tenant-a";
+
+    private final SimulatedGateways gateways = new SimulatedGateways();
+    private final PaymentTokenRepository tokenRepository = mock(PaymentTokenRepository.class);
+    private final PaymentTokenValidationCache validationCache = mock(PaymentTokenValidationCache.class);
+
+    private ProviderHealthTracker healthTracker;
+    private PaymentToken stripe;
+    private PaymentToken paypal;
+
+    @BeforeEach
+    void setUp() {
+        healthTracker = new ProviderHealthTracker(200, 300000, 5, 0.9);
+        stripe = token("stripe");
+        paypal = token("paypal");
+        when(tokenRepository.findUsableByTenantId(eq(TENANT), any())).thenReturn(List.of(stripe, paypal));
+        when(validationCache.isValid(any())).thenReturn(true);
+    }
+
+    @Test
+    void testRoutesToFastestHealthyProvider() {
+        gateways.behave("stripe", 60, null);
+        gateways.behave("paypal", 5, null);
+        PaymentRouter router = router(20000, 0);
+
+        // Sin muestras se respeta el token indicado; la latencia de stripe se aprende de sus cobros
+        for (int i = 0; i < 5; i++) {
+            assertEquals("stripe", charge(router, stripe).getProvider());
+        }
+        // paypal se conoce por los cobros de otros tenants
+        for (int i = 0; i < 5; i++) {
+            healthTracker.record("paypal", 5, true);
+        }
+
+        RoutedCharge routed = charge(router, stripe);
+        assertEquals("paypal", routed.getProvider());
+        assertSame(paypal, routed.getToken());
+        assertNull(routed.getFailure());
+        assertEquals(1, router.getReroutedCount());
+        assertTrue(routed.getDecision().startsWith("candidatos=[paypal(p99="), routed.getDecision());
+    }
+
+    @Test
+    void testSkipsUnhealthyProvider() {
+        gateways.behave("stripe", 1, null);
+        gateways.behave("paypal", 20, null);
+        for (int i = 0; i < 10; i++) {
+            healthTracker.record("stripe", 1, i < 5);
+        }
+
+        RoutedCharge routed = charge(router(20000, 0), stripe);
+
+        assertEquals("paypal", routed.getProvider());
+        assertEquals(0, gateways.calls("stripe"));
+    }
+
+    @Test
+    void testFailsOverWhenProviderDidNotProcessTheCharge() {
+        gateways.behave("stripe", 5, FailureReason.PROVIDER_UNAVAILABLE);
+        gateways.behave("paypal", 5, null);
+        PaymentRouter router = router(20000, 0);
+
+        RoutedCharge routed = charge(router, stripe);
+
+        assertNull(routed.getFailure());
+        assertEquals("paypal", routed.getProvider());
+        assertEquals(1, routed.getFailedOverHops().size());
+        assertEquals("stripe", routed.getFailedOverHops().get(0).getProvider());
+        assertTrue(routed.getDecision().contains("stripe: PROVIDER_UNAVAILABLE"), routed.getDecision());
+        assertTrue(routed.getDecision().contains("paypal: OK"), routed.getDecision());
+        assertEquals(1, router.getFailoverCount());
+    }
+
+    @Test
+    void testNoFailoverWhenChargeOutcomeIsUnknown() {
+        gateways.behave("stripe", 5, FailureReason.NETWORK_ERROR);
+        gateways.behave("paypal", 5, null);
+
+        RoutedCharge routed = charge(router(20000, 0), stripe);
+
+        PaymentException failure = assertInstanceOf(PaymentException.class, routed.getFailure());
+        assertEquals(FailureReason.NETWORK_ERROR, failure.getFailureReason());
+        assertEquals("stripe", routed.getProvider());
+        assertEquals(0, gateways.calls("paypal"), "un timeout no garantiza que el cargo no se hiciera");
+    }
+
+    @Test
+    void testNoFailoverOutsideTimeBudget() {
+        gateways.behave("stripe", 120, FailureReason.PROVIDER_UNAVAILABLE);
+        gateways.behave("paypal", 5, null);
+
+        RoutedCharge routed = charge(router(100, 50), stripe);
+
+        assertNotNull(routed.getFailure());
+        assertEquals(0, gateways.calls("paypal"));
+        assertTrue(routed.getDecision().contains("presupuesto de failover agotado"), routed.getDecision());
+    }
+
+    @Test
+    void testSkipsAlternativeWithInvalidToken() {
+        gateways.behave("stripe", 5, FailureReason.PROVIDER_UNAVAILABLE);
+        gateways.behave("paypal", 5, null);
+        when(validationCache.isValid(paypal)).thenReturn(false);
+
+        RoutedCharge routed = charge(router(20000, 0), stripe);
+
+        assertNotNull(routed.getFailure());
+        assertEquals(0, gateways.calls("paypal"));
+        assertTrue(routed.getDecision().contains("paypal omitido: token no válido"), routed.getDecision());
+    }
+
+    @Test
+    void testValidatesAlternativeRankedFirstBeforeCharging() {
+        gateways.behave("stripe", 5, null);
+        gateways.behave("paypal", 5, null);
+        for (int i = 0; i < 5; i++) {
+            healthTracker.record("stripe", 60, true);
+            healthTracker.record("paypal", 5, true);
+        }
+        when(validationCache.isValid(paypal)).thenReturn(false);
+        PaymentRouter router = router(20000, 0);
+
+        RoutedCharge routed = charge(router, stripe);
+
+        verify(validationCache).isValid(paypal);
+        assertEquals(0, gateways.calls("paypal"), "un token alternativo no validado no se cobra");
+        assertEquals("stripe", routed.getProvider());
+        assertNull(routed.getFailure());
+        assertEquals(0, router.getReroutedCount());
+        assertTrue(routed.getDecision().contains("paypal omitido: token no válido"), routed.getDecision());
+    }
+
+    // -----------------------------
+    // Soporte
+    // -----------------------------
+
+    private PaymentRouter router(long budgetMs, long minAttemptMs) {
+        BatchPaymentSubmitters batchSubmitters = mock(BatchPaymentSubmitters.class);
+        return new PaymentRouter(gateways, tokenRepository, validationCache, healthTracker, batchSubmitters,
+                true, budgetMs, minAttemptMs);
+    }
+
+    private static RoutedCharge charge(PaymentRouter router, PaymentToken token) {
+        return router.charge(token, BigDecimal.TEN, TENANT, UUID.randomUUID().toString(), "payment:" + UUID.randomUUID()).join();
+    }
+
+    private static PaymentToken token(String provider) {
+        PaymentToken token = new PaymentToken();
+        token.setTenantId(TENANT);
+        token.setGatewayProvider(provider);
+        token.setReusable(true);
+        token.setExpiresAt(LocalDateTime.now().plusDays(30));
+        return token;
+    }
+
+    /**
+     * Pasarelas locales: cada proveedor responde tras la latencia configurada con éxito o con el
+     * fallo indicado.
+     */
+    private static final class SimulatedGateways implements PaymentGatewayAdapter {
+
+        private final Map<String, Behavior> behaviors = new ConcurrentHashMap<>();
+        private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+
+        void behave(String provider, long latencyMs, FailureReason failure) {
+            behaviors.put(provider, new Behavior(latencyMs, failure));
+        }
+
+        int calls(String provider) {
+            AtomicInteger count = calls.get(provider);
+            return count == null ? 0 : count.get();
+        }
+
+        @Override
+        public CompletableFuture<String> processPaymentAsync(PaymentToken token, BigDecimal amount, String tenantId, String invoiceId,
+                                                             String idempotencyKey) {
+            String provider = token.getGatewayProvider();
+            calls.computeIfAbsent(provider, key -> new AtomicInteger()).incrementAndGet();
+            Behavior behavior = behaviors.get(provider);
+            return CompletableFuture.supplyAsync(() -> {
+                if (behavior.failure != null) {
+                    throw new PaymentException(provider + " simulado: " + behavior.failure,
+                            null, null, invoiceId, behavior.failure, true);
+                }
+                return provider + "-tx-" + UUID.randomUUID();
+            }, CompletableFuture.delayedExecutor(behavior.latencyMs, TimeUnit.MILLISECONDS));
+        }
+
+        @Override
+        public CompletableFuture<Boolean> validateTokenAsync(PaymentToken token) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        @Override
+        public CompletableFuture<Void> reversePaymentAsync(PaymentResult paymentResult, String idempotencyKey) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        private record Behavior(long latencyMs, FailureReason failure) {
+        }
+    }
+}
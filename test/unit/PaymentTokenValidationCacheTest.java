@@ -0,0 +1,104 @@
+package com.worksphere.billingengine.test.unit;
+
+import com.worksphere.billing.domain.model.PaymentToken;
+import com.worksphere.billing.infrastructure.payment.PaymentTokenValidationCache;
+import com.worksphere.billing.service.PaymentGatewayAdapter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Invalidación de la caché de validación de tokens frente a validaciones remotas en curso.
+ */
+class PaymentTokenValidationCacheTest {
+
+    private final AtomicInteger remoteCalls = new AtomicInteger();
+    private final CountDownLatch remoteStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseRemote = new CountDownLatch(1);
+
+    private PaymentGatewayAdapter gateway;
+    private PaymentTokenValidationCache cache;
+
+    @BeforeEach
+    void setUp() {
+        gateway = mock(PaymentGatewayAdapter.class);
+        when(gateway.providerKeyOf(any())).thenAnswer(inv -> inv.getArgument(0));
+        cache = new PaymentTokenValidationCache(gateway, 86400000, 600000, 1000);
+    }
+
+    @Test
+    void testResultIsCachedUntilInvalidated() {
+        when(gateway.validateToken(any())).thenAnswer(inv -> {
+            remoteCalls.incrementAndGet();
+            return true;
+        });
+        PaymentToken token = token("stripe");
+
+        assertTrue(cache.isValid(token));
+        assertTrue(cache.isValid(token));
+        assertEquals(1, remoteCalls.get());
+
+        cache.invalidate(token.getTokenId());
+        assertEquals(0, cache.size());
+        assertTrue(cache.isValid(token));
+        assertEquals(2, remoteCalls.get());
+    }
+
+    @Test
+    void testInvalidateDuringRemoteValidationDiscardsItsResult() throws Exception {
+        when(gateway.validateToken(any())).thenAnswer(inv -> {
+            if (remoteCalls.incrementAndGet() == 1) {
+                remoteStarted.countDown();
+                assertTrue(releaseRemote.await(5, TimeUnit.SECONDS));
+            }
+            return true;
+        });
+        PaymentToken token = token("stripe");
+
+        CompletableFuture<Boolean> inFlight = CompletableFuture.supplyAsync(() -> cache.isValid(token));
+        assertTrue(remoteStarted.await(5, TimeUnit.SECONDS));
+        // Revocado mientras la pasarela aún respondía con la validación anterior
+        cache.invalidate(token.getTokenId());
+        releaseRemote.countDown();
+
+        assertTrue(inFlight.get(5, TimeUnit.SECONDS));
+        assertEquals(1, cache.getDiscardedResultCount());
+        assertEquals(0, cache.size(), "el resultado previo a la invalidación no debe quedar en caché");
+
+        cache.isValid(token);
+        assertEquals(2, remoteCalls.get(), "tras invalidar se debe volver a consultar la pasarela");
+    }
+
+    @Test
+    void testInvalidateDropsEveryGatewayOfTheToken() {
+        when(gateway.validateToken(any())).thenReturn(true);
+        PaymentToken token = token("stripe");
+        PaymentToken other = token("stripe");
+
+        cache.isValid(token);
+        token.setGatewayProvider("paypal");
+        cache.isValid(token);
+        cache.isValid(other);
+        assertEquals(3, cache.size());
+
+        cache.invalidate(token.getTokenId());
+        assertEquals(1, cache.size());
+    }
+
+    private static PaymentToken token(String provider) {
+        PaymentToken token = new PaymentToken();
+        token.setTenantId("tenant-a");
+        token.setGatewayProvider(provider);
+        token.setExpiresAt(LocalDateTime.now().plusDays(30));
+        return token;
+    }
+}
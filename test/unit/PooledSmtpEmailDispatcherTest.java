@@ -0,0 +1,222 @@
+package com.worksphere.billingengine.test.unit;
+
+import com.worksphere.billing.infrastructure.email.PooledSmtpEmailDispatcher;
+import com.worksphere.billing.infrastructure.email.PooledSmtpEmailDispatcher.DispatchResult;
+import com.worksphere.billing.infrastructure.email.PooledSmtpEmailDispatcher.OutgoingEmail;
+import com.worksphere.billingengine.config.EmailConfig.SmtpProviderConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PooledSmtpEmailDispatcherTest {
+
+    private static final Logger log = LoggerFactory.getLogger(PooledSmtpEmailDispatcherTest.class);
+
+    private static final int MESSAGES = 200;
+
+    private SmtpStub smtpStub;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        smtpStub = new SmtpStub();
+        smtpStub.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        smtpStub.stop();
+    }
+
+    @Test
+    void testBatchReusesPooledConnections() {
+        PooledSmtpEmailDispatcher dispatcher = new PooledSmtpEmailDispatcher(providers(4, 1000));
+
+        List<DispatchResult> results = dispatcher.sendBatch(emails(MESSAGES));
+
+        assertEquals(MESSAGES, results.size());
+        assertTrue(results.stream().allMatch(DispatchResult::isSuccess));
+        assertEquals(MESSAGES, smtpStub.messages.get());
+        assertTrue(smtpStub.connections.get() <= 4,
+                "El lote debe reutilizar como máximo una conexión por hilo del pool");
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void testMessagesPerSecondPooledVsConnectionPerMessage() {
+        // Línea base: una conexión nueva por mensaje (equivalente al envío histórico)
+        PooledSmtpEmailDispatcher perMessage = new PooledSmtpEmailDispatcher(providers(1, 1));
+        long start = System.nanoTime();
+        List<DispatchResult> baseline = perMessage.sendBatch(emails(MESSAGES));
+        double baselineRate = MESSAGES / ((System.nanoTime() - start) / 1e9);
+        int baselineConnections = smtpStub.connections.getAndSet(0);
+        perMessage.shutdown();
+
+        PooledSmtpEmailDispatcher pooled = new PooledSmtpEmailDispatcher(providers(4, 1000));
+        start = System.nanoTime();
+        List<DispatchResult> results = pooled.sendBatch(emails(MESSAGES));
+        double pooledRate = MESSAGES / ((System.nanoTime() - start) / 1e9);
+        int pooledConnections = smtpStub.connections.get();
+        pooled.shutdown();
+
+        // Medida informativa contra el stub local; no se afirma sobre ella para no depender de la máquina
+        log.info("SMTP stub: conexión por mensaje {} msg/s ({} conexiones), pool {} msg/s ({} conexiones)",
+                String.format("%.0f", baselineRate), baselineConnections, String.format("%.0f", pooledRate), pooledConnections);
+
+        assertTrue(baseline.stream().allMatch(DispatchResult::isSuccess));
+        assertTrue(results.stream().allMatch(DispatchResult::isSuccess));
+        assertEquals(2 * MESSAGES, smtpStub.messages.get());
+        assertEquals(MESSAGES, baselineConnections);
+        assertTrue(pooledConnections <= 4);
+    }
+
+    @Test
+    void testFailedEmailsAreRetriedThroughFallbackProvider() throws IOException {
+        Map<String, SmtpProviderConfig> providers = new LinkedHashMap<>();
+        providers.put("primary", provider("primary", unusedPort(), 2, 1000));
+        providers.put("fallback", provider("fallback", smtpStub.port(), 2, 1000));
+        PooledSmtpEmailDispatcher dispatcher = new PooledSmtpEmailDispatcher(providers);
+
+        List<OutgoingEmail> emails = emails(10);
+        List<DispatchResult> results = dispatcher.sendBatch(emails);
+        dispatcher.shutdown();
+
+        assertEquals(10, results.size());
+        assertTrue(results.stream().allMatch(DispatchResult::isSuccess));
+        for (int i = 0; i < emails.size(); i++) {
+            assertEquals(emails.get(i).getMessageId(), results.get(i).getEmail().getMessageId(),
+                    "los resultados conservan el orden de entrada");
+        }
+        assertEquals(10, smtpStub.messages.get());
+    }
+
+    @Test
+    void testEmailsSharingReferenceKeepDistinctMessageIds() {
+        OutgoingEmail first = OutgoingEmail.of("a@example.com", "Factura #1", "<p>1</p>").withReference("INV-1");
+        OutgoingEmail second = OutgoingEmail.of("b@example.com", "Factura #1", "<p>1</p>").withReference("INV-1");
+
+        assertEquals(first.getReference(), second.getReference());
+        assertNotEquals(first.getMessageId(), second.getMessageId());
+        assertEquals(first.getMessageId(), first.from("billing@worksphere.com").getMessageId(),
+                "las copias derivadas conservan el id de mensaje");
+    }
+
+    private Map<String, SmtpProviderConfig> providers(int poolSize, int maxMessagesPerConnection) {
+        return Map.of("primary", provider("primary", smtpStub.port(), poolSize, maxMessagesPerConnection));
+    }
+
+    private static SmtpProviderConfig provider(String name, int port, int poolSize, int maxMessagesPerConnection) {
+        return SmtpProviderConfig.builder()
+                .name(name)
+                .host("127.0.0.1")
+                .port(port)
+                .tls(false)
+                .poolSize(poolSize)
+                .maxMessagesPerConnection(maxMessagesPerConnection)
+                .ratePerSecond(100_000)
+                .timeoutMs(5000)
+                .build();
+    }
+
+    private static int unusedPort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private List<OutgoingEmail> emails(int count) {
+        List<OutgoingEmail> emails = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            emails.add(OutgoingEmail.of("tenant" + i + "@example.com", "Factura #" + i, "<p>Factura " + i + "</p>")
+                    .from("billing@worksphere.com")
+                    .withReference("INV-" + i));
+        }
+        return emails;
+    }
+
+    /**
+     * Servidor SMTP mínimo en memoria: acepta todo y cuenta conexiones y mensajes.
+     */
+    private static class SmtpStub {
+        private final AtomicInteger connections = new AtomicInteger();
+        private final AtomicInteger messages = new AtomicInteger();
+        private ServerSocket server;
+
+        void start() throws IOException {
+            server = new ServerSocket(0);
+            Thread acceptor = new Thread(() -> {
+                while (!server.isClosed()) {
+                    try {
+                        Socket socket = server.accept();
+                        connections.incrementAndGet();
+                        Thread handler = new Thread(() -> handle(socket));
+                        handler.setDaemon(true);
+                        handler.start();
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int port() {
+            return server.getLocalPort();
+        }
+
+        void stop() throws IOException {
+            server.close();
+        }
+
+        private void handle(Socket socket) {
+            try (socket;
+                 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                 OutputStream out = socket.getOutputStream()) {
+                reply(out, "220 stub ESMTP");
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String command = line.length() >= 4 ? line.substring(0, 4).toUpperCase() : line.toUpperCase();
+                    switch (command) {
+                        case "DATA":
+                            reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                            while ((line = in.readLine()) != null && !line.equals(".")) {
+                                // descartar contenido
+                            }
+                            messages.incrementAndGet();
+                            reply(out, "250 OK queued");
+                            break;
+                        case "QUIT":
+                            reply(out, "221 Bye");
+                            return;
+                        default:
+                            reply(out, "250 OK");
+                    }
+                }
+            } catch (IOException ignored) {
+                // conexión cerrada por el cliente
+            }
+        }
+
+        private void reply(OutputStream out, String line) throws IOException {
+            out.write((line + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.worksphere.billingengine.test.unit;
+
+import com.worksphere.billing.domain.event.NotificationEvent;
+import com.worksphere.billing.domain.exception.PaymentException;
+import com.worksphere.billing.domain.exception.PaymentException.FailureReason;
+import com.worksphere.billing.domain.model.PaymentResult;
+import com.worksphere.billing.domain.model.PaymentResult.PaymentStatus;
+import com.worksphere.billing.domain.model.PaymentReversalItem;
+import com.worksphere.billing.domain.repository.PaymentResultRepository;
+import com.worksphere.billing.infrastructure.repository.PaymentReversalItemRepository;
+import com.worksphere.billing.infrastructure.repository.PaymentReversalJobRepository;
+import com.worksphere.billing.service.PaymentGatewayAdapter;
+import com.worksphere.billing.usecase.notification.EmitNotificationEvent;
+import com.worksphere.billing.usecase.payment.ProcessPaymentReversals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Worker de la cola de reversiones: descartes, marcado idempotente y reintentos frente a fallos definitivos.
+ */
+class ProcessPaymentReversalsTest {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private PaymentReversalItemRepository itemRepository;
+    private PaymentResultRepository paymentResultRepository;
+    private PaymentGatewayAdapter gateway;
+    private EmitNotificationEvent emitNotificationEvent;
+    private ProcessPaymentReversals worker;
+
+    @BeforeEach
+    void setUp() {
+        itemRepository = mock(PaymentReversalItemRepository.class);
+        paymentResultRepository = mock(PaymentResultRepository.class);
+        gateway = mock(PaymentGatewayAdapter.class);
+        emitNotificationEvent = mock(EmitNotificationEvent.class);
+
+        worker = new ProcessPaymentReversals(itemRepository, mock(PaymentReversalJobRepository.class),
+                paymentResultRepository, gateway, emitNotificationEvent, mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(worker, "maxPerProvider", 8);
+        ReflectionTestUtils.setField(worker, "maxAttempts", MAX_ATTEMPTS);
+        ReflectionTestUtils.setField(worker, "baseBackoffMs", 10000L);
+        ReflectionTestUtils.setField(worker, "maxBackoffMs", 60000L);
+        ReflectionTestUtils.setField(worker, "leaseSeconds", 120L);
+
+        when(itemRepository.findDueProviders(any())).thenReturn(List.of("stripe"));
+    }
+
+    @Test
+    void testAlreadyReversedPaymentIsSkippedWithoutCallingGateway() {
+        PaymentResult payment = payment(PaymentStatus.SUCCESS);
+        ReflectionTestUtils.setField(payment, "reversed", true);
+        PaymentReversalItem item = queue(payment);
+
+        worker.drain();
+
+        assertEquals(PaymentReversalItem.Status.SKIPPED, item.getStatus());
+        assertEquals(1, worker.getSkippedCount());
+        verify(gateway, never()).reversePaymentAsync(any(), any());
+        verify(emitNotificationEvent, never()).emit(any());
+    }
+
+    @Test
+    void testNonSuccessfulPaymentIsSkippedWithoutCallingGateway() {
+        PaymentReversalItem item = queue(payment(PaymentStatus.FAILED));
+
+        worker.drain();
+
+        assertEquals(PaymentReversalItem.Status.SKIPPED, item.getStatus());
+        assertTrue(item.getLastError().contains("FAILED"));
+        verify(gateway, never()).reversePaymentAsync(any(), any());
+    }
+
+    @Test
+    void testRepeatedReversalEmitsEventOnceAndReusesIdempotencyKey() {
+        PaymentResult payment = payment(PaymentStatus.SUCCESS);
+        PaymentReversalItem item = queue(payment);
+        when(gateway.reversePaymentAsync(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        // El segundo envío encuentra el pago ya marcado por el primero
+        when(paymentResultRepository.markReversed(eq(payment.getPaymentResultId()), any(), any(), any()))
+                .thenReturn(1, 0);
+
+        worker.drain();
+        ReflectionTestUtils.setField(item, "status", PaymentReversalItem.Status.PENDING);
+        worker.drain();
+
+        ArgumentCaptor<String> keys = ArgumentCaptor.forClass(String.class);
+        verify(gateway, times(2)).reversePaymentAsync(same(payment), keys.capture());
+        assertEquals(keys.getAllValues().get(0), keys.getAllValues().get(1));
+        assertEquals("reversal:" + payment.getPaymentResultId(), keys.getValue());
+
+        ArgumentCaptor<NotificationEvent> events = ArgumentCaptor.forClass(NotificationEvent.class);
+        verify(emitNotificationEvent, times(1)).emit(events.capture());
+        assertEquals("payment_reversed", events.getValue().getType());
+        assertEquals(1, worker.getReversedCount());
+        assertEquals(PaymentReversalItem.Status.REVERSED, item.getStatus());
+    }
+
+    @Test
+    void testRecoverableErrorIsRetriedWithBackoff() {
+        PaymentReversalItem item = queue(payment(PaymentStatus.SUCCESS));
+        when(gateway.reversePaymentAsync(any(), any())).thenReturn(CompletableFuture.failedFuture(
+                error(FailureReason.PROVIDER_UNAVAILABLE, true)));
+        Instant before = Instant.now();
+
+        worker.drain();
+
+        assertEquals(PaymentReversalItem.Status.RETRY, item.getStatus());
+        assertEquals(1, item.getAttempts());
+        assertTrue(item.getNextAttemptAt().isAfter(before.plusSeconds(7)), "el reintento debe respetar el backoff");
+        assertEquals(1, worker.getRetriedCount());
+        verify(emitNotificationEvent, never()).emit(any());
+    }
+
+    @Test
+    void testPermanentErrorFailsImmediately() {
+        PaymentReversalItem item = queue(payment(PaymentStatus.SUCCESS));
+        when(gateway.reversePaymentAsync(any(), any())).thenReturn(CompletableFuture.failedFuture(
+                error(FailureReason.BANK_REJECTED, false)));
+
+        worker.drain();
+
+        assertEquals(PaymentReversalItem.Status.FAILED, item.getStatus());
+        assertEquals(1, worker.getFailedCount());
+        assertEquals(0, worker.getRetriedCount());
+        ArgumentCaptor<NotificationEvent> events = ArgumentCaptor.forClass(NotificationEvent.class);
+        verify(emitNotificationEvent).emit(events.capture());
+        assertEquals("payment_reversal_failed", events.getValue().getType());
+    }
+
+    @Test
+    void testRecoverableErrorFailsOnceAttemptsAreExhausted() {
+        PaymentReversalItem item = queue(payment(PaymentStatus.SUCCESS));
+        ReflectionTestUtils.setField(item, "attempts", MAX_ATTEMPTS - 1);
+        when(gateway.reversePaymentAsync(any(), any())).thenReturn(CompletableFuture.failedFuture(
+                error(FailureReason.NETWORK_ERROR, true)));
+
+        worker.drain();
+
+        assertEquals(PaymentReversalItem.Status.FAILED, item.getStatus());
+        assertEquals(MAX_ATTEMPTS, item.getAttempts());
+        assertEquals(1, worker.getFailedCount());
+    }
+
+    private PaymentReversalItem queue(PaymentResult payment) {
+        PaymentReversalItem item = new PaymentReversalItem() {};
+        ReflectionTestUtils.setField(item, "id", UUID.randomUUID());
+        ReflectionTestUtils.setField(item, "jobId", UUID.randomUUID());
+        ReflectionTestUtils.setField(item, "paymentResultId", payment.getPaymentResultId());
+        ReflectionTestUtils.setField(item, "gatewayProvider", "stripe");
+        ReflectionTestUtils.setField(item, "status", PaymentReversalItem.Status.PENDING);
+        ReflectionTestUtils.setField(item, "nextAttemptAt", Instant.now());
+
+        when(itemRepository.claimDue(eq("stripe"), any(), anyInt())).thenReturn(List.of(item));
+        when(itemRepository.findAllById(any())).thenReturn(List.of(item));
+        when(paymentResultRepository.findAllById(any())).thenReturn(List.of(payment));
+        return item;
+    }
+
+    private static PaymentResult payment(PaymentStatus status) {
+        PaymentResult payment = new PaymentResult();
+        payment.setTenantId("tenant-a");
+        payment.setInvoiceId(UUID.randomUUID());
+        payment.setGatewayProvider("stripe");
+        payment.setGatewayTransactionId("tx-" + payment.getPaymentResultId());
+        payment.setStatus(status);
+        return payment;
+    }
+
+    private static PaymentException error(FailureReason reason, boolean recoverable) {
+        return new PaymentException("rechazo de la pasarela", null, null, null, reason, recoverable);
+    }
+}
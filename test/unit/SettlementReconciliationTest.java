@@ -0,0 +1,213 @@
+package com.worksphere.billingengine.test.unit;
+
+import com.worksphere.billing.infrastructure.payment.PartitionedSettlementJoin;
+import com.worksphere.billing.infrastructure.payment.PartitionedSettlementJoin.JoinResult;
+import com.worksphere.billing.infrastructure.payment.PartitionedSettlementJoin.Mismatch;
+import com.worksphere.billing.infrastructure.payment.PartitionedSettlementJoin.MismatchType;
+import com.worksphere.billing.infrastructure.payment.SettlementFileReader;
+import com.worksphere.billing.infrastructure.payment.SettlementFileReader.Kind;
+import com.worksphere.billing.infrastructure.payment.SettlementFileReader.ReadResult;
+import com.worksphere.billing.infrastructure.payment.SettlementFileReader.SettlementRecord;
+import com.worksphere.billing.infrastructure.repository.PaymentLedgerReader.LedgerRow;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Lectura de liquidaciones y hash join particionado contra un ledger en memoria.
+ */
+class SettlementReconciliationTest {
+
+    private final SettlementFileReader reader = new SettlementFileReader();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testClassifiesMismatches() throws IOException {
+        Path file = write("stripe-2026-10-18.csv",
+                "transaction_id,amount,status,created_at",
+                "tx1,10.00,settled,2026-10-18T08:00:00",
+                "tx2,12.00,settled,2026-10-18T09:00:00",
+                "tx3,10.00,settled,2026-10-18T10:00:00",
+                "tx4,10.00,settled,2026-10-18T11:00:00",
+                "tx6,10.00,settled,2026-10-18T12:00:00",
+                "tx6,10.00,settled,2026-10-18T12:00:01",
+                "tx7,-10.00,refunded,2026-10-18T13:00:00",
+                "\"tx,8\",10,succeeded,2026-10-18T14:00:00",
+                "tx9,abc,settled,2026-10-18T15:00:00");
+
+        Map<String, LedgerRow> outsideWindow = Map.of("tx,8", ledger("tx,8", "SUCCESS", "10.00", false));
+        List<Mismatch> mismatches = new ArrayList<>();
+        JoinResult result;
+        ReadResult read;
+        try (PartitionedSettlementJoin join = new PartitionedSettlementJoin(dir.resolve("work"), 4, 2)) {
+            read = reader.read(file, join::addSettlement);
+            Stream.of(ledger("tx1", "SUCCESS", "10", false),
+                    ledger("tx2", "SUCCESS", "10.00", false),
+                    ledger("tx3", "PENDING", "10.00", false),
+                    ledger("tx5", "SUCCESS", "10.00", false),
+                    ledger("tx6", "SUCCESS", "10.00", false),
+                    ledger("tx7", "SUCCESS", "10.00", false)).forEach(join::addLedger);
+            result = join.join(ids -> lookup(outsideWindow, ids), mismatches::add);
+        }
+
+        assertEquals(8, read.getRows());
+        assertEquals(1, read.getSkipped());
+        Map<String, MismatchType> byTransaction = new HashMap<>();
+        mismatches.forEach(m -> byTransaction.put(m.getTransactionId(), m.getType()));
+        assertEquals(Map.of(
+                "tx2", MismatchType.AMOUNT_MISMATCH,
+                "tx3", MismatchType.STATUS_MISMATCH,
+                "tx4", MismatchType.MISSING_IN_LEDGER,
+                "tx5", MismatchType.MISSING_IN_SETTLEMENT,
+                "tx6", MismatchType.DUPLICATE_SETTLEMENT,
+                "tx7", MismatchType.STATUS_MISMATCH), byTransaction);
+        assertEquals(2, result.getMatched(), "tx1 y tx,8 (encontrado fuera de la ventana)");
+        assertEquals(6, result.getMismatchCount());
+        assertFalse(Files.exists(dir.resolve("work")), "las particiones se borran al cerrar");
+    }
+
+    @Test
+    void testReadsJsonAndJsonLines() throws IOException {
+        Path json = write("paypal.json",
+                "{\"meta\": {\"id\": \"ignored\"}, \"data\": [",
+                "  {\"id\": \"A-1\", \"amount\": 25.5, \"type\": \"charge\", \"settled_at\": \"2026-10-18T08:00:00Z\", \"fees\": {\"amount\": 1}},",
+                "  {\"id\": \"A-2\", \"amount\": \"7\", \"type\": \"refund\", \"settled_at\": \"2026-10-18\"}",
+                "]}");
+        Path jsonl = write("paypal.jsonl",
+                "{\"id\": \"A-1\", \"amount\": 25.5, \"type\": \"charge\", \"settled_at\": \"2026-10-18T08:00:00Z\"}",
+                "",
+                "{\"id\": \"A-2\", \"amount\": \"7\", \"type\": \"refund\", \"settled_at\": \"2026-10-18\"}");
+
+        for (Path file : List.of(json, jsonl)) {
+            List<SettlementRecord> records = new ArrayList<>();
+            ReadResult read = reader.read(file, records::add);
+
+            assertEquals(2, read.getRows(), file.getFileName().toString());
+            assertEquals("A-1", records.get(0).getTransactionId());
+            assertEquals(Kind.CHARGE, records.get(0).getKind());
+            assertEquals(0, new BigDecimal("25.5").compareTo(records.get(0).getAmount()));
+            assertNotNull(records.get(0).getOccurredAt());
+            assertEquals(Kind.REFUND, records.get(1).getKind());
+            assertEquals(18, records.get(1).getOccurredAt().getDayOfMonth());
+            assertFalse(records.get(0).isChargeDate(), "settled_at es la fecha de liquidación");
+        }
+    }
+
+    @Test
+    void testPrefersChargeDateOverSettlementDate() throws IOException {
+        Path file = write("adyen.csv",
+                "transaction_id,settled_at,amount,created_at",
+                "tx1,2026-10-19T02:00:00,10.00,2026-10-17T23:30:00");
+
+        List<SettlementRecord> records = new ArrayList<>();
+        reader.read(file, records::add);
+
+        assertTrue(records.get(0).isChargeDate());
+        assertEquals(17, records.get(0).getOccurredAt().getDayOfMonth());
+    }
+
+    @Test
+    void testRepartitionsOversizedPartitions() throws IOException {
+        int rows = 50_000;
+        Path file = dir.resolve("oversized.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("transaction_id,amount,status");
+            writer.newLine();
+            for (int i = 0; i < rows; i++) {
+                writer.write("tx-" + i + ",10.00,settled");
+                writer.newLine();
+            }
+        }
+
+        List<Mismatch> mismatches = new ArrayList<>();
+        JoinResult result;
+        // Dos particiones de ~500 KB frente a un máximo de 64 KB
+        try (PartitionedSettlementJoin join = new PartitionedSettlementJoin(dir.resolve("work"), 2, 5000, 64 * 1024)) {
+            reader.read(file, join::addSettlement);
+            for (int i = 0; i < rows; i++) {
+                join.addLedger(ledger("tx-" + i, "SUCCESS", i % 500 == 0 ? "9.99" : "10.00", false));
+            }
+            result = join.join(ids -> List.of(), mismatches::add);
+        }
+
+        assertTrue(result.getRepartitioned() >= 2, "cada partición inicial debe repartirse");
+        assertEquals(rows, result.getLedgerRows());
+        assertEquals(rows / 500, result.getMismatchCount());
+        assertEquals(rows - rows / 500, result.getMatched());
+        assertTrue(mismatches.stream().allMatch(m -> m.getType() == MismatchType.AMOUNT_MISMATCH));
+        assertFalse(Files.exists(dir.resolve("work")), "las sub-particiones también se borran");
+    }
+
+    @Test
+    void testLargeFileJoinsAcrossPartitions() throws IOException {
+        int rows = 200_000;
+        Path file = dir.resolve("large.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("transaction_id,amount,status");
+            writer.newLine();
+            for (int i = 0; i < rows; i++) {
+                writer.write("tx-" + i + "," + (i % 100) + ".25,settled");
+                writer.newLine();
+            }
+        }
+
+        List<Mismatch> mismatches = new ArrayList<>();
+        JoinResult result;
+        try (PartitionedSettlementJoin join = new PartitionedSettlementJoin(dir.resolve("work"), 32, 5000)) {
+            reader.read(file, join::addSettlement);
+            for (int i = 0; i < rows; i++) {
+                // Un importe distinto cada mil transacciones
+                String amount = (i % 1000 == 0 ? "0.01" : (i % 100) + ".25");
+                join.addLedger(ledger("tx-" + i, "SUCCESS", amount, false));
+            }
+            result = join.join(ids -> List.of(), mismatches::add);
+        }
+
+        assertEquals(rows, result.getLedgerRows());
+        assertEquals(rows / 1000, result.getMismatchCount());
+        assertEquals(rows - rows / 1000, result.getMatched());
+        assertTrue(mismatches.stream().allMatch(m -> m.getType() == MismatchType.AMOUNT_MISMATCH));
+    }
+
+    // -----------------------------
+    // Soporte
+    // -----------------------------
+
+    private Path write(String name, String... lines) throws IOException {
+        Path file = dir.resolve(name);
+        Files.write(file, List.of(lines), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static List<LedgerRow> lookup(Map<String, LedgerRow> ledger, Collection<String> ids) {
+        List<LedgerRow> found = new ArrayList<>();
+        for (String id : ids) {
+            if (ledger.containsKey(id)) {
+                found.add(ledger.get(id));
+            }
+        }
+        return found;
+    }
+
+    private static LedgerRow ledger(String transactionId, String status, String amount, boolean reversed) {
+        return new LedgerRow(transactionId, UUID.randomUUID().toString(), "tenant-a", UUID.randomUUID().toString(),
+                status, new BigDecimal(amount), reversed, "stripe");
+    }
+}
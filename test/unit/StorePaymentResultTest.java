@@ -0,0 +1,119 @@
+package com.worksphere.billingengine.test.unit;
+
+import com.worksphere.billing.domain.event.NotificationEvent;
+import com.worksphere.billing.domain.model.PaymentResult;
+import com.worksphere.billing.domain.model.PaymentResult.PaymentStatus;
+import com.worksphere.billing.domain.repository.PaymentResultRepository;
+import com.worksphere.billing.infrastructure.repository.PaymentResultBatchWriter;
+import com.worksphere.billing.usecase.notification.EmitNotificationEvent;
+import com.worksphere.billing.usecase.payment.StorePaymentResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Registro en bloque de resultados de pago: deduplicación, cobros PENDING y eventos tras el commit.
+ */
+class StorePaymentResultTest {
+
+    private PaymentResultBatchWriter batchWriter;
+    private EmitNotificationEvent emitNotificationEvent;
+    private StorePaymentResult storePaymentResult;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        batchWriter = mock(PaymentResultBatchWriter.class);
+        emitNotificationEvent = mock(EmitNotificationEvent.class);
+        storePaymentResult = new StorePaymentResult(mock(PaymentResultRepository.class), batchWriter,
+                emitNotificationEvent, mock(PlatformTransactionManager.class));
+
+        when(batchWriter.findExistingTransactionIds(any())).thenReturn(Set.of());
+        when(batchWriter.findPendingByInvoice(any())).thenReturn(Map.of());
+        when(batchWriter.insertNew(anyList())).thenAnswer(inv -> inv.getArgument(0));
+        when(batchWriter.completePending(anyMap())).thenAnswer(inv -> List.copyOf(((Map<UUID, PaymentResult>) inv.getArgument(0)).values()));
+        when(emitNotificationEvent.emitAll(anyList())).thenReturn(CompletableFuture.completedFuture(0));
+    }
+
+    @Test
+    void testDuplicatesInBlockAndAlreadyStoredAreIgnored() {
+        PaymentResult first = result("tx-1", PaymentStatus.SUCCESS);
+        PaymentResult redelivered = result("tx-1", PaymentStatus.SUCCESS);
+        PaymentResult stored = result("tx-2", PaymentStatus.SUCCESS);
+        PaymentResult pending = result("tx-3", PaymentStatus.PENDING);
+        when(batchWriter.findExistingTransactionIds(any())).thenReturn(Set.of("tx-2"));
+
+        List<PaymentResult> registered = storePaymentResult.executeBatch(List.of(first, redelivered, stored, pending));
+
+        assertEquals(List.of(first, pending), registered);
+        verify(batchWriter).insertNew(List.of(first, pending));
+        // Solo el resultado definitivo genera evento
+        List<NotificationEvent> events = emittedEvents();
+        assertEquals(1, events.size());
+        assertEquals("payment_succeeded", events.get(0).getType());
+        assertEquals(String.valueOf(first.getInvoiceId()), events.get(0).getInvoiceId());
+    }
+
+    @Test
+    void testResultForInvoiceWithPendingChargeCompletesThatRow() {
+        PaymentResult webhook = result("tx-9", PaymentStatus.FAILED);
+        PaymentResult other = result("tx-10", PaymentStatus.SUCCESS);
+        UUID pendingRow = UUID.randomUUID();
+        when(batchWriter.findPendingByInvoice(any())).thenReturn(Map.of(webhook.getInvoiceId(), pendingRow));
+
+        List<PaymentResult> registered = storePaymentResult.executeBatch(List.of(webhook, other));
+
+        verify(batchWriter).completePending(Map.of(pendingRow, webhook));
+        verify(batchWriter).insertNew(List.of(other));
+        assertEquals(2, registered.size());
+        assertEquals(List.of("payment_failed", "payment_succeeded"),
+                emittedEvents().stream().map(NotificationEvent::getType).toList());
+    }
+
+    @Test
+    void testPendingResultForInvoiceWithPendingChargeIsDropped() {
+        PaymentResult webhook = result("tx-5", PaymentStatus.PENDING);
+        when(batchWriter.findPendingByInvoice(any())).thenReturn(Map.of(webhook.getInvoiceId(), UUID.randomUUID()));
+
+        List<PaymentResult> registered = storePaymentResult.executeBatch(List.of(webhook));
+
+        assertTrue(registered.isEmpty());
+        verify(batchWriter).completePending(Map.of());
+        verify(batchWriter).insertNew(List.of());
+        assertTrue(emittedEvents().isEmpty());
+    }
+
+    @Test
+    void testEmptyBlockTouchesNothing() {
+        assertTrue(storePaymentResult.executeBatch(List.of()).isEmpty());
+        verifyNoInteractions(batchWriter, emitNotificationEvent);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<NotificationEvent> emittedEvents() {
+        ArgumentCaptor<List<NotificationEvent>> events = ArgumentCaptor.forClass(List.class);
+        verify(emitNotificationEvent).emitAll(events.capture());
+        return events.getValue();
+    }
+
+    private static PaymentResult result(String transactionId, PaymentStatus status) {
+        PaymentResult result = new PaymentResult();
+        result.setTenantId("tenant-a");
+        result.setInvoiceId(UUID.randomUUID());
+        result.setGatewayProvider("stripe");
+        result.setGatewayTransactionId(transactionId);
+        result.setStatus(status);
+        return result;
+    }
+}
@@ -0,0 +1,160 @@
+package com.worksphere.billingengine.test.unit;
+
+import com.worksphere.billing.infrastructure.kafka.BillingMessageKey;
+import com.worksphere.billing.infrastructure.kafka.HotTenantSplitStrategy;
+import com.worksphere.billing.infrastructure.kafka.TenantAffinityPartitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Prueba de carga del particionado por tenant: mide el sesgo entre particiones con una
+ * distribución de tenants muy desigual y comprueba que el orden por factura se conserva.
+ */
+class TenantPartitionerSkewTest {
+
+    private static final Logger log = LoggerFactory.getLogger(TenantPartitionerSkewTest.class);
+
+    private static final String TOPIC = "billing-events";
+    private static final int PARTITIONS = 24;
+    private static final int EVENTS = 500_000;
+    private static final int TENANTS = 200;
+
+    private final Cluster cluster = cluster(TOPIC, PARTITIONS);
+
+    @Test
+    void testTenantAffinityKeepsTenantOnOnePartition() {
+        TenantAffinityPartitioner partitioner = partitioner(Map.of());
+
+        int first = partition(partitioner, BillingMessageKey.of("tenant-1", "inv-1"));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(first, partition(partitioner, BillingMessageKey.of("tenant-1", "inv-" + i)));
+        }
+        // Una clave solo con tenant cae en la misma partición
+        assertEquals(first, partition(partitioner, "tenant-1"));
+    }
+
+    @Test
+    void testHotTenantSplitReducesSkewAndPreservesInvoiceOrder() {
+        TenantAffinityPartitioner affinity = partitioner(Map.of());
+        TenantAffinityPartitioner split = partitioner(Map.of(
+                "strategy", "hot-tenant-split",
+                "hot", "tenant-0:8,tenant-1:4"));
+
+        long[] affinityLoad = new long[PARTITIONS];
+        long[] splitLoad = new long[PARTITIONS];
+        Map<String, Integer> invoicePartition = new HashMap<>();
+
+        Random random = new Random(42);
+        long start = System.nanoTime();
+        for (int i = 0; i < EVENTS; i++) {
+            String tenant = "tenant-" + zipf(random);
+            String invoice = tenant + "-inv-" + random.nextInt(2_000);
+            String key = BillingMessageKey.of(tenant, invoice);
+
+            affinityLoad[partition(affinity, key)]++;
+            int p = partition(split, key);
+            splitLoad[p]++;
+
+            // Orden por factura: una factura nunca cambia de partición
+            Integer previous = invoicePartition.putIfAbsent(invoice, p);
+            assertTrue(previous == null || previous == p, "La factura " + invoice + " cambió de partición");
+        }
+        long nsPerEvent = (System.nanoTime() - start) / (2L * EVENTS);
+
+        double affinitySkew = skew(affinityLoad);
+        double splitSkew = skew(splitLoad);
+        log.info("Sesgo con {} particiones y {} eventos ({} ns/evento)", PARTITIONS, EVENTS, nsPerEvent);
+        report("afinidad", affinityLoad);
+        report("reparto calientes", splitLoad);
+        assertTrue(splitSkew < affinitySkew, "El reparto de tenants calientes debe reducir el sesgo");
+    }
+
+    @Test
+    void testHotTenantEventsWithoutInvoiceStayOnBasePartition() {
+        TenantAffinityPartitioner split = partitioner(Map.of("strategy", "hot-tenant-split", "hot", "tenant-0:8"));
+        int base = partition(partitioner(Map.of()), "tenant-0");
+        assertEquals(base, partition(split, "tenant-0"));
+    }
+
+    // -----------------------------
+    // Utilidades
+    // -----------------------------
+
+    /** Distribución tipo Zipf (s≈1.2): el tenant 0 concentra una parte grande del volumen. */
+    private static final double[] ZIPF_CDF = zipfCdf(TENANTS, 1.2);
+
+    private static int zipf(Random random) {
+        int index = Arrays.binarySearch(ZIPF_CDF, random.nextDouble());
+        return Math.min(index < 0 ? -index - 1 : index, TENANTS - 1);
+    }
+
+    private static double[] zipfCdf(int n, double s) {
+        double[] cdf = new double[n];
+        double cumulative = 0;
+        for (int k = 1; k <= n; k++) {
+            cumulative += 1.0 / Math.pow(k, s);
+            cdf[k - 1] = cumulative;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= cumulative;
+        }
+        return cdf;
+    }
+
+    private static double skew(long[] load) {
+        long max = 0;
+        long total = 0;
+        for (long l : load) {
+            max = Math.max(max, l);
+            total += l;
+        }
+        return max / ((double) total / load.length);
+    }
+
+    private static void report(String strategy, long[] load) {
+        long max = Arrays.stream(load).max().orElse(0);
+        double mean = Arrays.stream(load).average().orElse(0);
+        log.info("Carga {}: máx={}, media={}, sesgo (máx/media)={}", strategy, max,
+                String.format("%.1f", mean), String.format("%.2f", skew(load)));
+    }
+
+    private int partition(TenantAffinityPartitioner partitioner, String key) {
+        return partitioner.partition(TOPIC, key, key.getBytes(), null, null, cluster);
+    }
+
+    private static TenantAffinityPartitioner partitioner(Map<String, String> options) {
+        Map<String, Object> configs = new HashMap<>();
+        if (options.containsKey("strategy")) {
+            configs.put(TenantAffinityPartitioner.STRATEGY_CONFIG, options.get("strategy"));
+        }
+        if (options.containsKey("hot")) {
+            configs.put(HotTenantSplitStrategy.HOT_TENANTS_CONFIG, options.get("hot"));
+        }
+        TenantAffinityPartitioner partitioner = new TenantAffinityPartitioner();
+        partitioner.configure(configs);
+        return partitioner;
+    }
+
+    private static Cluster cluster(String topic, int partitions) {
+        Node node = new Node(0, "localhost", 9092);
+        List<PartitionInfo> infos = new ArrayList<>();
+        for (int p = 0; p < partitions; p++) {
+            infos.add(new PartitionInfo(topic, p, node, new Node[]{node}, new Node[]{node}));
+        }
+        return new Cluster("test", List.of(node), infos, Set.of(), Set.of());
+    }
+}
@@ -0,0 +1,60 @@
+package com.worksphere.billingengine.test.unit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.worksphere.billing.transport.codec.SchemaRegistry;
+import com.worksphere.billing.transport.codec.TransportEventCodecs;
+import com.worksphere.billing.transport.events.InvoiceGeneratedEvent;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Medición de tamaño y coste por evento del codec binario frente a JSON.
+ * Excluida de {@code test}; se ejecuta con {@code ./gradlew benchmark}.
+ */
+@Tag("benchmark")
+class TransportEventCodecBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(TransportEventCodecBenchmarkTest.class);
+
+    private final TransportEventCodecs codecs = new TransportEventCodecs(new SchemaRegistry());
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Test
+    void testBinaryVersusJsonSizeAndThroughput() throws Exception {
+        InvoiceGeneratedEvent event = new InvoiceGeneratedEvent("tenant-42", "INV-2024-000123", "cycle-2024-03",
+                new BigDecimal("1210.00"), new BigDecimal("210.00"), Instant.parse("2024-03-01T10:15:30Z"));
+        int iterations = 200_000;
+
+        byte[] binary = codecs.encode(event);
+        byte[] json = objectMapper.writeValueAsBytes(event);
+
+        // Calentamiento
+        for (int i = 0; i < iterations; i++) {
+            codecs.decode(codecs.encode(event));
+            objectMapper.readValue(objectMapper.writeValueAsBytes(event), InvoiceGeneratedEvent.class);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            codecs.decode(codecs.encode(event));
+        }
+        long binaryNs = (System.nanoTime() - start) / iterations;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            objectMapper.readValue(objectMapper.writeValueAsBytes(event), InvoiceGeneratedEvent.class);
+        }
+        long jsonNs = (System.nanoTime() - start) / iterations;
+
+        log.info("InvoiceGeneratedEvent binario: {} bytes/evento, {} ns/evento | JSON: {} bytes/evento, {} ns/evento",
+                binary.length, binaryNs, json.length, jsonNs);
+        assertTrue(binary.length * 2 < json.length);
+    }
+}
@@ -0,0 +1,268 @@
+package com.worksphere.billingengine.test.unit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.worksphere.billing.transport.codec.EventCodec;
+import com.worksphere.billing.transport.codec.EventReader;
+import com.worksphere.billing.transport.codec.EventSchema;
+import com.worksphere.billing.transport.codec.EventSchema.FieldType;
+import com.worksphere.billing.transport.codec.EventWriter;
+import com.worksphere.billing.transport.codec.SchemaCompatibilityException;
+import com.worksphere.billing.transport.codec.SchemaRegistry;
+import com.worksphere.billing.transport.codec.TransportEventCodecs;
+import com.worksphere.billing.transport.codec.TransportEventSerde;
+import com.worksphere.billing.transport.events.BillingCompletedEvent;
+import com.worksphere.billing.transport.events.InvoiceGeneratedEvent;
+import com.worksphere.billing.transport.events.PaymentFailedEvent;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransportEventCodecTest {
+
+    private static final Instant NOW = Instant.parse("2024-03-01T10:15:30.123Z");
+
+    private final SchemaRegistry registry = new SchemaRegistry();
+    private final TransportEventCodecs codecs = new TransportEventCodecs(registry);
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Test
+    void testRoundTripOfAllTransportEvents() {
+        BillingCompletedEvent completed = new BillingCompletedEvent("tenant-á", "cycle-1",
+                new BigDecimal("1234.56"), "EUR", NOW, "COMPLETED");
+        InvoiceGeneratedEvent generated = new InvoiceGeneratedEvent("tenant-1", "inv-1", "cycle-1",
+                new BigDecimal("99999999999999999999999.99"), new BigDecimal("-0.21"), NOW);
+        PaymentFailedEvent failed = new PaymentFailedEvent("tenant-1", "inv-2", null,
+                BigDecimal.TEN, "CARD_DECLINED", NOW);
+
+        BillingCompletedEvent c = (BillingCompletedEvent) codecs.decode(codecs.encode(completed));
+        assertEquals(completed.getEventId(), c.getEventId());
+        assertEquals("tenant-á", c.getTenantId());
+        assertEquals(new BigDecimal("1234.56"), c.getTotalAmount());
+        assertEquals(NOW, c.getCompletedAt());
+        assertEquals("COMPLETED", c.getStatus());
+
+        InvoiceGeneratedEvent g = (InvoiceGeneratedEvent) codecs.decode(codecs.encode(generated));
+        assertEquals(generated.getEventId(), g.getEventId());
+        assertEquals(new BigDecimal("99999999999999999999999.99"), g.getTotalAmount());
+        assertEquals(new BigDecimal("-0.21"), g.getTaxAmount());
+
+        PaymentFailedEvent f = (PaymentFailedEvent) codecs.decode(codecs.encode(failed));
+        assertEquals("inv-2", f.getInvoiceId());
+        assertNull(f.getBillingCycleId());
+        assertEquals("CARD_DECLINED", f.getFailureType());
+    }
+
+    @Test
+    void testSchemaEvolutionIsCompatibleInBothDirections() {
+        BillingCompletedEvent event = new BillingCompletedEvent("tenant-1", "cycle-1",
+                new BigDecimal("10.00"), "EUR", NOW, "COMPLETED");
+
+        // Productor y consumidor comparten registro; el consumidor v1 no conoce el campo nuevo
+        TransportEventCodecs v1 = new TransportEventCodecs(registry);
+        byte[] v1Bytes = v1.encode(event);
+
+        TransportEventCodecs v2 = new TransportEventCodecs(registry);
+        v2.register(new BillingCompletedV2Codec());
+        byte[] v2Bytes = v2.encode(event);
+
+        BillingCompletedEvent readByV1 = (BillingCompletedEvent) v1.decode(v2Bytes);
+        assertEquals(event.getEventId(), readByV1.getEventId());
+        assertEquals(new BigDecimal("10.00"), readByV1.getTotalAmount());
+
+        BillingCompletedEvent readByV2 = (BillingCompletedEvent) v2.decode(v1Bytes);
+        assertEquals("cycle-1", readByV2.getBillingCycleId());
+        assertFalse(v2.index(v1Bytes).has(8));
+        assertEquals("eu-west", v2.index(v2Bytes).getString(8));
+    }
+
+    @Test
+    void testIncompatibleSchemaChangesAreRejected() {
+        EventSchema changedType = EventSchema.builder("billing.BillingCompletedEvent", 2)
+                .required(1, "event_id", FieldType.UUID)
+                .required(2, "tenant_id", FieldType.STRING)
+                .optional(4, "total_amount", FieldType.STRING)
+                .build();
+        assertThrows(SchemaCompatibilityException.class, () -> registry.register(changedType));
+
+        EventSchema newRequired = EventSchema.builder("billing.BillingCompletedEvent", 2)
+                .required(1, "event_id", FieldType.UUID)
+                .required(2, "tenant_id", FieldType.STRING)
+                .required(8, "region", FieldType.STRING)
+                .build();
+        assertThrows(SchemaCompatibilityException.class, () -> registry.register(newRequired));
+
+        EventSchema droppedRequired = EventSchema.builder("billing.BillingCompletedEvent", 2)
+                .required(1, "event_id", FieldType.UUID)
+                .build();
+        assertThrows(SchemaCompatibilityException.class, () -> registry.register(droppedRequired));
+    }
+
+    @Test
+    void testSerdeReadsJsonFallbackAndBinary() {
+        TransportEventSerde jsonSerde = new TransportEventSerde(codecs, objectMapper, TransportEventSerde.Format.JSON);
+        TransportEventSerde binarySerde = new TransportEventSerde(codecs, objectMapper, TransportEventSerde.Format.BINARY);
+        PaymentFailedEvent event = new PaymentFailedEvent("tenant-1", "inv-1", "cycle-1",
+                new BigDecimal("5.50"), "TIMEOUT", Instant.parse("2024-03-01T10:15:30Z"));
+
+        RecordHeaders headers = new RecordHeaders();
+        byte[] json = jsonSerde.serialize("payment-events", headers, event);
+        assertEquals('{', json[0]);
+        assertNotNull(headers.lastHeader(TransportEventSerde.SUBJECT_HEADER));
+
+        // Un consumidor configurado en binario sigue leyendo los mensajes JSON antiguos
+        PaymentFailedEvent fromJson = (PaymentFailedEvent) binarySerde.deserialize("payment-events", headers, json);
+        assertEquals(event.getEventId(), fromJson.getEventId());
+        assertEquals(new BigDecimal("5.50"), fromJson.getFailedAmount());
+
+        byte[] binary = binarySerde.serialize("payment-events", new RecordHeaders(), event);
+        assertTrue(EventReader.isBinary(binary));
+        assertTrue(binary.length < json.length);
+        PaymentFailedEvent fromBinary = (PaymentFailedEvent) jsonSerde.deserialize("payment-events", null, binary);
+        assertEquals(event.getEventId(), fromBinary.getEventId());
+    }
+
+    @Test
+    void testBinaryIsAtLeastHalfTheSizeOfJson() throws Exception {
+        InvoiceGeneratedEvent event = new InvoiceGeneratedEvent("tenant-42", "INV-2024-000123", "cycle-2024-03",
+                new BigDecimal("1210.00"), new BigDecimal("210.00"), Instant.parse("2024-03-01T10:15:30Z"));
+
+        byte[] binary = codecs.encode(event);
+        byte[] json = objectMapper.writeValueAsBytes(event);
+
+        assertTrue(binary.length * 2 < json.length);
+        InvoiceGeneratedEvent decoded = (InvoiceGeneratedEvent) codecs.decode(binary);
+        assertEquals(event.getEventId(), decoded.getEventId());
+        assertEquals(event.getInvoiceId(), decoded.getInvoiceId());
+        assertEquals(event.getTaxAmount(), decoded.getTaxAmount());
+    }
+
+    @Test
+    void testSubjectIdsDoNotDependOnRegistrationOrder() {
+        // Otra instancia registra primero otro subject y la v2 de BillingCompletedEvent
+        SchemaRegistry otherRegistry = new SchemaRegistry();
+        otherRegistry.register(EventSchema.builder("billing.Other", 1)
+                .required(1, "event_id", FieldType.UUID)
+                .build());
+        TransportEventCodecs other = new TransportEventCodecs(otherRegistry);
+        other.register(new BillingCompletedV2Codec());
+
+        byte[] fromOther = other.encode(new BillingCompletedEvent("tenant-1", "cycle-1",
+                new BigDecimal("10.00"), "EUR", NOW, "COMPLETED"));
+
+        EventReader header = other.index(fromOther);
+        assertEquals(SchemaRegistry.subjectId("billing.BillingCompletedEvent", 1), header.getSubjectId());
+        assertEquals(2, header.getVersion());
+    }
+
+    @Test
+    void testConsumerWithOwnRegistryReadsNewerMinorVersion() {
+        // Productor y consumidor con registros separados: el consumidor nunca registró la v2
+        SchemaRegistry producerRegistry = new SchemaRegistry();
+        TransportEventCodecs producer = new TransportEventCodecs(producerRegistry);
+        producer.register(new BillingCompletedV2Codec());
+        SchemaRegistry consumerRegistry = new SchemaRegistry();
+        TransportEventCodecs consumer = new TransportEventCodecs(consumerRegistry);
+
+        BillingCompletedEvent event = new BillingCompletedEvent("tenant-1", "cycle-1",
+                new BigDecimal("10.00"), "EUR", NOW, "COMPLETED");
+        byte[] v2Bytes = producer.encode(event);
+
+        assertNull(consumerRegistry.schema(consumer.index(v2Bytes).getSubjectId(), 2));
+        BillingCompletedEvent decoded = (BillingCompletedEvent) consumer.decode(v2Bytes);
+        assertEquals(event.getEventId(), decoded.getEventId());
+        assertEquals("COMPLETED", decoded.getStatus());
+        assertEquals(1, consumer.writerSchema(consumer.index(v2Bytes)).getVersion());
+
+        // Y el productor nuevo lee lo que escribe un consumidor antiguo
+        BillingCompletedEvent back = (BillingCompletedEvent) producer.decode(consumer.encode(event));
+        assertEquals("cycle-1", back.getBillingCycleId());
+    }
+
+    @Test
+    void testUnknownMajorVersionIsRejected() {
+        SchemaRegistry producerRegistry = new SchemaRegistry();
+        TransportEventCodecs producer = new TransportEventCodecs(producerRegistry);
+        producer.register(new BillingCompletedMajor2Codec());
+
+        byte[] major2 = producer.encode(new BillingCompletedEvent("tenant-1", "cycle-1",
+                new BigDecimal("10.00"), "EUR", NOW, "COMPLETED"));
+
+        assertThrows(IllegalArgumentException.class, () -> codecs.decode(major2));
+    }
+
+    @Test
+    void testPublishedVersionCannotBeRedefined() {
+        EventSchema redefined = EventSchema.builder("billing.BillingCompletedEvent", 1)
+                .required(1, "event_id", FieldType.UUID)
+                .required(2, "tenant_id", FieldType.STRING)
+                .build();
+        assertThrows(SchemaCompatibilityException.class, () -> registry.register(redefined));
+    }
+
+    /**
+     * Versión mayor 2 de BillingCompletedEvent: el tenant pasa a ser un UUID (cambio incompatible).
+     */
+    private static final class BillingCompletedMajor2Codec implements EventCodec<BillingCompletedEvent> {
+        private static final EventSchema SCHEMA = EventSchema.builder("billing.BillingCompletedEvent", 2, 1)
+                .required(1, "event_id", FieldType.UUID)
+                .required(2, "tenant_uuid", FieldType.UUID)
+                .build();
+
+        @Override public EventSchema schema() { return SCHEMA; }
+        @Override public Class<BillingCompletedEvent> type() { return BillingCompletedEvent.class; }
+
+        @Override
+        public void write(BillingCompletedEvent e, EventWriter w) {
+            w.writeUuid(1, e.getEventId())
+                    .writeUuid(2, UUID.nameUUIDFromBytes(e.getTenantId().getBytes(StandardCharsets.UTF_8)).toString());
+        }
+
+        @Override
+        public BillingCompletedEvent read(EventReader r) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Versión 2 de BillingCompletedEvent con un campo opcional nuevo (región).
+     */
+    private static final class BillingCompletedV2Codec implements EventCodec<BillingCompletedEvent> {
+        private static final EventSchema SCHEMA = EventSchema.builder("billing.BillingCompletedEvent", 2)
+                .required(1, "event_id", FieldType.UUID)
+                .required(2, "tenant_id", FieldType.STRING)
+                .optional(3, "billing_cycle_id", FieldType.STRING)
+                .optional(4, "total_amount", FieldType.DECIMAL)
+                .optional(5, "currency", FieldType.STRING)
+                .optional(6, "completed_at", FieldType.INSTANT)
+                .optional(7, "status", FieldType.STRING)
+                .optional(8, "region", FieldType.STRING)
+                .build();
+
+        @Override public EventSchema schema() { return SCHEMA; }
+        @Override public Class<BillingCompletedEvent> type() { return BillingCompletedEvent.class; }
+
+        @Override
+        public void write(BillingCompletedEvent e, EventWriter w) {
+            w.writeUuid(1, e.getEventId())
+                    .writeString(2, e.getTenantId())
+                    .writeString(3, e.getBillingCycleId())
+                    .writeDecimal(4, e.getTotalAmount())
+                    .writeString(5, e.getCurrency())
+                    .writeInstant(6, e.getCompletedAt())
+                    .writeString(7, e.getStatus())
+                    .writeString(8, "eu-west");
+        }
+
+        @Override
+        public BillingCompletedEvent read(EventReader r) {
+            return new BillingCompletedEvent(r.getUuid(1), r.getString(2), r.getString(3),
+                    r.getDecimal(4), r.getString(5), r.getInstant(6), r.getString(7));
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.worksphere.billingengine.test.unit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.worksphere.billing.transport.events.InvoiceGeneratedEvent;
+import com.worksphere.billing.transport.webhook.WebhookPayloadEncoder;
+import com.worksphere.billing.transport.webhook.WebhookPayloadEncoder.EncodedPayload;
+import com.worksphere.billing.transport.webhook.WebhookSigner;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebhookPayloadPipelineTest {
+
+    private static final Logger log = LoggerFactory.getLogger(WebhookPayloadPipelineTest.class);
+
+    private static final int CACHE_SIZE = 16;
+    private static final int EVENTS = 100;
+    private static final int ENDPOINTS = 100; // 100 eventos x 100 endpoints = 10k webhooks
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final WebhookPayloadEncoder encoder = new WebhookPayloadEncoder(objectMapper);
+    private final WebhookSigner signer = new WebhookSigner(CACHE_SIZE);
+
+    @Test
+    void testPayloadIsProperJsonEnvelope() throws Exception {
+        InvoiceGeneratedEvent event = event(1);
+        EncodedPayload encoded = encoder.encode(event);
+
+        JsonNode root = objectMapper.readTree(encoded.getBytes());
+        assertEquals("InvoiceGeneratedEvent", root.get("event").asText());
+        assertTrue(root.get("data").isObject());
+        assertEquals("INV-1", root.get("data").get("invoice_id").asText());
+        assertEquals(encoded.asString(), new String(encoded.getBytes(), StandardCharsets.UTF_8));
+
+        // El buffer por hilo se reutiliza sin arrastrar bytes del evento anterior
+        EncodedPayload second = encoder.encode("custom", "texto con \"comillas\"");
+        assertEquals("{\"event\":\"custom\",\"data\":\"texto con \\\"comillas\\\"\"}", second.asString());
+    }
+
+    @Test
+    void testCachedSignatureMatchesFreshMacAndFollowsSecretRotation() throws Exception {
+        byte[] payload = encoder.encode(event(7)).getBytes();
+        String url = "https://hooks.example.com/a";
+
+        assertEquals(legacySignature(payload, "secret-1"), signer.sign(url, "secret-1", payload));
+        assertEquals(legacySignature(payload, "secret-1"), signer.sign(url, "secret-1", payload));
+        assertEquals(legacySignature(payload, "secret-2"), signer.sign(url, "secret-2", payload));
+        assertEquals(2, signer.getCachedEndpoints());
+    }
+
+    @Test
+    void testEndpointsSharingUrlKeepTheirOwnSecret() throws Exception {
+        byte[] payload = encoder.encode(event(3)).getBytes();
+        String url = "https://hooks.example.com/shared";
+
+        // Alternar secretos sobre la misma URL nunca firma con el secreto del otro
+        for (int i = 0; i < 3; i++) {
+            assertEquals(legacySignature(payload, "tenant-a"), signer.sign(url, "tenant-a", payload));
+            assertEquals(legacySignature(payload, "tenant-b"), signer.sign(url, "tenant-b", payload));
+        }
+        assertEquals(2, signer.getCachedEndpoints());
+    }
+
+    @Test
+    void testCacheIsBoundedAndEvictedEntriesStillSignCorrectly() throws Exception {
+        byte[] payload = encoder.encode(event(5)).getBytes();
+        for (int e = 0; e < CACHE_SIZE * 4; e++) {
+            String secret = "secret-" + e;
+            assertEquals(legacySignature(payload, secret),
+                    signer.sign("https://hooks.example.com/endpoint-" + e, secret, payload));
+        }
+        assertEquals(CACHE_SIZE, signer.getCachedEndpoints());
+
+        // La primera entrada salió de la caché y se recalcula igual
+        assertEquals(legacySignature(payload, "secret-0"),
+                signer.sign("https://hooks.example.com/endpoint-0", "secret-0", payload));
+        assertEquals(CACHE_SIZE, signer.getCachedEndpoints());
+    }
+
+    /**
+     * Medición de rendimiento (excluida de {@code test}; se ejecuta con {@code ./gradlew benchmark}).
+     */
+    @Test
+    @Tag("benchmark")
+    void testFanOutBenchmark10kWebhooksAcross100Endpoints() throws Exception {
+        WebhookSigner fanOutSigner = new WebhookSigner(ENDPOINTS);
+        String[] urls = new String[ENDPOINTS];
+        String[] secrets = new String[ENDPOINTS];
+        for (int e = 0; e < ENDPOINTS; e++) {
+            urls[e] = "https://hooks.example.com/endpoint-" + e;
+            secrets[e] = "secret-" + e;
+        }
+
+        // Calentamiento
+        for (int i = 0; i < 5; i++) {
+            runLegacy(secrets);
+            runPipeline(fanOutSigner, urls, secrets);
+        }
+
+        long start = System.nanoTime();
+        long legacyBytes = runLegacy(secrets);
+        long legacyNs = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long pipelineBytes = runPipeline(fanOutSigner, urls, secrets);
+        long pipelineNs = System.nanoTime() - start;
+
+        int webhooks = EVENTS * ENDPOINTS;
+        log.info("{} webhooks / {} endpoints | legado: {} ms ({} webhooks/s, {} bytes) | pipeline: {} ms ({} webhooks/s, {} bytes)",
+                webhooks, ENDPOINTS,
+                legacyNs / 1_000_000, webhooks * 1_000_000_000L / Math.max(1, legacyNs), legacyBytes,
+                pipelineNs / 1_000_000, webhooks * 1_000_000_000L / Math.max(1, pipelineNs), pipelineBytes);
+        assertEquals(ENDPOINTS, fanOutSigner.getCachedEndpoints());
+    }
+
+    /**
+     * Camino anterior: JSON por concatenación por endpoint y Mac nuevo por firma.
+     */
+    private long runLegacy(String[] secrets) throws Exception {
+        long bytes = 0;
+        for (int i = 0; i < EVENTS; i++) {
+            InvoiceGeneratedEvent event = event(i);
+            for (int e = 0; e < ENDPOINTS; e++) {
+                String json = "{\"event\":\"" + event.getClass().getSimpleName() + "\", \"data\": \"" + event + "\"}";
+                byte[] body = json.getBytes(StandardCharsets.UTF_8);
+                bytes += body.length + legacySignature(body, secrets[e]).length();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Pipeline nuevo: una serialización por evento y firma con Mac clonado por endpoint.
+     */
+    private long runPipeline(WebhookSigner fanOutSigner, String[] urls, String[] secrets) {
+        long bytes = 0;
+        for (int i = 0; i < EVENTS; i++) {
+            EncodedPayload encoded = encoder.encode(event(i));
+            for (int e = 0; e < ENDPOINTS; e++) {
+                bytes += encoded.getBytes().length + fanOutSigner.sign(urls[e], secrets[e], encoded.getBytes()).length();
+            }
+        }
+        return bytes;
+    }
+
+    private static String legacySignature(byte[] payload, String secret) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        return Base64.getEncoder().encodeToString(mac.doFinal(payload));
+    }
+
+    private static InvoiceGeneratedEvent event(int i) {
+        return new InvoiceGeneratedEvent("tenant-" + (i % 10), "INV-" + i, "cycle-2024-03",
+                new BigDecimal("1210.00"), new BigDecimal("210.00"), Instant.parse("2024-03-01T10:15:30Z"));
+    }
+}